@@ -9,44 +9,65 @@
 
 package tectonicus;
 
+import java.util.Arrays;
+
 import tectonicus.raw.RawChunk;
 
+/** Which blocks in a chunk are drawn. Masks are nearly always a single visible range of y in each column, so
+ *  that's how they're kept, and an all visible mask doesn't store anything. Only a mask that can't be
+ *  described as ranges falls back to a bitset of every block.
+ */
 public class BlockMask
 {
-	private boolean[][][] mask;
+	private static final int NUM_COLUMNS = RawChunk.WIDTH * RawChunk.DEPTH;
+	
+	// Visible from columnMinY up to but not including columnMaxY. Null when every block is visible
+	private short[] columnMinY;
+	private short[] columnMaxY;
+	
+	// Set instead of the column ranges when some column has more than one visible range
+	private long[] bits;
 	
 	public BlockMask()
 	{
-		mask = new boolean[RawChunk.WIDTH][RawChunk.HEIGHT][RawChunk.DEPTH];
 		setAllVisible();
 	}
 	
 	public void setAllVisible()
 	{
-		for (int x=0; x<RawChunk.WIDTH; x++)
-		{
-			for (int y=0; y<RawChunk.HEIGHT; y++)
-			{
-				for (int z=0; z<RawChunk.DEPTH; z++)
-				{
-					mask[x][y][z] = true;
-				}
-			}
-		}
+		columnMinY = null;
+		columnMaxY = null;
+		bits = null;
 	}
-
+	
 	public void setAllInvisible()
 	{
-		for (int x=0; x<RawChunk.WIDTH; x++)
+		bits = null;
+		columnMinY = new short[NUM_COLUMNS];
+		columnMaxY = new short[NUM_COLUMNS];
+	}
+	
+	/** Makes the column visible from fromY up to but not including toY, and invisible everywhere else */
+	public void setVisibleRange(final int x, final int z, final int fromY, final int toY)
+	{
+		assert (x >= 0 && x < RawChunk.WIDTH);
+		assert (z >= 0 && z < RawChunk.DEPTH);
+		
+		final int from = Math.max(fromY, 0);
+		final int to = Math.max(Math.min(toY, RawChunk.HEIGHT), from);
+		
+		if (bits != null)
 		{
 			for (int y=0; y<RawChunk.HEIGHT; y++)
-			{
-				for (int z=0; z<RawChunk.DEPTH; z++)
-				{
-					mask[x][y][z] = false;
-				}
-			}
+				setBit(x, y, z, y >= from && y < to);
+			return;
 		}
+		
+		if (columnMinY == null)
+			createColumnRanges();
+		
+		columnMinY[column(x, z)] = (short)from;
+		columnMaxY[column(x, z)] = (short)to;
 	}
 	
 	public void setVisible(final int x, final int y, final int z, final boolean isVisible)
@@ -55,7 +76,55 @@ public class BlockMask
 		assert (y >= 0 && y < RawChunk.HEIGHT);
 		assert (z >= 0 && z < RawChunk.DEPTH);
 		
-		mask[x][y][z] = isVisible;
+		if (isVisible(x, y, z) == isVisible)
+			return;
+		
+		if (bits == null)
+		{
+			if (columnMinY == null)
+				createColumnRanges();
+			
+			// Keep to a range if the block is at either end of it
+			final int col = column(x, z);
+			final int min = columnMinY[col];
+			final int max = columnMaxY[col];
+			if (isVisible)
+			{
+				if (min == max)
+				{
+					columnMinY[col] = (short)y;
+					columnMaxY[col] = (short)(y+1);
+					return;
+				}
+				if (y == max)
+				{
+					columnMaxY[col] = (short)(max+1);
+					return;
+				}
+				if (y == min-1)
+				{
+					columnMinY[col] = (short)(min-1);
+					return;
+				}
+			}
+			else
+			{
+				if (y == min)
+				{
+					columnMinY[col] = (short)(min+1);
+					return;
+				}
+				if (y == max-1)
+				{
+					columnMaxY[col] = (short)(max-1);
+					return;
+				}
+			}
+			
+			createBits();
+		}
+		
+		setBit(x, y, z, isVisible);
 	}
 	
 	public boolean isVisible(final int x, final int y, final int z)
@@ -64,6 +133,89 @@ public class BlockMask
 		assert (y >= 0 && y < RawChunk.HEIGHT);
 		assert (z >= 0 && z < RawChunk.DEPTH);
 		
-		return mask[x][y][z];
+		if (bits != null)
+		{
+			final int index = blockIndex(x, y, z);
+			return (bits[index >>> 6] & (1L << index)) != 0;
+		}
+		if (columnMinY != null)
+		{
+			final int col = column(x, z);
+			return y >= columnMinY[col] && y < columnMaxY[col];
+		}
+		return true;
+	}
+	
+	/** The lowest y that might have a visible block */
+	public int getMinVisibleY()
+	{
+		if (bits != null || columnMinY == null)
+			return 0;
+		
+		int minY = RawChunk.HEIGHT;
+		for (int i=0; i<NUM_COLUMNS; i++)
+		{
+			if (columnMinY[i] < columnMaxY[i])
+				minY = Math.min(minY, columnMinY[i]);
+		}
+		return minY;
+	}
+	
+	/** One above the highest y that might have a visible block */
+	public int getMaxVisibleY()
+	{
+		if (bits != null || columnMinY == null)
+			return RawChunk.HEIGHT;
+		
+		int maxY = 0;
+		for (int i=0; i<NUM_COLUMNS; i++)
+		{
+			if (columnMinY[i] < columnMaxY[i])
+				maxY = Math.max(maxY, columnMaxY[i]);
+		}
+		return maxY;
+	}
+	
+	private void createColumnRanges()
+	{
+		columnMinY = new short[NUM_COLUMNS];
+		columnMaxY = new short[NUM_COLUMNS];
+		Arrays.fill(columnMaxY, (short)RawChunk.HEIGHT);
+	}
+	
+	private void createBits()
+	{
+		bits = new long[NUM_COLUMNS * RawChunk.HEIGHT / 64];
+		for (int x=0; x<RawChunk.WIDTH; x++)
+		{
+			for (int z=0; z<RawChunk.DEPTH; z++)
+			{
+				final int col = column(x, z);
+				for (int y=columnMinY[col]; y<columnMaxY[col]; y++)
+					setBit(x, y, z, true);
+			}
+		}
+		
+		columnMinY = null;
+		columnMaxY = null;
+	}
+	
+	private void setBit(final int x, final int y, final int z, final boolean isSet)
+	{
+		final int index = blockIndex(x, y, z);
+		if (isSet)
+			bits[index >>> 6] |= 1L << index;
+		else
+			bits[index >>> 6] &= ~(1L << index);
+	}
+	
+	private static int column(final int x, final int z)
+	{
+		return z * RawChunk.WIDTH + x;
+	}
+	
+	private static int blockIndex(final int x, final int y, final int z)
+	{
+		return y * NUM_COLUMNS + column(x, z);
 	}
 }
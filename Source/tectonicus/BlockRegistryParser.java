@@ -905,7 +905,7 @@ public class BlockRegistryParser
 		return StringUtils.isNotBlank(frameStr) ? Integer.parseInt(frameStr) : 0;
 	}
 	
-	private static Element loadXml(String resource, String rootName)
+	static Element loadXml(String resource, String rootName)
 	{
 		try
 		{
@@ -928,7 +928,7 @@ public class BlockRegistryParser
 		return null;
 	}
 	
-	private static IdDataPair parseIdDataPair(String str)
+	static IdDataPair parseIdDataPair(String str)
 	{
 		final int colonPos = str.indexOf(':');
 		if (colonPos == -1)
@@ -20,18 +20,13 @@ public class CaveMaskFactory implements BlockMaskFactory
 		int[][] heights = calcSmoothedSurfaceHeights(rawChunk);
 		
 		BlockMask mask = new BlockMask();
-		mask.setAllVisible();
 		
+		// Everything from the surface up is hidden
 		for (int x=0; x<RawChunk.WIDTH; x++)
 		{
 			for (int z=0; z<RawChunk.DEPTH; z++)
 			{
-				final int surfaceHeight = heights[x][z];
-				
-				for (int y=surfaceHeight; y<RawChunk.HEIGHT; y++)
-				{
-					mask.setVisible(x, y, z, false);
-				}
+				mask.setVisibleRange(x, z, 0, heights[x][z]);
 			}
 		}
 		
@@ -20,12 +20,18 @@ public class ChangeFile
 	
 	public ChangeFile(File outFile)
 	{
-		if (outFile.exists())
+		this(outFile, false);
+	}
+	
+	/** Appending carries on the list from an interrupted render, so files it changed are still listed */
+	public ChangeFile(File outFile, final boolean append)
+	{
+		if (outFile.exists() && !append)
 			outFile.delete();
 	
 		try
 		{
-			fileOut = new FileOutputStream(outFile);
+			fileOut = new FileOutputStream(outFile, append);
 			writer = new PrintWriter(fileOut);
 		}
 		catch (Exception e)
@@ -43,6 +49,20 @@ public class ChangeFile
 		}
 	}
 	
+	/** Makes sure every line so far is on disk */
+	public synchronized void flush()
+	{
+		if (writer != null)
+		{
+			writer.flush();
+			try
+			{
+				fileOut.getFD().sync();
+			}
+			catch (Exception e) {}
+		}
+	}
+	
 	public void close()
 	{
 		if (writer != null)
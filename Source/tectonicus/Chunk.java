@@ -22,18 +22,22 @@ import tectonicus.cache.BiomeData;
 import tectonicus.configuration.LightFace;
 import tectonicus.configuration.LightStyle;
 import tectonicus.rasteriser.Rasteriser;
+import tectonicus.rasteriser.Texture;
 import tectonicus.raw.RawChunk;
 import tectonicus.raw.SignEntity;
 import tectonicus.renderer.Camera;
 import tectonicus.renderer.Geometry;
+import tectonicus.renderer.GreedyMesher;
 import tectonicus.renderer.OrthoCamera;
-import tectonicus.texture.TexturePack;
 import tectonicus.util.BoundingBox;
-import tectonicus.world.World;
 import tectonicus.world.filter.BlockFilter;
 
 public class Chunk
 {	
+	/** Bounds are padded past the outermost blocks, as some models and large paintings poke out of their block */
+	private static final int BOUNDS_PADDING_BELOW = 1;
+	private static final int BOUNDS_PADDING_ABOVE = 3;
+	
 	private final ChunkCoord coord;
 	
 	private final BiomeCache biomeCache;
@@ -52,8 +56,17 @@ public class Chunk
 		this.coord = new ChunkCoord(coord);
 		this.biomeCache = biomeCache;
 		
-		Vector3f origin = new Vector3f(coord.x * RawChunk.WIDTH, 0, coord.z * RawChunk.DEPTH);
-		this.bounds = new BoundingBox(origin, RawChunk.WIDTH, RawChunk.HEIGHT, RawChunk.DEPTH);
+		this.bounds = createBounds(coord, 0, RawChunk.HEIGHT-1);
+	}
+	
+	/** Bounding box of a chunk whose blocks lie between minY and maxY inclusive */
+	public static BoundingBox createBounds(ChunkCoord coord, final int minY, final int maxY)
+	{
+		final int bottom = Math.max(0, minY - BOUNDS_PADDING_BELOW);
+		final int top = Math.min(RawChunk.HEIGHT, maxY + 1 + BOUNDS_PADDING_ABOVE);
+		
+		Vector3f origin = new Vector3f(coord.x * RawChunk.WIDTH, bottom, coord.z * RawChunk.DEPTH);
+		return new BoundingBox(origin, RawChunk.WIDTH, top - bottom, RawChunk.DEPTH);
 	}
 	
 	public ChunkCoord getCoord() { return coord; }
@@ -82,6 +95,10 @@ public class Chunk
 		{
 			rawChunk = new RawChunk(in, compression, worldStats);
 			filter.filter(rawChunk);
+			
+			rawChunk.calculateHeights();
+			if (!rawChunk.isEmpty())
+				bounds = createBounds(coord, rawChunk.getMinY(), rawChunk.getMaxY());
 		}
 		
 		if (biomeData == null)
@@ -90,7 +107,15 @@ public class Chunk
 		}
 	}
 	
-	public boolean createGeometry(Rasteriser rasteriser, World world, BlockTypeRegistry registry, BlockMaskFactory maskFactory, TexturePack texturePack)
+	public boolean createGeometry(Rasteriser rasteriser, BlockContext world, BlockTypeRegistry registry, BlockMaskFactory maskFactory, Texture texture)
+	{
+		return createGeometry(rasteriser, world, registry, maskFactory, texture, false);
+	}
+	
+	/** Builds the chunk's geometry. With greedyMeshing the opaque full cubes are built in one pass by a GreedyMesher
+	 *  rather than block by block, with their faces merged where the rasteriser can repeat their textures.
+	 */
+	public boolean createGeometry(Rasteriser rasteriser, BlockContext world, BlockTypeRegistry registry, BlockMaskFactory maskFactory, Texture texture, final boolean greedyMeshing)
 	{
 		if (rawChunk == null)
 			return false;
@@ -99,9 +124,18 @@ public class Chunk
 		
 		BlockMask mask = maskFactory.createMask(coord, rawChunk); 
 		
-		geometry = new Geometry(rasteriser, texturePack.getTexture());
+		geometry = new Geometry(rasteriser, texture);
 		
-		for (int y=0; y<RawChunk.HEIGHT; y++)
+		GreedyMesher mesher = null;
+		if (greedyMeshing)
+		{
+			mesher = new GreedyMesher(rawChunk, world, registry, mask, rasteriser.supportsTextureRepeat());
+			mesher.addGeometry(geometry);
+		}
+		
+		// Layers with nothing visible in them are skipped entirely
+		final int maxY = mask.getMaxVisibleY();
+		for (int y=mask.getMinVisibleY(); y<maxY; y++)
 		{
 			for (int x=0; x<RawChunk.WIDTH; x++)
 			{
@@ -112,6 +146,8 @@ public class Chunk
 						final int blockId = rawChunk.getBlockId(x, y, z);
 						if (blockId == 0)
 							continue;
+						if (mesher != null && mesher.contains(x, y, z))
+							continue;
 						final int data = rawChunk.getBlockData(x, y, z);
 						
 						BlockType type = registry.find(blockId, data);
@@ -0,0 +1,256 @@
+/*
+ * Copyright (c) 2012-2019, John Campbell and other contributors.  All rights reserved.
+ *
+ * This file is part of Tectonicus. It is subject to the license terms in the LICENSE file found in
+ * the top-level directory of this distribution.  The full list of project contributors is contained
+ * in the AUTHORS file found in the same location.
+ *
+ */
+
+package tectonicus;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.zip.DataFormatException;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.Inflater;
+
+/** Decompresses chunk data from region files. Each thread has its own decoder, whose inflater and output buffer
+ *  are reused from chunk to chunk, so loading a chunk doesn't allocate anything in proportion to its size.
+ *  The stream returned is only valid until the same thread decodes another chunk.
+ */
+public class ChunkDecoder
+{
+	public static final int COMPRESSION_TYPE_GZIP = 1;
+	public static final int COMPRESSION_TYPE_DEFLATE = 2;
+	public static final int COMPRESSION_TYPE_NONE = 3;
+	public static final int COMPRESSION_TYPE_LZ4 = 4;
+	
+	// Set on the compression type when the chunk is too big for the region file and is in its own .mcc file
+	public static final int EXTERNAL_FLAG = 0x80;
+	
+	private static final int INITIAL_BUFFER_SIZE = 64 * 1024;
+	
+	// LZ4 data is written as lz4-java block streams, each block with its own header
+	private static final byte[] LZ4_MAGIC = { 'L', 'Z', '4', 'B', 'l', 'o', 'c', 'k' };
+	private static final int LZ4_HEADER_SIZE = LZ4_MAGIC.length + 1 + 4 + 4 + 4;
+	private static final int LZ4_METHOD_RAW = 0x10;
+	private static final int LZ4_METHOD_LZ4 = 0x20;
+	
+	private static final ThreadLocal<ChunkDecoder> decoders = new ThreadLocal<ChunkDecoder>()
+	{
+		@Override
+		protected ChunkDecoder initialValue()
+		{
+			return new ChunkDecoder();
+		}
+	};
+	
+	private final Inflater inflater;
+	
+	private byte[] buffer;
+	
+	public ChunkDecoder()
+	{
+		this.inflater = new Inflater();
+		this.buffer = new byte[INITIAL_BUFFER_SIZE];
+	}
+	
+	/** The calling thread's decoder */
+	public static ChunkDecoder get()
+	{
+		return decoders.get();
+	}
+	
+	/** Returns the uncompressed nbt of a chunk stored with the given compression type */
+	public InputStream decode(byte[] data, final int offset, final int length, final int compressionType) throws IOException
+	{
+		try
+		{
+			switch (compressionType)
+			{
+				case COMPRESSION_TYPE_GZIP:
+					return new ByteArrayInputStream(buffer, 0, gunzip(data, offset, length));
+				case COMPRESSION_TYPE_DEFLATE:
+					return new ByteArrayInputStream(buffer, 0, inflate(data, offset, length));
+				case COMPRESSION_TYPE_NONE:
+					return new ByteArrayInputStream(data, offset, length);
+				case COMPRESSION_TYPE_LZ4:
+					return new ByteArrayInputStream(buffer, 0, decodeLz4(data, offset, length));
+				default:
+					throw new IOException("Unrecognised compression type: "+compressionType);
+			}
+		}
+		catch (DataFormatException | IndexOutOfBoundsException e)
+		{
+			throw new IOException("Corrupt chunk data", e);
+		}
+	}
+	
+	private int inflate(byte[] data, final int offset, final int length) throws IOException, DataFormatException
+	{
+		inflater.reset();
+		inflater.setInput(data, offset, length);
+		
+		int size = 0;
+		while (!inflater.finished())
+		{
+			if (size == buffer.length)
+				buffer = Arrays.copyOf(buffer, buffer.length * 2);
+			
+			final int numInflated = inflater.inflate(buffer, size, buffer.length - size);
+			if (numInflated == 0 && (inflater.needsInput() || inflater.needsDictionary()))
+				throw new IOException("Chunk data ends early");
+			
+			size += numInflated;
+		}
+		return size;
+	}
+	
+	/** Gzip isn't used by the game for chunks, so this just goes through GZIPInputStream */
+	private int gunzip(byte[] data, final int offset, final int length) throws IOException
+	{
+		try (GZIPInputStream in = new GZIPInputStream(new ByteArrayInputStream(data, offset, length)))
+		{
+			int size = 0;
+			int numRead;
+			do
+			{
+				if (size == buffer.length)
+					buffer = Arrays.copyOf(buffer, buffer.length * 2);
+				
+				numRead = in.read(buffer, size, buffer.length - size);
+				if (numRead > 0)
+					size += numRead;
+			}
+			while (numRead != -1);
+			
+			return size;
+		}
+	}
+	
+	/** Decodes an lz4-java block stream. Block checksums aren't checked, since region data has no checksum for the other types either */
+	private int decodeLz4(byte[] data, final int offset, final int length) throws IOException
+	{
+		final int end = offset + length;
+		
+		int pos = offset;
+		int size = 0;
+		while (pos < end)
+		{
+			for (int i=0; i<LZ4_MAGIC.length; i++)
+			{
+				if (data[pos + i] != LZ4_MAGIC[i])
+					throw new IOException("Missing LZ4 block header");
+			}
+			
+			final int method = data[pos + LZ4_MAGIC.length] & 0xF0;
+			final int compressedLength = readIntLE(data, pos + LZ4_MAGIC.length + 1);
+			final int decompressedLength = readIntLE(data, pos + LZ4_MAGIC.length + 5);
+			pos += LZ4_HEADER_SIZE;
+			
+			// An empty block marks the end of the stream
+			if (decompressedLength == 0)
+				break;
+			
+			if (compressedLength < 0 || decompressedLength < 0 || pos + compressedLength > end)
+				throw new IOException("Corrupt LZ4 block header");
+			
+			if (size + decompressedLength > buffer.length)
+				buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, size + decompressedLength));
+			
+			if (method == LZ4_METHOD_RAW)
+				System.arraycopy(data, pos, buffer, size, decompressedLength);
+			else if (method == LZ4_METHOD_LZ4)
+				decompressLz4Block(data, pos, compressedLength, buffer, size, decompressedLength);
+			else
+				throw new IOException("Unrecognised LZ4 block method: "+method);
+			
+			pos += compressedLength;
+			size += decompressedLength;
+		}
+		return size;
+	}
+	
+	/** Decodes a single raw LZ4 block of sequences, each some literal bytes followed by a copy of earlier output */
+	static void decompressLz4Block(byte[] src, final int srcOffset, final int srcLength, byte[] dest, final int destOffset, final int destLength) throws IOException
+	{
+		final int srcEnd = srcOffset + srcLength;
+		final int destEnd = destOffset + destLength;
+		
+		int s = srcOffset;
+		int d = destOffset;
+		while (s < srcEnd)
+		{
+			final int token = src[s++] & 0xFF;
+			
+			int literalLength = token >>> 4;
+			if (literalLength == 15)
+			{
+				int b;
+				do
+				{
+					b = src[s++] & 0xFF;
+					literalLength += b;
+				}
+				while (b == 255);
+			}
+			
+			if (s + literalLength > srcEnd || d + literalLength > destEnd)
+				throw new IOException("Corrupt LZ4 block");
+			
+			System.arraycopy(src, s, dest, d, literalLength);
+			s += literalLength;
+			d += literalLength;
+			
+			// The last sequence is just literals
+			if (s == srcEnd)
+				break;
+			
+			final int matchOffset = (src[s] & 0xFF) | ((src[s + 1] & 0xFF) << 8);
+			s += 2;
+			
+			int matchLength = token & 0x0F;
+			if (matchLength == 15)
+			{
+				int b;
+				do
+				{
+					b = src[s++] & 0xFF;
+					matchLength += b;
+				}
+				while (b == 255);
+			}
+			matchLength += 4;
+			
+			int match = d - matchOffset;
+			if (matchOffset == 0 || match < destOffset || d + matchLength > destEnd)
+				throw new IOException("Corrupt LZ4 block");
+			
+			if (matchOffset >= matchLength)
+			{
+				System.arraycopy(dest, match, dest, d, matchLength);
+				d += matchLength;
+			}
+			else
+			{
+				// Overlapping copies repeat the last few bytes, so have to go a byte at a time
+				for (int i=0; i<matchLength; i++)
+					dest[d++] = dest[match++];
+			}
+		}
+		
+		if (d != destEnd)
+			throw new IOException("LZ4 block decoded to "+(d - destOffset)+" bytes rather than "+destLength);
+	}
+	
+	private static int readIntLE(byte[] bytes, final int position)
+	{
+		return	  (bytes[position] & 0xFF)
+				| ((bytes[position + 1] & 0xFF) << 8)
+				| ((bytes[position + 2] & 0xFF) << 16)
+				| ((bytes[position + 3] & 0xFF) << 24);
+	}
+}
@@ -12,6 +12,9 @@ package tectonicus;
 import java.io.File;
 
 import tectonicus.cache.BiomeCache;
+import tectonicus.cache.ChunkPresenceIndex;
+import tectonicus.raw.RawChunk;
+import tectonicus.util.BoundingBox;
 import tectonicus.world.filter.BlockFilter;
 
 public class ChunkLocator
@@ -19,6 +22,8 @@ public class ChunkLocator
 	private final BiomeCache biomeCache;
 	private final RegionCache regionCache;
 	
+	private ChunkPresenceIndex presenceIndex;
+	
 	public ChunkLocator(File worldDir, BiomeCache biomeCache, RegionCache regionCache)
 	{
 		if (worldDir == null)
@@ -32,8 +37,22 @@ public class ChunkLocator
 		this.regionCache = regionCache;
 	}
 	
+	/** Once set, existence checks are answered from the index rather than by loading regions */
+	public void setPresenceIndex(ChunkPresenceIndex presenceIndex)
+	{
+		this.presenceIndex = presenceIndex;
+	}
+	
+	public ChunkPresenceIndex getPresenceIndex()
+	{
+		return presenceIndex;
+	}
+	
 	public boolean exists(ChunkCoord coord)
 	{
+		if (presenceIndex != null)
+			return presenceIndex.contains(coord);
+		
 		boolean found = false;
 		
 		RegionCoord regionCoord = RegionCoord.fromChunkCoord(coord);
@@ -54,6 +73,15 @@ public class ChunkLocator
 		return found;
 	}
 	
+	/** Bounds of the blocks in a chunk, or null if it doesn't exist. With an index chunks known to be empty are null too */
+	public BoundingBox getBounds(ChunkCoord coord)
+	{
+		if (presenceIndex != null)
+			return presenceIndex.getBounds(coord);
+		
+		return exists(coord) ? Chunk.createBounds(coord, 0, RawChunk.HEIGHT-1) : null;
+	}
+	
 	public Chunk loadChunk(ChunkCoord coord, BlockFilter filter)
 	{
 		Chunk chunk = null;
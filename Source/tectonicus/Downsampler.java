@@ -9,76 +9,298 @@
 
 package tectonicus;
 
+import java.awt.AlphaComposite;
 import java.awt.Color;
 import java.awt.Graphics2D;
 import java.awt.RenderingHints;
 import java.awt.image.BufferedImage;
 import java.io.File;
-import java.util.concurrent.ArrayBlockingQueue;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.Callable;
-import java.util.concurrent.RejectedExecutionHandler;
-import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import javax.imageio.ImageIO;
 
 import tectonicus.cache.swap.HddTileList;
+import tectonicus.cache.swap.HddTileListFactory;
 import tectonicus.configuration.ImageFormat;
 import tectonicus.configuration.Layer;
+import tectonicus.metrics.Metrics;
 
+/** Builds every zoom level of the tile pyramid with one work-stealing pool.
+ *  A meta tile becomes runnable as soon as all of its changed children have been written,
+ *  so zoom levels overlap rather than each one waiting for the level below to finish.
+ *  Each meta tile also knows which of its quadrants changed, so existing png tiles are patched
+ *  rather than rebuilt from all four children.
+ */
 public class Downsampler
 {
-	private ChangeFile changedFileList;
+	/** Quadrant bits are 1 << (x + 2y) for a child's position within its parent */
+	public static final int ALL_QUADRANTS = 0xF;
+	
+	public interface LevelListener
+	{
+		/** Called once every tile of the level has been written. Levels finish in order, nearest the base first */
+		public void onLevelComplete(final int level);
+	}
 	
-	private ThreadPoolExecutor executor;
+	private final ChangeFile changedFileList;
+	
+	private final ForkJoinPool pool;
+	
+	// Per level, tiles whose current image didn't come from downsampling and so can't be patched
+	private final Map<Integer, Set<TileCoord>> fullRebuilds;
+	
+	private int numSkippedLevels;
+	private LevelListener levelListener;
 	
 	public Downsampler(final int numThreads, ChangeFile changedFileList)
 	{
 		this.changedFileList = changedFileList;
 		
-		// 1 thread  = 1m 52s
-		// 2 threads = 1m 9s
-		// 3 threads = 1m 9s 
+		this.pool = new ForkJoinPool(numThreads);
 		
-		executor = new ThreadPoolExecutor(numThreads, numThreads, 0, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<Runnable>(64), new ResubmitHandler());
+		this.fullRebuilds = new HashMap<Integer, Set<TileCoord>>();
+	}
+	
+	/** Makes these tiles be rebuilt from all four children rather than patched, eg. because they were drawn some other way.
+	 *  level counts up from the level just above the base tiles, same as the level lists passed to downsample
+	 */
+	public void rebuildInFull(final int level, Collection<TileCoord> tiles)
+	{
+		Set<TileCoord> levelTiles = fullRebuilds.get(level);
+		if (levelTiles == null)
+		{
+			levelTiles = new HashSet<TileCoord>();
+			fullRebuilds.put(level, levelTiles);
+		}
+		levelTiles.addAll(tiles);
 	}
 	
-	public void downsample(File inputDir, File outputDir, HddTileList tiles, Layer layer, final int tileWidth, final int tileHeight, ProgressListener progressListener)
+	/** Skips the first numLevels levels, eg. because an interrupted render had already finished them */
+	public void skipLevels(final int numLevels)
 	{
-		int count = 0;
+		this.numSkippedLevels = numLevels;
+	}
+	
+	public void setLevelListener(LevelListener listener)
+	{
+		this.levelListener = listener;
+	}
+	
+	/** Finds the tiles for each of the numLevels zoom levels above baseTiles, nearest the base first */
+	public static List<HddTileList> findZoomTiles(HddTileList baseTiles, final int numLevels, HddTileListFactory factory)
+	{
+		List<HddTileList> levels = new ArrayList<HddTileList>();
+		
+		HddTileList prevTiles = baseTiles;
+		for (int i=0; i<numLevels; i++)
+		{
+			HddTileList nextTiles = factory.createList();
+			for (TileCoord c : prevTiles)
+				nextTiles.add( getParent(c) );
+			
+			levels.add(nextTiles);
+			prevTiles = nextTiles;
+		}
 		
-		Shared state = new Shared(inputDir, outputDir, layer.getImageFormat(), layer.getImageCompressionLevel(), layer.getBackgroundColorRGB(), tileWidth, tileHeight);
+		return levels;
+	}
+	
+	/** Downsamples every level of the pyramid. levelDirs and levelTiles hold one entry per zoom level above
+	 *  the base tiles, nearest the base first, and baseDir must already contain the rendered base tiles.
+	 */
+	public void downsample(File baseDir, HddTileList baseTiles, File[] levelDirs, List<HddTileList> levelTiles, Layer layer, final int tileWidth, final int tileHeight, ProgressListener progressListener)
+	{
+		if (levelDirs.length != levelTiles.size())
+			throw new IllegalArgumentException("Need one tile list per level dir");
+		
+		final int numLevels = levelDirs.length;
+		final int firstLevel = Math.min(numSkippedLevels, numLevels);
+		
+		Shared[] states = new Shared[numLevels];
+		int[] levelSizes = new int[numLevels];
+		int total = 0;
+		for (int i=0; i<numLevels; i++)
+		{
+			File inputDir = i == 0 ? baseDir : levelDirs[i-1];
+			states[i] = new Shared(inputDir, levelDirs[i], layer.getImageFormat(), layer.getImageCompressionLevel(), layer.getBackgroundColorRGB(), tileWidth, tileHeight);
+			if (i >= firstLevel)
+			{
+				levelSizes[i] = levelTiles.get(i).size();
+				total += levelSizes[i];
+			}
+		}
 		
-		for (TileCoord tile : tiles)
+		// Record which of each meta tile's children are being rebuilt, both to know which quadrants to redraw
+		// and how many children to wait on. The first level's children are base tiles which have all been
+		// rendered already, so only the levels above that actually wait.
+		List<Map<TileCoord, DirtyTile>> dirtyTiles = new ArrayList<Map<TileCoord, DirtyTile>>();
+		for (int i=0; i<numLevels; i++)
 		{
-			DownsampleTask task = new DownsampleTask(tile, state, changedFileList);
-			executor.submit(task);
+			Map<TileCoord, DirtyTile> dirty = new HashMap<TileCoord, DirtyTile>();
+			for (TileCoord child : i == 0 ? baseTiles : levelTiles.get(i-1))
+			{
+				TileCoord parent = getParent(child);
+				
+				DirtyTile parentTile = dirty.get(parent);
+				if (parentTile == null)
+				{
+					parentTile = new DirtyTile();
+					dirty.put(parent, parentTile);
+				}
+				parentTile.quadrants |= getQuadrant(child);
+				parentTile.pendingChildren.incrementAndGet();
+			}
 			
-			count++;
-			if (count % 20 == 0)
+			Set<TileCoord> rebuilds = fullRebuilds.get(i);
+			if (rebuilds != null)
 			{
-				final int percentage = (int)Math.floor((count / (float)tiles.size()) * 100);
-				System.out.print(percentage+"%\r"); //prints a carraige return after line
+				for (TileCoord tile : rebuilds)
+				{
+					DirtyTile dirtyTile = dirty.get(tile);
+					if (dirtyTile != null)
+						dirtyTile.quadrants = ALL_QUADRANTS;
+				}
 			}
-			progressListener.onTaskUpdate(count, tiles.size());
+			dirtyTiles.add(dirty);
 		}
 		
-		System.out.println("100%");
+		Pyramid pyramid = new Pyramid(states, dirtyTiles, changedFileList, levelSizes, levelListener, total);
+		
+		// Tiles on the first level to build have all their children already, so can all start straight away
+		if (firstLevel < numLevels)
+		{
+			for (TileCoord tile : levelTiles.get(firstLevel))
+				pool.execute(new PyramidTask(pyramid, firstLevel, tile));
+		}
 		
 		try
 		{
-			System.out.println("Finalizing downsampling...");
-			executor.shutdown();
-			executor.awaitTermination(1, TimeUnit.DAYS);
+			while (!pyramid.remaining.await(1, TimeUnit.SECONDS))
+			{
+				final int done = total - (int)pyramid.remaining.getCount();
+				
+				Metrics.downsampleQueueDepth.set(pool.getQueuedTaskCount() + pool.getQueuedSubmissionCount());
+				progressListener.onTaskUpdate(done, total);
+				
+				final int percentage = (int)Math.floor((done / (float)total) * 100);
+				System.out.print(percentage+"%\r"); //prints a carraige return after line
+			}
 		}
 		catch (InterruptedException e)
 		{
 			e.printStackTrace();
 		}
 		
+		pool.shutdown();
+		
+		progressListener.onTaskUpdate(total, total);
+		Metrics.downsampleQueueDepth.set(0);
+		
+		System.out.println("100%");
 		System.out.println("Downsampling complete");
 	}
 	
+	static TileCoord getParent(TileCoord child)
+	{
+		final int x = (int)Math.floor(child.x / 2.0f);
+		final int y = (int)Math.floor(child.y / 2.0f);
+		return new TileCoord(x, y);
+	}
+	
+	static int getQuadrant(TileCoord child)
+	{
+		return 1 << ((child.x & 1) + 2 * (child.y & 1));
+	}
+	
+	private static class DirtyTile
+	{
+		public final AtomicInteger pendingChildren = new AtomicInteger();
+		public int quadrants;
+	}
+	
+	/** Shared state for a whole pyramid build. The dirty maps are only read once tasks start running */
+	private static class Pyramid
+	{
+		public final Shared[] states;
+		public final List<Map<TileCoord, DirtyTile>> dirtyTiles;
+		public final ChangeFile changedFileList;
+		public final AtomicInteger[] levelRemaining;
+		public final LevelListener levelListener;
+		public final CountDownLatch remaining;
+		
+		public Pyramid(Shared[] states, List<Map<TileCoord, DirtyTile>> dirtyTiles, ChangeFile changedFileList, int[] levelSizes, LevelListener levelListener, final int total)
+		{
+			this.states = states;
+			this.dirtyTiles = dirtyTiles;
+			this.changedFileList = changedFileList;
+			this.levelListener = levelListener;
+			this.remaining = new CountDownLatch(total);
+			
+			this.levelRemaining = new AtomicInteger[levelSizes.length];
+			for (int i=0; i<levelSizes.length; i++)
+				levelRemaining[i] = new AtomicInteger(levelSizes[i]);
+		}
+	}
+	
+	private static class PyramidTask extends RecursiveAction
+	{
+		private static final long serialVersionUID = 1L;
+		
+		private final Pyramid pyramid;
+		private final int level;
+		private final TileCoord tile;
+		
+		public PyramidTask(Pyramid pyramid, final int level, TileCoord tile)
+		{
+			this.pyramid = pyramid;
+			this.level = level;
+			this.tile = tile;
+		}
+		
+		@Override
+		protected void compute()
+		{
+			try
+			{
+				final int quadrants = pyramid.dirtyTiles.get(level).get(tile).quadrants;
+				new DownsampleTask(tile, pyramid.states[level], pyramid.changedFileList, quadrants).call();
+			}
+			catch (Exception e)
+			{
+				e.printStackTrace();
+			}
+			finally
+			{
+				if (pyramid.levelRemaining[level].decrementAndGet() == 0 && pyramid.levelListener != null)
+					pyramid.levelListener.onLevelComplete(level);
+				
+				pyramid.remaining.countDown();
+			}
+			
+			// Last child to finish releases the parent. Forking keeps it on this worker's deque, so it
+			// tends to run next while its inputs are still in the file cache
+			final int parentLevel = level + 1;
+			if (parentLevel < pyramid.states.length)
+			{
+				TileCoord parent = getParent(tile);
+				if (pyramid.dirtyTiles.get(parentLevel).get(parent).pendingChildren.decrementAndGet() == 0)
+					new PyramidTask(pyramid, parentLevel, parent).fork();
+			}
+		}
+	}
+	
 	private static BufferedImage getTile(File file)
 	{
 		try
@@ -93,7 +315,7 @@ public class Downsampler
 		return null;
 	}
 	
-	private static class Shared
+	static class Shared
 	{
 		public final File inputDir;
 		public final File outputDir;
@@ -119,29 +341,57 @@ public class Downsampler
 		}
 	}
 	
-	private static class DownsampleTask implements Callable<Void>
+	static class DownsampleTask implements Callable<Void>
 	{
 		private final TileCoord tile;
 		private final Shared state;
 		private final ChangeFile changedFileList;
+		private final int quadrants;
 		
 		public DownsampleTask(TileCoord tile, Shared state, ChangeFile changedFileList)
+		{
+			this(tile, state, changedFileList, ALL_QUADRANTS);
+		}
+		
+		public DownsampleTask(TileCoord tile, Shared state, ChangeFile changedFileList, final int quadrants)
 		{
 			this.tile = tile;
 			this.state = state;
 			this.changedFileList = changedFileList;
+			this.quadrants = quadrants;
 		}
 		
 		@Override
 		public Void call() throws Exception
 		{
-			// Find the four input files
-			BufferedImage in00 = getTile( TileRenderer.getImageFile(state.inputDir, tile.x * 2, tile.y * 2, state.imageFormat) );
-			BufferedImage in10 = getTile( TileRenderer.getImageFile(state.inputDir, tile.x * 2 + 1, tile.y * 2, state.imageFormat) );
-			BufferedImage in01 = getTile( TileRenderer.getImageFile(state.inputDir, tile.x * 2, tile.y * 2 + 1, state.imageFormat) );
-			BufferedImage in11 = getTile( TileRenderer.getImageFile(state.inputDir, tile.x * 2 + 1, tile.y * 2 + 1, state.imageFormat) );
+			final long startNanos = System.nanoTime();
+			
+			File outputFile = TileRenderer.getImageFile(state.outputDir, tile.x, tile.y, state.imageFormat);
+			
+			// An existing png can be patched by only redrawing the quadrants that changed. Lossy formats would
+			// lose a little more quality each time, so they're always rebuilt from all four children
+			BufferedImage existing = null;
+			if (quadrants != ALL_QUADRANTS && state.imageFormat.isPng())
+			{
+				existing = getTile(outputFile);
+				if (existing != null && (existing.getWidth() != state.tileWidth || existing.getHeight() != state.tileHeight))
+					existing = null;
+			}
+			final int toDraw = existing != null ? quadrants : ALL_QUADRANTS;
 			
-			if (in00 == null && in10 == null && in01 == null && in11 == null)
+			// Find the input files, in quadrant order
+			BufferedImage[] inputs = new BufferedImage[4];
+			boolean anyInputs = false;
+			for (int i=0; i<4; i++)
+			{
+				if ((toDraw & (1 << i)) == 0)
+					continue;
+				
+				inputs[i] = getTile( TileRenderer.getImageFile(state.inputDir, tile.x * 2 + (i & 1), tile.y * 2 + (i >> 1), state.imageFormat) );
+				anyInputs |= inputs[i] != null;
+			}
+			
+			if (existing == null && !anyInputs)
 				return null;
 			
 			Log.logDebug("\tDownsampling to create meta tile at "+tile.x+","+tile.y);
@@ -157,6 +407,9 @@ public class Downsampler
 				g.fillRect(0, 0, state.tileWidth, state.tileHeight);
 			}
 			
+			if (existing != null)
+				g.drawImage(existing, 0, 0, null);
+			
 			g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BICUBIC);
 			g.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
 			g.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
@@ -164,22 +417,42 @@ public class Downsampler
 			final int halfWidth = state.tileWidth / 2;
 			final int halfHeight = state.tileHeight / 2;
 			
-			if (in00 != null)
-				g.drawImage(in00, 0, 0, halfWidth, halfHeight, null);
-			if (in10 != null)
-				g.drawImage(in10, halfWidth, 0, halfWidth, halfHeight, null);
-			if (in01 != null)
-				g.drawImage(in01, 0, halfHeight, halfWidth, halfHeight, null);
-			if (in11 != null)
-				g.drawImage(in11, halfWidth, halfHeight, halfWidth, halfHeight, null);
+			for (int i=0; i<4; i++)
+			{
+				if ((toDraw & (1 << i)) == 0)
+					continue;
+				
+				final int x = (i & 1) * halfWidth;
+				final int y = (i >> 1) * halfHeight;
+				
+				// Wipe out what was there before, in case the child has gone or has transparent areas
+				if (existing != null)
+				{
+					if (hasAlpha)
+					{
+						g.setComposite(AlphaComposite.Clear);
+						g.fillRect(x, y, halfWidth, halfHeight);
+						g.setComposite(AlphaComposite.SrcOver);
+					}
+					else
+					{
+						g.setColor(state.backgroundColor);
+						g.fillRect(x, y, halfWidth, halfHeight);
+					}
+				}
+				
+				if (inputs[i] != null)
+					g.drawImage(inputs[i], x, y, halfWidth, halfHeight, null);
+			}
 			
 			try
 			{
-				File outputFile = TileRenderer.getImageFile(state.outputDir, tile.x, tile.y, state.imageFormat);
-				
 				Screenshot.write(outputFile, outImg, state.imageFormat, state.imageCompressionLevel);
 				
 				changedFileList.writeLine( outputFile.getAbsolutePath() );
+				
+				Metrics.tilesDownsampled.inc();
+				Metrics.downsampleTime.observeSince(startNanos);
 			}
 			catch (Exception e)
 			{
@@ -189,20 +462,4 @@ public class Downsampler
 			return null;
 		}
 	}
-	
-	private static class ResubmitHandler implements RejectedExecutionHandler
-	{
-		@Override
-		public void rejectedExecution(Runnable r, ThreadPoolExecutor executor)
-		{
-			try
-			{
-				executor.getQueue().put(r);
-			}
-			catch (Exception e)
-			{
-				e.printStackTrace();
-			}
-		}
-	}
 }
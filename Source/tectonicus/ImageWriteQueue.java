@@ -18,6 +18,7 @@ import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 
 import tectonicus.configuration.ImageFormat;
+import tectonicus.metrics.Metrics;
 
 public class ImageWriteQueue
 {
@@ -30,8 +31,16 @@ public class ImageWriteQueue
 	
 	public void write(File outputFile, BufferedImage img, ImageFormat imageFormat, final float compressionLevel)
 	{
-		WriteTask task = new WriteTask(outputFile, img, imageFormat, compressionLevel);
+		write(outputFile, img, imageFormat, compressionLevel, null);
+	}
+	
+	/** onWritten (if not null) is run on the writing thread once the image is on disk */
+	public void write(File outputFile, BufferedImage img, ImageFormat imageFormat, final float compressionLevel, Runnable onWritten)
+	{
+		WriteTask task = new WriteTask(outputFile, img, imageFormat, compressionLevel, onWritten);
 		executor.submit(task);
+		
+		Metrics.imageWriteQueueDepth.set(executor.getQueue().size());
 	}
 	
 	public void waitUntilFinished()
@@ -45,6 +54,8 @@ public class ImageWriteQueue
 		{
 			e.printStackTrace();
 		}
+		
+		Metrics.imageWriteQueueDepth.set(0);
 	}
 	
 	private static class WriteTask implements Callable<Void>
@@ -53,19 +64,23 @@ public class ImageWriteQueue
 		private final BufferedImage img;
 		private final ImageFormat imageFormat;
 		private final float compressionLevel;
+		private final Runnable onWritten;
 		
-		public WriteTask(File f, BufferedImage i, ImageFormat format, float compression)
+		public WriteTask(File f, BufferedImage i, ImageFormat format, float compression, Runnable onWritten)
 		{
 			this.outputFile = f;
 			this.img = i;
 			this.imageFormat = format;
 			this.compressionLevel = compression;
+			this.onWritten = onWritten;
 		}
 		
 		@Override
 		public Void call() throws Exception
 		{
 			Screenshot.write(outputFile, img, imageFormat, compressionLevel);
+			if (onWritten != null)
+				onWritten.run();
 			return null;
 		}
 	}
@@ -9,77 +9,58 @@
 
 package tectonicus;
 
+import java.io.BufferedWriter;
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.OutputStream;
-import java.io.PrintWriter;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
 import java.util.Map;
 
+import com.google.gson.stream.JsonWriter;
+
+/** Writes a js array of objects, compactly. Values are written out verbatim so must already be valid js */
 public class JsArrayWriter
 {
-	private OutputStream out;
-	private PrintWriter writer;
-	
-	private boolean hasWritenEntry;
+	private Writer writer;
+	private JsonWriter jsonWriter;
 	
 	public JsArrayWriter(File file, String arrayName) throws FileNotFoundException, IOException
 	{
 		if (file.exists())
 			file.delete();
 		
-		out = new FileOutputStream(file);
-		writer = new PrintWriter(out);
+		writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8));
+		writer.write("var "+arrayName+"=");
 		
-		writer.println("var "+arrayName+"=[");
+		jsonWriter = new JsonWriter(writer);
+		jsonWriter.beginArray();
 	}
 	
-	public void write(Map<String, String> vars)
+	public void write(Map<String, String> vars) throws IOException
 	{
-		if (hasWritenEntry)
-			writer.println(",");
-		writer.println("\t{");
-		
-		boolean hasWrittenLine = false;
-		
-		for (String name : vars.keySet())
-		{
-			String value = vars.get(name);
-			
-			if (hasWrittenLine)
-				writer.println(",");
-			
-			writer.print("\t\t");
-			writer.print(name);
-			writer.print(": ");
-			writer.print(value);
-			
-			
-			// ..
-			
-			hasWrittenLine = true;
-		}
-		
-		writer.println();
-		
-		writer.print("\t}");
-		hasWritenEntry = true;
+		jsonWriter.beginObject();
+		for (Map.Entry<String, String> e : vars.entrySet())
+			jsonWriter.name(e.getKey()).jsonValue(e.getValue());
+		jsonWriter.endObject();
 	}
 	
 	public void close()
 	{
-		writer.println();
-		writer.println("];");
-		
 		try
 		{
-			if (writer != null)
-				writer.close();
-		
-			if (out != null)
-				out.close();
+			jsonWriter.endArray();
+			jsonWriter.flush();
+			
+			writer.write(";");
+			writer.write(System.lineSeparator());
+			writer.close();
+		}
+		catch (IOException e)
+		{
+			e.printStackTrace();
 		}
-		catch (IOException e) {}
 	}
 }
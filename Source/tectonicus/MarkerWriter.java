@@ -0,0 +1,340 @@
+/*
+ * Copyright (c) 2012-2019, John Campbell and other contributors.  All rights reserved.
+ *
+ * This file is part of Tectonicus. It is subject to the license terms in the LICENSE file found in
+ * the top-level directory of this distribution.  The full list of project contributors is contained
+ * in the AUTHORS file found in the same location.
+ *
+ */
+
+package tectonicus;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPOutputStream;
+
+import com.google.gson.stream.JsonWriter;
+
+import tectonicus.util.FileUtils;
+
+/** Streams map markers (signs, portals, chests) out as compact json, one entry at a time.
+ *
+ *  Everything goes into a single js array as before, and optionally is also split by world position into one
+ *  json file per REGION_SIZE square so a viewer can fetch only the markers in view. An index.json in the region
+ *  dir lists the regions that have any markers. With compress set each file also gets a gzipped .gz copy
+ *  alongside it, for web servers that can serve pre-compressed files.
+ *
+ *  Each marker is written straight through to the js file and its region's file, so memory use doesn't grow
+ *  with the number of markers. Region files are built in a separate dir and swapped in when the writer is
+ *  closed, and only MAX_OPEN_REGIONS of them are kept open at a time.
+ */
+public class MarkerWriter implements Closeable
+{
+	public static final int REGION_SIZE = 512;
+	
+	static final int MAX_OPEN_REGIONS = 32;
+	
+	private final File file;
+	private final Writer writer;
+	
+	private final File regionDir;
+	private final File partialRegionDir;
+	private final boolean compress;
+	
+	private final Map<Long, RegionFile> regions;
+	/** Region files with an open writer, least recently used first */
+	private final LinkedHashMap<Long, RegionFile> openRegions;
+	
+	private final TeeWriter entryOut;
+	private JsonWriter entryWriter;
+	
+	private int numMarkers;
+	
+	/** regionDir may be null to only write the single js file */
+	public MarkerWriter(File file, String arrayName, File regionDir, final boolean compress) throws IOException
+	{
+		this.file = file;
+		this.regionDir = regionDir;
+		this.compress = compress;
+		
+		this.regions = new HashMap<Long, RegionFile>();
+		this.openRegions = new LinkedHashMap<Long, RegionFile>(16, 0.75f, true);
+		
+		Files.deleteIfExists(file.toPath());
+		Files.deleteIfExists(getGzipFile(file).toPath());
+		
+		if (regionDir != null)
+		{
+			partialRegionDir = new File(regionDir.getPath()+".partial");
+			FileUtils.deleteDirectory(partialRegionDir);
+			FileUtils.ensureExists(partialRegionDir);
+		}
+		else
+		{
+			partialRegionDir = null;
+		}
+		
+		writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8));
+		writer.write("var "+arrayName+"=[");
+		
+		entryOut = new TeeWriter(writer);
+	}
+	
+	/** Starts a marker at the given world position, with its worldPos already written. Add any other fields
+	 *  to the returned writer then call endMarker
+	 */
+	public JsonWriter beginMarker(final float worldX, final float worldY, final float worldZ) throws IOException
+	{
+		if (entryWriter != null)
+			throw new IllegalStateException("Previous marker not ended");
+		
+		if (numMarkers > 0)
+			writer.write(',');
+		
+		entryOut.region = null;
+		if (regionDir != null)
+		{
+			final int regionX = (int)Math.floor(worldX / REGION_SIZE);
+			final int regionZ = (int)Math.floor(worldZ / REGION_SIZE);
+			final long key = ((long)regionX << 32) | (regionZ & 0xFFFFFFFFL);
+			
+			RegionFile region = regions.get(key);
+			if (region == null)
+			{
+				region = new RegionFile(regionX, regionZ, partialRegionDir);
+				regions.put(key, region);
+			}
+			
+			Writer regionWriter = openRegion(key, region);
+			regionWriter.write(region.count == 0 ? '[' : ',');
+			region.count++;
+			
+			entryOut.region = regionWriter;
+		}
+		
+		entryWriter = new JsonWriter(entryOut);
+		
+		entryWriter.beginObject();
+		entryWriter.name("worldPos").beginObject();
+		entryWriter.name("x").value(worldX);
+		entryWriter.name("y").value(worldY);
+		entryWriter.name("z").value(worldZ);
+		entryWriter.endObject();
+		
+		return entryWriter;
+	}
+	
+	public void endMarker() throws IOException
+	{
+		entryWriter.endObject();
+		entryWriter = null;
+		
+		numMarkers++;
+	}
+	
+	public int numMarkers()
+	{
+		return numMarkers;
+	}
+	
+	/** The region's writer, opening it again if it was closed to make room for others */
+	private Writer openRegion(final long key, RegionFile region) throws IOException
+	{
+		if (region.writer == null)
+		{
+			if (openRegions.size() >= MAX_OPEN_REGIONS)
+			{
+				Iterator<RegionFile> eldest = openRegions.values().iterator();
+				eldest.next().closeWriter();
+				eldest.remove();
+			}
+			
+			region.writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(region.file, true), StandardCharsets.UTF_8));
+		}
+		
+		openRegions.put(key, region);
+		return region.writer;
+	}
+	
+	@Override
+	public void close() throws IOException
+	{
+		try
+		{
+			writer.write("];");
+			writer.write(System.lineSeparator());
+		}
+		finally
+		{
+			writer.close();
+			
+			for (RegionFile region : openRegions.values())
+				region.closeWriter();
+			openRegions.clear();
+		}
+		
+		if (compress)
+			writeGzip(file);
+		
+		if (regionDir != null)
+			writeRegions();
+	}
+	
+	private void writeRegions() throws IOException
+	{
+		List<RegionFile> sorted = new ArrayList<RegionFile>(regions.values());
+		Collections.sort(sorted, new Comparator<RegionFile>()
+		{
+			@Override
+			public int compare(RegionFile a, RegionFile b)
+			{
+				if (a.x != b.x)
+					return Integer.compare(a.x, b.x);
+				return Integer.compare(a.z, b.z);
+			}
+		});
+		
+		for (RegionFile region : sorted)
+		{
+			try (Writer out = new OutputStreamWriter(new FileOutputStream(region.file, true), StandardCharsets.UTF_8))
+			{
+				out.write(']');
+			}
+			
+			if (compress)
+				writeGzip(region.file);
+		}
+		
+		File indexFile = new File(partialRegionDir, "index.json");
+		try (JsonWriter index = new JsonWriter(new BufferedWriter(new OutputStreamWriter(new FileOutputStream(indexFile), StandardCharsets.UTF_8))))
+		{
+			index.beginObject();
+			index.name("regionSize").value(REGION_SIZE);
+			index.name("count").value(numMarkers);
+			index.name("regions").beginArray();
+			for (RegionFile region : sorted)
+			{
+				index.beginObject();
+				index.name("x").value(region.x);
+				index.name("z").value(region.z);
+				index.name("count").value(region.count);
+				index.name("file").value(region.file.getName());
+				index.endObject();
+			}
+			index.endArray();
+			index.endObject();
+		}
+		
+		if (compress)
+			writeGzip(indexFile);
+		
+		// Swap in the new regions, clearing out any from the last render which may not have any markers now
+		FileUtils.deleteDirectory(regionDir);
+		Files.move(partialRegionDir.toPath(), regionDir.toPath());
+	}
+	
+	private static void writeGzip(File file) throws IOException
+	{
+		try (InputStream in = new FileInputStream(file);
+			OutputStream out = new GZIPOutputStream(new FileOutputStream(getGzipFile(file)), 64 * 1024) { { def.setLevel(Deflater.BEST_COMPRESSION); } })
+		{
+			byte[] buffer = new byte[64 * 1024];
+			int read;
+			while ((read = in.read(buffer)) != -1)
+				out.write(buffer, 0, read);
+		}
+	}
+	
+	private static File getGzipFile(File file)
+	{
+		return new File(file.getPath()+".gz");
+	}
+	
+	private static class RegionFile
+	{
+		public final int x;
+		public final int z;
+		public final File file;
+		
+		public Writer writer;
+		public int count;
+		
+		public RegionFile(final int x, final int z, File dir)
+		{
+			this.x = x;
+			this.z = z;
+			this.file = new File(dir, "r."+x+"."+z+".json");
+		}
+		
+		public void closeWriter() throws IOException
+		{
+			if (writer != null)
+			{
+				writer.close();
+				writer = null;
+			}
+		}
+	}
+	
+	/** Sends a marker's json to the js file and to its region's file at the same time */
+	private static class TeeWriter extends Writer
+	{
+		private final Writer main;
+		public Writer region;
+		
+		public TeeWriter(Writer main)
+		{
+			this.main = main;
+		}
+		
+		@Override
+		public void write(char[] buffer, final int offset, final int length) throws IOException
+		{
+			main.write(buffer, offset, length);
+			if (region != null)
+				region.write(buffer, offset, length);
+		}
+		
+		@Override
+		public void write(String str, final int offset, final int length) throws IOException
+		{
+			main.write(str, offset, length);
+			if (region != null)
+				region.write(str, offset, length);
+		}
+		
+		@Override
+		public void write(final int c) throws IOException
+		{
+			main.write(c);
+			if (region != null)
+				region.write(c);
+		}
+		
+		// The underlying writers are buffered, and are flushed when the MarkerWriter is closed
+		@Override
+		public void flush() {}
+		
+		@Override
+		public void close() {}
+	}
+}
@@ -9,6 +9,8 @@
 
 package tectonicus;
 
+import tectonicus.metrics.Metrics;
+
 public class MemoryMonitor
 {
 	private Thread memoryPollThread;
@@ -37,14 +39,23 @@ public class MemoryMonitor
 		@Override
 		public void run()
 		{
-			final long usedMemBytes = Runtime.getRuntime().totalMemory() - Runtime.getRuntime().freeMemory();
-			updateMaxMemory(usedMemBytes);
-			
-			try
+			while (true)
 			{
-				Thread.sleep(1000);
+				final long usedMemBytes = Runtime.getRuntime().totalMemory() - Runtime.getRuntime().freeMemory();
+				updateMaxMemory(usedMemBytes);
+				
+				Metrics.heapUsed.set(usedMemBytes);
+				Metrics.peakHeapUsed.setMax(usedMemBytes);
+				
+				try
+				{
+					Thread.sleep(1000);
+				}
+				catch (InterruptedException e)
+				{
+					return;
+				}
 			}
-			catch (InterruptedException e) {}
 		}
 	}
 }
@@ -163,9 +163,10 @@ public class Minecraft
 		
 		try
 		{
-			ZipStack zips = new ZipStack(minecraftJar, null, null);
-			
-			return zips.hasFile("terrain.png") || zips.hasFile("textures/blocks/activatorRail.png") || zips.hasFile("assets/minecraft/textures/blocks/rail_activator.png");
+			try (ZipStack zips = new ZipStack(minecraftJar, null, null))
+			{
+				return zips.hasFile("terrain.png") || zips.hasFile("textures/blocks/activatorRail.png") || zips.hasFile("assets/minecraft/textures/blocks/rail_activator.png");
+			}
 		}
 		catch (Exception e)
 		{
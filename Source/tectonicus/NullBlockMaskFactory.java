@@ -17,8 +17,8 @@ public class NullBlockMaskFactory implements BlockMaskFactory
 	
 	public NullBlockMaskFactory()
 	{
+		// An all visible mask doesn't store anything, so one is shared by every chunk
 		fullMask = new BlockMask();
-		fullMask.setAllVisible();
 	}
 	
 	@Override
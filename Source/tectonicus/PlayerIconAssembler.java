@@ -17,6 +17,7 @@ import java.util.concurrent.Callable;
 
 import tectonicus.cache.PlayerSkinCache;
 import tectonicus.raw.Player;
+import tectonicus.util.BoundedExecutor;
 
 public class PlayerIconAssembler
 {	
@@ -26,6 +27,12 @@ public class PlayerIconAssembler
 	{
 		this.skinCache = skinCache;
 	}
+	
+	/** Icons are written on the skin cache's shared player pool */
+	public BoundedExecutor getExecutor()
+	{
+		return skinCache.getExecutor();
+	}
 
 	public void writeDefaultIcon(BufferedImage skin, File file)
 	{
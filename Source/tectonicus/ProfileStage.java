@@ -0,0 +1,193 @@
+/*
+ * Copyright (c) 2012-2019, John Campbell and other contributors.  All rights reserved.
+ *
+ * This file is part of Tectonicus. It is subject to the license terms in the LICENSE file found in
+ * the top-level directory of this distribution.  The full list of project contributors is contained
+ * in the AUTHORS file found in the same location.
+ *
+ */
+
+package tectonicus;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.Arrays;
+
+import com.google.gson.JsonObject;
+
+/** Accumulates timings for a single stage of the render pipeline. Each begin()/end() pair
+ *  is one sample (one region, chunk or tile), and allocations are measured on the calling thread.
+ */
+public class ProfileStage
+{
+	private static final double NANOS_PER_SECOND = 1000000000.0;
+	private static final double NANOS_PER_MILLI = 1000000.0;
+	private static final double BYTES_PER_MB = 1024.0 * 1024.0;
+
+	private final String name;
+	private final String unit;
+
+	private long[] samples;
+	private int numSamples;
+
+	private long totalNanos;
+	private long totalBytes;
+	private long allocatedBytes;
+
+	private long startNanos;
+	private long startAllocated;
+
+	public ProfileStage(String name, String unit)
+	{
+		this.name = name;
+		this.unit = unit;
+
+		this.samples = new long[256];
+	}
+
+	public String getName()
+	{
+		return name;
+	}
+
+	public void reset()
+	{
+		numSamples = 0;
+		totalNanos = 0;
+		totalBytes = 0;
+		allocatedBytes = 0;
+	}
+
+	public void begin()
+	{
+		startAllocated = currentThreadAllocatedBytes();
+		startNanos = System.nanoTime();
+	}
+
+	public void end()
+	{
+		end(0);
+	}
+
+	/** Ends the current sample, recording the number of bytes processed (used for MB/s) */
+	public void end(final long bytesProcessed)
+	{
+		final long elapsed = System.nanoTime() - startNanos;
+		final long endAllocated = currentThreadAllocatedBytes();
+
+		addSample(elapsed, bytesProcessed, (startAllocated >= 0 && endAllocated >= 0) ? endAllocated - startAllocated : 0);
+	}
+
+	public void addSample(final long elapsedNanos, final long bytesProcessed, final long bytesAllocated)
+	{
+		if (numSamples == samples.length)
+			samples = Arrays.copyOf(samples, samples.length * 2);
+
+		samples[numSamples++] = elapsedNanos;
+
+		totalNanos += elapsedNanos;
+		totalBytes += bytesProcessed;
+		allocatedBytes += bytesAllocated;
+	}
+
+	public int numSamples()
+	{
+		return numSamples;
+	}
+
+	public long getTotalNanos()
+	{
+		return totalNanos;
+	}
+
+	public long getTotalBytes()
+	{
+		return totalBytes;
+	}
+
+	public long getAllocatedBytes()
+	{
+		return allocatedBytes;
+	}
+
+	/** Nearest-rank percentile of the sample times, in nanoseconds. 'percent' is in the range [0, 100] */
+	public long percentile(final double percent)
+	{
+		if (numSamples == 0)
+			return 0;
+
+		long[] sorted = Arrays.copyOf(samples, numSamples);
+		Arrays.sort(sorted);
+
+		final int rank = (int)Math.ceil(percent / 100.0 * numSamples);
+		final int index = Math.max(0, Math.min(numSamples - 1, rank - 1));
+		return sorted[index];
+	}
+
+	public double itemsPerSecond()
+	{
+		if (totalNanos == 0)
+			return 0;
+
+		return numSamples / (totalNanos / NANOS_PER_SECOND);
+	}
+
+	public double megabytesPerSecond()
+	{
+		if (totalNanos == 0)
+			return 0;
+
+		return (totalBytes / BYTES_PER_MB) / (totalNanos / NANOS_PER_SECOND);
+	}
+
+	public double allocatedMegabytesPerSecond()
+	{
+		if (totalNanos == 0)
+			return 0;
+
+		return (allocatedBytes / BYTES_PER_MB) / (totalNanos / NANOS_PER_SECOND);
+	}
+
+	public JsonObject toJson()
+	{
+		JsonObject obj = new JsonObject();
+		obj.addProperty("name", name);
+		obj.addProperty("unit", unit);
+		obj.addProperty("samples", numSamples);
+		obj.addProperty("totalMs", totalNanos / NANOS_PER_MILLI);
+		obj.addProperty(unit+"PerSecond", itemsPerSecond());
+		if (totalBytes > 0)
+		{
+			obj.addProperty("bytes", totalBytes);
+			obj.addProperty("mbPerSecond", megabytesPerSecond());
+		}
+
+		obj.addProperty("allocatedBytes", allocatedBytes);
+		obj.addProperty("allocatedBytesPerItem", numSamples > 0 ? allocatedBytes / numSamples : 0);
+		obj.addProperty("allocatedMbPerSecond", allocatedMegabytesPerSecond());
+
+		JsonObject percentiles = new JsonObject();
+		percentiles.addProperty("p50", percentile(50) / NANOS_PER_MILLI);
+		percentiles.addProperty("p90", percentile(90) / NANOS_PER_MILLI);
+		percentiles.addProperty("p99", percentile(99) / NANOS_PER_MILLI);
+		percentiles.addProperty("max", percentile(100) / NANOS_PER_MILLI);
+		obj.add("latencyMs", percentiles);
+
+		return obj;
+	}
+
+	/** Bytes allocated so far by the current thread, or -1 if the jvm can't tell us */
+	public static long currentThreadAllocatedBytes()
+	{
+		ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+		if (bean instanceof com.sun.management.ThreadMXBean)
+		{
+			try
+			{
+				return ((com.sun.management.ThreadMXBean)bean).getThreadAllocatedBytes(Thread.currentThread().getId());
+			}
+			catch (Exception e) {}
+		}
+		return -1;
+	}
+}
@@ -0,0 +1,489 @@
+/*
+ * Copyright (c) 2012-2019, John Campbell and other contributors.  All rights reserved.
+ *
+ * This file is part of Tectonicus. It is subject to the license terms in the LICENSE file found in
+ * the top-level directory of this distribution.  The full list of project contributors is contained
+ * in the AUTHORS file found in the same location.
+ *
+ */
+
+package tectonicus;
+
+import java.awt.Point;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.lwjgl.util.vector.Vector3f;
+
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+
+import tectonicus.cache.BiomeCache;
+import tectonicus.cache.NullBiomeCache;
+import tectonicus.cache.PlayerSkinCache;
+import tectonicus.configuration.Configuration;
+import tectonicus.configuration.Configuration.Dimension;
+import tectonicus.configuration.ImageFormat;
+import tectonicus.configuration.Layer;
+import tectonicus.rasteriser.Rasteriser;
+import tectonicus.rasteriser.RasteriserFactory;
+import tectonicus.rasteriser.RasteriserFactory.DisplayType;
+import tectonicus.raw.RawChunk;
+import tectonicus.renderer.OrthoCamera;
+import tectonicus.util.BoundingBox;
+import tectonicus.util.FileUtils;
+import tectonicus.world.World;
+import tectonicus.world.filter.BlockFilter;
+import tectonicus.world.subset.AllRegionsIterator;
+import tectonicus.world.subset.FullWorldSubsetFactory;
+import tectonicus.world.subset.RegionIterator;
+
+/** Runs each stage of the render pipeline in isolation over a fixed world and writes
+ *  per-stage throughput, allocation and latency percentiles to profile.json in the output dir.
+ *
+ *  Stages that need a rasteriser (geometry, draw, readback) are skipped if one can't be created,
+ *  in which case encode and downsample run on blank tiles instead.
+ */
+public class Profiler
+{
+	private static final int WARMUP_PASSES = 1;
+	private static final int MEASURED_PASSES = 3;
+
+	// Used when the configured world dir isn't a valid world
+	private static final File DEFAULT_WORLD_DIR = new File("Worlds/BlockGallery");
+
+	private final Configuration args;
+	private final MessageDigest hashAlgorithm;
+
+	private final int tileWidth;
+	private final int tileHeight;
+
+	private final ProfileStage regionLoad = new ProfileStage("regionLoad", "regions");
+	private final ProfileStage nbtParse = new ProfileStage("nbtParse", "chunks");
+	private final ProfileStage hashing = new ProfileStage("hashing", "chunks");
+	private final ProfileStage geometryBuild = new ProfileStage("geometryBuild", "chunks");
+	private final ProfileStage draw = new ProfileStage("draw", "tiles");
+	private final ProfileStage readback = new ProfileStage("readback", "tiles");
+	private final ProfileStage encode = new ProfileStage("encode", "tiles");
+	private final ProfileStage downsample = new ProfileStage("downsample", "tiles");
+
+	public Profiler(Configuration args, MessageDigest hashAlgorithm)
+	{
+		this.args = args;
+		this.hashAlgorithm = hashAlgorithm;
+
+		this.tileWidth = args.tileSize();
+		this.tileHeight = args.tileSize();
+	}
+
+	public File run()
+	{
+		final Date startTime = new Date();
+
+		tectonicus.configuration.Map map = args.getMap(0);
+		Layer layer = map.getLayer(0);
+
+		File worldDir = map.getWorldDir();
+		if (!Minecraft.isValidWorldDir(worldDir.toPath()))
+		{
+			System.out.println("No world found at "+worldDir.getAbsolutePath()+", profiling "+DEFAULT_WORLD_DIR.getAbsolutePath()+" instead");
+			worldDir = DEFAULT_WORLD_DIR;
+		}
+		File dimensionDir = getDimensionDir(worldDir, map.getDimension());
+
+		File profileDir = new File(args.outputDir(), "Profile");
+		FileUtils.deleteDirectory(profileDir);
+		File baseDir = new File(profileDir, "Base");
+		File downsampledDir = new File(profileDir, "Downsampled");
+		FileUtils.ensureExists(baseDir);
+		FileUtils.ensureExists(downsampledDir);
+
+		List<File> regionFiles = new ArrayList<File>();
+		RegionIterator it = new AllRegionsIterator(dimensionDir, new RegionCache(dimensionDir).getFormat());
+		while (it.hasNext())
+			regionFiles.add(it.next());
+
+		System.out.println("Profiling "+regionFiles.size()+" regions from "+dimensionDir.getAbsolutePath());
+
+		List<ChunkCoord> chunkCoords = profileChunkStages(regionFiles);
+
+		List<BufferedImage> tileImages = new ArrayList<BufferedImage>();
+		List<TileCoord> tiles = new ArrayList<TileCoord>();
+
+		Rasteriser rasteriser = null;
+		try
+		{
+			rasteriser = RasteriserFactory.createRasteriser(args.getRasteriserType(), DisplayType.Offscreen, 2048, 2048, args.colourDepth(), args.alphaBits(), 24, args.numSamples());
+		}
+		catch (LinkageError e)
+		{
+			// Missing natives on a headless box, carry on with the cpu-only stages
+			e.printStackTrace();
+		}
+		if (rasteriser != null)
+		{
+			PlayerSkinCache skinCache = new PlayerSkinCache(args, hashAlgorithm);
+			try
+			{
+				BiomeCache biomeCache = new NullBiomeCache();
+				World world = new World(rasteriser, worldDir, map.getDimension(), args.minecraftJar(), args.texturePack(), map.getModJars(),
+										biomeCache, hashAlgorithm, args.getSinglePlayerName(), new FullWorldSubsetFactory(), skinCache, map.getSignFilter());
+				world.setUseGreedyMeshing(args.useGreedyMeshing());
+				TileRenderer.setupWorldForLayer(layer, world);
+
+				profileGeometry(rasteriser, world, regionFiles);
+
+				OrthoCamera camera = new OrthoCamera(rasteriser, tileWidth, tileHeight);
+				tiles.addAll(findTiles(camera, map, chunkCoords));
+
+				profileDrawAndReadback(rasteriser, world, camera, map, layer, tiles, tileImages);
+			}
+			finally
+			{
+				skinCache.destroy();
+				rasteriser.destroy();
+			}
+		}
+		else
+		{
+			System.out.println("Couldn't create rasteriser, skipping geometry, draw and readback stages");
+
+			final int pixelFormat = layer.getImageFormat().hasAlpha() ? BufferedImage.TYPE_4BYTE_ABGR : BufferedImage.TYPE_3BYTE_BGR;
+			for (int i=0; i<16; i++)
+			{
+				tiles.add(new TileCoord(i % 4, i / 4));
+				tileImages.add(new BufferedImage(tileWidth, tileHeight, pixelFormat));
+			}
+		}
+
+		profileEncode(layer, baseDir, tiles, tileImages);
+		tileImages.clear();
+
+		profileDownsample(layer, baseDir, downsampledDir, tiles, new File(profileDir, "changed.txt"));
+
+		File outputFile = new File(args.outputDir(), "profile.json");
+		writeResults(outputFile, worldDir, rasteriser != null, chunkCoords.size(), tiles.size());
+
+		System.out.println("Profile complete - total time "+Util.getElapsedTime(startTime, new Date()));
+		System.out.println("Profile results written to "+outputFile.getAbsolutePath());
+
+		return outputFile;
+	}
+
+	private List<ChunkCoord> profileChunkStages(List<File> regionFiles)
+	{
+		System.out.println("Profiling region load, nbt parse and hashing...");
+
+		List<ChunkCoord> chunkCoords = new ArrayList<ChunkCoord>();
+		BiomeCache biomeCache = new NullBiomeCache();
+		BlockFilter blockFilter = new NullBlockFilter();
+
+		for (int pass=0; pass<WARMUP_PASSES+MEASURED_PASSES; pass++)
+		{
+			if (pass == WARMUP_PASSES)
+			{
+				regionLoad.reset();
+				nbtParse.reset();
+				hashing.reset();
+			}
+
+			for (File regionFile : regionFiles)
+			{
+				Region region = null;
+				try
+				{
+					regionLoad.begin();
+					region = new Region(regionFile);
+					regionLoad.end(regionFile.length());
+				}
+				catch (Exception e)
+				{
+					e.printStackTrace();
+				}
+				if (region == null)
+					continue;
+
+				for (ChunkCoord coord : region.getContainedChunks())
+				{
+					nbtParse.begin();
+					Chunk c = region.loadChunk(coord, biomeCache, blockFilter, new WorldStats());
+					nbtParse.end();
+
+					if (c == null)
+						continue;
+
+					hashing.begin();
+					c.calculateHash(hashAlgorithm);
+					hashing.end();
+
+					if (pass == 0)
+						chunkCoords.add(coord);
+				}
+			}
+		}
+
+		return chunkCoords;
+	}
+
+	private void profileGeometry(Rasteriser rasteriser, World world, List<File> regionFiles)
+	{
+		System.out.println("Profiling geometry build...");
+
+		for (int pass=0; pass<WARMUP_PASSES+MEASURED_PASSES; pass++)
+		{
+			if (pass == WARMUP_PASSES)
+				geometryBuild.reset();
+
+			for (File regionFile : regionFiles)
+			{
+				Region region = null;
+				try
+				{
+					region = new Region(regionFile);
+				}
+				catch (Exception e)
+				{
+					e.printStackTrace();
+				}
+				if (region == null)
+					continue;
+
+				for (ChunkCoord coord : region.getContainedChunks())
+				{
+					Chunk c = region.loadChunk(coord, world.getBiomeCache(), world.getBlockFilter(), new WorldStats());
+					if (c == null)
+						continue;
+
+					geometryBuild.begin();
+					c.createGeometry(rasteriser, world, world.getBlockTypeRegistry(), world.getBlockMaskFactory(), world.getTexturePack().getTexture(), world.useGreedyMeshing());
+					geometryBuild.end();
+
+					c.unloadGeometry();
+				}
+			}
+
+			world.flushChunkCache();
+		}
+	}
+
+	private Set<TileCoord> findTiles(OrthoCamera camera, tectonicus.configuration.Map map, List<ChunkCoord> chunkCoords)
+	{
+		TileRenderer.setupCameraForTile(camera, new TileCoord(0, 0), tileWidth, tileHeight, map.getCameraAngleRad(), map.getCameraElevationRad(), map.getClosestZoomSize());
+
+		Set<TileCoord> tiles = new LinkedHashSet<TileCoord>();
+		for (ChunkCoord coord : chunkCoords)
+		{
+			BoundingBox bounds = new BoundingBox(new Vector3f(coord.x * RawChunk.WIDTH, 0, coord.z * RawChunk.DEPTH), RawChunk.WIDTH, RawChunk.HEIGHT, RawChunk.DEPTH);
+
+			int minX = Integer.MAX_VALUE;
+			int maxX = Integer.MIN_VALUE;
+			int minY = Integer.MAX_VALUE;
+			int maxY = Integer.MIN_VALUE;
+
+			for (Vector3f corner : bounds.getCornerPoints())
+			{
+				Point screenPos = camera.project(corner);
+
+				minX = Math.min(screenPos.x, minX);
+				maxX = Math.max(screenPos.x, maxX);
+				minY = Math.min(screenPos.y, minY);
+				maxY = Math.max(screenPos.y, maxY);
+			}
+
+			for (int x=minX; x<=maxX+tileWidth; x+=tileWidth)
+			{
+				for (int y=minY; y<=maxY+tileHeight; y+=tileHeight)
+				{
+					tiles.add(new TileCoord((int)Math.floor(x / (float)tileWidth), (int)Math.floor(y / (float)tileHeight)));
+				}
+			}
+		}
+
+		// Respect maxTiles so large worlds can be profiled in reasonable time
+		if (args.maxTiles() > 0 && tiles.size() > args.maxTiles())
+		{
+			Set<TileCoord> trimmed = new LinkedHashSet<TileCoord>();
+			for (TileCoord t : tiles)
+			{
+				if (trimmed.size() >= args.maxTiles())
+					break;
+				trimmed.add(t);
+			}
+			tiles = trimmed;
+		}
+
+		return tiles;
+	}
+
+	private void profileDrawAndReadback(Rasteriser rasteriser, World world, OrthoCamera camera, tectonicus.configuration.Map map, Layer layer, List<TileCoord> tiles, List<BufferedImage> tileImages)
+	{
+		System.out.println("Profiling draw and readback of "+tiles.size()+" tiles...");
+
+		final ImageFormat imageFormat = layer.getImageFormat();
+		final int bytesPerPixel = imageFormat.hasAlpha() ? 4 : 3;
+
+		for (int pass=0; pass<WARMUP_PASSES+MEASURED_PASSES; pass++)
+		{
+			if (pass == WARMUP_PASSES)
+			{
+				draw.reset();
+				readback.reset();
+			}
+
+			final boolean lastPass = (pass == WARMUP_PASSES+MEASURED_PASSES-1);
+
+			for (TileCoord t : tiles)
+			{
+				TileRenderer.setupCameraForTile(camera, t, tileWidth, tileHeight, map.getCameraAngleRad(), map.getCameraElevationRad(), map.getClosestZoomSize());
+
+				draw.begin();
+				rasteriser.resetState();
+				rasteriser.clear(layer.getBackgroundColorRGB());
+				world.draw(camera, false, true);
+				draw.end();
+
+				readback.begin();
+				BufferedImage img = rasteriser.takeScreenshot(0, 0, tileWidth, tileHeight, imageFormat);
+				readback.end((long)tileWidth * tileHeight * bytesPerPixel);
+
+				if (lastPass)
+					tileImages.add(img);
+			}
+		}
+	}
+
+	private void profileEncode(Layer layer, File baseDir, List<TileCoord> tiles, List<BufferedImage> tileImages)
+	{
+		System.out.println("Profiling encode of "+tileImages.size()+" tiles...");
+
+		final ImageFormat imageFormat = layer.getImageFormat();
+
+		for (int pass=0; pass<WARMUP_PASSES+MEASURED_PASSES; pass++)
+		{
+			if (pass == WARMUP_PASSES)
+				encode.reset();
+
+			for (int i=0; i<tileImages.size(); i++)
+			{
+				if (tileImages.get(i) == null)
+					continue;
+				
+				TileCoord t = tiles.get(i);
+				File outputFile = TileRenderer.getImageFile(baseDir, t.x, t.y, imageFormat);
+
+				encode.begin();
+				Screenshot.write(outputFile, tileImages.get(i), imageFormat, layer.getImageCompressionLevel());
+				encode.end(outputFile.length());
+			}
+		}
+	}
+
+	private void profileDownsample(Layer layer, File baseDir, File downsampledDir, List<TileCoord> baseTiles, File changedFile)
+	{
+		Set<TileCoord> nextTiles = new LinkedHashSet<TileCoord>();
+		for (TileCoord c : baseTiles)
+			nextTiles.add(new TileCoord((int)Math.floor(c.x / 2.0f), (int)Math.floor(c.y / 2.0f)));
+
+		System.out.println("Profiling downsample of "+nextTiles.size()+" tiles...");
+
+		// Run the tasks on this thread rather than through the Downsampler's pool so allocations can be attributed
+		ChangeFile changedFileList = new ChangeFile(changedFile);
+		Downsampler.Shared state = new Downsampler.Shared(baseDir, downsampledDir, layer.getImageFormat(), layer.getImageCompressionLevel(), layer.getBackgroundColorRGB(), tileWidth, tileHeight);
+
+		for (int pass=0; pass<WARMUP_PASSES+MEASURED_PASSES; pass++)
+		{
+			if (pass == WARMUP_PASSES)
+				downsample.reset();
+
+			for (TileCoord t : nextTiles)
+			{
+				downsample.begin();
+				try
+				{
+					new Downsampler.DownsampleTask(t, state, changedFileList).call();
+				}
+				catch (Exception e)
+				{
+					e.printStackTrace();
+				}
+				downsample.end();
+			}
+		}
+
+		changedFileList.close();
+	}
+
+	private void writeResults(File outputFile, File worldDir, final boolean hasRasteriser, final int numChunks, final int numTiles)
+	{
+		JsonObject root = new JsonObject();
+		root.addProperty("version", BuildInfo.getVersion());
+		root.addProperty("date", new Date().toString());
+
+		JsonObject system = new JsonObject();
+		system.addProperty("os", System.getProperty("os.name")+" "+System.getProperty("os.version")+" "+System.getProperty("os.arch"));
+		system.addProperty("java", System.getProperty("java.vendor")+" "+System.getProperty("java.version"));
+		system.addProperty("processors", Runtime.getRuntime().availableProcessors());
+		system.addProperty("maxHeapBytes", Runtime.getRuntime().maxMemory());
+		root.add("system", system);
+
+		JsonObject workload = new JsonObject();
+		workload.addProperty("world", worldDir.getAbsolutePath());
+		workload.addProperty("rasteriser", hasRasteriser ? args.getRasteriserType().toString() : "none");
+		workload.addProperty("tileSize", tileWidth);
+		workload.addProperty("chunks", numChunks);
+		workload.addProperty("tiles", numTiles);
+		workload.addProperty("warmupPasses", WARMUP_PASSES);
+		workload.addProperty("measuredPasses", MEASURED_PASSES);
+		workload.addProperty("allocationTracking", ProfileStage.currentThreadAllocatedBytes() >= 0);
+		root.add("workload", workload);
+
+		JsonArray stages = new JsonArray();
+		for (ProfileStage stage : new ProfileStage[] { regionLoad, nbtParse, hashing, geometryBuild, draw, readback, encode, downsample })
+		{
+			if (stage.numSamples() > 0)
+				stages.add(stage.toJson());
+		}
+		root.add("stages", stages);
+
+		Writer writer = null;
+		try
+		{
+			writer = new OutputStreamWriter(new FileOutputStream(outputFile), StandardCharsets.UTF_8);
+			new GsonBuilder().setPrettyPrinting().create().toJson(root, writer);
+		}
+		catch (Exception e)
+		{
+			e.printStackTrace();
+		}
+		finally
+		{
+			try
+			{
+				if (writer != null)
+					writer.close();
+			}
+			catch (Exception e) {}
+		}
+	}
+
+	private static File getDimensionDir(File worldDir, Dimension dimension)
+	{
+		if (dimension == Dimension.Nether)
+			return new File(worldDir, "DIM-1");
+		else if (dimension == Dimension.Ender)
+			return new File(worldDir, "DIM1");
+		else
+			return worldDir;
+	}
+}
@@ -9,24 +9,21 @@
 
 package tectonicus;
 
-import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.RandomAccessFile;
 import java.nio.ByteBuffer;
+import java.nio.file.Files;
 import java.util.ArrayList;
-
-import org.jnbt.NBTInputStream.Compression;
+import java.util.BitSet;
 
 import tectonicus.cache.BiomeCache;
+import tectonicus.metrics.Metrics;
 import tectonicus.world.filter.BlockFilter;
 
 public class Region
 {
-	private static final int COMPRESSION_TYPE_GZIP = 1;
-	private static final int COMPRESSION_TYPE_DEFLATE = 2;
-	
 	public static final long WIDTH_IN_CHUNKS = 32;
 	
 	private static final long SECTOR_SIZE_BYTES = 1024 * 4;
@@ -83,10 +80,6 @@ public class Region
 				info[i].sectorOffset = offset;
 				info[i].numSectors = numSectors;
 			}
-			
-			bytes = new byte[ (int)file.length() ];
-			file.seek(0);
-			read(file, bytes);
 		}
 		finally
 		{
@@ -121,6 +114,18 @@ public class Region
 		return info[header].sectorOffset != 0 && info[header].numSectors != 0;
 	}
 	
+	/** Which chunks are present, indexed the same way as the region header */
+	public BitSet getChunkPresence()
+	{
+		BitSet present = new BitSet(info.length);
+		for (int i=0; i<info.length; i++)
+		{
+			if (info[i].sectorOffset != 0 && info[i].numSectors != 0)
+				present.set(i);
+		}
+		return present;
+	}
+	
 	public ChunkCoord[] getContainedChunks()
 	{
 		ArrayList<ChunkCoord> result = new ArrayList<ChunkCoord>();
@@ -159,6 +164,31 @@ public class Region
 		return result.toArray(new ChunkCoord[result.size()]);
 	}
 	
+	/** Reads the last saved time of every chunk from the region file's header, indexed the same way as
+	 *  getChunkPresence, or returns null if the header can't be read (eg. because the file is being written)
+	 */
+	public static int[] readTimestamps(File regionFile)
+	{
+		try (RandomAccessFile file = new RandomAccessFile(regionFile, "r"))
+		{
+			ByteBuffer buffer = ByteBuffer.allocate((int)SECTOR_SIZE_BYTES);
+			file.seek(SECTOR_SIZE_BYTES);
+			if (!read(file, buffer))
+				return null;
+			
+			buffer.rewind();
+			
+			int[] timestamps = new int[(int)MAX_CHUNKS];
+			for (int i=0; i<timestamps.length; i++)
+				timestamps[i] = buffer.getInt();
+			return timestamps;
+		}
+		catch (IOException e)
+		{
+			return null;
+		}
+	}
+	
 	private static int getHeaderOffsetForChunk(final ChunkCoord coord)
 	{
 		return getHeaderOffsetForChunk(coord.x, coord.z);
@@ -257,6 +287,24 @@ public class Region
 		public int numSectors;
 	}
 	
+	/** Only the header is read up front, the rest of the file is read the first time a chunk is actually loaded */
+	private synchronized byte[] getBytes() throws IOException
+	{
+		if (bytes == null)
+		{
+			try (RandomAccessFile file = new RandomAccessFile(this.file, "r"))
+			{
+				byte[] data = new byte[ (int)file.length() ];
+				read(file, data);
+				bytes = data;
+			}
+			
+			Metrics.regionsLoaded.inc();
+			Metrics.regionBytesRead.add(bytes.length);
+		}
+		return bytes;
+	}
+	
 	public Chunk loadChunk(ChunkCoord chunkCoord, BiomeCache biomeCache, BlockFilter filter, WorldStats worldStats)
 	{
 		if (!containsChunk(chunkCoord))
@@ -265,37 +313,43 @@ public class Region
 		Chunk chunk = null;
 		InputStream in = null;
 		
+		final long startNanos = System.nanoTime();
 		try
 		{
+			final byte[] bytes = getBytes();
+			
 			final int sector = getSectorOffsetForChunk(chunkCoord);
 			assert (sector >= 2); // First two sectors are the header info
 			
 			final long byteOffset = sector * 4 * 1024;
 			assert (byteOffset < actualFileSizeBytes);
 			
-			final int actualLengthBytes2 = readInt((int)byteOffset);
-			final int compressionType2 = bytes[(int)(byteOffset + 4)];
+			// Length includes the compression type byte
+			final int actualLengthBytes = readInt(bytes, (int)byteOffset);
+			final int compressionType = bytes[(int)(byteOffset + 4)] & 0xFF;
 			
-			assert (byteOffset + actualLengthBytes2 <= MAX_SIZE_BYTES);
+			assert (byteOffset + actualLengthBytes <= MAX_SIZE_BYTES);
 			
-			Compression compression = Compression.Deflate;
-			if (compressionType2 == COMPRESSION_TYPE_GZIP)
-				compression = Compression.Gzip;
-			else if (compressionType2 == COMPRESSION_TYPE_DEFLATE)
-				compression = Compression.Deflate;
+			// Decompressed straight out of the region's bytes, or the chunk's own file if it's too big for the region
+			ChunkDecoder decoder = ChunkDecoder.get();
+			if ((compressionType & ChunkDecoder.EXTERNAL_FLAG) != 0)
+			{
+				File externalFile = new File(file.getParentFile(), "c."+chunkCoord.x+"."+chunkCoord.z+".mcc");
+				byte[] externalBytes = Files.readAllBytes(externalFile.toPath());
+				Metrics.regionBytesRead.add(externalBytes.length);
+				
+				in = decoder.decode(externalBytes, 0, externalBytes.length, compressionType & ~ChunkDecoder.EXTERNAL_FLAG);
+			}
 			else
-				throw new RuntimeException("Unrecognised compression type:"+compressionType2);
-			
-			// Make a new byte array of the chunk data
-			byte[] chunkData = new byte[actualLengthBytes2];
-			for (int i=0; i<chunkData.length; i++)
 			{
-				chunkData[i] = bytes[(int)(byteOffset + i + 4 + 1)]; // +4 to skip chunk length, +1 to skip compression type
+				in = decoder.decode(bytes, (int)byteOffset + 5, actualLengthBytes - 1, compressionType); // +4 to skip chunk length, +1 to skip compression type
 			}
-			in = new ByteArrayInputStream(chunkData, 0, chunkData.length);
 			
 			chunk = new Chunk(chunkCoord, biomeCache);
-			chunk.loadRaw(in, compression, filter, worldStats);
+			chunk.loadRaw(in, null, filter, worldStats);
+			
+			Metrics.chunksLoaded.inc();
+			Metrics.chunkLoadTime.observeSince(startNanos);
 		}
 		catch (Exception e)
 		{
@@ -315,7 +369,7 @@ public class Region
 		return chunk;
 	}
 	
-	private int readInt(final int position)
+	private static int readInt(byte[] bytes, final int position)
 	{
 		final byte b0 = bytes[position];
 		final byte b1 = bytes[position + 1];
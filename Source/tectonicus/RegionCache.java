@@ -12,6 +12,8 @@ package tectonicus;
 import java.io.File;
 import java.util.LinkedHashMap;
 
+import tectonicus.metrics.Metrics;
+
 public class RegionCache
 {
 	private SaveFormat format;
@@ -30,13 +32,7 @@ public class RegionCache
 		
 		this.worldDir = worldDir;
 		
-		File regionDir = new File(worldDir, "region");
-		
-		File[] anvilFiles = regionDir.listFiles(new AnvilFileFilter());
-		if (anvilFiles.length > 0)
-			format = SaveFormat.Anvil;
-		else
-			format = SaveFormat.McRegion;
+		format = SaveFormat.detect(new File(worldDir, "region"));
 		
 		System.out.println("Detected "+format+" save format");
 		
@@ -49,13 +45,27 @@ public class RegionCache
 		return this.format;
 	}
 	
-	public Region getRegion(RegionCoord coord)
+	/** Keeps at least this many regions loaded, eg. so several render workers don't keep evicting each other's regions */
+	public synchronized void ensureCapacity(final int numRegions)
+	{
+		cache.setMaxSize(Math.max(cache.maxSize, numRegions));
+	}
+	
+	/** Drops the region so it's read again next time, eg. because the file has been saved since */
+	public synchronized void evict(RegionCoord coord)
+	{
+		cache.remove(coord);
+	}
+	
+	public synchronized Region getRegion(RegionCoord coord)
 	{
 		Region region = null;
 		
 		region = cache.get(coord);
 		if (region == null)
 		{
+			Metrics.regionCacheMisses.inc();
+			
 			File regionFile = ChunkLocator.findRegionFile(worldDir, coord, format);
 			if (regionFile.exists())
 			{
@@ -73,6 +83,7 @@ public class RegionCache
 		}
 		else
 		{
+			Metrics.regionCacheHits.inc();
 			cache.touch(coord);
 		}
 		
@@ -91,6 +102,11 @@ public class RegionCache
 			this.maxSize = maxSize;
 		}
 		
+		public void setMaxSize(final int size)
+		{
+			this.maxSize = size;
+		}
+		
 		public void setMinSize(final int size)
 		{
 			this.minSize = size;
@@ -0,0 +1,166 @@
+/*
+ * Copyright (c) 2012-2019, John Campbell and other contributors.  All rights reserved.
+ *
+ * This file is part of Tectonicus. It is subject to the license terms in the LICENSE file found in
+ * the top-level directory of this distribution.  The full list of project contributors is contained
+ * in the AUTHORS file found in the same location.
+ *
+ */
+
+package tectonicus;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.FileSystems;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/** Watches a dimension's region dir for chunks being saved. Each region file's header has the time every chunk
+ *  in it was last saved, so comparing headers between checks gives exactly which chunks changed without
+ *  loading any of them.
+ *
+ *  The filesystem is asked to report changes as they happen where it can, otherwise the region dir is just
+ *  checked every time the wait runs out.
+ */
+public class RegionWatcher
+{
+	// The game saves lots of chunks at once, so wait for it to finish before reading headers
+	private static final long SETTLE_MILLIS = 2000;
+	
+	private final File regionDir;
+	private final SaveFormat format;
+	
+	private WatchService watchService;
+	
+	private final Map<File, Long> lastModified;
+	private final Map<File, int[]> timestamps;
+	
+	private boolean hasBaseline;
+	
+	public RegionWatcher(File regionDir, SaveFormat format)
+	{
+		this.regionDir = regionDir;
+		this.format = format;
+		
+		this.lastModified = new HashMap<File, Long>();
+		this.timestamps = new HashMap<File, int[]>();
+		
+		try
+		{
+			watchService = FileSystems.getDefault().newWatchService();
+			regionDir.toPath().register(watchService, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+		}
+		catch (Exception e)
+		{
+			System.out.println("Can't watch "+regionDir.getAbsolutePath()+" for changes ("+e+"), checking every poll interval instead");
+			watchService = null;
+		}
+		
+		// Everything there now is what the first render saw
+		findChanges();
+	}
+	
+	public File getRegionDir()
+	{
+		return regionDir;
+	}
+	
+	/** Waits up to maxWaitMillis for chunks to be saved, then returns the chunks saved since the last call
+	 *  grouped by region file. Empty if nothing changed.
+	 */
+	public Map<File, List<ChunkCoord>> waitForChanges(final long maxWaitMillis) throws InterruptedException
+	{
+		if (watchService != null)
+		{
+			WatchKey key = watchService.poll(maxWaitMillis, TimeUnit.MILLISECONDS);
+			if (key != null)
+			{
+				Thread.sleep(SETTLE_MILLIS);
+				
+				while (key != null)
+				{
+					key.pollEvents();
+					key.reset();
+					key = watchService.poll();
+				}
+			}
+		}
+		else
+		{
+			Thread.sleep(maxWaitMillis);
+		}
+		
+		return findChanges();
+	}
+	
+	/** Compares the header of every region file modified since the last check against the header seen then */
+	public Map<File, List<ChunkCoord>> findChanges()
+	{
+		Map<File, List<ChunkCoord>> changes = new HashMap<File, List<ChunkCoord>>();
+		
+		final boolean isBaseline = !hasBaseline;
+		hasBaseline = true;
+		
+		File[] files = regionDir.listFiles();
+		if (files == null)
+			return changes;
+		
+		for (File f : files)
+		{
+			if (!f.getName().startsWith("r.") || !f.getName().endsWith(format.extension))
+				continue;
+			
+			RegionCoord coord = Region.extractRegionCoord(f);
+			if (coord == null)
+				continue;
+			
+			Long previousModified = lastModified.get(f);
+			if (previousModified != null && previousModified == f.lastModified())
+				continue;
+			
+			int[] current = Region.readTimestamps(f);
+			if (current == null)
+				continue; // Probably still being written, try again next time
+			
+			lastModified.put(f, f.lastModified());
+			int[] previous = timestamps.put(f, current);
+			
+			if (isBaseline)
+				continue;
+			
+			List<ChunkCoord> changed = new ArrayList<ChunkCoord>();
+			for (int i=0; i<current.length; i++)
+			{
+				final int before = previous != null ? previous[i] : 0;
+				if (current[i] != before)
+				{
+					final long chunkX = coord.x * RegionCoord.REGION_WIDTH + (i % RegionCoord.REGION_WIDTH);
+					final long chunkZ = coord.z * RegionCoord.REGION_HEIGHT + (i / RegionCoord.REGION_WIDTH);
+					changed.add(new ChunkCoord(chunkX, chunkZ));
+				}
+			}
+			if (!changed.isEmpty())
+				changes.put(f, changed);
+		}
+		
+		return changes;
+	}
+	
+	public void close()
+	{
+		if (watchService != null)
+		{
+			try
+			{
+				watchService.close();
+			}
+			catch (IOException e) {}
+		}
+	}
+}
@@ -0,0 +1,394 @@
+/*
+ * Copyright (c) 2012-2019, John Campbell and other contributors.  All rights reserved.
+ *
+ * This file is part of Tectonicus. It is subject to the license terms in the LICENSE file found in
+ * the top-level directory of this distribution.  The full list of project contributors is contained
+ * in the AUTHORS file found in the same location.
+ *
+ */
+
+package tectonicus;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.RandomAccessFile;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import tectonicus.cache.TileCache;
+import tectonicus.cache.swap.HddTileList;
+import tectonicus.cache.swap.HddTileListFactory;
+import tectonicus.configuration.Layer;
+import tectonicus.util.FileUtils;
+
+/** Records how far a render has got, so an interrupted render can carry on from where it stopped rather than
+ *  starting over. The journal is a text file of finished phases and finished base tiles, appended to as the
+ *  render goes. Phases are synced to disk as soon as they're recorded, tiles every few seconds, so at worst
+ *  the last few seconds of tiles are rendered again.
+ *
+ *  Anything a later phase needs from an earlier one (world stats, the list of tiles to render) is saved
+ *  next to the journal before the earlier phase is marked as finished.
+ */
+public class RenderJournal
+{
+	private static final int TILE_LIST_MAGIC = 0x544A4E31;
+	
+	private static final long SYNC_INTERVAL_MILLIS = 5000;
+	private static final int SYNC_INTERVAL_ENTRIES = 1000;
+	
+	private static final String COMPLETE = "complete";
+	
+	private final File baseDir;
+	private final File journalFile;
+	
+	private final Set<String> donePhases;
+	private final Map<String, Set<TileCoord>> doneTiles;
+	
+	private boolean isResuming;
+	
+	private FileOutputStream fileOut;
+	private Writer writer;
+	private int numUnsynced;
+	private long lastSyncMillis;
+	
+	private ChangeFile changeFile;
+	
+	/** Opens the journal in baseDir. Unless resume is set, or the journal is from a render with different
+	 *  settings or one that finished, any previous journal is thrown away and a new one started.
+	 */
+	public RenderJournal(File baseDir, String settings, final boolean resume)
+	{
+		this.baseDir = baseDir;
+		this.journalFile = new File(baseDir, "journal.txt");
+		
+		this.donePhases = new HashSet<String>();
+		this.doneTiles = new HashMap<String, Set<TileCoord>>();
+		
+		final String signature = "settings "+Integer.toHexString(settings.hashCode());
+		
+		if (resume)
+		{
+			String previous = read();
+			if (previous == null)
+				System.out.println("No journal from an interrupted render found, starting from scratch");
+			else if (!previous.equals(signature))
+				System.out.println("Settings have changed since the interrupted render, starting from scratch");
+			else if (donePhases.contains(COMPLETE))
+				System.out.println("Previous render finished, so there's nothing to resume");
+			else
+				isResuming = true;
+		}
+		
+		if (!isResuming)
+		{
+			donePhases.clear();
+			doneTiles.clear();
+			
+			FileUtils.deleteDirectory(baseDir);
+		}
+		FileUtils.ensureExists(baseDir);
+		
+		try
+		{
+			// Don't carry on from the middle of a torn line, or it would read back as a whole entry next time
+			if (isResuming)
+				dropTornLine(journalFile);
+			
+			fileOut = new FileOutputStream(journalFile, isResuming);
+			writer = new OutputStreamWriter(fileOut, StandardCharsets.UTF_8);
+			
+			if (!isResuming)
+			{
+				writer.write(signature);
+				writer.write('\n');
+				sync();
+			}
+		}
+		catch (IOException e)
+		{
+			System.err.println("Couldn't open render journal: "+e);
+		}
+		
+		if (isResuming)
+			System.out.println("Resuming render from journal at "+journalFile.getAbsolutePath()+" ("+donePhases.size()+" phases finished)");
+	}
+	
+	public static String layerKey(Layer layer)
+	{
+		return layer.getMapId()+"/"+layer.getId();
+	}
+	
+	/** Flushes the changed file list whenever the journal is synced, so every tile the journal has as finished is also listed as changed */
+	public synchronized void setChangeFile(ChangeFile changeFile)
+	{
+		this.changeFile = changeFile;
+	}
+	
+	/** True if this render is carrying on from an interrupted one */
+	public boolean isResuming()
+	{
+		return isResuming;
+	}
+	
+	/** Where to keep data that a phase needs to hand on to later ones */
+	public File getFile(String name)
+	{
+		return new File(baseDir, name);
+	}
+	
+	public synchronized boolean isDone(String phase)
+	{
+		return donePhases.contains(phase);
+	}
+	
+	/** Records that a phase has finished. This is synced to disk before returning */
+	public synchronized void markDone(String phase)
+	{
+		donePhases.add(phase);
+		append("done "+phase);
+		sync();
+	}
+	
+	/** Records the whole render as finished, so a later resume starts afresh */
+	public void markComplete()
+	{
+		markDone(COMPLETE);
+	}
+	
+	/** Records that a base tile's image has been written. Synced along with the tiles around it */
+	public synchronized void tileDone(String layerKey, TileCoord tile)
+	{
+		getDoneTiles(layerKey).add(tile);
+		append("tile "+tile.x+" "+tile.y+" "+layerKey);
+		
+		numUnsynced++;
+		if (numUnsynced >= SYNC_INTERVAL_ENTRIES || System.currentTimeMillis() - lastSyncMillis >= SYNC_INTERVAL_MILLIS)
+			sync();
+	}
+	
+	/** Base tiles already written for the layer */
+	public synchronized Set<TileCoord> getDoneTiles(String layerKey)
+	{
+		Set<TileCoord> tiles = doneTiles.get(layerKey);
+		if (tiles == null)
+		{
+			tiles = new HashSet<TileCoord>();
+			doneTiles.put(layerKey, tiles);
+		}
+		return tiles;
+	}
+	
+	/** Saves the layer's tiles to render, with their hashes from the tile cache, plus any other tiles for
+	 *  the layer that need to be remembered (eg. overview tiles).
+	 */
+	public void saveTiles(String name, HddTileList tiles, TileCache tileCache, List<TileCoord> otherTiles) throws IOException
+	{
+		File file = getFile(name);
+		try (FileOutputStream out = new FileOutputStream(file))
+		{
+			DataOutputStream data = new DataOutputStream(new BufferedOutputStream(out));
+			data.writeInt(TILE_LIST_MAGIC);
+			
+			data.writeInt(tiles.size());
+			for (TileCoord t : tiles)
+			{
+				data.writeInt(t.x);
+				data.writeInt(t.y);
+				
+				byte[] hash = tileCache.getTileHash(t);
+				data.writeShort(hash != null ? hash.length : -1);
+				if (hash != null)
+					data.write(hash);
+			}
+			
+			data.writeInt(otherTiles.size());
+			for (TileCoord t : otherTiles)
+			{
+				data.writeInt(t.x);
+				data.writeInt(t.y);
+			}
+			
+			data.flush();
+			out.getFD().sync();
+		}
+	}
+	
+	/** Reads back tiles written by saveTiles, putting their hashes back in the tile cache */
+	public HddTileList loadTiles(String name, HddTileListFactory factory, TileCache tileCache, List<TileCoord> otherTiles) throws IOException
+	{
+		HddTileList tiles = factory.createList();
+		
+		try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(getFile(name)))))
+		{
+			if (in.readInt() != TILE_LIST_MAGIC)
+				throw new IOException("Not a tile list: "+getFile(name).getAbsolutePath());
+			
+			final int numTiles = in.readInt();
+			for (int i=0; i<numTiles; i++)
+			{
+				TileCoord t = new TileCoord(in.readInt(), in.readInt());
+				
+				final int hashLength = in.readShort();
+				if (hashLength >= 0)
+				{
+					byte[] hash = new byte[hashLength];
+					in.readFully(hash);
+					tileCache.setTileHash(t, hash);
+				}
+				tiles.add(t);
+			}
+			
+			final int numOther = in.readInt();
+			for (int i=0; i<numOther; i++)
+				otherTiles.add(new TileCoord(in.readInt(), in.readInt()));
+		}
+		
+		return tiles;
+	}
+	
+	public synchronized void sync()
+	{
+		if (writer == null)
+			return;
+		
+		if (changeFile != null)
+			changeFile.flush();
+		
+		try
+		{
+			writer.flush();
+			fileOut.getFD().sync();
+		}
+		catch (IOException e)
+		{
+			e.printStackTrace();
+		}
+		
+		numUnsynced = 0;
+		lastSyncMillis = System.currentTimeMillis();
+	}
+	
+	public synchronized void close()
+	{
+		sync();
+		
+		if (writer != null)
+		{
+			try
+			{
+				writer.close();
+			}
+			catch (IOException e) {}
+			
+			writer = null;
+		}
+	}
+	
+	private void append(String line)
+	{
+		if (writer == null)
+			return;
+		
+		try
+		{
+			writer.write(line);
+			writer.write('\n');
+		}
+		catch (IOException e)
+		{
+			e.printStackTrace();
+		}
+	}
+	
+	/** Loads entries from an existing journal and returns its settings line, or null if there isn't one.
+	 *  A crash can leave a torn last line without its newline, which is ignored.
+	 */
+	private String read()
+	{
+		if (!journalFile.exists())
+			return null;
+		
+		List<String> lines = new ArrayList<String>();
+		try (BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(journalFile), StandardCharsets.UTF_8)))
+		{
+			String line;
+			while ((line = reader.readLine()) != null)
+				lines.add(line);
+			
+			// Only whole lines count, a torn entry might still parse as a different phase or layer
+			if (!lines.isEmpty() && !endsWithNewline(journalFile))
+				lines.remove(lines.size() - 1);
+		}
+		catch (IOException e)
+		{
+			e.printStackTrace();
+			return null;
+		}
+		
+		if (lines.isEmpty())
+			return null;
+		
+		for (int i=1; i<lines.size(); i++)
+		{
+			String[] parts = lines.get(i).split(" ", 4);
+			try
+			{
+				if (parts[0].equals("done") && parts.length >= 2)
+				{
+					donePhases.add(lines.get(i).substring(5));
+				}
+				else if (parts[0].equals("tile") && parts.length == 4)
+				{
+					getDoneTiles(parts[3]).add(new TileCoord(Integer.parseInt(parts[1]), Integer.parseInt(parts[2])));
+				}
+			}
+			catch (NumberFormatException e) {}
+		}
+		
+		return lines.get(0);
+	}
+	
+	private static boolean endsWithNewline(File file) throws IOException
+	{
+		try (RandomAccessFile in = new RandomAccessFile(file, "r"))
+		{
+			if (in.length() == 0)
+				return true;
+			
+			in.seek(in.length() - 1);
+			return in.read() == '\n';
+		}
+	}
+	
+	/** Cuts the file back to the end of its last whole line */
+	private static void dropTornLine(File file) throws IOException
+	{
+		try (RandomAccessFile out = new RandomAccessFile(file, "rw"))
+		{
+			long end = out.length();
+			while (end > 0)
+			{
+				out.seek(end - 1);
+				if (out.read() == '\n')
+					break;
+				end--;
+			}
+			out.setLength(end);
+		}
+	}
+}
@@ -9,6 +9,8 @@
 
 package tectonicus;
 
+import java.io.File;
+
 public enum SaveFormat
 {
 	McRegion("mcr"),
@@ -20,4 +22,14 @@ public enum SaveFormat
 	{
 		this.extension = ext;
 	}
+	
+	/** Anvil if there are any anvil region files in the dir, otherwise McRegion */
+	public static SaveFormat detect(File regionDir)
+	{
+		File[] anvilFiles = regionDir.listFiles(new AnvilFileFilter());
+		if (anvilFiles != null && anvilFiles.length > 0)
+			return Anvil;
+		else
+			return McRegion;
+	}
 }
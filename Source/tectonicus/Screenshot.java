@@ -19,6 +19,7 @@ import javax.imageio.stream.FileImageOutputStream;
 import javax.imageio.stream.MemoryCacheImageOutputStream;
 
 import tectonicus.configuration.ImageFormat;
+import tectonicus.metrics.Metrics;
 
 
 public class Screenshot
@@ -28,6 +29,8 @@ public class Screenshot
 	{
 		ImageWriter writer = null;
 		FileImageOutputStream output = null;
+		
+		final long startNanos = System.nanoTime();
 		try
 		{
 			writer = imageFormat.createWriter();
@@ -48,6 +51,10 @@ public class Screenshot
 			// Then write the encoded bytes to disk
 			output = new FileImageOutputStream(outputFile);
 			output.write(memOut.toByteArray(), 0, memOut.size());
+			
+			Metrics.encodeTime.observeSince(startNanos);
+			Metrics.imagesWritten.inc();
+			Metrics.bytesWritten.add(memOut.size());
 		}
 		catch (Exception e)
 		{
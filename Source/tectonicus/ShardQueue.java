@@ -0,0 +1,310 @@
+/*
+ * Copyright (c) 2012-2019, John Campbell and other contributors.  All rights reserved.
+ *
+ * This file is part of Tectonicus. It is subject to the license terms in the LICENSE file found in
+ * the top-level directory of this distribution.  The full list of project contributors is contained
+ * in the AUTHORS file found in the same location.
+ *
+ */
+
+package tectonicus;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import tectonicus.util.FileUtils;
+
+/** A queue of base tile shards kept in a directory, so that a coordinator and any number of worker
+ *  processes (on this machine or others sharing the directory) can split up a render.
+ *
+ *  Shards move from pending/ to claimed/ to done/ by renaming, which is atomic on a single filesystem
+ *  so each shard is only ever claimed by one worker. Workers touch their claimed shard as they go,
+ *  and the coordinator puts shards back in pending/ if their worker stops doing that.
+ */
+public class ShardQueue
+{
+	private static final String SHARD_EXTENSION = ".shard";
+	
+	private final File baseDir;
+	private final File pendingDir;
+	private final File claimedDir;
+	private final File doneDir;
+	private final File finishedFile;
+	
+	private int numPublished;
+	
+	public ShardQueue(File baseDir)
+	{
+		this.baseDir = baseDir;
+		this.pendingDir = new File(baseDir, "pending");
+		this.claimedDir = new File(baseDir, "claimed");
+		this.doneDir = new File(baseDir, "done");
+		this.finishedFile = new File(baseDir, "finished");
+	}
+	
+	public File getBaseDir()
+	{
+		return baseDir;
+	}
+	
+	/** Clears out shards from any previous run. Only the coordinator should call this */
+	public void reset()
+	{
+		FileUtils.deleteDirectory(baseDir);
+		
+		FileUtils.ensureExists(pendingDir);
+		FileUtils.ensureExists(claimedDir);
+		FileUtils.ensureExists(doneDir);
+	}
+	
+	/** Groups the tiles into square blocks of tilesPerSide x tilesPerSide, so each shard covers one compact
+	 *  area of the map and the worker rendering it loads as few chunks as possible.
+	 */
+	public static List<Shard> partition(String mapId, String layerId, Iterable<TileCoord> tiles, final int tilesPerSide)
+	{
+		Map<TileCoord, List<TileCoord>> blocks = new TreeMap<>(new Comparator<TileCoord>()
+		{
+			@Override
+			public int compare(TileCoord lhs, TileCoord rhs)
+			{
+				if (lhs.y != rhs.y)
+					return Integer.compare(lhs.y, rhs.y);
+				return Integer.compare(lhs.x, rhs.x);
+			}
+		});
+		
+		for (TileCoord t : tiles)
+		{
+			TileCoord block = new TileCoord(Math.floorDiv(t.x, tilesPerSide), Math.floorDiv(t.y, tilesPerSide));
+			
+			List<TileCoord> blockTiles = blocks.get(block);
+			if (blockTiles == null)
+			{
+				blockTiles = new ArrayList<>();
+				blocks.put(block, blockTiles);
+			}
+			blockTiles.add(t);
+		}
+		
+		List<Shard> shards = new ArrayList<>();
+		for (Map.Entry<TileCoord, List<TileCoord>> entry : blocks.entrySet())
+		{
+			TileCoord block = entry.getKey();
+			String name = layerId+"_"+block.x+"_"+block.y+SHARD_EXTENSION;
+			shards.add(new Shard(name, mapId, layerId, entry.getValue()));
+		}
+		return shards;
+	}
+	
+	/** Makes the shard available to workers. The shard's name gets a sequence number so that
+	 *  shards from different layers never collide.
+	 */
+	public void publish(Shard shard) throws IOException
+	{
+		shard.name = String.format("%06d_%s", numPublished++, shard.name);
+		
+		// Write somewhere workers won't look and then move it in, so they never see half a shard
+		File temp = new File(baseDir, shard.name+".tmp");
+		try (PrintWriter out = new PrintWriter(Files.newBufferedWriter(temp.toPath(), StandardCharsets.UTF_8)))
+		{
+			out.println(shard.mapId);
+			out.println(shard.layerId);
+			for (TileCoord t : shard.tiles)
+				out.println(t.x+" "+t.y);
+		}
+		move(temp, new File(pendingDir, shard.name));
+	}
+	
+	/** Takes the next pending shard for this process, or returns null if there aren't any right now */
+	public Shard claim()
+	{
+		String[] pending = pendingDir.list();
+		if (pending == null)
+			return null;
+		
+		Arrays.sort(pending);
+		for (String name : pending)
+		{
+			if (!name.endsWith(SHARD_EXTENSION))
+				continue;
+			
+			File claimed = new File(claimedDir, name);
+			try
+			{
+				move(new File(pendingDir, name), claimed);
+			}
+			catch (IOException e)
+			{
+				// Someone else got there first
+				continue;
+			}
+			
+			try
+			{
+				claimed.setLastModified(System.currentTimeMillis());
+				return read(name, claimed);
+			}
+			catch (IOException e)
+			{
+				e.printStackTrace();
+			}
+		}
+		return null;
+	}
+	
+	/** Lets the coordinator know this shard's worker is still alive */
+	public void heartbeat(Shard shard)
+	{
+		new File(claimedDir, shard.name).setLastModified(System.currentTimeMillis());
+	}
+	
+	/** Puts a claimed shard back so another worker can have it */
+	public void release(Shard shard)
+	{
+		try
+		{
+			move(new File(claimedDir, shard.name), new File(pendingDir, shard.name));
+		}
+		catch (IOException e)
+		{
+			e.printStackTrace();
+		}
+	}
+	
+	/** Marks a claimed shard as done. Only call this once all of its tiles are written out */
+	public void complete(Shard shard) throws IOException
+	{
+		move(new File(claimedDir, shard.name), new File(doneDir, shard.name));
+	}
+	
+	public boolean isDone(Shard shard)
+	{
+		return new File(doneDir, shard.name).exists();
+	}
+	
+	/** Puts back any claimed shards that haven't been touched for timeoutMillis, and returns how many there were */
+	public int requeueStale(final long timeoutMillis)
+	{
+		File[] claimed = claimedDir.listFiles();
+		if (claimed == null)
+			return 0;
+		
+		final long now = System.currentTimeMillis();
+		
+		int numRequeued = 0;
+		for (File f : claimed)
+		{
+			if (now - f.lastModified() < timeoutMillis)
+				continue;
+			
+			try
+			{
+				move(f, new File(pendingDir, f.getName()));
+				numRequeued++;
+			}
+			catch (IOException e)
+			{
+				// Finished or released in the meantime
+			}
+		}
+		return numRequeued;
+	}
+	
+	/** Tells workers that no more shards are coming */
+	public void markFinished()
+	{
+		try
+		{
+			finishedFile.createNewFile();
+			finishedFile.setLastModified(System.currentTimeMillis());
+		}
+		catch (IOException e)
+		{
+			e.printStackTrace();
+		}
+	}
+	
+	/** True if the coordinator has finished since the given time, so workers started before a render
+	 *  don't mistake the previous render's marker for the current one.
+	 */
+	public boolean isFinishedSince(final long time)
+	{
+		return finishedFile.exists() && finishedFile.lastModified() >= time;
+	}
+	
+	private static Shard read(String name, File file) throws IOException
+	{
+		try (BufferedReader in = Files.newBufferedReader(file.toPath(), StandardCharsets.UTF_8))
+		{
+			final String mapId = in.readLine();
+			final String layerId = in.readLine();
+			if (mapId == null || layerId == null)
+				throw new IOException("Malformed shard "+file.getAbsolutePath());
+			
+			List<TileCoord> tiles = new ArrayList<>();
+			
+			String line;
+			while ((line = in.readLine()) != null)
+			{
+				final int split = line.indexOf(' ');
+				if (split == -1)
+					continue;
+				
+				tiles.add(new TileCoord(Integer.parseInt(line.substring(0, split)), Integer.parseInt(line.substring(split+1))));
+			}
+			
+			return new Shard(name, mapId, layerId, tiles);
+		}
+	}
+	
+	private static void move(File from, File to) throws IOException
+	{
+		try
+		{
+			Files.move(from.toPath(), to.toPath(), StandardCopyOption.ATOMIC_MOVE);
+		}
+		catch (AtomicMoveNotSupportedException e)
+		{
+			Files.move(from.toPath(), to.toPath());
+		}
+		catch (NoSuchFileException e)
+		{
+			throw new IOException("No shard at "+from.getAbsolutePath(), e);
+		}
+	}
+	
+	public static class Shard
+	{
+		private String name;
+		
+		public final String mapId;
+		public final String layerId;
+		public final List<TileCoord> tiles;
+		
+		public Shard(String name, String mapId, String layerId, List<TileCoord> tiles)
+		{
+			this.name = name;
+			this.mapId = mapId;
+			this.layerId = layerId;
+			this.tiles = tiles;
+		}
+		
+		public String getName()
+		{
+			return name;
+		}
+	}
+}
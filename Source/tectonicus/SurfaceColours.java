@@ -0,0 +1,276 @@
+/*
+ * Copyright (c) 2012-2019, John Campbell and other contributors.  All rights reserved.
+ *
+ * This file is part of Tectonicus. It is subject to the license terms in the LICENSE file found in
+ * the top-level directory of this distribution.  The full list of project contributors is contained
+ * in the AUTHORS file found in the same location.
+ *
+ */
+
+package tectonicus;
+
+import java.awt.image.BufferedImage;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.w3c.dom.Element;
+import org.w3c.dom.NamedNodeMap;
+import org.w3c.dom.Node;
+import org.w3c.dom.NodeList;
+
+import tectonicus.texture.TexturePack;
+
+/** One flat colour per block id and data value, for the surface render style. Colours are read from the same
+ *  block config as the regular renderer uses, by averaging each block's top (or only) texture.
+ */
+public class SurfaceColours
+{
+	public enum Tint
+	{
+		None,
+		Grass,
+		Foliage
+	}
+	
+	private static final int MAX_IDS = 4096;
+	private static final int MAX_DATA = 16;
+	
+	// Water textures from 1.9 on are grey and tinted by the game
+	private static final int WATER_COLOUR = 0xFF3F76E4;
+	
+	// Drawn over the block below rather than as a block of their own
+	private static final String[] FLAT_TYPES = { "plant", "sapling", "tallgrass", "torch", "minecarttracks", "redstonewire", "snow", "carpet",
+												"lilly", "crops", "netherwart", "pressureplate", "button", "lever", "tripwire", "tripwirehook",
+												"ladder", "vines", "fire", "sign", "redstonerepeater" };
+	
+	private final TexturePack texturePack;
+	
+	private final int[] colours;
+	private final Tint[] tints;
+	private final boolean[] flat;
+	
+	private final Map<String, Integer> averagedTextures;
+	
+	public SurfaceColours(TexturePack texturePack)
+	{
+		this.texturePack = texturePack;
+		
+		colours = new int[MAX_IDS * MAX_DATA];
+		tints = new Tint[MAX_IDS * MAX_DATA];
+		flat = new boolean[MAX_IDS * MAX_DATA];
+		Arrays.fill(tints, Tint.None);
+		
+		averagedTextures = new HashMap<>();
+	}
+	
+	/** Reads colours from a block config. Blocks in later configs replace ones from earlier configs */
+	public void load(String resName)
+	{
+		if (resName == null || resName.trim().length() == 0)
+			return;
+		
+		Element root = BlockRegistryParser.loadXml(resName, "blockConfig");
+		if (root == null)
+			throw new RuntimeException("Couldn't load block config from: '"+resName+"'");
+		
+		NodeList children = root.getChildNodes();
+		for (int i=0; i<children.getLength(); i++)
+		{
+			Node n = children.item(i);
+			if (n.getNodeType() != Node.ELEMENT_NODE)
+				continue;
+			
+			try
+			{
+				parse((Element)n);
+			}
+			catch (Exception e)
+			{
+				// Blocks without a numeric id or a texture we can find just aren't drawn
+			}
+		}
+	}
+	
+	/** Colour as ARGB, or 0 if the block shouldn't be drawn */
+	public int getColour(final int id, final int data)
+	{
+		return colours[index(id, data)];
+	}
+	
+	public Tint getTint(final int id, final int data)
+	{
+		return tints[index(id, data)];
+	}
+	
+	/** True for blocks like flowers and rails which should colour the block below them without adding any height */
+	public boolean isFlat(final int id, final int data)
+	{
+		return flat[index(id, data)];
+	}
+	
+	private static int index(final int id, final int data)
+	{
+		return (id & (MAX_IDS-1)) * MAX_DATA + (data & (MAX_DATA-1));
+	}
+	
+	private void parse(Element element)
+	{
+		IdDataPair id = BlockRegistryParser.parseIdDataPair(element.getAttribute("id"));
+		if (id.id < 0 || id.id >= MAX_IDS)
+			return;
+		
+		String nodeName = element.getTagName().toLowerCase();
+		
+		int colour = 0;
+		Tint tint = Tint.None;
+		
+		if (nodeName.equals("air"))
+		{
+			colour = 0;
+		}
+		else if (nodeName.equals("grass"))
+		{
+			colour = findColour(element.getAttribute("top"));
+			tint = Tint.Grass;
+		}
+		else if (nodeName.equals("tallgrass"))
+		{
+			colour = findColour(element.getAttribute("tall"));
+			tint = Tint.Grass;
+		}
+		else if (nodeName.equals("leaves"))
+		{
+			colour = findColour(element.getAttribute("texture"));
+			
+			String colorStr = element.getAttribute("color");
+			if (colorStr.startsWith("#") && colorStr.length() >= 7)
+				colour = multiply(colour, 0xFF000000 | Integer.parseInt(colorStr.substring(1, 7), 16));
+			else
+				tint = Tint.Foliage;
+		}
+		else if (nodeName.equals("vines") || nodeName.equals("lilly"))
+		{
+			colour = findColour(element.getAttribute("texture"));
+			tint = Tint.Foliage;
+		}
+		else if (nodeName.equals("water"))
+		{
+			colour = findColour(element.getAttribute("texture"));
+			if (isGrey(colour))
+				colour = multiply(colour, WATER_COLOUR);
+		}
+		else
+		{
+			colour = findColour(findTextureAttribute(element));
+		}
+		
+		final boolean isFlat = Arrays.asList(FLAT_TYPES).contains(nodeName);
+		
+		if (id.data == -1)
+		{
+			for (int data=0; data<MAX_DATA; data++)
+				set(id.id, data, colour, tint, isFlat);
+		}
+		else
+		{
+			set(id.id, id.data, colour, tint, isFlat);
+			
+			// Same as the block registry, leaves use the upper data bits for decay flags
+			if (nodeName.equals("leaves"))
+			{
+				set(id.id, id.data | 0x4, colour, tint, isFlat);
+				set(id.id, id.data | 0x8, colour, tint, isFlat);
+				set(id.id, id.data | 0x4 | 0x8, colour, tint, isFlat);
+			}
+		}
+	}
+	
+	private void set(final int id, final int data, final int colour, Tint tint, final boolean isFlat)
+	{
+		final int index = index(id, data);
+		colours[index] = colour;
+		tints[index] = tint;
+		flat[index] = isFlat;
+	}
+	
+	/** Picks the texture that's seen from above: 'top' if there is one, then 'texture', then the first other texture */
+	private static String findTextureAttribute(Element element)
+	{
+		if (element.hasAttribute("top"))
+			return element.getAttribute("top");
+		if (element.hasAttribute("texture"))
+			return element.getAttribute("texture");
+		
+		NamedNodeMap attribs = element.getAttributes();
+		for (int i=0; i<attribs.getLength(); i++)
+		{
+			String value = attribs.item(i).getNodeValue();
+			if (value.endsWith(".png") || value.contains(".png[") || value.startsWith("terrain["))
+				return value;
+		}
+		return null;
+	}
+	
+	private int findColour(String texturePath)
+	{
+		if (texturePath == null || texturePath.trim().length() == 0)
+			return 0;
+		
+		Integer colour = averagedTextures.get(texturePath);
+		if (colour == null)
+		{
+			BufferedImage img = texturePack.findTextureImage(texturePath);
+			colour = img != null ? averageColour(img) : 0;
+			averagedTextures.put(texturePath, colour);
+		}
+		return colour;
+	}
+	
+	/** Average colour of the image as ARGB. Colours are weighted by alpha so cut out pixels don't darken the result */
+	static int averageColour(BufferedImage img)
+	{
+		long r = 0, g = 0, b = 0, a = 0;
+		
+		final int width = img.getWidth();
+		final int height = img.getHeight();
+		for (int y=0; y<height; y++)
+		{
+			for (int x=0; x<width; x++)
+			{
+				final int argb = img.getRGB(x, y);
+				final int alpha = (argb >>> 24);
+				
+				r += ((argb >> 16) & 0xFF) * alpha;
+				g += ((argb >> 8) & 0xFF) * alpha;
+				b += (argb & 0xFF) * alpha;
+				a += alpha;
+			}
+		}
+		
+		if (a == 0)
+			return 0;
+		
+		final int avgAlpha = (int)(a / (width * height));
+		return (Math.max(avgAlpha, 1) << 24) | (int)(r / a) << 16 | (int)(g / a) << 8 | (int)(b / a);
+	}
+	
+	/** Multiplies the colour channels together, keeping the alpha of the first colour */
+	public static int multiply(final int argb, final int tint)
+	{
+		final int r = ((argb >> 16) & 0xFF) * ((tint >> 16) & 0xFF) / 255;
+		final int g = ((argb >> 8) & 0xFF) * ((tint >> 8) & 0xFF) / 255;
+		final int b = (argb & 0xFF) * (tint & 0xFF) / 255;
+		
+		return (argb & 0xFF000000) | (r << 16) | (g << 8) | b;
+	}
+	
+	private static boolean isGrey(final int argb)
+	{
+		final int r = (argb >> 16) & 0xFF;
+		final int g = (argb >> 8) & 0xFF;
+		final int b = argb & 0xFF;
+		
+		return Math.max(r, Math.max(g, b)) - Math.min(r, Math.min(g, b)) < 24;
+	}
+}
@@ -0,0 +1,542 @@
+/*
+ * Copyright (c) 2012-2019, John Campbell and other contributors.  All rights reserved.
+ *
+ * This file is part of Tectonicus. It is subject to the license terms in the LICENSE file found in
+ * the top-level directory of this distribution.  The full list of project contributors is contained
+ * in the AUTHORS file found in the same location.
+ *
+ */
+
+package tectonicus;
+
+import java.awt.Point;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.io.File;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.concurrent.Callable;
+
+import org.lwjgl.util.vector.Matrix4f;
+import org.lwjgl.util.vector.Vector3f;
+
+import tectonicus.configuration.ImageFormat;
+import tectonicus.configuration.Layer;
+import tectonicus.configuration.LightFace;
+import tectonicus.configuration.LightStyle;
+import tectonicus.raw.BiomeIds;
+import tectonicus.raw.RawChunk;
+import tectonicus.renderer.OrthoCamera;
+import tectonicus.texture.TexturePack;
+import tectonicus.util.BoundedExecutor;
+import tectonicus.world.World;
+
+/** Draws base tiles for the 'surface' render style straight from the raw chunk data, without a rasteriser.
+ *  Each column of blocks becomes one flat coloured prism as tall as its top visible block, and the prisms
+ *  are painted back to front into the tile's pixels. Tiles are drawn on a pool of threads, each of which
+ *  keeps its own cache of recently used chunk columns.
+ */
+public class SurfaceRenderer
+{
+	private static final int CHUNK_CACHE_SIZE = 1024;
+	
+	// Tiles are handed out in runs so each thread keeps working in the same area of the map
+	private static final int TILES_PER_TASK = 8;
+	
+	private static final float SLOPE_SHADE = 0.12f;
+	
+	private final World world;
+	private final tectonicus.configuration.Map map;
+	private final Layer layer;
+	private final TexturePack texturePack;
+	private final SurfaceColours colours;
+	
+	private final int tileWidth;
+	private final int tileHeight;
+	private final int levelsAboveBase;
+	
+	private final BoundedExecutor executor;
+	
+	private RenderJournal journal;
+	
+	private final ThreadLocal<ColumnCache> columnCaches = new ThreadLocal<ColumnCache>()
+	{
+		@Override
+		protected ColumnCache initialValue()
+		{
+			return new ColumnCache();
+		}
+	};
+	
+	/** levelsAboveBase is 0 to draw base tiles, or how many zoom levels above the base to draw tiles for */
+	public SurfaceRenderer(World world, tectonicus.configuration.Map map, Layer layer, final int tileWidth, final int tileHeight, final int levelsAboveBase, final int numThreads)
+	{
+		this.world = world;
+		this.map = map;
+		this.layer = layer;
+		this.texturePack = world.getTexturePack();
+		this.tileWidth = tileWidth;
+		this.tileHeight = tileHeight;
+		this.levelsAboveBase = levelsAboveBase;
+		
+		colours = new SurfaceColours(texturePack);
+		if (layer.useDefaultBlockConfig())
+			colours.load(world.getDefaultBlockConfig());
+		colours.load(layer.getCustomBlockConfig());
+		
+		executor = new BoundedExecutor("Surface renderer", numThreads);
+	}
+	
+	public void destroy()
+	{
+		executor.shutdown();
+	}
+	
+	/** Records each tile in the journal once its image has been written */
+	public void setJournal(RenderJournal journal)
+	{
+		this.journal = journal;
+	}
+	
+	/** Draws the tiles and queues their images to be written, returning once they've all been drawn */
+	public void render(List<TileCoord> tiles, final File layerDir, final ImageWriteQueue imageWriteQueue)
+	{
+		final ImageFormat imageFormat = layer.getImageFormat();
+		final String layerKey = RenderJournal.layerKey(layer);
+		
+		BoundedExecutor.Batch batch = executor.newBatch();
+		for (int start=0; start<tiles.size(); start+=TILES_PER_TASK)
+		{
+			final List<TileCoord> run = tiles.subList(start, Math.min(start + TILES_PER_TASK, tiles.size()));
+			batch.submit(new Callable<Void>()
+			{
+				@Override
+				public Void call()
+				{
+					for (final TileCoord t : run)
+					{
+						Runnable onWritten = null;
+						if (journal != null)
+						{
+							onWritten = new Runnable()
+							{
+								@Override
+								public void run()
+								{
+									journal.tileDone(layerKey, t);
+								}
+							};
+						}
+						
+						BufferedImage img = renderTile(t);
+						imageWriteQueue.write(TileRenderer.getImageFile(layerDir, t.x, t.y, imageFormat), img, imageFormat, layer.getImageCompressionLevel(), onWritten);
+					}
+					return null;
+				}
+			});
+		}
+		batch.await();
+	}
+	
+	/** Draws a single tile. Safe to call from several threads at once */
+	public BufferedImage renderTile(TileCoord tile)
+	{
+		final boolean hasAlpha = layer.getImageFormat().hasAlpha();
+		
+		BufferedImage img = new BufferedImage(tileWidth, tileHeight, hasAlpha ? BufferedImage.TYPE_INT_ARGB : BufferedImage.TYPE_INT_RGB);
+		final int[] pixels = ((DataBufferInt)img.getRaster().getDataBuffer()).getData();
+		if (!hasAlpha)
+			Arrays.fill(pixels, layer.getBackgroundColorRGB().getRGB());
+		
+		// Only used for its maths, so never applied to a rasteriser. Tiles are positioned using the camera's
+		// current view size, so it needs looking through at the right zoom first
+		final int zoom = map.getClosestZoomSize() << levelsAboveBase;
+		OrthoCamera camera = new OrthoCamera(null, tileWidth, tileHeight);
+		camera.lookAt(0, 0, 0, zoom, map.getCameraAngleRad(), map.getCameraElevationRad());
+		
+		// A tile above the base has to cover the same area as the base tiles it would be downsampled from,
+		// whose centre is a fraction of a tile away from where this zoom level's own tile grid would put it
+		final float offset = (1 - 1.0f / (1 << levelsAboveBase)) / 2;
+		TileRenderer.positionCameraForTile(camera, tile.x + offset, tile.y + offset, map.getCameraAngleRad(), map.getCameraElevationRad(), zoom);
+		
+		List<ChunkCoord> visible = world.findVisible(camera);
+		if (visible.isEmpty())
+			return img;
+		
+		TileCanvas canvas = new TileCanvas(camera, pixels, tileWidth, tileHeight);
+		
+		ColumnCache cache = columnCaches.get();
+		
+		long minX = Long.MAX_VALUE, minZ = Long.MAX_VALUE;
+		long maxX = Long.MIN_VALUE, maxZ = Long.MIN_VALUE;
+		for (ChunkCoord c : visible)
+		{
+			minX = Math.min(minX, c.x);
+			minZ = Math.min(minZ, c.z);
+			maxX = Math.max(maxX, c.x);
+			maxZ = Math.max(maxZ, c.z);
+		}
+		
+		final int gridWidth = (int)(maxX - minX + 1);
+		final int gridDepth = (int)(maxZ - minZ + 1);
+		SurfaceChunk[] grid = new SurfaceChunk[gridWidth * gridDepth];
+		for (ChunkCoord c : visible)
+			grid[(int)(c.x - minX) + (int)(c.z - minZ) * gridWidth] = cache.get(c);
+		
+		// Points further along the view direction are further from the camera, so walk the columns from
+		// the far side of the grid to the near side. For a grid of upright prisms this is a valid painter's order.
+		Vector3f forward = camera.getForward();
+		final boolean xDescending = forward.x > 0;
+		final boolean zDescending = forward.z > 0;
+		
+		final int numBlocksX = gridWidth * RawChunk.WIDTH;
+		final int numBlocksZ = gridDepth * RawChunk.DEPTH;
+		for (int i=0; i<numBlocksX; i++)
+		{
+			final int gx = xDescending ? numBlocksX-1-i : i;
+			final int cx = gx / RawChunk.WIDTH;
+			final int lx = gx % RawChunk.WIDTH;
+			
+			for (int j=0; j<numBlocksZ; j++)
+			{
+				final int gz = zDescending ? numBlocksZ-1-j : j;
+				final int cz = gz / RawChunk.DEPTH;
+				final int lz = gz % RawChunk.DEPTH;
+				
+				SurfaceChunk chunk = grid[cx + cz * gridWidth];
+				if (chunk == null)
+					continue;
+				
+				final int column = SurfaceChunk.index(lx, lz);
+				final int height = chunk.heights[column];
+				if (height < 0)
+					continue;
+				
+				final long worldX = (minX + cx) * RawChunk.WIDTH + lx;
+				final long worldZ = (minZ + cz) * RawChunk.DEPTH + lz;
+				
+				drawColumn(canvas, cache, forward, chunk, column, worldX, worldZ, height);
+			}
+		}
+		
+		return img;
+	}
+	
+	private void drawColumn(TileCanvas canvas, ColumnCache cache, Vector3f forward, SurfaceChunk chunk, final int column, final long x, final long z, final int height)
+	{
+		final int colour = chunk.colours[column];
+		final float top = height + 1;
+		
+		// Sides facing the camera, down to the top of the neighbouring column
+		if (forward.x < -0.001f)
+			drawSide(canvas, colour, chunk.lightEastWest[column], x+1, z, x+1, z+1, top, cache.getHeight(x+1, z) + 1);
+		else if (forward.x > 0.001f)
+			drawSide(canvas, colour, chunk.lightEastWest[column], x, z+1, x, z, top, cache.getHeight(x-1, z) + 1);
+		
+		if (forward.z < -0.001f)
+			drawSide(canvas, colour, chunk.lightNorthSouth[column], x+1, z+1, x, z+1, top, cache.getHeight(x, z+1) + 1);
+		else if (forward.z > 0.001f)
+			drawSide(canvas, colour, chunk.lightNorthSouth[column], x, z, x+1, z, top, cache.getHeight(x, z-1) + 1);
+		
+		// Top, lighter or darker depending on whether the land rises or falls from the north
+		final int northHeight = cache.getHeight(x, z-1);
+		float light = chunk.lightTop[column];
+		if (northHeight >= 0 && height > northHeight)
+			light *= 1 + SLOPE_SHADE;
+		else if (height < northHeight)
+			light *= 1 - SLOPE_SHADE;
+		
+		canvas.setQuad(x, top, z, x+1, top, z, x+1, top, z+1, x, top, z+1);
+		canvas.fill(shade(colour, light), true);
+	}
+	
+	private static void drawSide(TileCanvas canvas, final int colour, final float light, final long x0, final long z0, final long x1, final long z1, final float top, final float bottom)
+	{
+		if (bottom >= top)
+			return;
+		
+		canvas.setQuad(x0, top, z0, x1, top, z1, x1, bottom, z1, x0, bottom, z0);
+		canvas.fill(shade(colour, light), false);
+	}
+	
+	private static int shade(final int argb, final float light)
+	{
+		final int r = Math.min(255, (int)(((argb >> 16) & 0xFF) * light));
+		final int g = Math.min(255, (int)(((argb >> 8) & 0xFF) * light));
+		final int b = Math.min(255, (int)((argb & 0xFF) * light));
+		
+		return (argb & 0xFF000000) | (r << 16) | (g << 8) | b;
+	}
+	
+	/** Top visible block, colour and lighting for each column of one chunk */
+	private static class SurfaceChunk
+	{
+		public final int[] heights = new int[RawChunk.WIDTH * RawChunk.DEPTH];
+		public final int[] colours = new int[RawChunk.WIDTH * RawChunk.DEPTH];
+		public final float[] lightTop = new float[RawChunk.WIDTH * RawChunk.DEPTH];
+		public final float[] lightNorthSouth = new float[RawChunk.WIDTH * RawChunk.DEPTH];
+		public final float[] lightEastWest = new float[RawChunk.WIDTH * RawChunk.DEPTH];
+		
+		public static int index(final int x, final int z)
+		{
+			return x + z * RawChunk.WIDTH;
+		}
+	}
+	
+	private SurfaceChunk createSurfaceChunk(RawChunk raw)
+	{
+		SurfaceChunk result = new SurfaceChunk();
+		
+		final LightStyle lightStyle = layer.getLightStyle();
+		final int maxY = raw.getMaxY();
+		
+		for (int x=0; x<RawChunk.WIDTH; x++)
+		{
+			for (int z=0; z<RawChunk.DEPTH; z++)
+			{
+				final int column = SurfaceChunk.index(x, z);
+				
+				float red = 0, green = 0, blue = 0, alpha = 0;
+				int height = -1;
+				int lightY = -1;
+				
+				// Blend translucent blocks front to back until something opaque is reached
+				for (int y=maxY; y>=0 && alpha < 0.99f; y--)
+				{
+					final int id = raw.getBlockId(x, y, z);
+					if (id == BlockIds.AIR)
+						continue;
+					
+					final int data = raw.getBlockData(x, y, z);
+					
+					int colour = colours.getColour(id, data);
+					if (colour == 0)
+						continue;
+					
+					if (colours.getTint(id, data) != SurfaceColours.Tint.None)
+						colour = SurfaceColours.multiply(colour, getTint(colours.getTint(id, data), raw.getBiomeId(x, y, z)));
+					
+					if (lightY == -1)
+						lightY = y + 1;
+					if (height == -1 && !colours.isFlat(id, data))
+						height = y;
+					
+					final float a = (colour >>> 24) / 255f * (1 - alpha);
+					red += ((colour >> 16) & 0xFF) * a;
+					green += ((colour >> 8) & 0xFF) * a;
+					blue += (colour & 0xFF) * a;
+					alpha += a;
+				}
+				
+				if (alpha == 0)
+				{
+					result.heights[column] = -1;
+					continue;
+				}
+				
+				// Flat blocks with nothing solid under them lie on the block below
+				result.heights[column] = height != -1 ? height : lightY - 2;
+				result.colours[column] = (Math.min(255, Math.round(alpha * 255)) << 24)
+										| (Math.round(red / alpha) << 16)
+										| (Math.round(green / alpha) << 8)
+										| Math.round(blue / alpha);
+				
+				result.lightTop[column] = Chunk.getLight(lightStyle, LightFace.Top, raw, x, lightY, z);
+				result.lightNorthSouth[column] = Chunk.getLight(lightStyle, LightFace.NorthSouth, raw, x, lightY, z);
+				result.lightEastWest[column] = Chunk.getLight(lightStyle, LightFace.EastWest, raw, x, lightY, z);
+			}
+		}
+		
+		return result;
+	}
+	
+	private int getTint(SurfaceColours.Tint tint, final int biomeId)
+	{
+		Point colourCoord = BiomeIds.getColourCoord(biomeId);
+		if (tint == SurfaceColours.Tint.Grass)
+			return texturePack.getGrassColour(colourCoord.x, colourCoord.y).getRGB();
+		else
+			return texturePack.getFoliageColour(colourCoord.x, colourCoord.y).getRGB();
+	}
+	
+	/** Most recently used surface chunks for one thread. Missing chunks are cached as null so they're only looked for once */
+	private class ColumnCache
+	{
+		private final LinkedHashMap<ChunkCoord, SurfaceChunk> chunks;
+		
+		public ColumnCache()
+		{
+			chunks = new LinkedHashMap<ChunkCoord, SurfaceChunk>(CHUNK_CACHE_SIZE, 0.75f, true)
+			{
+				private static final long serialVersionUID = 1L;
+				
+				@Override
+				protected boolean removeEldestEntry(java.util.Map.Entry<ChunkCoord, SurfaceChunk> eldest)
+				{
+					return size() > CHUNK_CACHE_SIZE;
+				}
+			};
+		}
+		
+		public SurfaceChunk get(ChunkCoord coord)
+		{
+			if (chunks.containsKey(coord))
+				return chunks.get(coord);
+			
+			RawChunk raw = world.loadRawChunk(coord);
+			SurfaceChunk chunk = raw != null ? createSurfaceChunk(raw) : null;
+			chunks.put(coord, chunk);
+			return chunk;
+		}
+		
+		/** Height of the top block in a column, or -1 if there isn't one */
+		public int getHeight(final long x, final long z)
+		{
+			final long chunkX = Math.floorDiv(x, (long)RawChunk.WIDTH);
+			final long chunkZ = Math.floorDiv(z, (long)RawChunk.DEPTH);
+			
+			SurfaceChunk chunk = get(new ChunkCoord(chunkX, chunkZ));
+			if (chunk == null)
+				return -1;
+			
+			return chunk.heights[SurfaceChunk.index((int)(x - chunkX * RawChunk.WIDTH), (int)(z - chunkZ * RawChunk.DEPTH))];
+		}
+	}
+	
+	/** Projects quads with the tile's camera and fills them straight into the tile's pixels */
+	private static class TileCanvas
+	{
+		private final int[] pixels;
+		private final int width;
+		private final int height;
+		
+		// Orthographic, so world to screen is just an affine transform. Kept relative to an origin near
+		// the tile so large world coordinates don't lose precision.
+		private final double originX, originZ;
+		private final double xx, xy, xz, xw;
+		private final double yx, yy, yz, yw;
+		
+		private final double[] quadX = new double[4];
+		private final double[] quadY = new double[4];
+		
+		public TileCanvas(OrthoCamera camera, int[] pixels, final int width, final int height)
+		{
+			this.pixels = pixels;
+			this.width = width;
+			this.height = height;
+			
+			Matrix4f m = Matrix4f.mul(camera.projectionMatrix, camera.cameraMatrix, null);
+			
+			Vector3f eye = camera.getEyePosition();
+			originX = Math.floor(eye.x);
+			originZ = Math.floor(eye.z);
+			
+			// Clip space to pixels, with y flipped so the origin is top left like Project.project
+			xx = m.m00 * width / 2.0;
+			xy = m.m10 * width / 2.0;
+			xz = m.m20 * width / 2.0;
+			xw = (m.m00 * originX + m.m20 * originZ + m.m30 + 1) * width / 2.0;
+			
+			yx = -m.m01 * height / 2.0;
+			yy = -m.m11 * height / 2.0;
+			yz = -m.m21 * height / 2.0;
+			yw = height - (m.m01 * originX + m.m21 * originZ + m.m31 + 1) * height / 2.0;
+		}
+		
+		public void setQuad(long x0, float y0, long z0, long x1, float y1, long z1, long x2, float y2, long z2, long x3, float y3, long z3)
+		{
+			project(0, x0, y0, z0);
+			project(1, x1, y1, z1);
+			project(2, x2, y2, z2);
+			project(3, x3, y3, z3);
+		}
+		
+		private void project(final int i, final long x, final float y, final long z)
+		{
+			final double dx = x - originX;
+			final double dz = z - originZ;
+			
+			quadX[i] = xx * dx + xy * y + xz * dz + xw;
+			quadY[i] = yx * dx + yy * y + yz * dz + yw;
+		}
+		
+		/** Fills every pixel whose centre is inside the quad. Quads too small to cover any pixel centre can
+		 *  optionally still colour the pixel they're in, so small blocks don't vanish at low zooms.
+		 */
+		public void fill(final int argb, final boolean keepSubPixel)
+		{
+			double minY = Double.MAX_VALUE, maxY = -Double.MAX_VALUE;
+			for (int i=0; i<4; i++)
+			{
+				minY = Math.min(minY, quadY[i]);
+				maxY = Math.max(maxY, quadY[i]);
+			}
+			
+			final int startY = Math.max(0, (int)Math.ceil(minY - 0.5));
+			final int endY = Math.min(height - 1, (int)Math.ceil(maxY - 0.5) - 1);
+			
+			boolean filled = false;
+			for (int py=startY; py<=endY; py++)
+			{
+				final double sampleY = py + 0.5;
+				
+				double left = Double.MAX_VALUE, right = -Double.MAX_VALUE;
+				for (int i=0; i<4; i++)
+				{
+					final int j = (i + 1) % 4;
+					final double y0 = quadY[i], y1 = quadY[j];
+					if ((sampleY < y0) == (sampleY < y1))
+						continue;
+					
+					final double x = quadX[i] + (sampleY - y0) / (y1 - y0) * (quadX[j] - quadX[i]);
+					left = Math.min(left, x);
+					right = Math.max(right, x);
+				}
+				
+				final int startX = Math.max(0, (int)Math.ceil(left - 0.5));
+				final int endX = Math.min(width - 1, (int)Math.ceil(right - 0.5) - 1);
+				for (int px=startX; px<=endX; px++)
+				{
+					plot(px, py, argb);
+					filled = true;
+				}
+			}
+			
+			if (!filled && keepSubPixel)
+			{
+				final int px = (int)Math.floor((quadX[0] + quadX[2]) / 2);
+				final int py = (int)Math.floor((quadY[0] + quadY[2]) / 2);
+				if (px >= 0 && px < width && py >= 0 && py < height)
+					plot(px, py, argb);
+			}
+		}
+		
+		private void plot(final int x, final int y, final int argb)
+		{
+			final int index = x + y * width;
+			final int srcAlpha = argb >>> 24;
+			if (srcAlpha == 255)
+			{
+				pixels[index] = argb;
+				return;
+			}
+			
+			// Source over whatever's already been drawn behind
+			final int dst = pixels[index];
+			final int dstAlpha = dst >>> 24;
+			final int outAlpha = srcAlpha + dstAlpha * (255 - srcAlpha) / 255;
+			if (outAlpha == 0)
+				return;
+			
+			int out = outAlpha << 24;
+			for (int shift=0; shift<24; shift+=8)
+			{
+				final int s = (argb >> shift) & 0xFF;
+				final int d = (dst >> shift) & 0xFF;
+				out |= ((s * srcAlpha + d * dstAlpha * (255 - srcAlpha) / 255) / outAlpha) << shift;
+			}
+			pixels[index] = out;
+		}
+	}
+}
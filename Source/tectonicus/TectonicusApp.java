@@ -18,8 +18,10 @@ import java.nio.file.Paths;
 import java.nio.file.StandardCopyOption;
 import java.security.MessageDigest;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 import tectonicus.cache.BiomeCache;
@@ -908,16 +910,21 @@ public class TectonicusApp
 				PlayerSkinCache skinCache = new PlayerSkinCache(args, hashAlgorithm);
 				
 				World world = new World(interactiveRenderer.getRasteriser(), map.getWorldDir(), map.getDimension(), args.minecraftJar(), args.texturePack(), map.getModJars(), biomeCache, hashAlgorithm, args.getSinglePlayerName(), map.getWorldSubsetFactory(), skinCache, map.getSignFilter());	
+				world.setUseGreedyMeshing(args.useGreedyMeshing());
 				TileRenderer.setupWorldForLayer(layer, world);
 				
 				interactiveRenderer.display(world);
 				
 				interactiveRenderer.destroy();
 			}
-			else if (args.getMode() == Mode.CommandLine)
+			else if (args.getMode() == Mode.CommandLine || args.getMode() == Mode.Coordinator)
 			{
 				// Do this first before we attempt to load any caches
-				if (args.eraseOutputDir())
+				if (args.eraseOutputDir() && args.resume())
+				{
+					System.out.println("Resuming, so not deleting output dir");
+				}
+				else if (args.eraseOutputDir())
 				{
 					System.out.println("Deleting output dir: "+args.outputDir().getAbsolutePath());
 					
@@ -928,12 +935,28 @@ public class TectonicusApp
 				
 				tileRenderer.output();
 			}
+			else if (args.getMode() == Mode.Daemon)
+			{
+				tileRenderer = new TileRenderer(args, new CommandLineOutput(), hashAlgorithm);
+				
+				// Bring the map up to date, then keep it that way. The watchers start first so that
+				// chunks saved during the render are updated once it's done
+				List<RegionWatcher> watchers = tileRenderer.createWatchers();
+				tileRenderer.output();
+				tileRenderer.watch(watchers);
+			}
 			else if (args.getMode() == Mode.RenderViews)
 			{
 				tileRenderer = new TileRenderer(args, new CommandLineOutput(), hashAlgorithm);
 				
 				tileRenderer.outputViews();				
 			}
+			else if (args.getMode() == Mode.Worker)
+			{
+				tileRenderer = new TileRenderer(args, new CommandLineOutput(), hashAlgorithm);
+				
+				tileRenderer.renderShards();
+			}
 			else if (args.getMode() == Mode.ExportPlayers)
 			{
 				final Date startTime = new Date();
@@ -975,45 +998,8 @@ public class TectonicusApp
 			}
 			else if (args.getMode() == Mode.Profile)
 			{
-				/*
-				BiomeCache biomeCache = new NullBiomeCache();
-				BlockFilter blockFilter = new NullBlockFilter();
-				
-				RegionIterator it = new AllRegionsIterator(args.worldDir());
-				File regionFile = it.next();
-				Region region = new Region(regionFile);
-				ChunkCoord chunkCoord = region.getContainedChunks()[0];
-				
-				Chunk c = region.loadChunk(chunkCoord, biomeCache, blockFilter);
-				
-				// createGeometry profiling
-				Rasteriser rasteriser = RasteriserFactory.createRasteriser(RasteriserType.Lwjgl, DisplayType.Offscreen, 512, 312, 24, 8, 16, 4);
-				NullBlockMaskFactory mask = new NullBlockMaskFactory();
-				TexturePack texturePack = new TexturePack(rasteriser, args.minecraftJar(), args.texturePack());
-				World world = new World(rasteriser, args.worldDir(), args.getDimensionDir(), args.minecraftJar(), args.texturePack(), biomeCache, hashAlgorithm, "Player", new FullWorldSubsetFactory());
-				
-				// Warm it up
-				for (int i=0; i<100000; i++)
-				{
-					c.createGeometry(rasteriser, world, world.getBlockTypeRegistry(), mask, texturePack);
-				}
-				
-				final long start = System.currentTimeMillis();
-				
-				for (long i=0; i<10000000000l; i++)
-				{
-					c.createGeometry(rasteriser, world, world.getBlockTypeRegistry(), mask, texturePack);
-				}
-				
-				final long end = System.currentTimeMillis();
-				
-				final long time = end - start;
-				
-				System.out.println("Total time: "+time+"ms");
-				
-				// Original:			5120ms
-				// Two-loop version:	5117ms
-				*/
+				Profiler profiler = new Profiler(args, hashAlgorithm);
+				profiler.run();
 			}
 		}
 		catch (Exception e)
@@ -1125,6 +1111,14 @@ public class TectonicusApp
 				args.setMode(Mode.RenderViews);
 			else if (modeStr.equalsIgnoreCase("interactive"))
 				args.setMode(Mode.Interactive);
+			else if (modeStr.equalsIgnoreCase("profile"))
+				args.setMode(Mode.Profile);
+			else if (modeStr.equalsIgnoreCase("coordinator"))
+				args.setMode(Mode.Coordinator);
+			else if (modeStr.equalsIgnoreCase("worker"))
+				args.setMode(Mode.Worker);
+			else if (modeStr.equalsIgnoreCase("daemon"))
+				args.setMode(Mode.Daemon);
 		}
 		else
 		{
@@ -1132,6 +1126,9 @@ public class TectonicusApp
 			args = CommandLineParser.parseCommandLine(argArray);
 		}
 		
+		if (args != null && (parser.getBoolean("resume", false) || Arrays.asList(argArray).contains("--resume")))
+			args.setResume(true);
+		
 		if (args != null)
 		{
 			TectonicusApp app = new TectonicusApp(args);
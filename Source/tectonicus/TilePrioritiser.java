@@ -0,0 +1,141 @@
+/*
+ * Copyright (c) 2012-2019, John Campbell and other contributors.  All rights reserved.
+ *
+ * This file is part of Tectonicus. It is subject to the license terms in the LICENSE file found in
+ * the top-level directory of this distribution.  The full list of project contributors is contained
+ * in the AUTHORS file found in the same location.
+ *
+ */
+
+package tectonicus;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.PriorityQueue;
+
+import tectonicus.world.subset.RegionIterator;
+
+/** Orders tiles so the areas people are most likely to look at are rendered first. Tiles are ranked by how
+ *  far they are from the nearest hotspot, which are usually the spawn point, players, configured places
+ *  of interest and the chunks saved most recently.
+ */
+public class TilePrioritiser
+{
+	private final List<TileCoord> hotspots;
+	
+	public TilePrioritiser()
+	{
+		this.hotspots = new ArrayList<TileCoord>();
+	}
+	
+	public void addHotspot(TileCoord tile)
+	{
+		hotspots.add(tile);
+	}
+	
+	public int numHotspots()
+	{
+		return hotspots.size();
+	}
+	
+	/** Squared distance in tiles from the tile to the nearest hotspot */
+	public long distanceSq(TileCoord tile)
+	{
+		long nearest = Long.MAX_VALUE;
+		for (TileCoord h : hotspots)
+		{
+			final long dx = tile.x - h.x;
+			final long dy = tile.y - h.y;
+			nearest = Math.min(nearest, dx*dx + dy*dy);
+		}
+		return nearest;
+	}
+	
+	/** Returns the tiles nearest a hotspot first. Tiles the same distance away stay in the order they were given,
+	 *  as do all of them if there are no hotspots.
+	 */
+	public List<TileCoord> order(Iterable<TileCoord> tiles)
+	{
+		List<TileCoord> ordered = new ArrayList<TileCoord>();
+		for (TileCoord t : tiles)
+			ordered.add(t);
+		
+		if (hotspots.isEmpty())
+			return ordered;
+		
+		// Each key is the distance above the tile's index, so sorting the keys sorts the tiles
+		long[] keys = new long[ordered.size()];
+		for (int i=0; i<keys.length; i++)
+		{
+			final long distance = Math.min(distanceSq(ordered.get(i)), Integer.MAX_VALUE);
+			keys[i] = (distance << 32) | i;
+		}
+		Arrays.sort(keys);
+		
+		List<TileCoord> sorted = new ArrayList<TileCoord>(keys.length);
+		for (long key : keys)
+			sorted.add(ordered.get((int)key));
+		
+		return sorted;
+	}
+	
+	/** Finds the chunks saved most recently from the timestamps in the region headers, newest first */
+	public static List<ChunkCoord> findRecentlySaved(RegionIterator it, final int maxChunks)
+	{
+		// Oldest at the head, so it's the one dropped when there are too many
+		PriorityQueue<SavedChunk> newest = new PriorityQueue<SavedChunk>();
+		
+		while (it.hasNext())
+		{
+			File regionFile = it.next();
+			if (regionFile == null)
+				continue;
+			
+			RegionCoord regionCoord = Region.extractRegionCoord(regionFile);
+			int[] timestamps = Region.readTimestamps(regionFile);
+			if (regionCoord == null || timestamps == null)
+				continue;
+			
+			for (int i=0; i<timestamps.length; i++)
+			{
+				if (timestamps[i] == 0)
+					continue;
+				
+				if (newest.size() < maxChunks || timestamps[i] > newest.peek().timestamp)
+				{
+					final long chunkX = regionCoord.x * RegionCoord.REGION_WIDTH + (i % RegionCoord.REGION_WIDTH);
+					final long chunkZ = regionCoord.z * RegionCoord.REGION_HEIGHT + (i / RegionCoord.REGION_WIDTH);
+					newest.add(new SavedChunk(new ChunkCoord(chunkX, chunkZ), timestamps[i]));
+					
+					if (newest.size() > maxChunks)
+						newest.poll();
+				}
+			}
+		}
+		
+		List<ChunkCoord> chunks = new ArrayList<ChunkCoord>();
+		while (!newest.isEmpty())
+			chunks.add(0, newest.poll().coord);
+		return chunks;
+	}
+	
+	private static class SavedChunk implements Comparable<SavedChunk>
+	{
+		public final ChunkCoord coord;
+		public final int timestamp;
+		
+		public SavedChunk(ChunkCoord coord, final int timestamp)
+		{
+			this.coord = coord;
+			this.timestamp = timestamp;
+		}
+		
+		@Override
+		public int compareTo(SavedChunk other)
+		{
+			return Integer.compare(timestamp, other.timestamp);
+		}
+	}
+}
@@ -10,9 +10,9 @@
 package tectonicus;
 
 import org.lwjgl.util.vector.Vector3f;
-import tectonicus.PlayerIconAssembler.WriteIconTask;
 import tectonicus.cache.BiomeCache;
 import tectonicus.cache.CacheUtil;
+import tectonicus.cache.ChunkPresenceIndex;
 import tectonicus.cache.FileTileCache;
 import tectonicus.cache.FileViewCache;
 import tectonicus.cache.NullTileCache;
@@ -26,6 +26,7 @@ import tectonicus.cache.swap.HddTileListFactory;
 import tectonicus.configuration.ChestFilter;
 import tectonicus.configuration.Configuration;
 import tectonicus.configuration.Configuration.Dimension;
+import tectonicus.configuration.Configuration.Mode;
 import tectonicus.configuration.Configuration.RenderStyle;
 import tectonicus.configuration.ImageFormat;
 import tectonicus.configuration.Layer;
@@ -33,6 +34,9 @@ import tectonicus.configuration.PlayerFilter;
 import tectonicus.configuration.PortalFilter;
 import tectonicus.configuration.SignFilter;
 import tectonicus.configuration.ViewFilter;
+import tectonicus.metrics.Metrics;
+import tectonicus.metrics.MetricsProgressListener;
+import tectonicus.metrics.MetricsServer;
 import tectonicus.rasteriser.Rasteriser;
 import tectonicus.rasteriser.RasteriserFactory;
 import tectonicus.rasteriser.RasteriserFactory.DisplayType;
@@ -44,6 +48,7 @@ import tectonicus.raw.RawChunk;
 import tectonicus.raw.SignEntity;
 import tectonicus.renderer.OrthoCamera;
 import tectonicus.texture.TexturePack;
+import tectonicus.util.BoundedExecutor;
 import tectonicus.util.BoundingBox;
 import tectonicus.util.FileUtils;
 import tectonicus.util.JsObjectWriter;
@@ -69,19 +74,24 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.PrintWriter;
+import java.lang.management.ManagementFactory;
 import java.net.URL;
 import java.nio.file.Files;
 import java.security.MessageDigest;
 import java.text.DecimalFormat;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Scanner;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class TileRenderer
 {
@@ -101,6 +111,21 @@ public class TileRenderer
 	
 	public static final Color clearColour = new Color(229, 227, 223);
 	
+	private static final int REGIONS_PER_RENDER_WORKER = 4;
+	
+	// Surface tiles are drawn in batches between progress updates
+	private static final int SURFACE_TILES_PER_BATCH = 256;
+	
+	// Rendered and downsampled before everything else, then the rest go in batches twice the size of the last
+	private static final int FIRST_PRIORITY_BATCH = 1024;
+	
+	// Most recently saved chunks to render around first
+	private static final int NUM_RECENT_CHUNKS = 256;
+	
+	private static final int TILES_PER_SHARD_SIDE = 16;
+	private static final long SHARD_POLL_MILLIS = 500;
+	private static final long STALE_SHARD_MILLIS = 10 * 60 * 1000;
+	
 	private final Configuration args;
 	
 	private final MessageDigest hashAlgorithm;
@@ -116,6 +141,10 @@ public class TileRenderer
 	
 	private RegionHashStore regionHashStore;
 	
+	// The last map output rendered, along with its world, so watch can carry on with them
+	private tectonicus.configuration.Map lastMap;
+	private World lastWorld;
+	
 	private HddTileListFactory hddTileListFactory;
 	
 	private OrthoCamera camera;
@@ -124,20 +153,29 @@ public class TileRenderer
 	
 	private ChangeFile changedFileList;
 	
+	private RenderJournal journal;
+	
+	private final ShardQueue shardQueue;
+	
 	private PlayerIconAssembler playerIconAssembler;
 	
 	private final ProgressListener progressListener;
 	
 	private MemoryMonitor memoryMonitor;
 	
-	private boolean abort;
+	private MetricsServer metricsServer;
+	
+	private volatile boolean abort;
+	
+	// When to stop rendering base tiles, or 0 for no limit
+	private long renderDeadline;
 	
 	public TileRenderer(Configuration args, ProgressListener listener, MessageDigest hashAlgorithm) throws Exception
 	{
 		this.args = args;
 		this.hashAlgorithm = hashAlgorithm;
 		
-		this.progressListener = listener;
+		this.progressListener = new MetricsProgressListener(listener);
 		
 		this.tileWidth = args.tileSize();
 		this.tileHeight = args.tileSize();
@@ -148,17 +186,37 @@ public class TileRenderer
 		
 		playerSkinCache = new PlayerSkinCache(args, hashAlgorithm);
 		
-		hddTileListFactory = new HddTileListFactory( new File(args.cacheDir(), "tileLists") );
+		shardQueue = new ShardQueue( new File(args.cacheDir(), "shards") );
+		
+		// Workers share the coordinator's cache dir, so mustn't clear out its tile lists
+		if (args.getMode() == Mode.Worker)
+			hddTileListFactory = new HddTileListFactory( new File(getWorkerDir(), "tileLists") );
+		else
+			hddTileListFactory = new HddTileListFactory( new File(args.cacheDir(), "tileLists") );
 		
 		System.out.println("Creating player icon assembler");
 		playerIconAssembler = new PlayerIconAssembler(playerSkinCache);
 		
 		memoryMonitor = new MemoryMonitor();
 		
+		if (args.getMetricsPort() > 0)
+		{
+			try
+			{
+				metricsServer = new MetricsServer(args.getMetricsPort(), Metrics.registry);
+				metricsServer.start();
+			}
+			catch (Exception e)
+			{
+				System.err.println("Couldn't start metrics server on port "+args.getMetricsPort());
+				e.printStackTrace();
+			}
+		}
+		
 		{
 			System.out.println("Initialising display...");
 			
-			rasteriser = RasteriserFactory.createRasteriser(args.getRasteriserType(), DisplayType.Offscreen, 2048, 2048, args.colourDepth(), args.alphaBits(), 24, args.numSamples());
+			rasteriser = createOffscreenRasteriser();
 		
 			if (rasteriser != null)
 			{
@@ -184,6 +242,9 @@ public class TileRenderer
 		rasteriser.destroy();
 		
 		playerSkinCache.destroy();
+		
+		if (metricsServer != null)
+			metricsServer.stop();
 	}
 	
 	public void abort()
@@ -203,21 +264,42 @@ public class TileRenderer
 		
 		Date startTime = new Date();
 		
+		Metrics.registry.reset();
+		
+		renderDeadline = args.getMaxRenderTime() > 0 ? System.currentTimeMillis() + args.getMaxRenderTime() * 60 * 1000L : 0;
+		boolean ranOutOfTime = false;
+		
 		FileUtils.ensureExists(exportDir);
 		FileUtils.ensureExists(args.cacheDir());
 		
 		TempArea tempArea = new TempArea( new File(args.cacheDir(), "temp") );
 		
-		changedFileList = new ChangeFile(new File(args.outputDir(), "changed.txt"));
+		journal = new RenderJournal(new File(args.cacheDir(), "checkpoint"), FileTileCache.calcOptionsString(args), args.resume());
+		
+		changedFileList = new ChangeFile(new File(args.outputDir(), "changed.txt"), journal.isResuming());
+		journal.setChangeFile(changedFileList);
+		
+		if (args.getMode() == Mode.Coordinator)
+			shardQueue.reset();
 		
 		for (tectonicus.configuration.Map map : args.getMaps())
 		{
+			if (journal.isDone(map.getId()+"/done"))
+			{
+				System.out.println("Map "+map.getId()+" was finished before the render was interrupted, skipping");
+				continue;
+			}
+			
 			// Clear shared state?
 			// ..
 			
 			// Clear region cache?
 			// ..
 			
+			// Let the previous map's world go before this one is loaded
+			lastMap = null;
+			lastWorld = null;
+			
 			File mapDir = new File(exportDir, map.getId());
 			FileUtils.ensureExists(mapDir);
 			
@@ -228,48 +310,23 @@ public class TileRenderer
 			// Create the world for this map
 			World world = new World(rasteriser, map.getWorldDir(), map.getDimension(), args.minecraftJar(), args.texturePack(), map.getModJars(),
 									biomeCache, hashAlgorithm, args.getSinglePlayerName(), subset, playerSkinCache, map.getSignFilter());
+			world.setUseGreedyMeshing(args.useGreedyMeshing());
 			
 			// Setup camera
-			setupInitialCamera(map);
+			setupInitialCamera(camera, map);
 			
 			WorldVectors worldVectors = calcWorldVectors();
 			
-			// FIXME: These paths need to change per map
-			File portalsFile = tempArea.generateTempFile("portals", ".list");
-			File signsFile = tempArea.generateTempFile("signs", ".list");
-			File viewsFile = tempArea.generateTempFile("views", ".list");
-			
-			WorldStats worldStats = preProcess(world, map.getDimension(), map.getSignFilter(), map.getPortalFilter(), map.getViewFilter(), map.getChestFilter(), portalsFile, signsFile, viewsFile);
+			WorldStats worldStats = null;
+			if (journal.isDone(map.getId()+"/preprocess"))
+				worldStats = resumePreProcess(world, map);
+			if (worldStats == null)
+				worldStats = preProcessAndOutputMarkers(world, map, mapDir, tempArea);
 			
-			// Find visible tiles
-			HddTileList visibleTiles = findVisibleTiles(world, camera, worldStats.numChunks());
+			TilePrioritiser prioritiser = createPrioritiser(world, map);
 			
-			
-			// Figure out which tiles we need to render
-			System.out.println("Finding changed tiles since last render...");
-			progressListener.onTaskStarted(Task.FIND_CHANGED_TILES.toString());
-			
-			// Output signs
-			outputSigns(new File(mapDir, "signs.js"), signsFile, map, world.getSpawnPosition());
-			
-			// Output players
-			outputPlayers(new File(mapDir, "players.js"), new File(exportDir, "Images/PlayerIcons/"), map, map.getPlayerFilter(), world.players(map.getDimension()), playerIconAssembler, world.getSpawnPosition());
-			
-			// Output beds
-			outputBeds(mapDir, map, map.getPlayerFilter(), world.players(null), world.getSpawnPosition());
-			
-			// Output portals
-			worldStats.setNumPortals((outputPortals(new File(mapDir, "portals.js"), portalsFile, map, world.getSpawnPosition())));
-			
-			// Output views
-			outputViews(new File(mapDir, "views.js"), viewsFile, map, map.getViewConfig().getImageFormat());
-			
-			outputChests(new File(mapDir, "chests.js"), map, world.getSpawnPosition(), world.getChests());
-			
-			// Render views
-			FileViewCache viewCache = createViewCache(args.cacheDir(), map, tempArea, hashAlgorithm, regionHashStore);
-			ViewRenderer viewRenderer = new ViewRenderer(rasteriser, viewCache, args.getNumDownsampleThreads(), map.getViewConfig());
-			viewRenderer.output(world, mapDir, viewsFile, changedFileList);
+			// Only needed for layers whose changed tiles weren't already found by an interrupted render
+			HddTileList visibleTiles = null;
 			
 			TileCoordBounds bounds = null;
 			
@@ -285,20 +342,93 @@ public class TileRenderer
 				String optionString = FileTileCache.calcOptionsString(args);
 				TileCache tileCache = createTileCache(args.useCache(), optionString, layer.getImageFormat(), args.cacheDir(), map, layer, hashAlgorithm);
 			
-				File baseTilesDir = DirUtils.getZoomDir(exportDir, layer, numZoomLevels);
-				FileUtils.ensureExists(baseTilesDir);
-
-				// Find changed tiles
-				HddTileList changedTiles = tileCache.findChangedTiles(hddTileListFactory, visibleTiles, regionHashStore, world, map, camera, map.getClosestZoomSize(), tileWidth, tileHeight, baseTilesDir);
-				
-				// Trim changed tiles to size
-				changedTiles = trimTileList(changedTiles, args.maxTiles());
-				
-				// Render base tiles
-				renderBaseTiles(world, map, layer, baseTilesDir, changedTiles, tileCache);
-				
-				// Create downsampled layers
-				bounds = downsample(changedTiles, exportDir, layer, baseTilesDir, tileCache);
+				try
+				{
+					File baseTilesDir = DirUtils.getZoomDir(exportDir, layer, numZoomLevels);
+					FileUtils.ensureExists(baseTilesDir);
+					
+					final String layerKey = RenderJournal.layerKey(layer);
+					
+					// Carry on with the tiles an interrupted render found, since tiles it finished won't show as changed any more
+					List<TileCoord> lodTiles = new ArrayList<>();
+					HddTileList changedTiles = resumeTileList(layerKey, tileCache, lodTiles);
+					final boolean isResumingLayer = changedTiles != null;
+					
+					if (!isResumingLayer)
+					{
+						// Find changed tiles
+						System.out.println("Finding changed tiles since last render...");
+						progressListener.onTaskStarted(Task.FIND_CHANGED_TILES.toString());
+						
+						if (visibleTiles == null)
+							visibleTiles = findVisibleTiles(world, camera, worldStats.numChunks());
+						
+						changedTiles = tileCache.findChangedTiles(hddTileListFactory, visibleTiles, regionHashStore, world, map, camera, map.getClosestZoomSize(), tileWidth, tileHeight, baseTilesDir);
+						
+						// Trim changed tiles to size
+						changedTiles = trimTileList(changedTiles, args.maxTiles(), prioritiser);
+					}
+					
+					// Find the zoom level tiles that the changed tiles feed into
+					List<HddTileList> levelTiles = Downsampler.findZoomTiles(changedTiles, numZoomLevels, hddTileListFactory);
+					File[] levelDirs = createZoomDirs(layer, !tileCache.isUsingExistingCache() && !isResumingLayer);
+					
+					if (!isResumingLayer)
+					{
+						lodTiles = findLodTiles(layer, levelDirs, levelTiles);
+						saveTileList(layerKey, changedTiles, tileCache, lodTiles);
+					}
+					
+					// Draw a rough overview straight from the chunks, to look at while the base tiles render
+					if (!journal.isDone(layerKey+"/lod") && !lodTiles.isEmpty())
+					{
+						renderLodTiles(world, map, layer, levelDirs, lodTiles);
+						
+						HddTileList topTiles = levelTiles.get(numZoomLevels - 1);
+						outputWorldVectors( new File(mapDir, "worldVectors.js"), map.getId(), worldVectors, new TileCoordBounds(topTiles.getAbsoluteMinCoord(), topTiles.getAbsoluteMaxCoord()), world.getLevelDat(), worldStats.numChunks(), world.numPlayers(), map);
+						publishEarly();
+						
+						if (!abort)
+							journal.markDone(layerKey+"/lod");
+					}
+					
+					// Render base tiles, most important first
+					HddTileList renderedTiles = changedTiles;
+					if (!journal.isDone(layerKey+"/render"))
+					{
+						List<TileCoord> toRender = prioritiser.order(findUnfinishedTiles(changedTiles, journal.getDoneTiles(layerKey)));
+						final int numFinished = renderPrioritised(world, map, layer, baseTilesDir, levelDirs, toRender, tileCache);
+						
+						if (numFinished < toRender.size() && !abort)
+						{
+							if (isOutOfTime())
+								System.out.println("Out of render time, leaving "+(toRender.size() - numFinished)+" base tiles for the next render");
+							else
+								System.out.println((toRender.size() - numFinished)+" base tiles weren't rendered, leaving them for the next render");
+							ranOutOfTime = true;
+							
+							// Only downsample what was rendered, on top of the overview rather than replacing it. The journal
+							// has every tile whose image was written, which with several workers isn't just the first numFinished
+							renderedTiles = hddTileListFactory.createList();
+							for (TileCoord t : journal.getDoneTiles(layerKey))
+								renderedTiles.add(t);
+							
+							levelTiles = Downsampler.findZoomTiles(renderedTiles, numZoomLevels, hddTileListFactory);
+							lodTiles = new ArrayList<>();
+						}
+						else if (!abort)
+						{
+							journal.markDone(layerKey+"/render");
+						}
+					}
+					
+					// Create downsampled layers
+					bounds = downsample(renderedTiles, levelTiles, levelDirs, lodTiles, layer, baseTilesDir, renderedTiles == changedTiles);
+				}
+				finally
+				{
+					tileCache.close();
+				}
 			}
 			
 			outputIcons(map, world.getBlockTypeRegistry(), world.getTexturePack());			
@@ -309,8 +439,17 @@ public class TileRenderer
 			
 			// Output world vectors for this camera config
 			outputWorldVectors( new File(mapDir, "worldVectors.js"), map.getId(), worldVectors, bounds, world.getLevelDat(), worldStats.numChunks(), world.numPlayers(), map);
+			
+			if (!abort && !ranOutOfTime)
+				journal.markDone(map.getId()+"/done");
+			
+			lastMap = map;
+			lastWorld = world;
 		}
 		
+		if (args.getMode() == Mode.Coordinator)
+			shardQueue.markFinished();
+		
 		// Output html resources
 		// TODO: Should only load texture pack once and share between this and world loading
 		outputHtmlResources( new TexturePack(rasteriser, args.minecraftJar(), args.texturePack(), args.getMap(0).getModJars()), playerIconAssembler, args.getDefaultSkin() );
@@ -335,11 +474,136 @@ public class TileRenderer
 		
 		outputChangedFile();
 		
+		if (!abort && !ranOutOfTime)
+			journal.markComplete();
+		journal.close();
+		
+		File metricsFile = new File(exportDir, "metrics.json");
+		System.out.println("Outputting metrics to "+metricsFile.getAbsolutePath());
+		Metrics.registry.writeJson(metricsFile);
+		
 		System.out.println("Render complete - total time "+time);
 		
 		return new Result(abort, outputHtmlFile);
 	}
 	
+	/** Renders base tiles for a coordinator running elsewhere, taking shards from the shared queue until the
+	 *  coordinator says it's finished. Everything else (preprocessing, downsampling, html) is left to the coordinator.
+	 */
+	public Result renderShards()
+	{
+		progressListener.onTaskStarted(Task.STARTING_RENDERER.toString());
+		
+		final long startTime = System.currentTimeMillis();
+		
+		File workerDir = getWorkerDir();
+		FileUtils.ensureExists(workerDir);
+		
+		System.out.println("Starting render worker, waiting for shards in "+shardQueue.getBaseDir().getAbsolutePath());
+		
+		// Only kept as a record of what this worker rendered, the coordinator writes the real changed file
+		changedFileList = new ChangeFile(new File(workerDir, "changed.txt"));
+		
+		TileCache tileCache = new NullTileCache();
+		
+		tectonicus.configuration.Map map = null;
+		Layer layer = null;
+		World world = null;
+		File layerDir = null;
+		
+		int numShards = 0;
+		int numTiles = 0;
+		
+		while (!abort)
+		{
+			ShardQueue.Shard shard = shardQueue.claim();
+			if (shard == null)
+			{
+				if (shardQueue.isFinishedSince(startTime))
+					break;
+				
+				sleep(SHARD_POLL_MILLIS);
+				continue;
+			}
+			
+			try
+			{
+				System.out.println("Rendering shard "+shard.getName()+" ("+shard.tiles.size()+" tiles)");
+				progressListener.onTaskStarted(Task.RENDER_BASE_TILES.toString());
+				
+				if (map == null || !map.getId().equals(shard.mapId))
+				{
+					if (world != null)
+						world.flushChunkCache();
+					
+					map = findMap(shard.mapId);
+					layer = null;
+					
+					BiomeCache biomeCache = CacheUtil.createBiomeCache(args.minecraftJar(), args.cacheDir(), map, hashAlgorithm);
+					world = new World(rasteriser, map.getWorldDir(), map.getDimension(), args.minecraftJar(), args.texturePack(), map.getModJars(),
+									biomeCache, hashAlgorithm, args.getSinglePlayerName(), map.getWorldSubsetFactory(), playerSkinCache, map.getSignFilter());
+					world.setUseGreedyMeshing(args.useGreedyMeshing());
+					
+					setupInitialCamera(camera, map);
+				}
+				
+				if (layer == null || !layer.getId().equals(shard.layerId))
+				{
+					layer = findLayer(map, shard.layerId);
+					setupWorldForLayer(layer, world);
+					
+					layerDir = DirUtils.getZoomDir(exportDir, layer, numZoomLevels);
+					FileUtils.ensureExists(layerDir);
+				}
+				
+				ImageWriteQueue imageWriteQueue = new ImageWriteQueue(args.getNumDownsampleThreads());
+				
+				int done = 0;
+				for (TileCoord t : shard.tiles)
+				{
+					if (abort)
+						break;
+					
+					progressListener.onTaskUpdate(done, shard.tiles.size());
+					
+					renderTile(world, rasteriser, camera, t, map, layer, layerDir, tileCache, imageWriteQueue);
+					shardQueue.heartbeat(shard);
+					
+					done++;
+				}
+				
+				// Tiles only count once they're on disk
+				imageWriteQueue.waitUntilFinished();
+				
+				if (abort)
+				{
+					shardQueue.release(shard);
+				}
+				else
+				{
+					shardQueue.complete(shard);
+					
+					numShards++;
+					numTiles += done;
+				}
+			}
+			catch (Exception e)
+			{
+				e.printStackTrace();
+				shardQueue.release(shard);
+				
+				// Don't spin on a shard we can't render, give another worker a chance at it
+				sleep(SHARD_POLL_MILLIS);
+			}
+		}
+		
+		changedFileList.close();
+		
+		System.out.println("Render worker finished - rendered "+numTiles+" tiles in "+numShards+" shards, total time "+Util.getElapsedTime(new Date(startTime), new Date()));
+		
+		return new Result(abort, null);
+	}
+	
 	// Just renders views
 	public Result outputViews()
 	{
@@ -367,6 +631,7 @@ public class TileRenderer
 			// Create the world for this map
 			World world = new World(rasteriser, map.getWorldDir(), map.getDimension(), args.minecraftJar(), args.texturePack(), map.getModJars(),
 									biomeCache, hashAlgorithm, args.getSinglePlayerName(), subset, playerSkinCache, map.getSignFilter());
+			world.setUseGreedyMeshing(args.useGreedyMeshing());
 			
 			// TODO: Load custom blocks here
 			
@@ -396,6 +661,327 @@ public class TileRenderer
 		return new Result(abort, null);
 	}
 	
+	/** Keeps the maps up to date as the game saves chunks, re-rendering only the tiles over chunks saved since.
+	 *  Meant to be run after a full render, and carries on until aborted. Markers and world stats aren't updated.
+	 *  The watchers come from createWatchers, called before the full render so chunks saved during it aren't missed.
+	 */
+	public void watch(List<RegionWatcher> watchers)
+	{
+		// Updates are small enough to just start over if interrupted
+		journal = null;
+		renderDeadline = 0;
+		
+		List<WatchedMap> watchedMaps = new ArrayList<>();
+		for (int i=0; i<watchers.size() && !abort; i++)
+			watchedMaps.add(startWatching(args.getMap(i), watchers.get(i)));
+		
+		if (!watchedMaps.isEmpty())
+			System.out.println("Watching for saved chunks, checking every "+args.getPollInterval()+" seconds if changes aren't reported sooner");
+		
+		// Maps take turns waiting, so every map is checked once per poll interval
+		final long waitMillis = Math.max(args.getPollInterval() * 1000L / Math.max(watchedMaps.size(), 1), 1000);
+		
+		while (!abort && !watchedMaps.isEmpty())
+		{
+			for (WatchedMap watched : watchedMaps)
+			{
+				if (abort)
+					break;
+				
+				try
+				{
+					Map<File, List<ChunkCoord>> changes = watched.watcher.waitForChanges(waitMillis);
+					if (!changes.isEmpty())
+						updateChangedChunks(watched, changes);
+				}
+				catch (InterruptedException e)
+				{
+					abort = true;
+				}
+				catch (Exception e)
+				{
+					// Keep watching, the chunks will be picked up again next time they're saved
+					e.printStackTrace();
+				}
+			}
+		}
+		
+		for (RegionWatcher watcher : watchers)
+			watcher.close();
+		
+		System.out.println("Stopped watching for saved chunks");
+	}
+	
+	/** Starts a watcher for each map, in the same order as the maps. Their baseline is the region headers as they
+	 *  are now, so anything saved from here on is reported by the first check in watch.
+	 */
+	public List<RegionWatcher> createWatchers()
+	{
+		List<RegionWatcher> watchers = new ArrayList<>();
+		for (tectonicus.configuration.Map map : args.getMaps())
+		{
+			File regionDir = new File(World.findDimensionDir(map.getWorldDir(), map.getDimension()), "region");
+			watchers.add(new RegionWatcher(regionDir, SaveFormat.detect(regionDir)));
+		}
+		return watchers;
+	}
+	
+	/** Sets up a map to compare saved chunks against. The last map output rendered keeps its world, chunk hashes
+	 *  and presence index as they are. Any other map gets a new world and a presence index read from the region
+	 *  headers, without loading any chunks, and its chunks are only hashed as they're saved.
+	 */
+	private WatchedMap startWatching(tectonicus.configuration.Map map, RegionWatcher watcher)
+	{
+		if (map == lastMap && lastWorld != null && lastWorld.getChunkPresenceIndex() != null)
+		{
+			System.out.println("Watching map "+map.getId()+" with the world from the last render");
+			
+			WatchedMap watched = new WatchedMap(map, lastWorld, watcher, regionHashStore, lastWorld.getChunkPresenceIndex());
+			if (!map.getLayers().isEmpty())
+				watched.currentLayer = map.getLayers().get(map.getLayers().size() - 1);
+			return watched;
+		}
+		
+		BiomeCache biomeCache = CacheUtil.createBiomeCache(args.minecraftJar(), args.cacheDir(), map, hashAlgorithm);
+		
+		World world = new World(rasteriser, map.getWorldDir(), map.getDimension(), args.minecraftJar(), args.texturePack(), map.getModJars(),
+								biomeCache, hashAlgorithm, args.getSinglePlayerName(), map.getWorldSubsetFactory(), playerSkinCache, map.getSignFilter());
+		world.setUseGreedyMeshing(args.useGreedyMeshing());
+		
+		// The shared hash store only has the last map rendered, so each other map keeps its own. Tiles over chunks
+		// that haven't been hashed yet won't match the tile cache, so are always drawn again when they change
+		File watchDir = new File(new File(args.cacheDir(), "watch"), map.getId());
+		WatchedMap watched = new WatchedMap(map, world, watcher, new RegionHashStore(watchDir), new ChunkPresenceIndex());
+		
+		System.out.println("Reading region headers for map "+map.getId()+" in "+watcher.getRegionDir().getAbsolutePath());
+		
+		RegionIterator it = world.createRegionIterator();
+		while (it.hasNext() && !abort)
+		{
+			File regionFile = it.next();
+			if (regionFile == null)
+				continue;
+			
+			try
+			{
+				Region region = new Region(regionFile);
+				watched.presenceIndex.addRegion(region.getCoord(), region.getChunkPresence());
+			}
+			catch (Exception e)
+			{
+				e.printStackTrace();
+			}
+		}
+		world.setChunkPresenceIndex(watched.presenceIndex);
+		
+		return watched;
+	}
+	
+	/** Hashes the given chunks of a region and records where they are */
+	private void indexChunks(WatchedMap watched, File regionFile, List<ChunkCoord> chunks)
+	{
+		Region region = null;
+		try
+		{
+			region = new Region(regionFile);
+		}
+		catch (Exception e)
+		{
+			e.printStackTrace();
+			return;
+		}
+		
+		WorldStats unusedStats = new WorldStats();
+		
+		Map<ChunkCoord, byte[]> hashes = new HashMap<>();
+		for (ChunkCoord coord : chunks)
+		{
+			// Same filter as when the chunks were hashed for the full render, so unchanged chunks hash the same
+			Chunk c = region.loadChunk(coord, watched.world.getBiomeCache(), new NullBlockFilter(), unusedStats);
+			if (c == null)
+			{
+				watched.presenceIndex.setPresent(coord, false);
+				continue;
+			}
+			
+			c.calculateHash(hashAlgorithm);
+			hashes.put(c.getCoord(), c.getHash());
+			
+			RawChunk raw = c.getRawChunk();
+			watched.presenceIndex.setPresent(c.getCoord(), true);
+			watched.presenceIndex.setHeights(c.getCoord(), raw.getMinY(), raw.getMaxY(), raw.getSectionMask());
+		}
+		
+		if (!hashes.isEmpty())
+			watched.hashStore.updateHashes(region.getCoord(), hashes);
+	}
+	
+	/** Re-renders and downsamples the tiles of every layer in the map that the saved chunks appear in */
+	private void updateChangedChunks(WatchedMap watched, Map<File, List<ChunkCoord>> changes)
+	{
+		final long start = System.currentTimeMillis();
+		
+		World world = watched.world;
+		tectonicus.configuration.Map map = watched.map;
+		
+		setupInitialCamera(camera, map);
+		
+		// Starting a new factory clears out the lists from the last update
+		hddTileListFactory = new HddTileListFactory( new File(args.cacheDir(), "tileLists") );
+		HddTileList affectedTiles = hddTileListFactory.createList();
+		
+		// Tiles over where the chunks were before they were saved as well as where they are now, in case they've got shorter
+		int numChunks = 0;
+		for (List<ChunkCoord> chunks : changes.values())
+		{
+			for (ChunkCoord coord : chunks)
+			{
+				if (world.contains(coord))
+					addTilesForChunk(world, camera, coord, affectedTiles);
+				numChunks++;
+			}
+		}
+		
+		List<RegionCoord> regions = new ArrayList<>();
+		for (Map.Entry<File, List<ChunkCoord>> entry : changes.entrySet())
+		{
+			regions.add(Region.extractRegionCoord(entry.getKey()));
+			indexChunks(watched, entry.getKey(), entry.getValue());
+		}
+		world.reloadRegions(regions);
+		
+		for (List<ChunkCoord> chunks : changes.values())
+		{
+			for (ChunkCoord coord : chunks)
+			{
+				if (world.contains(coord))
+					addTilesForChunk(world, camera, coord, affectedTiles);
+			}
+		}
+		
+		System.out.println("Map "+map.getId()+" has "+numChunks+" saved chunks, checking "+affectedTiles.size()+" tiles");
+		
+		changedFileList = new ChangeFile(new File(args.outputDir(), "changed.txt"));
+		
+		for (Layer layer : map.getLayers())
+		{
+			if (abort)
+				break;
+			
+			if (layer != watched.currentLayer)
+			{
+				setupWorldForLayer(layer, world);
+				watched.currentLayer = layer;
+			}
+			
+			TileCache tileCache = createTileCache(args.useCache(), FileTileCache.calcOptionsString(args), layer.getImageFormat(), args.cacheDir(), map, layer, hashAlgorithm);
+			
+			try
+			{
+				File baseTilesDir = DirUtils.getZoomDir(exportDir, layer, numZoomLevels);
+				FileUtils.ensureExists(baseTilesDir);
+				
+				HddTileList changedTiles = tileCache.findChangedTiles(hddTileListFactory, affectedTiles, watched.hashStore, world, map, camera, map.getClosestZoomSize(), tileWidth, tileHeight, baseTilesDir);
+				if (changedTiles.size() == 0)
+					continue;
+				
+				List<HddTileList> levelTiles = Downsampler.findZoomTiles(changedTiles, numZoomLevels, hddTileListFactory);
+				File[] levelDirs = createZoomDirs(layer, false);
+				
+				if (layer.getRenderStyle() == RenderStyle.Surface)
+					renderSurfaceTiles(world, map, layer, baseTilesDir, changedTiles, tileCache);
+				else
+					renderBaseTiles(world, map, layer, baseTilesDir, changedTiles, tileCache);
+				
+				downsample(changedTiles, levelTiles, levelDirs, Collections.<TileCoord>emptyList(), layer, baseTilesDir, false);
+			}
+			finally
+			{
+				tileCache.close();
+			}
+		}
+		
+		changedFileList.close();
+		changedFileList = null;
+		
+		System.out.println("Map "+map.getId()+" updated in "+(System.currentTimeMillis() - start)+"ms");
+	}
+	
+	/** Goes through every chunk of the map, outputs the signs, players, portals etc. found and renders views */
+	private WorldStats preProcessAndOutputMarkers(World world, tectonicus.configuration.Map map, File mapDir, TempArea tempArea)
+	{
+		// FIXME: These paths need to change per map
+		File portalsFile = tempArea.generateTempFile("portals", ".list");
+		File signsFile = tempArea.generateTempFile("signs", ".list");
+		File viewsFile = tempArea.generateTempFile("views", ".list");
+		
+		WorldStats worldStats = preProcess(world, map.getDimension(), map.getSignFilter(), map.getPortalFilter(), map.getViewFilter(), map.getChestFilter(), portalsFile, signsFile, viewsFile);
+		
+		// Output signs
+		outputSigns(new File(mapDir, "signs.js"), signsFile, map, world.getSpawnPosition());
+		
+		// Output players
+		outputPlayers(new File(mapDir, "players.js"), new File(exportDir, "Images/PlayerIcons/"), map, map.getPlayerFilter(), world.players(map.getDimension()), playerIconAssembler, world.getSpawnPosition());
+		
+		// Output beds
+		outputBeds(mapDir, map, map.getPlayerFilter(), world.players(null), world.getSpawnPosition());
+		
+		// Output portals
+		worldStats.setNumPortals((outputPortals(new File(mapDir, "portals.js"), portalsFile, map, world.getSpawnPosition())));
+		
+		// Output views
+		outputViews(new File(mapDir, "views.js"), viewsFile, map, map.getViewConfig().getImageFormat());
+		
+		outputChests(new File(mapDir, "chests.js"), map, world.getSpawnPosition(), world.getChests());
+		
+		// Render views
+		FileViewCache viewCache = createViewCache(args.cacheDir(), map, tempArea, hashAlgorithm, regionHashStore);
+		ViewRenderer viewRenderer = new ViewRenderer(rasteriser, viewCache, args.getNumDownsampleThreads(), map.getViewConfig());
+		viewRenderer.output(world, mapDir, viewsFile, changedFileList);
+		
+		if (!abort)
+		{
+			try
+			{
+				worldStats.write(journal.getFile(map.getId()+".stats"));
+				journal.markDone(map.getId()+"/preprocess");
+			}
+			catch (IOException e)
+			{
+				e.printStackTrace();
+			}
+		}
+		
+		return worldStats;
+	}
+	
+	/** Picks up where an interrupted render left off after preprocessing the map, rather than going through every chunk again.
+	 *  Maps are done in order, so the chunk presence and hashes in the cache dir are still the ones for this map.
+	 *  Returns null if they can't be read back.
+	 */
+	private WorldStats resumePreProcess(World world, tectonicus.configuration.Map map)
+	{
+		ChunkPresenceIndex presenceIndex = ChunkPresenceIndex.read(new File(args.cacheDir(), "chunkPresence.dat"));
+		if (presenceIndex == null)
+			return null;
+		
+		try
+		{
+			WorldStats worldStats = WorldStats.read(journal.getFile(map.getId()+".stats"));
+			
+			world.setChunkPresenceIndex(presenceIndex);
+			regionHashStore = new RegionHashStore(args.cacheDir(), false);
+			
+			System.out.println("Map "+map.getId()+" was preprocessed before the render was interrupted ("+worldStats.numChunks()+" chunks), skipping");
+			return worldStats;
+		}
+		catch (IOException e)
+		{
+			e.printStackTrace();
+		}
+		return null;
+	}
+	
 	public static void setupWorldForLayer(Layer layer, World world)
 	{
 		System.out.println("Creating block registry");
@@ -469,6 +1055,8 @@ public class TileRenderer
 		
 		regionHashStore = new RegionHashStore(args.cacheDir());
 		
+		ChunkPresenceIndex presenceIndex = new ChunkPresenceIndex();
+		
 		System.out.println("Discovering chunks...");
 		//	Iterate over regions, then over chunks
 		//		hash each chunk and store in region hashes file
@@ -498,6 +1086,8 @@ public class TileRenderer
 					
 					regionHashStore.startRegion(region.getCoord());
 					
+					presenceIndex.addRegion(region.getCoord(), region.getChunkPresence());
+					
 					ChunkCoord[] chunkCoords = region.getContainedChunks();
 					for (ChunkCoord coord : chunkCoords)
 					{
@@ -509,6 +1099,9 @@ public class TileRenderer
 							c.calculateHash(hashAlgorithm);
 							regionHashStore.addHash(c.getCoord(), c.getHash());
 							
+							RawChunk raw = c.getRawChunk();
+							presenceIndex.setHeights(c.getCoord(), raw.getMinY(), raw.getMaxY(), raw.getSectionMask());
+							
 							worldStats.incNumChunks();
 							
 							findSigns(c.getRawChunk(), signs, signFilter);
@@ -533,6 +1126,10 @@ public class TileRenderer
 		final String searchTime = Util.getElapsedTime(beginTime, endTime);
 		
 		System.out.println("\nFound "+worldStats.numChunks()+" chunks in total");
+		
+		// From here on chunk existence checks (finding visible tiles, view and tile hashes) don't need to touch the regions
+		presenceIndex.write(new File(args.cacheDir(), "chunkPresence.dat"));
+		world.setChunkPresenceIndex(presenceIndex);
 		System.out.println("Chunk search took: " + searchTime);
 		
 		if (worldStats.numChunks() == 0)
@@ -655,85 +1252,475 @@ public class TileRenderer
 		}
 	}
 	
-	private void renderBaseTiles(World world, tectonicus.configuration.Map map, Layer layer, File layerDir, HddTileList tiles, TileCache tileCache)
+	/** Renders the tiles in the order given, in batches that double in size each time. The first batch is downsampled
+	 *  straight away, so the most important area can be seen at every zoom level long before the rest is done.
+	 *  Returns how many tiles were finished before running out of time or being aborted.
+	 */
+	private int renderPrioritised(World world, tectonicus.configuration.Map map, Layer layer, File layerDir, File[] levelDirs, List<TileCoord> tiles, TileCache tileCache)
+	{
+		int numStarted = 0;
+		int numFinished = 0;
+		int batchSize = FIRST_PRIORITY_BATCH;
+		
+		while (numStarted < tiles.size() && !abort && !isOutOfTime())
+		{
+			HddTileList batch = hddTileListFactory.createList();
+			final int end = Math.min(numStarted + batchSize, tiles.size());
+			for (TileCoord t : tiles.subList(numStarted, end))
+				batch.add(t);
+			
+			if (end < tiles.size() || numStarted > 0)
+				System.out.println("Rendering base tiles "+(numStarted+1)+" to "+end+" of "+tiles.size());
+			
+			final int numBatchFinished;
+			if (layer.getRenderStyle() == RenderStyle.Surface)
+				numBatchFinished = renderSurfaceTiles(world, map, layer, layerDir, batch, tileCache);
+			else if (args.getMode() == Mode.Coordinator)
+				numBatchFinished = renderBaseTilesDistributed(map, layer, layerDir, batch, tileCache);
+			else
+				numBatchFinished = renderBaseTiles(world, map, layer, layerDir, batch, tileCache);
+			
+			numFinished += numBatchFinished;
+			
+			// Stopped part way through the batch, so the rest are left for next time
+			if (numBatchFinished < batch.size())
+				break;
+			
+			if (numStarted == 0 && end < tiles.size() && !abort)
+			{
+				System.out.println("Downsampling the first "+batch.size()+" tiles ahead of the rest");
+				
+				List<HddTileList> batchLevels = Downsampler.findZoomTiles(batch, numZoomLevels, hddTileListFactory);
+				Downsampler downsampler = new Downsampler(args.getNumDownsampleThreads(), changedFileList);
+				downsampler.downsample(layerDir, batch, levelDirs, batchLevels, layer, tileWidth, tileHeight, progressListener);
+			}
+			
+			numStarted = end;
+			batchSize *= 2;
+		}
+		
+		return numFinished;
+	}
+	
+	private boolean isOutOfTime()
+	{
+		return renderDeadline > 0 && System.currentTimeMillis() >= renderDeadline;
+	}
+	
+	/** Returns how many of the tiles were rendered before running out of time or being aborted */
+	private int renderBaseTiles(World world, tectonicus.configuration.Map map, Layer layer, File layerDir, HddTileList tiles, TileCache tileCache)
 	{
 		if (abort)
-			return;
+			return 0;
 		
 		progressListener.onTaskStarted(Task.RENDER_BASE_TILES.toString());
 		
 		final int zoom = map.getClosestZoomSize();
-		final ImageFormat imageFormat = layer.getImageFormat();
 		
 		System.out.println("Base render is at zoom "+zoom+" with "+tileWidth+"x"+tileHeight+" tiles");
 		
-		setupInitialCamera(map);
+		setupInitialCamera(camera, map);
 		
 		progressListener.onTaskStarted(Task.RENDER_BASE_TILES.toString());
 		
+		ImageWriteQueue imageWriteQueue = new ImageWriteQueue(args.getNumDownsampleThreads());
+		
 		int done = 0;
 		
-		ImageWriteQueue imageWriteQueue = new ImageWriteQueue(args.getNumDownsampleThreads());
+		final int numWorkers = Math.min(args.getNumRenderWorkers(), tiles.size());
+		if (numWorkers > 1)
+		{
+			done = renderBaseTilesParallel(world, map, layer, layerDir, tiles, tileCache, imageWriteQueue, numWorkers);
+		}
+		else
+		{
+			for (TileCoord t : tiles)
+			{
+				System.out.print("Rendering tile @ "+t.x+","+t.y+" (tile "+(done+1)+" of "+tiles.size()+")\r"); //prints a carraige return after line
+				progressListener.onTaskUpdate(done, tiles.size());
+				
+				renderTile(world, rasteriser, camera, t, map, layer, layerDir, tileCache, imageWriteQueue);
+				
+				done++;
+				
+				if (abort || isOutOfTime())
+					break;
+			}
+		}
+		
+		imageWriteQueue.waitUntilFinished();
+		
+		System.out.println("\nBase tile render complete");
 		
+		return done;
+	}
+	
+	/** Splits the tiles into one contiguous run per worker, so each worker mostly touches its own set of chunks,
+	 *  and renders the runs in parallel. Each worker has its own rasteriser, camera and world geometry, since
+	 *  those are tied to a gl context, while region data and texture pack archives are shared between them.
+	 *  Returns how many tiles were rendered, which with workers stopped early needn't be the first ones.
+	 */
+	private int renderBaseTilesParallel(World world, tectonicus.configuration.Map map, Layer layer, File layerDir, HddTileList tiles, TileCache tileCache, ImageWriteQueue imageWriteQueue, final int numWorkers)
+	{
+		System.out.println("Rendering base tiles with "+numWorkers+" workers");
+		
+		List<HddTileList> partitions = new ArrayList<>();
+		for (int i=0; i<numWorkers; i++)
+			partitions.add(hddTileListFactory.createList());
+		
+		final int numTiles = tiles.size();
+		int index = 0;
 		for (TileCoord t : tiles)
 		{
-			System.out.print("Rendering tile @ "+t.x+","+t.y+" (tile "+(done+1)+" of "+tiles.size()+")\r"); //prints a carraige return after line
-			progressListener.onTaskUpdate(done, tiles.size());
+			partitions.get((int)((long)index * numWorkers / numTiles)).add(t);
+			index++;
+		}
+		
+		// Each worker keeps its own neighbourhood of regions loaded, so the shared cache needs room for all of them
+		world.ensureRegionCacheCapacity(numWorkers * REGIONS_PER_RENDER_WORKER);
+		
+		AtomicInteger done = new AtomicInteger();
+		CountDownLatch finished = new CountDownLatch(numWorkers);
+		
+		List<RenderWorker> workers = new ArrayList<>();
+		for (int i=0; i<numWorkers; i++)
+		{
+			RenderWorker worker = new RenderWorker(world, map, layer, layerDir, partitions.get(i), tileCache, imageWriteQueue, done, finished);
+			workers.add(worker);
 			
-			setupCameraForTile(camera, t, tileWidth, tileHeight, map.getCameraAngleRad(), map.getCameraElevationRad(), zoom);
-
-			rasteriser.resetState();
-			rasteriser.clear(layer.getBackgroundColorRGB());
+			Thread thread = new Thread(worker, "Render worker "+(i+1));
+			thread.setDaemon(true);
+			thread.start();
+		}
+		
+		try
+		{
+			while (!finished.await(100, TimeUnit.MILLISECONDS))
+			{
+				final int numDone = done.get();
+				System.out.print("Rendered "+numDone+" of "+numTiles+" tiles ("+(numDone * 100 / numTiles)+"%)\r"); //prints a carraige return after line
+				progressListener.onTaskUpdate(numDone, numTiles);
+			}
+		}
+		catch (InterruptedException e)
+		{
+			e.printStackTrace();
+		}
+		
+		// Any worker that couldn't get a rasteriser of its own leaves its tiles for the main one
+		for (RenderWorker worker : workers)
+		{
+			if (worker.started)
+				continue;
+			
+			for (TileCoord t : worker.tiles)
+			{
+				if (abort || isOutOfTime())
+					break;
+				
+				renderTile(world, rasteriser, camera, t, map, layer, layerDir, tileCache, imageWriteQueue);
+				done.incrementAndGet();
+			}
+		}
+		
+		return done.get();
+	}
+	
+	/** Draws base tiles for surface layers. These come straight from the chunk data without the rasteriser,
+	 *  and are quick enough to draw that they're never handed out to workers. Returns how many were drawn.
+	 */
+	private int renderSurfaceTiles(World world, tectonicus.configuration.Map map, Layer layer, File layerDir, HddTileList tiles, TileCache tileCache)
+	{
+		if (abort)
+			return 0;
+		
+		progressListener.onTaskStarted(Task.RENDER_BASE_TILES.toString());
+		
+		final int numThreads = Math.max(args.getNumDownsampleThreads(), Runtime.getRuntime().availableProcessors());
+		System.out.println("Drawing "+tiles.size()+" surface tiles with "+numThreads+" threads");
+		
+		SurfaceRenderer surfaceRenderer = new SurfaceRenderer(world, map, layer, tileWidth, tileHeight, 0, numThreads);
+		surfaceRenderer.setJournal(journal);
+		world.ensureRegionCacheCapacity(numThreads * REGIONS_PER_RENDER_WORKER);
+		
+		ImageWriteQueue imageWriteQueue = new ImageWriteQueue(args.getNumDownsampleThreads());
+		
+		final int numTiles = tiles.size();
+		int done = 0;
+		
+		List<TileCoord> batch = new ArrayList<>();
+		Iterator<TileCoord> it = tiles.iterator();
+		while (it.hasNext() && !abort && !isOutOfTime())
+		{
+			batch.add(it.next());
+			if (batch.size() < SURFACE_TILES_PER_BATCH && it.hasNext())
+				continue;
+			
+			surfaceRenderer.render(batch, layerDir, imageWriteQueue);
+			
+			for (TileCoord t : batch)
+			{
+				tileCache.writeImageCache(t);
+				changedFileList.writeLine( getImageFile(layerDir, t.x, t.y, layer.getImageFormat()).getAbsolutePath() );
+			}
+			Metrics.tilesRendered.add(batch.size());
 			
-			world.draw(camera, false, true);
+			done += batch.size();
+			batch.clear();
 			
-			File outputFile = getImageFile(layerDir, t.x, t.y, imageFormat);
-			BufferedImage tileImage = rasteriser.takeScreenshot(0, 0, tileWidth, tileHeight, imageFormat);
-			if (tileImage != null)
+			System.out.print("Drawn "+done+" of "+numTiles+" surface tiles ("+(done * 100 / numTiles)+"%)\r"); //prints a carraige return after line
+			progressListener.onTaskUpdate(done, numTiles);
+		}
+		
+		surfaceRenderer.destroy();
+		imageWriteQueue.waitUntilFinished();
+		
+		System.out.println("\nSurface tile render complete");
+		
+		return done;
+	}
+	
+	/** Hands the tiles out to worker processes as spatially compact shards, and waits for them all to be rendered.
+	 *  Tile hashes and the changed file list are written here as each shard comes back, so a shard that's lost
+	 *  with its worker gets rendered again next time. Returns how many tiles came back before being aborted.
+	 */
+	private int renderBaseTilesDistributed(tectonicus.configuration.Map map, Layer layer, File layerDir, HddTileList tiles, TileCache tileCache)
+	{
+		if (abort)
+			return 0;
+		
+		progressListener.onTaskStarted(Task.RENDER_BASE_TILES.toString());
+		
+		List<ShardQueue.Shard> remaining = ShardQueue.partition(map.getId(), layer.getId(), tiles, TILES_PER_SHARD_SIDE);
+		
+		System.out.println("Publishing "+tiles.size()+" base tiles as "+remaining.size()+" shards in "+shardQueue.getBaseDir().getAbsolutePath());
+		
+		try
+		{
+			for (ShardQueue.Shard shard : remaining)
+				shardQueue.publish(shard);
+		}
+		catch (IOException e)
+		{
+			e.printStackTrace();
+			return 0;
+		}
+		
+		final ImageFormat imageFormat = layer.getImageFormat();
+		final int numTiles = tiles.size();
+		
+		int done = 0;
+		
+		while (!remaining.isEmpty() && !abort)
+		{
+			for (Iterator<ShardQueue.Shard> it = remaining.iterator(); it.hasNext(); )
+			{
+				ShardQueue.Shard shard = it.next();
+				if (!shardQueue.isDone(shard))
+					continue;
+				
+				for (TileCoord t : shard.tiles)
+				{
+					tileCache.writeImageCache(t);
+					changedFileList.writeLine( getImageFile(layerDir, t.x, t.y, imageFormat).getAbsolutePath() );
+					journal.tileDone(RenderJournal.layerKey(layer), t);
+				}
+				
+				done += shard.tiles.size();
+				it.remove();
+			}
+			
+			final int numRequeued = shardQueue.requeueStale(STALE_SHARD_MILLIS);
+			if (numRequeued > 0)
+				System.out.println("\nRequeued "+numRequeued+" shards from unresponsive workers");
+			
+			System.out.print("Workers have rendered "+done+" of "+numTiles+" tiles ("+(done * 100 / Math.max(1, numTiles))+"%)\r"); //prints a carraige return after line
+			progressListener.onTaskUpdate(done, numTiles);
+			
+			if (!remaining.isEmpty())
+				sleep(SHARD_POLL_MILLIS);
+		}
+		
+		System.out.println("\nBase tile render complete");
+		
+		return done;
+	}
+	
+	private void renderTile(World world, Rasteriser rasteriser, OrthoCamera camera, TileCoord t, tectonicus.configuration.Map map, Layer layer, File layerDir, TileCache tileCache, ImageWriteQueue imageWriteQueue)
+	{
+		final ImageFormat imageFormat = layer.getImageFormat();
+		
+		setupCameraForTile(camera, t, tileWidth, tileHeight, map.getCameraAngleRad(), map.getCameraElevationRad(), map.getClosestZoomSize());
+		
+		rasteriser.resetState();
+		rasteriser.clear(layer.getBackgroundColorRGB());
+		
+		final long drawStart = System.nanoTime();
+		world.draw(camera, false, true);
+		Metrics.drawTime.observeSince(drawStart);
+		
+		File outputFile = getImageFile(layerDir, t.x, t.y, imageFormat);
+		
+		final long readbackStart = System.nanoTime();
+		BufferedImage tileImage = rasteriser.takeScreenshot(0, 0, tileWidth, tileHeight, imageFormat);
+		Metrics.readbackTime.observeSince(readbackStart);
+		
+		Metrics.tilesRendered.inc();
+		
+		if (tileImage != null)
+		{
+			imageWriteQueue.write(outputFile, tileImage, imageFormat, layer.getImageCompressionLevel(), journalTile(layer, t));
+		}
+		else
+		{
+			System.err.println("Error: Rasteriser.takeScreenshot gave us a null image (width:"+tileWidth+" height:"+tileHeight+" format:"+imageFormat+")");
+		}
+		
+		tileCache.writeImageCache(t);
+		
+		changedFileList.writeLine( outputFile.getAbsolutePath() );
+	}
+	
+	/** Records the tile in the journal once its image is written, or null if there's no journal (ie. for workers) */
+	private Runnable journalTile(final Layer layer, final TileCoord tile)
+	{
+		if (journal == null)
+			return null;
+		
+		final String layerKey = RenderJournal.layerKey(layer);
+		return new Runnable()
+		{
+			@Override
+			public void run()
+			{
+				journal.tileDone(layerKey, tile);
+			}
+		};
+	}
+	
+	private static class WatchedMap
+	{
+		public final tectonicus.configuration.Map map;
+		public final World world;
+		public final RegionWatcher watcher;
+		public final RegionHashStore hashStore;
+		public final ChunkPresenceIndex presenceIndex;
+		
+		// Layers are only set up again when they change between updates
+		public Layer currentLayer;
+		
+		public WatchedMap(tectonicus.configuration.Map map, World world, RegionWatcher watcher, RegionHashStore hashStore, ChunkPresenceIndex presenceIndex)
+		{
+			this.map = map;
+			this.world = world;
+			this.watcher = watcher;
+			this.hashStore = hashStore;
+			this.presenceIndex = presenceIndex;
+		}
+	}
+	
+	private class RenderWorker implements Runnable
+	{
+		private final World world;
+		private final tectonicus.configuration.Map map;
+		private final Layer layer;
+		private final File layerDir;
+		private final HddTileList tiles;
+		private final TileCache tileCache;
+		private final ImageWriteQueue imageWriteQueue;
+		private final AtomicInteger done;
+		private final CountDownLatch finished;
+		
+		private volatile boolean started;
+		
+		public RenderWorker(World world, tectonicus.configuration.Map map, Layer layer, File layerDir, HddTileList tiles, TileCache tileCache,
+							ImageWriteQueue imageWriteQueue, AtomicInteger done, CountDownLatch finished)
+		{
+			this.world = world;
+			this.map = map;
+			this.layer = layer;
+			this.layerDir = layerDir;
+			this.tiles = tiles;
+			this.tileCache = tileCache;
+			this.imageWriteQueue = imageWriteQueue;
+			this.done = done;
+			this.finished = finished;
+		}
+		
+		@Override
+		public void run()
+		{
+			Rasteriser workerRasteriser = null;
+			World workerWorld = null;
+			try
+			{
+				// The rasteriser's context is bound to whichever thread creates it, so this has to happen here
+				workerRasteriser = createOffscreenRasteriser();
+				if (workerRasteriser == null)
+				{
+					System.err.println("Couldn't create a rasteriser for "+Thread.currentThread().getName());
+					return;
+				}
+				
+				OrthoCamera workerCamera = new OrthoCamera(workerRasteriser, tileWidth, tileHeight);
+				setupInitialCamera(workerCamera, map);
+				
+				workerWorld = new World(world, workerRasteriser);
+				started = true;
+				
+				for (TileCoord t : tiles)
+				{
+					if (abort || isOutOfTime())
+						break;
+					
+					renderTile(workerWorld, workerRasteriser, workerCamera, t, map, layer, layerDir, tileCache, imageWriteQueue);
+					done.incrementAndGet();
+				}
+			}
+			catch (Exception e)
 			{
-				imageWriteQueue.write(outputFile, tileImage, imageFormat, layer.getImageCompressionLevel());
+				e.printStackTrace();
 			}
-			else
+			finally
 			{
-				System.err.println("Error: Rasteriser.takeScreenshot gave us a null image (width:"+tileWidth+" height:"+tileHeight+" format:"+imageFormat+")");
+				if (workerWorld != null)
+					workerWorld.flushChunkCache();
+				if (workerRasteriser != null)
+					workerRasteriser.destroy();
+				
+				finished.countDown();
 			}
-			
-			tileCache.writeImageCache(t);
-			
-			changedFileList.writeLine( outputFile.getAbsolutePath() );
-			
-			done++;
-			
-			if (abort)
-				break;
 		}
-		
-		imageWriteQueue.waitUntilFinished();
-		
-		System.out.println("\nBase tile render complete");
 	}
 
 	public static void setupCameraForTile(OrthoCamera camera, TileCoord tile, final int tileWidth, final int tileHeight, final float cameraAngleRads, final float cameraElevationRads, final int zoom)
 	{
-		Point lookAt = tileToScreen(tile, tileWidth, tileHeight);
-		
-		// Adjust so that we're looking at the center of the tile
-		lookAt.x += tileWidth / 2;
-		lookAt.y += tileHeight / 2;
-		
+		positionCameraForTile(camera, tile, tileWidth, tileHeight, cameraAngleRads, cameraElevationRads, zoom);
+		camera.apply();
+	}
+	
+	/** As setupCameraForTile, but without applying the camera to its rasteriser, so it can be used without one */
+	public static void positionCameraForTile(OrthoCamera camera, TileCoord tile, final int tileWidth, final int tileHeight, final float cameraAngleRads, final float cameraElevationRads, final int zoom)
+	{
+		positionCameraForTile(camera, tile.x, tile.y, cameraAngleRads, cameraElevationRads, zoom);
+	}
+	
+	/** Positions the camera on a fractional tile coord, in units of the camera's current view size */
+	public static void positionCameraForTile(OrthoCamera camera, final float tileX, final float tileY, final float cameraAngleRads, final float cameraElevationRads, final int zoom)
+	{
 		// Use up/right to slide camera to correct world pos
 		
 		Vector3f up = camera.getUp();
 		Vector3f right = camera.getRight();
 		
 		Vector3f cameraPos = new Vector3f(0, 0, 0);
-		cameraPos.x += right.x * camera.getVisibleWorldWidth() * tile.x;
-		cameraPos.y += right.y * camera.getVisibleWorldWidth() * tile.x;
-		cameraPos.z += right.z * camera.getVisibleWorldWidth() * tile.x;
+		cameraPos.x += right.x * camera.getVisibleWorldWidth() * tileX;
+		cameraPos.y += right.y * camera.getVisibleWorldWidth() * tileX;
+		cameraPos.z += right.z * camera.getVisibleWorldWidth() * tileX;
 		
-		cameraPos.x -= up.x * camera.getVisibleWorldHeight() * tile.y;
-		cameraPos.y -= up.y * camera.getVisibleWorldHeight() * tile.y;
-		cameraPos.z -= up.z * camera.getVisibleWorldHeight() * tile.y;
+		cameraPos.x -= up.x * camera.getVisibleWorldHeight() * tileY;
+		cameraPos.y -= up.y * camera.getVisibleWorldHeight() * tileY;
+		cameraPos.z -= up.z * camera.getVisibleWorldHeight() * tileY;
 		
 		camera.lookAt(cameraPos.x, cameraPos.y, cameraPos.z, zoom, cameraAngleRads, cameraElevationRads);
 
@@ -761,11 +1748,9 @@ public class TileRenderer
 			
 			camera.lookAt(cameraPos.x, cameraPos.y, cameraPos.z, zoom, cameraAngleRads, cameraElevationRads);
 		}
-		
-		camera.apply();
 	}
 	
-	private void setupInitialCamera(tectonicus.configuration.Map map)
+	private void setupInitialCamera(OrthoCamera camera, tectonicus.configuration.Map map)
 	{
 		final int zoom = map.getClosestZoomSize();
 		
@@ -774,6 +1759,50 @@ public class TileRenderer
 		setupCameraForTile(camera, new TileCoord(0, 0), tileWidth, tileHeight, map.getCameraAngleRad(), map.getCameraElevationRad(), map.getClosestZoomSize());
 	}
 	
+	private File getWorkerDir()
+	{
+		// Process name is pid@host, which is unique even with workers on several machines
+		String workerId = ManagementFactory.getRuntimeMXBean().getName().replaceAll("[^A-Za-z0-9.-]", "_");
+		return new File(new File(args.cacheDir(), "workers"), workerId);
+	}
+	
+	private tectonicus.configuration.Map findMap(String mapId)
+	{
+		for (tectonicus.configuration.Map map : args.getMaps())
+		{
+			if (map.getId().equals(mapId))
+				return map;
+		}
+		throw new RuntimeException("No map with id "+mapId+" in this worker's config");
+	}
+	
+	private static Layer findLayer(tectonicus.configuration.Map map, String layerId)
+	{
+		for (Layer layer : map.getLayers())
+		{
+			if (layer.getId().equals(layerId))
+				return layer;
+		}
+		throw new RuntimeException("No layer with id "+layerId+" in map "+map.getId());
+	}
+	
+	private static void sleep(final long millis)
+	{
+		try
+		{
+			Thread.sleep(millis);
+		}
+		catch (InterruptedException e)
+		{
+			e.printStackTrace();
+		}
+	}
+	
+	private Rasteriser createOffscreenRasteriser() throws Exception
+	{
+		return RasteriserFactory.createRasteriser(args.getRasteriserType(), DisplayType.Offscreen, 2048, 2048, args.colourDepth(), args.alphaBits(), 24, args.numSamples());
+	}
+	
 	private HddTileList findVisibleTiles(World world, OrthoCamera camera, final int numChunks)
 	{
 		HddTileList visible = hddTileListFactory.createList();
@@ -816,35 +1845,8 @@ public class TileRenderer
 				{
 					if (coord != null && world.contains(coord))
 					{
-						BoundingBox bounds = new BoundingBox(new Vector3f(coord.x * RawChunk.WIDTH, 0, coord.z * RawChunk.DEPTH), RawChunk.WIDTH, RawChunk.HEIGHT, RawChunk.DEPTH);
-						ArrayList<Vector3f> cornerPoints = bounds.getCornerPoints();
-						
-						int minX = Integer.MAX_VALUE;
-						int maxX = Integer.MIN_VALUE;
-						int minY = Integer.MAX_VALUE;
-						int maxY = Integer.MIN_VALUE;
-						
-						// Project corners to find screen rect
-						for (Vector3f corner : cornerPoints)
-						{
-							Point screenPos = camera.project(corner);
-							
-							minX = Math.min(screenPos.x, minX);
-							maxX = Math.max(screenPos.x, maxX);
-							
-							minY = Math.min(screenPos.y, minY);
-							maxY = Math.max(screenPos.y, maxY);
-						}
-						
-						// Find tiles that scren rect overlaps
-						for (int x=minX; x<=maxX+tileWidth; x+=tileWidth)
-						{
-							for (int y=minY; y<=maxY+tileHeight; y+=tileHeight)
-							{
-								TileCoord tile = screenToTile( new Point(x, y) );
-								visible.add(tile);						
-							}
-						}
+						if (!addTilesForChunk(world, camera, coord, visible))
+							continue;
 						
 						count++;
 						if (count % 100 == 0)
@@ -867,13 +1869,90 @@ public class TileRenderer
 		return visible;
 	}
 	
-	private HddTileList trimTileList(HddTileList inTiles, final int maxTiles)
+	/** Hotspots to render the map's tiles around first: the spawn point, players, the map's own hotspots and the most recently saved chunks.
+	 *  The camera must already be set up for the map.
+	 */
+	private TilePrioritiser createPrioritiser(World world, tectonicus.configuration.Map map)
+	{
+		TilePrioritiser prioritiser = new TilePrioritiser();
+		
+		Vector3l spawn = world.getSpawnPosition();
+		prioritiser.addHotspot(worldToTile(spawn.x, spawn.y, spawn.z));
+		
+		for (Player player : world.players(map.getDimension()))
+		{
+			if (map.getPlayerFilter().passesFilter(player))
+			{
+				Vector3d position = player.getPosition();
+				prioritiser.addHotspot(worldToTile(position.x, position.y, position.z));
+			}
+		}
+		
+		for (Vector3l hotspot : map.getHotspots())
+			prioritiser.addHotspot(worldToTile(hotspot.x, hotspot.y, hotspot.z));
+		
+		for (ChunkCoord coord : TilePrioritiser.findRecentlySaved(world.createRegionIterator(), NUM_RECENT_CHUNKS))
+		{
+			BoundingBox bounds = world.contains(coord) ? world.getChunkBounds(coord) : null;
+			if (bounds != null)
+				prioritiser.addHotspot(worldToTile(bounds.getCenterX(), bounds.getCenterY(), bounds.getCenterZ()));
+		}
+		
+		return prioritiser;
+	}
+	
+	private TileCoord worldToTile(final double x, final double y, final double z)
+	{
+		return screenToTile( camera.project(new Vector3f((float)x, (float)y, (float)z)) );
+	}
+	
+	/** Adds the tiles a chunk appears in to the list. Returns false for empty chunks, which don't cover any tiles */
+	private boolean addTilesForChunk(World world, OrthoCamera camera, ChunkCoord coord, HddTileList tiles)
+	{
+		// The rest only cover as far as their tallest block
+		BoundingBox bounds = world.getChunkBounds(coord);
+		if (bounds == null)
+			return false;
+		
+		ArrayList<Vector3f> cornerPoints = bounds.getCornerPoints();
+		
+		int minX = Integer.MAX_VALUE;
+		int maxX = Integer.MIN_VALUE;
+		int minY = Integer.MAX_VALUE;
+		int maxY = Integer.MIN_VALUE;
+		
+		// Project corners to find screen rect
+		for (Vector3f corner : cornerPoints)
+		{
+			Point screenPos = camera.project(corner);
+			
+			minX = Math.min(screenPos.x, minX);
+			maxX = Math.max(screenPos.x, maxX);
+			
+			minY = Math.min(screenPos.y, minY);
+			maxY = Math.max(screenPos.y, maxY);
+		}
+		
+		// Find tiles that scren rect overlaps
+		for (int x=minX; x<=maxX+tileWidth; x+=tileWidth)
+		{
+			for (int y=minY; y<=maxY+tileHeight; y+=tileHeight)
+			{
+				TileCoord tile = screenToTile( new Point(x, y) );
+				tiles.add(tile);
+			}
+		}
+		return true;
+	}
+	
+	/** Keeps the maxTiles most important tiles */
+	private HddTileList trimTileList(HddTileList inTiles, final int maxTiles, TilePrioritiser prioritiser)
 	{
 		if (maxTiles > 0)
 		{
 			HddTileList trimmedTiles = hddTileListFactory.createList();
 			int count = 0;
-			for (TileCoord c : inTiles)
+			for (TileCoord c : prioritiser.order(inTiles))
 			{
 				trimmedTiles.add(c);
 				count++;
@@ -888,25 +1967,16 @@ public class TileRenderer
 		}
 	}
 	
-	private TileCoordBounds downsample(HddTileList baseTiles, File exportDir, Layer layer, File baseDir, TileCache tileCache)
+	/** Level dirs from the one just above the base tiles up to zoom level 0, optionally clearing out old tiles */
+	private File[] createZoomDirs(Layer layer, final boolean clear)
 	{
-		final Date downsampleStart = new Date();
-		
-		int zoomLevel = args.numZoomLevels() - 1;
-		
-		File prevDir = baseDir;
-		HddTileList prevTiles = baseTiles;
-		while (zoomLevel >= 0)
+		File[] levelDirs = new File[numZoomLevels];
+		for (int i=0; i<numZoomLevels; i++)
 		{
-			if (abort)
-				break;
+			final int zoomLevel = numZoomLevels - 1 - i;
 			
-			System.out.println("Downsampling to create zoom level "+zoomLevel);
-			progressListener.onTaskStarted(Task.DOWNSAMPLING.toString() + " level " + zoomLevel);
-			
-			HddTileList nextTiles = findNextZoomTiles(prevTiles, hddTileListFactory);
 			File nextDir = DirUtils.getZoomDir(exportDir, layer, zoomLevel);
-			if (!tileCache.isUsingExistingCache())
+			if (clear)
 			{
 				FileUtils.deleteDirectory(nextDir);
 			}
@@ -916,22 +1986,196 @@ public class TileRenderer
 				if (!mkOk)
 					throw new RuntimeException("Couldn't create dir:"+nextDir.getAbsolutePath());
 			}
-			
-			System.out.println("\tDownsampling "+prevTiles.size()+" tiles into "+nextTiles.size()+" tiles");
-			
-			Downsampler downsampler = new Downsampler(args.getNumDownsampleThreads(), changedFileList);
-			downsampler.downsample(prevDir, nextDir, nextTiles, layer, tileWidth, tileHeight, progressListener);
-			
-			zoomLevel--;
-			prevDir = nextDir;
-			prevTiles = nextTiles;
+			levelDirs[i] = nextDir;
+		}
+		return levelDirs;
+	}
+	
+	/** Finds the tiles of the configured LOD zoom level to draw as an overview. Only tiles without an image yet are drawn,
+	 *  since an existing downsampled tile is a better stand in than this.
+	 */
+	private List<TileCoord> findLodTiles(Layer layer, File[] levelDirs, List<HddTileList> levelTiles)
+	{
+		List<TileCoord> lodTiles = new ArrayList<>();
+		
+		final int lodZoomLevel = args.getLodZoomLevel();
+		if (lodZoomLevel < 0)
+			return lodTiles;
+		
+		if (lodZoomLevel >= numZoomLevels)
+		{
+			System.out.println("LOD zoom level "+lodZoomLevel+" isn't above the base tiles, so not drawing an overview");
+			return lodTiles;
+		}
+		
+		// Levels are stored nearest the base first
+		final int index = numZoomLevels - 1 - lodZoomLevel;
+		File levelDir = levelDirs[index];
+		for (TileCoord t : levelTiles.get(index))
+		{
+			if (!getImageFile(levelDir, t.x, t.y, layer.getImageFormat()).exists())
+				lodTiles.add(t);
+		}
+		return lodTiles;
+	}
+	
+	/** Draws the LOD tiles straight from the chunk data, as for the surface render style, so there's a rough
+	 *  overview of new areas long before their base tiles are done.
+	 */
+	private void renderLodTiles(World world, tectonicus.configuration.Map map, Layer layer, File[] levelDirs, List<TileCoord> lodTiles)
+	{
+		if (abort)
+			return;
+		
+		final int lodZoomLevel = args.getLodZoomLevel();
+		final int index = numZoomLevels - 1 - lodZoomLevel;
+		File levelDir = levelDirs[index];
+		
+		progressListener.onTaskStarted(Task.RENDER_BASE_TILES.toString());
+		
+		final int numThreads = Math.max(args.getNumDownsampleThreads(), Runtime.getRuntime().availableProcessors());
+		System.out.println("Drawing "+lodTiles.size()+" overview tiles for zoom level "+lodZoomLevel);
+		
+		final long start = System.currentTimeMillis();
+		
+		SurfaceRenderer lodRenderer = new SurfaceRenderer(world, map, layer, tileWidth, tileHeight, index + 1, numThreads);
+		world.ensureRegionCacheCapacity(numThreads * REGIONS_PER_RENDER_WORKER);
+		
+		ImageWriteQueue imageWriteQueue = new ImageWriteQueue(args.getNumDownsampleThreads());
+		lodRenderer.render(lodTiles, levelDir, imageWriteQueue);
+		lodRenderer.destroy();
+		imageWriteQueue.waitUntilFinished();
+		
+		System.out.println("Overview drawn in "+(System.currentTimeMillis() - start)+"ms");
+	}
+	
+	/** The layer's changed tiles as found by an interrupted render, or null if it didn't get that far. Any overview tiles go in lodTiles */
+	private HddTileList resumeTileList(String layerKey, TileCache tileCache, List<TileCoord> lodTiles)
+	{
+		if (!journal.isDone(layerKey+"/tiles"))
+			return null;
+		
+		try
+		{
+			HddTileList tiles = journal.loadTiles(layerKey.replace('/', '_')+".tiles", hddTileListFactory, tileCache, lodTiles);
+			System.out.println("Resuming with the "+tiles.size()+" changed tiles found by the interrupted render");
+			return tiles;
+		}
+		catch (IOException e)
+		{
+			e.printStackTrace();
+		}
+		
+		lodTiles.clear();
+		return null;
+	}
+	
+	private void saveTileList(String layerKey, HddTileList changedTiles, TileCache tileCache, List<TileCoord> lodTiles)
+	{
+		try
+		{
+			journal.saveTiles(layerKey.replace('/', '_')+".tiles", changedTiles, tileCache, lodTiles);
+			journal.markDone(layerKey+"/tiles");
+		}
+		catch (IOException e)
+		{
+			e.printStackTrace();
+		}
+	}
+	
+	/** The tiles which aren't in done, or all of them if none are */
+	private HddTileList findUnfinishedTiles(HddTileList tiles, Set<TileCoord> done)
+	{
+		if (done.isEmpty())
+			return tiles;
+		
+		HddTileList unfinished = hddTileListFactory.createList();
+		for (TileCoord t : tiles)
+		{
+			if (!done.contains(t))
+				unfinished.add(t);
+		}
+		
+		System.out.println("Skipping "+(tiles.size() - unfinished.size())+" base tiles rendered before the render was interrupted");
+		return unfinished;
+	}
+	
+	/** Writes the viewer out ahead of the base tiles so the overview can be looked at while the render carries on.
+	 *  Only done the first time for single map configs, since the viewer would refer to scripts of maps that
+	 *  haven't been processed yet. Otherwise the viewer from the previous render picks up the new tiles as is.
+	 */
+	private void publishEarly()
+	{
+		if (args.getMaps().size() > 1 || new File(exportDir, args.getOutputHtmlName()).exists())
+			return;
+		
+		System.out.println("Publishing overview");
+		
+		outputHtmlResources( new TexturePack(rasteriser, args.minecraftJar(), args.texturePack(), args.getMap(0).getModJars()), playerIconAssembler, args.getDefaultSkin() );
+		outputContents(new File(new File(exportDir, "Scripts"), "contents.js"), args);
+		try
+		{
+			outputHtml();
+		}
+		catch (IOException e)
+		{
+			e.printStackTrace();
+		}
+	}
+	
+	/** Downsamples the base tiles into every zoom level. If recordLevels is set, each level is recorded in the journal as it's
+	 *  finished, which should only be done when the base tiles are all the tiles to be rendered.
+	 */
+	private TileCoordBounds downsample(HddTileList baseTiles, List<HddTileList> levelTiles, File[] levelDirs, List<TileCoord> lodTiles, Layer layer, File baseDir, final boolean recordLevels)
+	{
+		if (abort)
+			return new TileCoordBounds(baseTiles.getAbsoluteMinCoord(), baseTiles.getAbsoluteMaxCoord());
+		
+		final Date downsampleStart = new Date();
+		
+		progressListener.onTaskStarted(Task.DOWNSAMPLING.toString());
+		
+		final int numLevels = levelDirs.length;
+		for (int i=0; i<numLevels; i++)
+			System.out.println("\tZoom level "+(numLevels - 1 - i)+" has "+levelTiles.get(i).size()+" tiles");
+		
+		System.out.println("Downsampling "+baseTiles.size()+" base tiles into "+numLevels+" zoom levels");
+		
+		Downsampler downsampler = new Downsampler(args.getNumDownsampleThreads(), changedFileList);
+		
+		// Overview tiles have to be replaced completely, not patched
+		if (!lodTiles.isEmpty())
+			downsampler.rebuildInFull(numLevels - 1 - args.getLodZoomLevel(), lodTiles);
+		
+		// Levels finish nearest the base first, so an interrupted render can carry on from the first level not finished
+		final String layerKey = RenderJournal.layerKey(layer);
+		int numDoneLevels = 0;
+		while (journal != null && numDoneLevels < numLevels && journal.isDone(layerKey+"/level"+numDoneLevels))
+			numDoneLevels++;
+		if (numDoneLevels > 0)
+			System.out.println("Skipping "+numDoneLevels+" zoom levels downsampled before the render was interrupted");
+		downsampler.skipLevels(numDoneLevels);
+		
+		if (recordLevels)
+		{
+			downsampler.setLevelListener(new Downsampler.LevelListener()
+			{
+				@Override
+				public void onLevelComplete(final int level)
+				{
+					journal.markDone(layerKey+"/level"+level);
+				}
+			});
 		}
 		
+		downsampler.downsample(baseDir, baseTiles, levelDirs, levelTiles, layer, tileWidth, tileHeight, progressListener);
+		
 		final Date downsampleEnd = new Date();
 		final String downsampleTime = Util.getElapsedTime(downsampleStart, downsampleEnd);
 		System.out.println("Downsampling took "+downsampleTime);
 		
-		return new TileCoordBounds(prevTiles.getAbsoluteMinCoord(), prevTiles.getAbsoluteMaxCoord());
+		HddTileList topTiles = numLevels > 0 ? levelTiles.get(numLevels - 1) : baseTiles;
+		return new TileCoordBounds(topTiles.getAbsoluteMinCoord(), topTiles.getAbsoluteMaxCoord());
 	}
 	
 	private static TileCache createTileCache(final boolean useCache, String optionString, ImageFormat imageFormat, File rootCacheDir, tectonicus.configuration.Map map, Layer layer, MessageDigest hashAlgorithm)
@@ -970,22 +2214,6 @@ public class TileRenderer
 		}
 	}
 	
-	private static HddTileList findNextZoomTiles(HddTileList baseTiles, HddTileListFactory factory)
-	{
-		System.out.println("\tScanning for next zoom tiles...");
-		
-		HddTileList result = factory.createList();
-		
-		for (TileCoord c : baseTiles)
-		{
-			final int x = (int)Math.floor(c.x / 2.0f);
-			final int y = (int)Math.floor(c.y / 2.0f);
-			result.add( new TileCoord(x, y) );
-		}
-		
-		return result;
-	}
-
 	
 	
 	
@@ -1423,7 +2651,7 @@ public class TileRenderer
 		System.out.println("Outputting players to "+playersFile.getAbsolutePath());
 		
 		int numOutput = 0;
-		ExecutorService executor = Executors.newCachedThreadPool();
+		BoundedExecutor.Batch iconTasks = playerIconAssembler.getExecutor().newBatch();
 		JsArrayWriter jsWriter = null;
 		try
 		{
@@ -1472,8 +2700,7 @@ public class TileRenderer
 						jsWriter.write(args);
 						
 						File iconFile = new File(imagesDir, player.getName()+".png");
-						WriteIconTask task = playerIconAssembler.new WriteIconTask(player, iconFile);
-						executor.submit(task);
+						iconTasks.submit(playerIconAssembler.new WriteIconTask(player, iconFile));
 						
 						numOutput++;
 					}
@@ -1486,10 +2713,10 @@ public class TileRenderer
 		}
 		finally
 		{
-			executor.shutdown();
-			
 			if (jsWriter != null)
 				jsWriter.close();
+			
+			iconTasks.await();
 		}
 		System.out.println("Outputted "+numOutput+" players");
 	}
@@ -1744,7 +2971,7 @@ public class TileRenderer
 		try
 		{
 			signsIn = new HddObjectListReader<>(signListFile);
-			outputSigns(outputFile, signsIn, map, spawn);
+			outputSigns(outputFile, getMarkerRegionDir(outputFile, "signs"), signsIn, map, spawn);
 		}
 		catch (Exception e)
 		{
@@ -1757,15 +2984,13 @@ public class TileRenderer
 		}
 	}
 	
-	private void outputSigns(File signFile, HddObjectListReader<Sign> signs, tectonicus.configuration.Map map, Vector3l spawn) throws IOException {
+	private void outputSigns(File signFile, File regionDir, HddObjectListReader<Sign> signs, tectonicus.configuration.Map map, Vector3l spawn) throws IOException {
 		System.out.println("Writing signs to "+signFile.getAbsolutePath());
-
-		Files.deleteIfExists(signFile.toPath());
 		
-		JsArrayWriter jsWriter = null;
+		MarkerWriter markerWriter = null;
 		try
 		{
-			jsWriter = new JsArrayWriter(signFile, map.getId()+"_signData");
+			markerWriter = new MarkerWriter(signFile, map.getId()+"_signData", regionDir, args.compressMarkers());
 			
 			long radius = 0;
 			long originX = spawn.x;
@@ -1787,37 +3012,28 @@ public class TileRenderer
 			while (signs.hasNext())
 			{				
 				signs.read(sign);
-				String message = "\"" +sign.getText(0) + "\\n" + sign.getText(1) + "\\n" + sign.getText(2) + "\\n" + sign.getText(3) + "\"";
-				if (map.getSignFilter() == SignFilter.Obey)
-					message = "\"\\nOBEY\\n\\n\"";
-				
-				HashMap<String, String> signArgs = new HashMap<>();
-				
-				final float worldX = sign.getX() + 0.5f;
-				final float worldY = sign.getY();
-				final float worldZ = sign.getZ() + 0.5f;				
-				
-				String posStr = "new WorldCoord("+worldX+", "+worldY+", "+worldZ+")";
-				signArgs.put("worldPos", posStr);
-				signArgs.put("message", message);
-				if (map.getSignFilter() == SignFilter.Obey)
-				{
-					signArgs.put("text1", "\"\"");
-					signArgs.put("text2", "\"OBEY\"");
-					signArgs.put("text3", "\"\"");
-					signArgs.put("text4", "\"\"");
-				}
-				else
-				{
-					signArgs.put("text1", "\"" + sign.getText(0) + "\"");
-					signArgs.put("text2", "\"" + sign.getText(1) + "\"");
-					signArgs.put("text3", "\"" + sign.getText(2) + "\"");
-					signArgs.put("text4", "\"" + sign.getText(3) + "\"");
-				}
 				
 				if (radius == 0 || radius != 0 && Math.pow((sign.getX() - originX), 2) + Math.pow((sign.getZ() - originZ), 2) < Math.pow(radius,2))
 				{
-					jsWriter.write(signArgs);
+					com.google.gson.stream.JsonWriter out = markerWriter.beginMarker(sign.getX() + 0.5f, sign.getY(), sign.getZ() + 0.5f);
+					
+					// Sign text is already escaped when it's read from the chunk, so goes out as-is
+					if (map.getSignFilter() == SignFilter.Obey)
+					{
+						out.name("message").value("\nOBEY\n\n");
+						out.name("text1").value("");
+						out.name("text2").value("OBEY");
+						out.name("text3").value("");
+						out.name("text4").value("");
+					}
+					else
+					{
+						out.name("message").jsonValue("\"" + sign.getText(0) + "\\n" + sign.getText(1) + "\\n" + sign.getText(2) + "\\n" + sign.getText(3) + "\"");
+						for (int i=0; i<4; i++)
+							out.name("text"+(i+1)).jsonValue("\"" + sign.getText(i) + "\"");
+					}
+					
+					markerWriter.endMarker();
 				}
 			}
 		}
@@ -1827,8 +3043,8 @@ public class TileRenderer
 		}
 		finally
 		{
-			if (jsWriter != null)
-				jsWriter.close();
+			if (markerWriter != null)
+				markerWriter.close();
 		}
 	}
 	
@@ -1839,7 +3055,7 @@ public class TileRenderer
 		try
 		{
 			HddObjectListReader<Portal> portalsIn = new HddObjectListReader<>(portalListFile);
-			numPortals = outputPortals(outFile, portalsIn, map, spawn);
+			numPortals = outputPortals(outFile, getMarkerRegionDir(outFile, "portals"), portalsIn, map, spawn);
 			portalsIn.close();
 		}
 		catch (Exception e)
@@ -1850,16 +3066,14 @@ public class TileRenderer
 		return numPortals;
 	}
 	
-	private int outputPortals(File portalFile, HddObjectListReader<Portal> portalPositions, tectonicus.configuration.Map map, Vector3l spawn) throws IOException {
+	private int outputPortals(File portalFile, File regionDir, HddObjectListReader<Portal> portalPositions, tectonicus.configuration.Map map, Vector3l spawn) throws IOException {
 		System.out.println("Writing portals...");
-
-		Files.deleteIfExists(portalFile.toPath());
 		
 		int numPortals = 0;
-		JsArrayWriter jsWriter = null;
+		MarkerWriter markerWriter = null;
 		try
 		{
-			jsWriter = new JsArrayWriter(portalFile, map.getId()+"_portalData");
+			markerWriter = new MarkerWriter(portalFile, map.getId()+"_portalData", regionDir, args.compressMarkers());
 			
 			long radius = 0;
 			long originX = spawn.x;
@@ -1923,17 +3137,10 @@ public class TileRenderer
 			
 				for (Portal p : portals)
 				{
-					final float worldX = p.getX();
-					final float worldY = p.getY();
-					final float worldZ = p.getZ();
-					
-					HashMap<String, String> portalArgs = new HashMap<>();
-					String posStr = "new WorldCoord("+worldX+", "+worldY+", "+worldZ+")";
-					portalArgs.put("worldPos", posStr);
-					
 					if (radius == 0 || radius != 0 && Math.pow((p.getX() - originX), 2) + Math.pow((p.getZ() - originZ), 2) < Math.pow(radius,2))
 					{
-						jsWriter.write(portalArgs);
+						markerWriter.beginMarker(p.getX(), p.getY(), p.getZ());
+						markerWriter.endMarker();
 					}
 				}
 			}
@@ -1944,8 +3151,8 @@ public class TileRenderer
 		}
 		finally
 		{
-			if (jsWriter != null)
-				jsWriter.close();
+			if (markerWriter != null)
+				markerWriter.close();
 		}
 		
 		System.out.println("Wrote "+numPortals+" portals");
@@ -2026,17 +3233,11 @@ public class TileRenderer
 	private void outputChests(File chestFile, tectonicus.configuration.Map map, Vector3l spawn, List<ContainerEntity> chestList)
 	{
 		System.out.println("Writing chests to "+chestFile.getAbsolutePath());
-
-		try {
-			Files.deleteIfExists(chestFile.toPath());
-		} catch (IOException e) {
-			e.printStackTrace();
-		}
-
-		JsArrayWriter jsWriter = null;
+		
+		MarkerWriter markerWriter = null;
 		try
 		{
-			jsWriter = new JsArrayWriter(chestFile, map.getId()+"_chestData");
+			markerWriter = new MarkerWriter(chestFile, map.getId()+"_chestData", getMarkerRegionDir(chestFile, "chests"), args.compressMarkers());
 			
 			long radius = 0;
 			long originX = spawn.x;
@@ -2085,17 +3286,10 @@ public class TileRenderer
 			
 			for (BlockEntity entity : chestList)
 			{
-				float worldX = entity.getX() + 0.5f;
-				float worldY = entity.getY();
-				float worldZ = entity.getZ() + 0.5f;
-				HashMap<String, String> chestArgs = new HashMap<>();
-
-				String posStr = "new WorldCoord("+worldX+", "+worldY+", "+worldZ+")";
-				chestArgs.put("worldPos", posStr);
-				
 				if (radius == 0 || radius != 0 && Math.pow((entity.getX() - originX), 2) + Math.pow((entity.getZ() - originZ), 2) < Math.pow(radius,2))
 				{
-					jsWriter.write(chestArgs);
+					markerWriter.beginMarker(entity.getX() + 0.5f, entity.getY(), entity.getZ() + 0.5f);
+					markerWriter.endMarker();
 				}
 			}
 		}
@@ -2105,11 +3299,24 @@ public class TileRenderer
 		}
 		finally
 		{
-			if (jsWriter != null)
-				jsWriter.close();
+			try
+			{
+				if (markerWriter != null)
+					markerWriter.close();
+			}
+			catch (IOException e)
+			{
+				e.printStackTrace();
+			}
 		}
 	}
 	
+	/** Per region marker files go in markers/<type> next to the main marker file */
+	private static File getMarkerRegionDir(File markerFile, String type)
+	{
+		return new File(new File(markerFile.getParentFile(), "markers"), type);
+	}
+	
 	private void outputIcons(tectonicus.configuration.Map map, BlockTypeRegistry registry, TexturePack texturePack)
 	{
 		try
@@ -2147,11 +3354,6 @@ public class TileRenderer
 		return new TileCoord(wholeTileX, wholeTileY);
 	}
 	
-	private static Point tileToScreen(TileCoord tilePos, final int tileWidth, final int tileHeight)
-	{
-		return new Point(tilePos.x * tileWidth, tilePos.y * tileHeight);
-	}
-	
 	public static File getImageFile(File dir, final int x, final int y, ImageFormat imageFormat)
 	{
 		final int xBin = x % 16;
@@ -9,7 +9,12 @@
 
 package tectonicus;
 
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
 import java.text.NumberFormat;
 import java.util.ArrayList;
 import java.util.Collections;
@@ -185,7 +190,51 @@ public class WorldStats
 		
 		System.out.println("Outputted world stats");
 	}
-
+	
+	/** Saves the stats so a resumed render doesn't have to go through every chunk again to get them */
+	public void write(File file) throws IOException
+	{
+		try (FileOutputStream fileOut = new FileOutputStream(file))
+		{
+			DataOutputStream out = new DataOutputStream(fileOut);
+			out.writeInt(numChunks);
+			out.writeInt(numPortals);
+			out.writeInt(numPlayers);
+			
+			out.writeInt(blockIdCounts.size());
+			for (Map.Entry<IdDataPair, MutableLong> entry : blockIdCounts.entrySet())
+			{
+				out.writeInt(entry.getKey().id);
+				out.writeInt(entry.getKey().data);
+				out.writeLong(entry.getValue().longValue());
+			}
+			
+			out.flush();
+			fileOut.getFD().sync();
+		}
+	}
+	
+	public static WorldStats read(File file) throws IOException
+	{
+		WorldStats stats = new WorldStats();
+		
+		try (DataInputStream in = new DataInputStream(new FileInputStream(file)))
+		{
+			stats.numChunks = in.readInt();
+			stats.numPortals = in.readInt();
+			stats.numPlayers = in.readInt();
+			
+			final int numIds = in.readInt();
+			for (int i=0; i<numIds; i++)
+			{
+				IdDataPair key = new IdDataPair(in.readInt(), in.readInt());
+				stats.blockIdCounts.put(key, new MutableLong(in.readLong()));
+			}
+		}
+		
+		return stats;
+	}
+	
 	private static class IdDataPair implements Comparable<IdDataPair>
 	{
 		public final int id;
@@ -0,0 +1,195 @@
+/*
+ * Copyright (c) 2012-2019, John Campbell and other contributors.  All rights reserved.
+ *
+ * This file is part of Tectonicus. It is subject to the license terms in the LICENSE file found in
+ * the top-level directory of this distribution.  The full list of project contributors is contained
+ * in the AUTHORS file found in the same location.
+ *
+ */
+
+package tectonicus.blockTypes;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import tectonicus.blockTypes.BlockModel.BlockElement;
+import tectonicus.blockTypes.BlockModel.BlockElement.ElementFace;
+import tectonicus.rasteriser.Texture;
+import tectonicus.texture.SubTexture;
+
+/** A block model's faces under one block rotation, packed so that drawing a block is just a translate and copy.
+ *  Positions are relative to the block's corner, with the element and block rotations already applied.
+ */
+public class BakedBlockModel
+{
+	public static final int UP = 0;
+	public static final int DOWN = 1;
+	public static final int NORTH = 2;
+	public static final int SOUTH = 3;
+	public static final int EAST = 4;
+	public static final int WEST = 5;
+	
+	private static final String[] FACE_NAMES = { "up", "down", "north", "south", "east", "west" };
+	
+	/** x, y, z, u, v for each of a face's four corners */
+	public static final int FLOATS_PER_FACE = 20;
+	
+	private final int[] faceDirs;
+	private final Texture[] textures;
+	private final float[] vertices;
+	
+	/** Bakes the elements rotated by the given angle in degrees about the block's centre, around the x axis if
+	 *  xAxis is set or the y axis otherwise
+	 */
+	public BakedBlockModel(List<BlockElement> elements, final float rotation, final boolean xAxis)
+	{
+		List<ElementFace> faces = new ArrayList<>();
+		List<Integer> dirs = new ArrayList<>();
+		List<float[]> corners = new ArrayList<>();
+		
+		for (BlockElement element : elements)
+		{
+			final float x1 = element.getFrom().x() / 16;
+			final float y1 = element.getFrom().y() / 16;
+			final float z1 = element.getFrom().z() / 16;
+			
+			final float x2 = element.getTo().x() / 16;
+			final float y2 = element.getTo().y() / 16;
+			final float z2 = element.getTo().z() / 16;
+			
+			// Top left, top right, bottom right, bottom left of each face
+			final float[][] faceCorners =
+			{
+				{ x1, y2, z1,  x2, y2, z1,  x2, y2, z2,  x1, y2, z2 }, // up
+				{ x1, y1, z2,  x2, y1, z2,  x2, y1, z1,  x1, y1, z1 }, // down
+				{ x2, y2, z1,  x1, y2, z1,  x1, y1, z1,  x2, y1, z1 }, // north
+				{ x1, y2, z2,  x2, y2, z2,  x2, y1, z2,  x1, y1, z2 }, // south
+				{ x2, y2, z2,  x2, y2, z1,  x2, y1, z1,  x2, y1, z2 }, // east
+				{ x1, y2, z1,  x1, y2, z2,  x1, y1, z2,  x1, y1, z1 }, // west
+			};
+			
+			for (int dir=0; dir<FACE_NAMES.length; dir++)
+			{
+				ElementFace face = element.getFaces().get(FACE_NAMES[dir]);
+				if (face == null)
+					continue;
+				
+				float[] positions = faceCorners[dir];
+				
+				// The element's own rotation happens in the model first, then the whole block is rotated
+				if (element.getRotationAngle() != 0)
+				{
+					rotate(positions, element.getRotationAngle(),
+							element.getRotationOrigin().x / 16, element.getRotationOrigin().y / 16, element.getRotationOrigin().z / 16,
+							element.getRotationAxis().x, element.getRotationAxis().y, element.getRotationAxis().z);
+				}
+				if (rotation != 0)
+					rotate(positions, rotation, 0.5f, 0.5f, 0.5f, xAxis ? 1 : 0, xAxis ? 0 : 1, 0);
+				
+				faces.add(face);
+				dirs.add(dir);
+				corners.add(positions);
+			}
+		}
+		
+		faceDirs = new int[faces.size()];
+		textures = new Texture[faces.size()];
+		vertices = new float[faces.size() * FLOATS_PER_FACE];
+		
+		for (int i=0; i<faces.size(); i++)
+		{
+			ElementFace face = faces.get(i);
+			SubTexture tex = face.getTexture();
+			
+			faceDirs[i] = dirs.get(i);
+			textures[i] = tex.texture;
+			
+			final float[] uvs;
+			switch (face.getTextureRotation())
+			{
+				case 90:
+					uvs = new float[] { tex.u0, tex.v1,  tex.u0, tex.v0,  tex.u1, tex.v0,  tex.u1, tex.v1 };
+					break;
+				case 180:
+					uvs = new float[] { tex.u1, tex.v1,  tex.u0, tex.v1,  tex.u0, tex.v0,  tex.u1, tex.v0 };
+					break;
+				case 270:
+					uvs = new float[] { tex.u1, tex.v0,  tex.u1, tex.v1,  tex.u0, tex.v1,  tex.u0, tex.v0 };
+					break;
+				default:
+					uvs = new float[] { tex.u0, tex.v0,  tex.u1, tex.v0,  tex.u1, tex.v1,  tex.u0, tex.v1 };
+					break;
+			}
+			
+			float[] positions = corners.get(i);
+			int out = i * FLOATS_PER_FACE;
+			for (int corner=0; corner<4; corner++)
+			{
+				vertices[out++] = positions[corner*3];
+				vertices[out++] = positions[corner*3+1];
+				vertices[out++] = positions[corner*3+2];
+				vertices[out++] = uvs[corner*2];
+				vertices[out++] = uvs[corner*2+1];
+			}
+		}
+	}
+	
+	public int numFaces()
+	{
+		return faceDirs.length;
+	}
+	
+	/** Which of the model's sides the face is on, before the block rotation, as one of UP, DOWN, NORTH etc. */
+	public int getFaceDir(final int face)
+	{
+		return faceDirs[face];
+	}
+	
+	public Texture getTexture(final int face)
+	{
+		return textures[face];
+	}
+	
+	/** FLOATS_PER_FACE floats for each face in turn */
+	public float[] getVertices()
+	{
+		return vertices;
+	}
+	
+	/** Rotates packed x, y, z positions in place by angle degrees about the origin, around an x, y or z axis */
+	private static void rotate(float[] positions, final float angle, final float originX, final float originY, final float originZ,
+								final float axisX, final float axisY, final float axisZ)
+	{
+		final double radians = Math.toRadians(angle);
+		final float cos = (float)Math.cos(radians);
+		final float sin = (float)Math.sin(radians);
+		
+		for (int i=0; i<positions.length; i+=3)
+		{
+			final float x = positions[i] - originX;
+			final float y = positions[i+1] - originY;
+			final float z = positions[i+2] - originZ;
+			
+			float rx = x, ry = y, rz = z;
+			if (axisX != 0)
+			{
+				ry = y * cos - z * sin;
+				rz = y * sin + z * cos;
+			}
+			else if (axisY != 0)
+			{
+				rx = x * cos + z * sin;
+				rz = z * cos - x * sin;
+			}
+			else if (axisZ != 0)
+			{
+				rx = x * cos - y * sin;
+				ry = x * sin + y * cos;
+			}
+			
+			positions[i] = rx + originX;
+			positions[i+1] = ry + originY;
+			positions[i+2] = rz + originZ;
+		}
+	}
+}
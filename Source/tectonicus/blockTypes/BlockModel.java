@@ -22,17 +22,31 @@ public class BlockModel
 	final private boolean ambientlyOccluded;
 	final private List<BlockElement> elements;
 	
+	// The model under every block rotation it can be drawn with, baked as it's loaded. Indexed by quarter turns, plus 4 around the x axis
+	final private BakedBlockModel[] rotations;
+	
 	public BlockModel(String name, boolean ambientlyOccluded, List<BlockElement> elements)
 	{
 		this.name = name;
 		this.ambientlyOccluded = ambientlyOccluded;
 		this.elements = elements;
+		
+		this.rotations = new BakedBlockModel[8];
+		for (int i=0; i<rotations.length; i++)
+			rotations[i] = new BakedBlockModel(elements, (i % 4) * 90, i >= 4);
 	}
 	
 	public String getName()	{ return name; }	
 	public boolean isAmbientlyOccluded() { return ambientlyOccluded; }
 	public List<BlockElement> getElements()	{ return elements; }
 	
+	/** The baked model rotated by a multiple of 90 degrees around the "x" or "y" axis */
+	public BakedBlockModel getRotation(final int rotation, String axis)
+	{
+		final int quarterTurns = ((rotation / 90) % 4 + 4) % 4;
+		return rotations[(axis.equals("x") ? 4 : 0) + quarterTurns];
+	}
+	
 	public void drawModel(int x, int y, int z, int rotX, int rotY, boolean uvlock)
 	{
 		
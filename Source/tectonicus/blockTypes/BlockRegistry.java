@@ -13,12 +13,6 @@ import java.io.File;
 import java.io.IOException;
 import java.io.InputStreamReader;
 import java.nio.charset.StandardCharsets;
-import java.nio.file.DirectoryStream;
-import java.nio.file.FileSystem;
-import java.nio.file.FileSystems;
-import java.nio.file.Files;
-import java.nio.file.Path;
-import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
@@ -87,13 +81,15 @@ public class BlockRegistry
 	{
 		List<BlockVariant> blockVariants = new ArrayList<>();
 		
-		//TODO: need to use override pack blockstate files first
-		try (FileSystem fs = FileSystems.newFileSystem(Paths.get(zips.getBaseFileName()), null);
-			DirectoryStream<Path> entries = Files.newDirectoryStream(fs.getPath("/assets/minecraft/blockstates"));)
+		try
 		{
-			for (Path entry : entries)
+			for (String entry : zips.listFiles("assets/minecraft/blockstates"))
 			{
-				JsonObject json = new JsonParser().parse(Files.newBufferedReader(entry, StandardCharsets.UTF_8)).getAsJsonObject();
+				JsonObject json;
+				try (InputStreamReader reader = new InputStreamReader(zips.getStream(entry), StandardCharsets.UTF_8))
+				{
+					json = new JsonParser().parse(reader).getAsJsonObject();
+				}
 				JsonObject variants = json.getAsJsonObject("variants");
 				
 				Set<Entry<String, JsonElement>> entrySet = variants.entrySet();
@@ -103,7 +99,7 @@ public class BlockRegistry
 					blockVariants.add(BlockVariant.deserializeVariant(key, variants.get(key)));
 				}
 			
-				String name = "minecraft:" + StringUtils.removeEnd(entry.getFileName().toString(), ".json");
+				String name = "minecraft:" + StringUtils.removeEnd(entry.substring(entry.lastIndexOf('/') + 1), ".json");
 				blockStates.put(name, blockVariants);
 			}				
 		} catch (Exception e)
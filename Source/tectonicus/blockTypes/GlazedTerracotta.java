@@ -9,12 +9,9 @@
 
 package tectonicus.blockTypes;
 
-import java.util.List;
-
 import tectonicus.BlockContext;
 import tectonicus.BlockType;
 import tectonicus.BlockTypeRegistry;
-import tectonicus.blockTypes.BlockModel.BlockElement;
 
 import tectonicus.rasteriser.MeshUtil;
 
@@ -59,8 +56,8 @@ public class GlazedTerracotta implements BlockType
 	@Override
 	public void addEdgeGeometry(int x, int y, int z, BlockContext world, BlockTypeRegistry registry, RawChunk chunk, Geometry geometry)
 	{
-		List<BlockElement> elements = world.getModelRegistry().getModel(stringId.replace("minecraft:", "")).getElements();
+		BlockModel model = world.getModelRegistry().getModel(stringId.replace("minecraft:", ""));
 		final int data = chunk.getBlockData(x, y, z);
-		MeshUtil.addBlock(world, chunk, x, y, z, elements, geometry, -90*data, "y");
+		MeshUtil.addBlock(world, chunk, x, y, z, model, geometry, -90*data, "y");
 	}
 }
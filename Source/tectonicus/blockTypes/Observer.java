@@ -9,12 +9,9 @@
 
 package tectonicus.blockTypes;
 
-import java.util.List;
-
 import tectonicus.BlockContext;
 import tectonicus.BlockType;
 import tectonicus.BlockTypeRegistry;
-import tectonicus.blockTypes.BlockModel.BlockElement;
 
 import tectonicus.rasteriser.MeshUtil;
 
@@ -59,19 +56,19 @@ public class Observer implements BlockType
 	@Override
 	public void addEdgeGeometry(int x, int y, int z, BlockContext world, BlockTypeRegistry registry, RawChunk chunk, Geometry geometry)
 	{
-		List<BlockElement> elements = world.getModelRegistry().getModel(stringId.replace("minecraft:", "")).getElements();
+		BlockModel model = world.getModelRegistry().getModel(stringId.replace("minecraft:", ""));
 		final int data = chunk.getBlockData(x, y, z);
 		if (data == 0)
-			MeshUtil.addBlock(world, chunk, x, y, z, elements, geometry, 270, "x");
+			MeshUtil.addBlock(world, chunk, x, y, z, model, geometry, 270, "x");
 		else if (data == 1)
-			MeshUtil.addBlock(world, chunk, x, y, z, elements, geometry, 90, "x");
+			MeshUtil.addBlock(world, chunk, x, y, z, model, geometry, 90, "x");
 		else if (data == 2)
-			MeshUtil.addBlock(world, chunk, x, y, z, elements, geometry, 0, "y");
+			MeshUtil.addBlock(world, chunk, x, y, z, model, geometry, 0, "y");
 		else if (data == 3)
-			MeshUtil.addBlock(world, chunk, x, y, z, elements, geometry, 180, "y");
+			MeshUtil.addBlock(world, chunk, x, y, z, model, geometry, 180, "y");
 		else if (data == 4)
-			MeshUtil.addBlock(world, chunk, x, y, z, elements, geometry, -270, "y");
+			MeshUtil.addBlock(world, chunk, x, y, z, model, geometry, -270, "y");
 		else if (data == 5)
-			MeshUtil.addBlock(world, chunk, x, y, z, elements, geometry, -90, "y");
+			MeshUtil.addBlock(world, chunk, x, y, z, model, geometry, -90, "y");
 	}
 }
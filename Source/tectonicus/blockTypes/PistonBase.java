@@ -28,6 +28,9 @@ public class PistonBase implements BlockType
 	private final String name;
 	private SubTexture baseSide, side, top, bottom, pistonFace, pistonEdge;
 	
+	// Models are built once in white and lit when pushed, so each rotation only gets baked once
+	private final SubMesh topMesh, bottomMesh, baseMesh, edgeMesh, pistonFaceMesh;
+	
 	public PistonBase(String name, SubTexture entireSide, SubTexture top, SubTexture bottom, SubTexture pistonFace)
 	{
 		this.name = name;
@@ -56,6 +59,63 @@ public class PistonBase implements BlockType
 		side = new SubTexture(entireSide.texture, entireSide.u0, entireSide.v0, entireSide.u1, entireSide.v0+esTile);
 		baseSide = new SubTexture(side.texture, side.u0, side.v0+divide, side.u1, side.v1);
 		pistonEdge = new SubTexture(side.texture, side.u0, side.v0, side.u1, side.v0+divide);
+		
+		Vector4f colour = new Vector4f(1, 1, 1, 1);
+		
+		final float height = 1.0f / 16.0f * 12.0f;
+		
+		// Piston base
+		
+		topMesh = new SubMesh();
+		// Top
+		topMesh.addQuad(new Vector3f(0, height, 0), new Vector3f(1, height, 0),
+						new Vector3f(1, height, 1), new Vector3f(0, height, 1), colour, this.top);
+		
+		bottomMesh = new SubMesh();
+		// Bottom
+		bottomMesh.addQuad(new Vector3f(0, 0, 0), new Vector3f(0, 0, 1),
+						new Vector3f(1, 0, 1), new Vector3f(1, 0, 0), colour, this.bottom);
+	
+		baseMesh = new SubMesh();
+		// West
+		baseMesh.addQuad(new Vector3f(0, height, 0), new Vector3f(0, height, 1),
+						new Vector3f(0, 0, 1),  new Vector3f(0, 0, 0), colour, baseSide);
+		// North
+		baseMesh.addQuad(new Vector3f(1, height, 0), new Vector3f(0, height, 0),
+						new Vector3f(0, 0, 0),  new Vector3f(1, 0, 0), colour, baseSide);
+		// South
+		baseMesh.addQuad(new Vector3f(0, height, 1), new Vector3f(1, height, 1),
+						new Vector3f(1, 0, 1),  new Vector3f(0, 0, 1), colour, baseSide);
+		// East
+		baseMesh.addQuad(new Vector3f(1, height, 1), new Vector3f(1, height, 0),
+						new Vector3f(1, 0, 0), new Vector3f(1, 0, 1), colour, baseSide);
+		
+		// Unextended piston top
+		
+		pistonFaceMesh = new SubMesh();
+		// Top
+		pistonFaceMesh.addQuad(new Vector3f(0, 1, 0), new Vector3f(1, 1, 0),
+						new Vector3f(1, 1, 1), new Vector3f(0, 1, 1), colour, this.pistonFace);
+		
+		edgeMesh = new SubMesh();
+		// West
+		edgeMesh.addQuad(new Vector3f(0, 1, 0), new Vector3f(0, 1, 1),
+						new Vector3f(0, height, 1),  new Vector3f(0, height, 0), colour, pistonEdge);
+		// North
+		edgeMesh.addQuad(new Vector3f(1, 1, 0), new Vector3f(0, 1, 0),
+						new Vector3f(0, height, 0),  new Vector3f(1, height, 0), colour, pistonEdge);
+		// South
+		edgeMesh.addQuad(new Vector3f(0, 1, 1), new Vector3f(1, 1, 1),
+						new Vector3f(1, height, 1),  new Vector3f(0, height, 1), colour, pistonEdge);
+		// East
+		edgeMesh.addQuad(new Vector3f(1, 1, 1), new Vector3f(1, 1, 0),
+						new Vector3f(1, height, 0), new Vector3f(1, height, 1), colour, pistonEdge);
+		
+		topMesh.cacheRotations();
+		bottomMesh.cacheRotations();
+		baseMesh.cacheRotations();
+		pistonFaceMesh.cacheRotations();
+		edgeMesh.cacheRotations();
 	}
 	
 	@Override
@@ -90,65 +150,7 @@ public class PistonBase implements BlockType
 		final boolean isExtended = (data & 0x8) > 0;
 		final int direction = data & 0x7;
 		
-		SubMesh subMesh = new SubMesh();
-		SubMesh pistonFaceMesh = null;
-		
 		final float lightness = Chunk.getLight(world.getLightStyle(), LightFace.Top, chunk, x, y, z);
-		Vector4f colour = new Vector4f(lightness, lightness, lightness, 1);
-		
-		final float height = 1.0f / 16.0f * 12.0f;
-		
-		// Piston base
-
-		SubMesh topMesh = new SubMesh();
-		// Top
-		topMesh.addQuad(new Vector3f(0, height, 0), new Vector3f(1, height, 0),
-						new Vector3f(1, height, 1), new Vector3f(0, height, 1), colour, top);
-		
-		SubMesh bottomMesh = new SubMesh();
-		// Bottom
-		bottomMesh.addQuad(new Vector3f(0, 0, 0), new Vector3f(0, 0, 1),
-						new Vector3f(1, 0, 1), new Vector3f(1, 0, 0), colour, bottom);
-	
-		SubMesh baseMesh = new SubMesh();
-		// West
-		baseMesh.addQuad(new Vector3f(0, height, 0), new Vector3f(0, height, 1),
-						new Vector3f(0, 0, 1),  new Vector3f(0, 0, 0), colour, baseSide);
-		// North
-		baseMesh.addQuad(new Vector3f(1, height, 0), new Vector3f(0, height, 0),
-						new Vector3f(0, 0, 0),  new Vector3f(1, 0, 0), colour, baseSide);
-		// South
-		baseMesh.addQuad(new Vector3f(0, height, 1), new Vector3f(1, height, 1),
-						new Vector3f(1, 0, 1),  new Vector3f(0, 0, 1), colour, baseSide);
-		// East
-		baseMesh.addQuad(new Vector3f(1, height, 1), new Vector3f(1, height, 0),
-						new Vector3f(1, 0, 0), new Vector3f(1, 0, 1), colour, baseSide);
-		
-		if (isExtended)
-		{
-			// base of piston arm?
-		}
-		else
-		{
-			// Unextended piston top
-			
-			pistonFaceMesh = new SubMesh();
-			// Top
-			pistonFaceMesh.addQuad(new Vector3f(0, 1, 0), new Vector3f(1, 1, 0),
-							new Vector3f(1, 1, 1), new Vector3f(0, 1, 1), colour, pistonFace);
-			// West
-			subMesh.addQuad(new Vector3f(0, 1, 0), new Vector3f(0, 1, 1),
-							new Vector3f(0, height, 1),  new Vector3f(0, height, 0), colour, pistonEdge);
-			// North
-			subMesh.addQuad(new Vector3f(1, 1, 0), new Vector3f(0, 1, 0),
-							new Vector3f(0, height, 0),  new Vector3f(1, height, 0), colour, pistonEdge);
-			// South
-			subMesh.addQuad(new Vector3f(0, 1, 1), new Vector3f(1, 1, 1),
-							new Vector3f(1, height, 1),  new Vector3f(0, height, 1), colour, pistonEdge);
-			// East
-			subMesh.addQuad(new Vector3f(1, 1, 1), new Vector3f(1, 1, 0),
-							new Vector3f(1, height, 0), new Vector3f(1, height, 1), colour, pistonEdge);
-		}
 		
 		Rotation horizRotation = Rotation.Clockwise;
 		float horizAngle = 0;
@@ -202,11 +204,14 @@ public class PistonBase implements BlockType
 			horizAngle = 180;
 		}
 		
-		baseMesh.pushTo(geometry.getMesh(baseSide.texture, Geometry.MeshType.Solid), x, y, z, horizRotation, horizAngle, vertRotation, vertAngle);
-		subMesh.pushTo(geometry.getMesh(pistonEdge.texture, Geometry.MeshType.Solid), x, y, z, horizRotation, horizAngle, vertRotation, vertAngle);
-		topMesh.pushTo(geometry.getMesh(top.texture, Geometry.MeshType.Solid), x, y, z, horizRotation, horizAngle, vertRotation, vertAngle);
-		bottomMesh.pushTo(geometry.getMesh(bottom.texture, Geometry.MeshType.Solid), x, y, z, horizRotation, horizAngle, vertRotation, vertAngle);
-		if(pistonFaceMesh != null)
-			pistonFaceMesh.pushTo(geometry.getMesh(pistonFace.texture, Geometry.MeshType.Solid), x, y, z, horizRotation, horizAngle, vertRotation, vertAngle);
+		baseMesh.pushTo(geometry.getMesh(baseSide.texture, Geometry.MeshType.Solid), x, y, z, horizRotation, horizAngle, vertRotation, vertAngle, lightness, lightness, lightness, 1);
+		topMesh.pushTo(geometry.getMesh(top.texture, Geometry.MeshType.Solid), x, y, z, horizRotation, horizAngle, vertRotation, vertAngle, lightness, lightness, lightness, 1);
+		bottomMesh.pushTo(geometry.getMesh(bottom.texture, Geometry.MeshType.Solid), x, y, z, horizRotation, horizAngle, vertRotation, vertAngle, lightness, lightness, lightness, 1);
+		if (!isExtended)
+		{
+			// Extended pistons have their arm drawn by the piston extension block instead
+			edgeMesh.pushTo(geometry.getMesh(pistonEdge.texture, Geometry.MeshType.Solid), x, y, z, horizRotation, horizAngle, vertRotation, vertAngle, lightness, lightness, lightness, 1);
+			pistonFaceMesh.pushTo(geometry.getMesh(pistonFace.texture, Geometry.MeshType.Solid), x, y, z, horizRotation, horizAngle, vertRotation, vertAngle, lightness, lightness, lightness, 1);
+		}
 	}
 }
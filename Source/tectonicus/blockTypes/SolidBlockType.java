@@ -85,6 +85,21 @@ public class SolidBlockType implements BlockType
 		return name;
 	}
 	
+	public SubTexture getSideTexture()
+	{
+		return sideTexture;
+	}
+	
+	public SubTexture getTopTexture()
+	{
+		return topTexture;
+	}
+	
+	public Colour4f getColour()
+	{
+		return colour;
+	}
+	
 	@Override
 	public boolean isSolid()
 	{
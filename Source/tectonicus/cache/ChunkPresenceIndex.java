@@ -0,0 +1,230 @@
+/*
+ * Copyright (c) 2012-2019, John Campbell and other contributors.  All rights reserved.
+ *
+ * This file is part of Tectonicus. It is subject to the license terms in the LICENSE file found in
+ * the top-level directory of this distribution.  The full list of project contributors is contained
+ * in the AUTHORS file found in the same location.
+ *
+ */
+
+package tectonicus.cache;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.Map;
+
+import tectonicus.Chunk;
+import tectonicus.ChunkCoord;
+import tectonicus.RegionCoord;
+import tectonicus.raw.RawChunk;
+import tectonicus.util.BoundingBox;
+
+/** Which chunks exist in the world, as one bitset per region in the same order as the region file headers.
+ *  Built from the region headers during preprocessing so that existence checks don't need to load any regions.
+ *  
+ *  Chunks can also have their vertical extent recorded (see RawChunk.calculateHeights) so that bounds used for
+ *  tile discovery and culling only cover the blocks actually in them. Chunks without one are treated as full height.
+ */
+public class ChunkPresenceIndex
+{
+	private static final int MAGIC = 0xC4C4B176;
+	
+	private static final int CHUNKS_PER_REGION = RegionCoord.REGION_WIDTH * RegionCoord.REGION_HEIGHT;
+	
+	private static final int FULL_SECTION_MASK = (1 << (RawChunk.HEIGHT / RawChunk.SECTION_HEIGHT)) - 1;
+	
+	private final Map<RegionCoord, RegionEntry> regions;
+	
+	public ChunkPresenceIndex()
+	{
+		regions = new HashMap<RegionCoord, RegionEntry>();
+	}
+	
+	public void addRegion(RegionCoord coord, BitSet presentChunks)
+	{
+		regions.put(coord, new RegionEntry(presentChunks));
+	}
+	
+	/** Adds or removes a single chunk, eg. when it's been generated since the index was built */
+	public void setPresent(ChunkCoord coord, final boolean present)
+	{
+		RegionCoord regionCoord = RegionCoord.fromChunkCoord(coord);
+		
+		RegionEntry entry = regions.get(regionCoord);
+		if (entry == null)
+		{
+			if (!present)
+				return;
+			
+			entry = new RegionEntry(new BitSet(CHUNKS_PER_REGION));
+			regions.put(regionCoord, entry);
+		}
+		entry.present.set(getBitIndex(coord.x, coord.z), present);
+	}
+	
+	/** Records the vertical extent of a chunk, as found by RawChunk.calculateHeights */
+	public void setHeights(ChunkCoord coord, final int minY, final int maxY, final int sectionMask)
+	{
+		RegionEntry entry = regions.get(RegionCoord.fromChunkCoord(coord));
+		if (entry == null)
+			return;
+		
+		final int index = getBitIndex(coord.x, coord.z);
+		entry.minY[index] = (byte)Math.max(minY, 0);
+		entry.maxY[index] = (byte)Math.max(maxY, 0);
+		entry.sectionMasks[index] = (short)sectionMask;
+	}
+	
+	public boolean contains(ChunkCoord coord)
+	{
+		RegionEntry entry = regions.get(RegionCoord.fromChunkCoord(coord));
+		return entry != null && entry.present.get(getBitIndex(coord.x, coord.z));
+	}
+	
+	/** True if the chunk exists and has at least one block in it */
+	public boolean hasBlocks(ChunkCoord coord)
+	{
+		return getSectionMask(coord) != 0;
+	}
+	
+	/** Sections of the chunk which have any blocks in (bit 0 at the bottom), or 0 if the chunk doesn't exist */
+	public int getSectionMask(ChunkCoord coord)
+	{
+		RegionEntry entry = regions.get(RegionCoord.fromChunkCoord(coord));
+		if (entry == null)
+			return 0;
+		
+		final int index = getBitIndex(coord.x, coord.z);
+		return entry.present.get(index) ? entry.sectionMasks[index] & 0xFFFF : 0;
+	}
+	
+	/** Bounds of the blocks in a chunk, or null if the chunk doesn't exist or is empty */
+	public BoundingBox getBounds(ChunkCoord coord)
+	{
+		if (!hasBlocks(coord))
+			return null;
+		
+		RegionEntry entry = regions.get(RegionCoord.fromChunkCoord(coord));
+		final int index = getBitIndex(coord.x, coord.z);
+		return Chunk.createBounds(coord, entry.minY[index] & 0xFF, entry.maxY[index] & 0xFF);
+	}
+	
+	public int numRegions()
+	{
+		return regions.size();
+	}
+	
+	public int numChunks()
+	{
+		int count = 0;
+		for (RegionEntry entry : regions.values())
+			count += entry.present.cardinality();
+		return count;
+	}
+	
+	/** Position of a chunk within its region's bitset, matching the region file header layout */
+	public static int getBitIndex(final long chunkX, final long chunkZ)
+	{
+		return (int)((chunkX & 31) + (chunkZ & 31) * 32);
+	}
+	
+	public void write(File file)
+	{
+		try (DataOutputStream out = new DataOutputStream(new FileOutputStream(file)))
+		{
+			out.writeInt(MAGIC);
+			out.writeInt(regions.size());
+			
+			for (Map.Entry<RegionCoord, RegionEntry> e : regions.entrySet())
+			{
+				RegionEntry entry = e.getValue();
+				
+				out.writeLong(e.getKey().x);
+				out.writeLong(e.getKey().z);
+				
+				long[] words = entry.present.toLongArray();
+				for (int i=0; i<CHUNKS_PER_REGION / 64; i++)
+					out.writeLong(i < words.length ? words[i] : 0);
+				
+				out.write(entry.minY);
+				out.write(entry.maxY);
+				for (short mask : entry.sectionMasks)
+					out.writeShort(mask);
+			}
+		}
+		catch (Exception e)
+		{
+			e.printStackTrace();
+		}
+	}
+	
+	/** Reads an index written by write(), or returns null if there isn't a valid one */
+	public static ChunkPresenceIndex read(File file)
+	{
+		if (!file.exists())
+			return null;
+		
+		try (DataInputStream in = new DataInputStream(new FileInputStream(file)))
+		{
+			if (in.readInt() != MAGIC)
+				return null;
+			
+			ChunkPresenceIndex index = new ChunkPresenceIndex();
+			
+			final int numRegions = in.readInt();
+			for (int i=0; i<numRegions; i++)
+			{
+				final long x = in.readLong();
+				final long z = in.readLong();
+				
+				long[] words = new long[CHUNKS_PER_REGION / 64];
+				for (int j=0; j<words.length; j++)
+					words[j] = in.readLong();
+				
+				RegionEntry entry = new RegionEntry(BitSet.valueOf(words));
+				in.readFully(entry.minY);
+				in.readFully(entry.maxY);
+				for (int j=0; j<entry.sectionMasks.length; j++)
+					entry.sectionMasks[j] = in.readShort();
+				
+				index.regions.put(new RegionCoord(x, z), entry);
+			}
+			
+			return index;
+		}
+		catch (Exception e)
+		{
+			e.printStackTrace();
+		}
+		
+		return null;
+	}
+	
+	private static class RegionEntry
+	{
+		public final BitSet present;
+		
+		public final byte[] minY;
+		public final byte[] maxY;
+		public final short[] sectionMasks;
+		
+		public RegionEntry(BitSet present)
+		{
+			this.present = present;
+			
+			this.minY = new byte[CHUNKS_PER_REGION];
+			this.maxY = new byte[CHUNKS_PER_REGION];
+			this.sectionMasks = new short[CHUNKS_PER_REGION];
+			
+			// Full height until we know better
+			Arrays.fill(maxY, (byte)(RawChunk.HEIGHT-1));
+			Arrays.fill(sectionMasks, (short)FULL_SECTION_MASK);
+		}
+	}
+}
@@ -44,6 +44,8 @@ public class FileTileCache implements TileCache
 	
 	private Map<TileCoord, byte[]> tileHashes;
 	
+	private final TileHashStore hashStore;
+	
 	private boolean wasExistingCacheValid;
 	
 	public FileTileCache(File tileCacheDir, ImageFormat imageFormat, tectonicus.configuration.Map map, Layer layer, String optionString, MessageDigest hashAlgorithm)
@@ -73,6 +75,54 @@ public class FileTileCache implements TileCache
 		}
 		
 		tileHashes = new HashMap<TileCoord, byte[]>();
+		
+		hashStore = new TileHashStore(new File(tileCacheDir, "tileHashes.store"));
+		importTileCacheFiles();
+	}
+	
+	/** Moves hashes from caches that kept a file per tile into the hash store, so upgrading doesn't mean a full re-render */
+	private void importTileCacheFiles()
+	{
+		File[] files = tileCacheDir.listFiles();
+		if (files == null)
+			return;
+		
+		int numImported = 0;
+		for (File f : files)
+		{
+			TileCoord coord = parseCacheFileName(f.getName());
+			if (coord == null)
+				continue;
+			
+			hashStore.put(coord, CacheUtil.readHash(f));
+			f.delete();
+			numImported++;
+		}
+		
+		if (numImported > 0)
+		{
+			System.out.println("Moved "+numImported+" tile hashes into "+tileCacheDir.getAbsolutePath());
+			hashStore.compact();
+		}
+	}
+	
+	private static TileCoord parseCacheFileName(String name)
+	{
+		if (!name.startsWith("tile_") || !name.endsWith(".cache"))
+			return null;
+		
+		String[] parts = name.substring(5, name.length() - 6).split("_");
+		if (parts.length != 2)
+			return null;
+		
+		try
+		{
+			return new TileCoord(Integer.parseInt(parts[0]), Integer.parseInt(parts[1]));
+		}
+		catch (NumberFormatException e)
+		{
+			return null;
+		}
 	}
 	
 	public boolean isUsingExistingCache()
@@ -238,10 +288,9 @@ public class FileTileCache implements TileCache
 			File imgFile = TileRenderer.getImageFile(layerDir, coord.x, coord.y, imageFormat);
 			if (imgFile.exists())
 			{
-				File hashFile = getCacheFile(tileCacheDir, coord);
-				final byte[] cachedHash = CacheUtil.readHash(hashFile);
+				final byte[] cachedHash = hashStore.get(coord);
 				
-				cacheOk = CacheUtil.equal(cachedHash, newHash);
+				cacheOk = cachedHash != null && CacheUtil.equal(cachedHash, newHash);
 			}
 			
 			if (!cacheOk)
@@ -277,8 +326,25 @@ public class FileTileCache implements TileCache
 		if (hash == null)
 			throw new RuntimeException("No hash for tile coord "+coord);
 		
-		File hashFile = getCacheFile(tileCacheDir, coord);
-		CacheUtil.writeCacheFile(hashFile, hash);
+		hashStore.put(coord, hash);
+	}
+	
+	@Override
+	public void close()
+	{
+		hashStore.close();
+	}
+	
+	@Override
+	public byte[] getTileHash(TileCoord coord)
+	{
+		return tileHashes.get(coord);
+	}
+	
+	@Override
+	public void setTileHash(TileCoord coord, byte[] hash)
+	{
+		tileHashes.put(coord, hash);
 	}
 	
 	private byte[] calculateTileHash(World world, tectonicus.configuration.Map map, RegionHashStore regionHashStore, OrthoCamera camera, TileCoord tile, final int zoom, final int tileWidth, final int tileHeight)
@@ -318,11 +384,6 @@ public class FileTileCache implements TileCache
 		return fullHash;
 	}
 	
-	private static File getCacheFile(File cacheDir, TileCoord coord)
-	{
-		return new File(cacheDir, "tile_"+coord.x+"_"+coord.y+".cache");
-	}
-	
 	public static class ChunkSorter implements Comparator<ChunkCoord>
 	{
 		public static final ChunkSorter instance = new ChunkSorter();
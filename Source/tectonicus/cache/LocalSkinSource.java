@@ -0,0 +1,68 @@
+/*
+ * Copyright (c) 2012-2019, John Campbell and other contributors.  All rights reserved.
+ *
+ * This file is part of Tectonicus. It is subject to the license terms in the LICENSE file found in
+ * the top-level directory of this distribution.  The full list of project contributors is contained
+ * in the AUTHORS file found in the same location.
+ *
+ */
+
+package tectonicus.cache;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.net.URI;
+
+import javax.imageio.ImageIO;
+
+import tectonicus.raw.Player;
+
+/** Stands in for the network when testing or benchmarking offline. Skins are read from <uuid>.png or
+ *  <name>.png in skinDir, and players without one get defaultSkin (which may be null for no skin).
+ *  Names aren't looked up, so players that only have a uuid are named after it.
+ */
+public class LocalSkinSource implements SkinSource
+{
+	private static final String DEFAULT_SKIN_URL = "local:default";
+	
+	private final File skinDir;
+	private final BufferedImage defaultSkin;
+	
+	public LocalSkinSource(File skinDir, BufferedImage defaultSkin)
+	{
+		this.skinDir = skinDir;
+		this.defaultSkin = defaultSkin;
+	}
+	
+	@Override
+	public void lookupProfile(Player player)
+	{
+		if (player.getName() == null)
+			player.setName(player.getUUID());
+		
+		File skinFile = new File(skinDir, player.getUUID()+".png");
+		if (!skinFile.exists())
+			skinFile = new File(skinDir, player.getName()+".png");
+		
+		player.setSkinURL(skinFile.exists() ? skinFile.toURI().toString() : DEFAULT_SKIN_URL);
+	}
+	
+	@Override
+	public BufferedImage fetchSkin(String skinURL)
+	{
+		if (skinURL == null)
+			return null;
+		if (skinURL.equals(DEFAULT_SKIN_URL))
+			return defaultSkin;
+		
+		try
+		{
+			return ImageIO.read(new File(new URI(skinURL)));
+		}
+		catch (Exception e)
+		{
+			e.printStackTrace();
+		}
+		return null;
+	}
+}
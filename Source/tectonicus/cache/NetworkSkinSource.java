@@ -0,0 +1,59 @@
+/*
+ * Copyright (c) 2012-2019, John Campbell and other contributors.  All rights reserved.
+ *
+ * This file is part of Tectonicus. It is subject to the license terms in the LICENSE file found in
+ * the top-level directory of this distribution.  The full list of project contributors is contained
+ * in the AUTHORS file found in the same location.
+ *
+ */
+
+package tectonicus.cache;
+
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.net.URLConnection;
+
+import javax.imageio.ImageIO;
+
+import tectonicus.raw.Player;
+
+/** Looks players up with the Mojang session server and downloads their skins */
+public class NetworkSkinSource implements SkinSource
+{
+	@Override
+	public void lookupProfile(Player player) throws Exception
+	{
+		player.new RequestPlayerInfoTask().call();
+	}
+	
+	@Override
+	public BufferedImage fetchSkin(String skinURL)
+	{
+		try
+		{
+			URLConnection remote = openConnection(skinURL);
+			try (InputStream skinStream = remote.getInputStream())
+			{
+				return ImageIO.read(skinStream);
+			}
+		}
+		catch (Exception e) {}
+		
+		return null;
+	}
+	
+	private static URLConnection openConnection(String location) throws IOException
+	{
+		URLConnection connection = null;
+		do
+		{
+			URL skinURL = new URL(location);
+			connection = skinURL.openConnection();
+			location = connection.getHeaderField("Location");
+		}
+		while (location != null);
+		return connection;
+	}
+}
@@ -41,4 +41,22 @@ public class NullTileCache implements TileCache
 	{
 		
 	}
+	
+	@Override
+	public byte[] getTileHash(TileCoord coord)
+	{
+		return null;
+	}
+	
+	@Override
+	public void setTileHash(TileCoord coord, byte[] hash)
+	{
+		
+	}
+	
+	@Override
+	public void close()
+	{
+		
+	}
 }
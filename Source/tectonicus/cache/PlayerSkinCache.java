@@ -11,14 +11,10 @@ package tectonicus.cache;
 
 import java.awt.image.BufferedImage;
 import java.io.File;
-import java.io.IOException;
-import java.io.InputStream;
 import java.io.PrintWriter;
-import java.net.URL;
-import java.net.URLConnection;
 import java.security.MessageDigest;
-import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import javax.imageio.ImageIO;
 import javax.xml.parsers.DocumentBuilder;
@@ -31,24 +27,40 @@ import org.w3c.dom.NodeList;
 import tectonicus.configuration.Configuration;
 import tectonicus.raw.Player;
 import tectonicus.texture.TexturePack;
+import tectonicus.util.BoundedExecutor;
 import tectonicus.util.FileUtils;
 
 public class PlayerSkinCache
 {
 	private static final int INDEX_VERSION = 1;
 	
-	private static final long MAX_AGE_BEFORE_REFRESH = 1000 * 60 * 60  * 60; // one hour in ms
+	public static final long MAX_AGE_BEFORE_REFRESH = 1000 * 60 * 60  * 60; // one hour in ms
+	
+	/** Player work is mostly waiting on the network, but the session server rate limits so don't go too wide */
+	private static final int NUM_PLAYER_THREADS = 8;
 	
 	private final File cacheDir;
 	
+	private final SkinSource skinSource;
+	
+	private final BoundedExecutor executor;
+	
 	private Map<String, CacheEntry> skinCache;
 	
 	public PlayerSkinCache(Configuration config, MessageDigest hashAlgorithm)
 	{
-		cacheDir = new File(config.cacheDir(), "skinCache");
+		this(new File(config.cacheDir(), "skinCache"), new NetworkSkinSource());
+	}
+	
+	public PlayerSkinCache(File cacheDir, SkinSource skinSource)
+	{
+		this.cacheDir = cacheDir;
 		cacheDir.mkdirs();
 		
-		skinCache = new HashMap<String, PlayerSkinCache.CacheEntry>();
+		this.skinSource = skinSource;
+		this.executor = new BoundedExecutor("Player worker", NUM_PLAYER_THREADS);
+		
+		skinCache = new ConcurrentHashMap<String, PlayerSkinCache.CacheEntry>();
 		
 		boolean indexOk = false;
 		
@@ -117,6 +129,8 @@ public class PlayerSkinCache
 	
 	public void destroy()
 	{
+		executor.shutdown();
+		
 		System.out.println("Writing player skin cache info ("+skinCache.size()+" skin"+ (skinCache.size()>1?"s":"") + " to write)");
 		
 		try (PrintWriter writer = new PrintWriter(new File(cacheDir, "skins.cache")))
@@ -156,6 +170,27 @@ public class PlayerSkinCache
 		return skinCache.get(playerUUID);
 	}
 	
+	/** Shared pool for loading players and fetching their skins and icons */
+	public BoundedExecutor getExecutor()
+	{
+		return executor;
+	}
+	
+	/** Fills in the player's name and skin url, from the cache if it's recent enough or from the skin source otherwise */
+	public void lookupProfile(Player player) throws Exception
+	{
+		CacheEntry ce = skinCache.get(player.getUUID());
+		if (ce != null && System.currentTimeMillis() - ce.fetchedTime < MAX_AGE_BEFORE_REFRESH)
+		{
+			player.setName(ce.playerName);
+			player.setSkinURL(ce.skinURL);
+		}
+		else
+		{
+			skinSource.lookupProfile(player);
+		}
+	}
+	
 	public BufferedImage fetchSkin(Player player)
 	{
 		CacheEntry existing = null;
@@ -188,7 +223,7 @@ public class PlayerSkinCache
 		skinCache.remove(player.getUUID());
 		
 		CacheEntry newEntry = new CacheEntry();
-		BufferedImage newSkin = fetchSkinFromNetwork(player.getSkinURL());
+		BufferedImage newSkin = skinSource.fetchSkin(player.getSkinURL());
 		File skinFile = null;
 		if (newSkin != null)
 		{
@@ -219,42 +254,6 @@ public class PlayerSkinCache
 		return TexturePack.copy(newSkin);
 	}
 	
-	private BufferedImage fetchSkinFromNetwork(String skinURL)
-	{
-		try
-		{
-            URLConnection remote = openConnection(skinURL);
-            InputStream skinStream = remote.getInputStream();
-            try
-            {
-                BufferedImage skin = ImageIO.read(skinStream);
-                if(skin != null)
-				return skin;
-            }
-            finally
-            {
-                skinStream.close();
-            }
-		}
-		catch (Exception e) {}
-		
-		return null;
-	}
-	
-    private static URLConnection openConnection(String location)
-        throws IOException
-    {
-        URLConnection connection = null;
-        do
-        {
-            URL skinURL = new URL(location);
-            connection = skinURL.openConnection();
-            location = connection.getHeaderField("Location");
-        }
-        while(location != null);
-        return connection;
-    }
-	
 	public static class CacheEntry
 	{
 		public String playerName;
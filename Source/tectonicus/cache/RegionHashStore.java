@@ -32,9 +32,16 @@ public class RegionHashStore
 	private HashCache hashCache;
 	
 	public RegionHashStore(File cacheDir)
+	{
+		this(cacheDir, true);
+	}
+	
+	/** Keeping the existing hashes is only safe when they're known to be from the world being rendered, ie. when resuming */
+	public RegionHashStore(File cacheDir, final boolean clear)
 	{
 		hashStoreDir = new File(cacheDir, "hashStore");
-		FileUtils.deleteDirectory(hashStoreDir);
+		if (clear)
+			FileUtils.deleteDirectory(hashStoreDir);
 		hashStoreDir.mkdirs();
 		
 		hashCache = new HashCache(32);
@@ -66,6 +73,24 @@ public class RegionHashStore
 		activeHashes = null;
 	}
 
+	/** Replaces the hashes of some chunks in a region, keeping the rest of the region's hashes as they were */
+	public void updateHashes(RegionCoord coord, Map<ChunkCoord, byte[]> hashes)
+	{
+		RegionHashes regionHashes = hashCache.get(coord);
+		if (regionHashes == null)
+		{
+			regionHashes = new RegionHashes(coord);
+			if (RegionHashes.getHashFile(hashStoreDir, coord).exists())
+				regionHashes.read(hashStoreDir);
+		}
+		
+		for (Map.Entry<ChunkCoord, byte[]> entry : hashes.entrySet())
+			regionHashes.addHash(entry.getKey(), entry.getValue());
+		
+		regionHashes.write(hashStoreDir);
+		hashCache.put(coord, regionHashes);
+	}
+	
 	public byte[] getChunkHash(ChunkCoord chunkCoord)
 	{
 		RegionCoord regionCoord = RegionCoord.fromChunkCoord(chunkCoord);
@@ -80,9 +105,10 @@ public class RegionHashStore
 		}
 		else
 		{
-			// Load from disk, insert into cache
+			// Load from disk, insert into cache. A region may not have been hashed yet when watching for saved chunks
 			hashes = new RegionHashes(regionCoord);
-			hashes.read(hashStoreDir);
+			if (RegionHashes.getHashFile(hashStoreDir, regionCoord).exists())
+				hashes.read(hashStoreDir);
 			hashCache.put(regionCoord, hashes);
 		}
 		
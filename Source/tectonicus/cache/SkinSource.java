@@ -0,0 +1,24 @@
+/*
+ * Copyright (c) 2012-2019, John Campbell and other contributors.  All rights reserved.
+ *
+ * This file is part of Tectonicus. It is subject to the license terms in the LICENSE file found in
+ * the top-level directory of this distribution.  The full list of project contributors is contained
+ * in the AUTHORS file found in the same location.
+ *
+ */
+
+package tectonicus.cache;
+
+import java.awt.image.BufferedImage;
+
+import tectonicus.raw.Player;
+
+/** Where PlayerSkinCache gets player names and skins from when it doesn't have them cached */
+public interface SkinSource
+{
+	/** Fills in the player's current name and skin url */
+	public void lookupProfile(Player player) throws Exception;
+	
+	/** Returns the skin at skinURL, or null if there isn't one */
+	public BufferedImage fetchSkin(String skinURL);
+}
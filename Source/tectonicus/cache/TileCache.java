@@ -32,4 +32,13 @@ public interface TileCache
 
 	public void writeImageCache(TileCoord coord);
 	
+	/** Hash of a changed tile found by findChangedTiles, or null if there isn't one */
+	public byte[] getTileHash(TileCoord coord);
+	
+	/** Puts back a hash from an earlier findChangedTiles, for resuming an interrupted render */
+	public void setTileHash(TileCoord coord, byte[] hash);
+	
+	/** Releases any files held open, once the layer's tiles are all rendered */
+	public void close();
+	
 }
@@ -0,0 +1,281 @@
+/*
+ * Copyright (c) 2012-2019, John Campbell and other contributors.  All rights reserved.
+ *
+ * This file is part of Tectonicus. It is subject to the license terms in the LICENSE file found in
+ * the top-level directory of this distribution.  The full list of project contributors is contained
+ * in the AUTHORS file found in the same location.
+ *
+ */
+
+package tectonicus.cache;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+import tectonicus.TileCoord;
+
+/** The hash each base tile was last rendered with, kept in a single append-only file rather than a file per tile.
+ *  Every hash written is appended as a record keyed by the packed tile coord, and the whole file is read back
+ *  in one go when the store is opened, with later records replacing earlier ones for the same tile.
+ *
+ *  Each record has its own checksum, so a record torn by a crash is found on loading and cut off. Once most of
+ *  the records are stale the live ones are written to a new file, which is synced and then renamed over the
+ *  old one, so a crash part way through leaves the old file as it was.
+ */
+public class TileHashStore
+{
+	private static final int MAGIC = 0x54485331;
+	private static final int HEADER_SIZE = 4;
+	
+	// Compact once there are this many records and less than half of them are live
+	private static final int MIN_RECORDS_TO_COMPACT = 4096;
+	
+	private final File file;
+	
+	private final Map<TileCoord, byte[]> hashes;
+	
+	private RandomAccessFile out;
+	private int numRecords;
+	
+	public TileHashStore(File file)
+	{
+		this.file = file;
+		this.hashes = new HashMap<TileCoord, byte[]>();
+		
+		// Left behind if we crashed while compacting, the original is still good
+		getTempFile().delete();
+		
+		final long validLength = load();
+		
+		try
+		{
+			out = new RandomAccessFile(file, "rw");
+			if (validLength < HEADER_SIZE)
+			{
+				out.setLength(0);
+				out.writeInt(MAGIC);
+			}
+			else
+			{
+				// Drop anything after the last good record, so new records aren't appended after garbage
+				out.setLength(validLength);
+				out.seek(validLength);
+			}
+		}
+		catch (IOException e)
+		{
+			e.printStackTrace();
+			closeQuietly();
+		}
+		
+		if (numRecords >= MIN_RECORDS_TO_COMPACT && numRecords > hashes.size() * 2)
+			compact();
+	}
+	
+	public synchronized byte[] get(TileCoord coord)
+	{
+		return hashes.get(coord);
+	}
+	
+	public synchronized void put(TileCoord coord, byte[] hash)
+	{
+		hashes.put(coord, hash);
+		
+		if (out == null)
+			return;
+		
+		try
+		{
+			out.write(createRecord(coord, hash));
+			numRecords++;
+		}
+		catch (IOException e)
+		{
+			e.printStackTrace();
+		}
+	}
+	
+	public synchronized int size()
+	{
+		return hashes.size();
+	}
+	
+	/** Rewrites the file with just the latest hash for each tile */
+	public synchronized void compact()
+	{
+		File tempFile = getTempFile();
+		try
+		{
+			try (FileOutputStream fileOut = new FileOutputStream(tempFile))
+			{
+				ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+				new DataOutputStream(buffer).writeInt(MAGIC);
+				for (Map.Entry<TileCoord, byte[]> e : hashes.entrySet())
+				{
+					buffer.write(createRecord(e.getKey(), e.getValue()));
+					if (buffer.size() >= 64 * 1024)
+					{
+						buffer.writeTo(fileOut);
+						buffer.reset();
+					}
+				}
+				buffer.writeTo(fileOut);
+				
+				fileOut.getFD().sync();
+			}
+			
+			closeQuietly();
+			
+			try
+			{
+				Files.move(tempFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+			}
+			catch (AtomicMoveNotSupportedException e)
+			{
+				Files.move(tempFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+			}
+			
+			numRecords = hashes.size();
+			
+			out = new RandomAccessFile(file, "rw");
+			out.seek(out.length());
+		}
+		catch (IOException e)
+		{
+			e.printStackTrace();
+			tempFile.delete();
+			
+			// Carry on appending to the old file if it's still there
+			if (out == null)
+			{
+				try
+				{
+					out = new RandomAccessFile(file, "rw");
+					out.seek(out.length());
+				}
+				catch (IOException ex)
+				{
+					ex.printStackTrace();
+				}
+			}
+		}
+	}
+	
+	public synchronized void close()
+	{
+		closeQuietly();
+	}
+	
+	/** Reads every record into the map, and returns the length of the file up to the end of the last good record */
+	private long load()
+	{
+		if (!file.exists())
+			return 0;
+		
+		long validLength = 0;
+		try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file), 64 * 1024)))
+		{
+			if (in.readInt() != MAGIC)
+			{
+				System.out.println("Tile hash store "+file.getAbsolutePath()+" isn't valid, starting a new one");
+				return 0;
+			}
+			validLength = HEADER_SIZE;
+			
+			CRC32 crc = new CRC32();
+			byte[] record = new byte[8 + 2];
+			while (true)
+			{
+				in.readFully(record);
+				final long key = readLong(record, 0);
+				final int hashLength = ((record[8] & 0xFF) << 8) | (record[9] & 0xFF);
+				
+				byte[] hash = new byte[hashLength];
+				in.readFully(hash);
+				
+				crc.reset();
+				crc.update(record);
+				crc.update(hash);
+				if (in.readInt() != (int)crc.getValue())
+				{
+					System.out.println("Tile hash store "+file.getAbsolutePath()+" has a damaged record, ignoring everything after it");
+					break;
+				}
+				
+				hashes.put(new TileCoord((int)(key >> 32), (int)key), hash);
+				numRecords++;
+				validLength += record.length + hashLength + 4;
+			}
+		}
+		catch (EOFException e)
+		{
+			// Either the end of the file or a torn last record, both fine
+		}
+		catch (IOException e)
+		{
+			e.printStackTrace();
+		}
+		return validLength;
+	}
+	
+	private static byte[] createRecord(TileCoord coord, byte[] hash) throws IOException
+	{
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream(8 + 2 + hash.length + 4);
+		DataOutputStream data = new DataOutputStream(bytes);
+		data.writeLong(packKey(coord));
+		data.writeShort(hash.length);
+		data.write(hash);
+		
+		CRC32 crc = new CRC32();
+		crc.update(bytes.toByteArray());
+		data.writeInt((int)crc.getValue());
+		
+		return bytes.toByteArray();
+	}
+	
+	static long packKey(TileCoord coord)
+	{
+		return ((long)coord.x << 32) | (coord.y & 0xFFFFFFFFL);
+	}
+	
+	private static long readLong(byte[] bytes, final int offset)
+	{
+		long value = 0;
+		for (int i=0; i<8; i++)
+			value = (value << 8) | (bytes[offset + i] & 0xFF);
+		return value;
+	}
+	
+	private File getTempFile()
+	{
+		return new File(file.getParentFile(), file.getName()+".tmp");
+	}
+	
+	private void closeQuietly()
+	{
+		if (out != null)
+		{
+			try
+			{
+				out.close();
+			}
+			catch (IOException e) {}
+			
+			out = null;
+		}
+	}
+}
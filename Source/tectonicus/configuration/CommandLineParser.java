@@ -109,6 +109,8 @@ public class CommandLineParser
 		final float imageCompression = parseImageCompression( parser.getString("imageCompressionLevel", "") );
 		layer.setImageCompressionLevel(imageCompression);
 		
+		layer.setBackgroundColor( parseBackgroundColor( parser.getString("backgroundColor", ""), dimension ) );
+		
 		SignFilter signFilter = parseSignFilter( parser.getString("signs", "") );
 		map.setSignFilter(signFilter);
 		
@@ -154,6 +156,7 @@ public class CommandLineParser
 		map.setClosestZoomSize( parseClosestZoomSize( parser.getString("closestZoomSize", "") ) );
 		
 		map.setNorthDirection( parseNorthDirection( parser.getString("north", "")));
+		map.setHotspots( parseHotspots( parser.getString("hotspots", "") ) );
 		map.setCustomCompassRose( parser.getString("compassRose", null));
 		
 		config.setMaxTiles( parseMaxTiles( parser.getString("maxTiles", "") ) );
@@ -173,6 +176,20 @@ public class CommandLineParser
 		final int numDownsampleThreads = parseNumDownsampleThreads( parser.getString("numDownsampleThreads", "") );
 		config.setNumDownsampleThreads(numDownsampleThreads);
 		
+		config.setNumRenderWorkers( parseNumRenderWorkers( parser.getString("numRenderWorkers", "") ) );
+		
+		config.setLodZoomLevel( parseLodZoomLevel( parser.getString("lodZoomLevel", "") ) );
+		
+		config.setMaxRenderTime( parseMaxRenderTime( parser.getString("maxRenderTime", "") ) );
+		
+		config.setMetricsPort( parseMetricsPort( parser.getString("metricsPort", "") ) );
+		
+		config.setPollInterval( parsePollInterval( parser.getString("pollInterval", "") ) );
+		
+		config.setUseGreedyMeshing( parseUseGreedyMeshing( parser.getString("greedyMeshing", "") ) );
+		
+		config.setCompressMarkers( parseCompressMarkers( parser.getString("compressMarkers", "") ) );
+		
 		return config;
 	}
 }
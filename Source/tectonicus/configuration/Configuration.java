@@ -21,7 +21,10 @@ public interface Configuration
 		Interactive,
 		ExportPlayers,
 		RenderViews,
-		Profile;
+		Profile,
+		Coordinator,
+		Worker,
+		Daemon;
 	}
 	
 	public enum RasteriserType
@@ -36,7 +39,8 @@ public interface Configuration
 		Regular,
 		Cave,
 		ExploredCaves,
-		Nether
+		Nether,
+		Surface
 	};
 	
 	public enum Dimension
@@ -56,6 +60,9 @@ public interface Configuration
 	
 	public boolean eraseOutputDir();
 	
+	/** True to skip work already done by an interrupted render, going by the journal in the cache dir */
+	public boolean resume();
+	
 	public File outputDir();
 	public File cacheDir();
 	
@@ -107,6 +114,29 @@ public interface Configuration
 	
 	public int getNumDownsampleThreads();
 	
+	/** Number of rasterisers rendering base tiles at once, each with its own share of the tiles */
+	public int getNumRenderWorkers();
+	
+	/** Zoom level to draw straight from the chunk data before the base tiles are rendered, or -1 if disabled */
+	public int getLodZoomLevel();
+	
+	/** Minutes to spend rendering base tiles before stopping, or 0 for no limit. Tiles are rendered most important
+	 *  first, and any not reached are left for the next render
+	 */
+	public int getMaxRenderTime();
+	
+	/** Local port to serve metrics on, or 0 if disabled */
+	public int getMetricsPort();
+	
+	/** Seconds between checks for saved chunks in daemon mode. Changes the filesystem reports are picked up sooner */
+	public int getPollInterval();
+	
+	/** Build opaque cubes in one pass per chunk with their faces merged, rather than block by block */
+	public boolean useGreedyMeshing();
+	
+	/** Also write gzipped copies of the sign, portal and chest marker files */
+	public boolean compressMarkers();
+	
 	public String getSinglePlayerName();
 	
 	public int numMaps();
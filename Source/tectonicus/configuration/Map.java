@@ -13,6 +13,7 @@ import java.io.File;
 import java.util.List;
 
 import tectonicus.configuration.Configuration.Dimension;
+import tectonicus.util.Vector3l;
 import tectonicus.world.subset.WorldSubsetFactory;
 
 public interface Map
@@ -45,6 +46,9 @@ public interface Map
 	
 	public List<File> getModJars();
 	
+	/** Places (in world coords) whose tiles should be rendered before the rest, along with the spawn point and players */
+	public List<Vector3l> getHotspots();
+	
 	public int numLayers();
 	public Layer getLayer(final int index);
 	public List<Layer> getLayers();
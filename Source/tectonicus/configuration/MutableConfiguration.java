@@ -25,6 +25,8 @@ public class MutableConfiguration implements Configuration
 	
 	private boolean eraseOutputDir;
 	
+	private boolean resume;
+	
 	private File logFile;
 	
 	private File outputDir;
@@ -62,6 +64,17 @@ public class MutableConfiguration implements Configuration
 	private int numZoomLevels;
 	
 	private int numDownsampleThreads;
+	private int numRenderWorkers;
+	private int lodZoomLevel;
+	private int maxRenderTime;
+	
+	private int metricsPort;
+	
+	private int pollInterval;
+	
+	private boolean useGreedyMeshing;
+	
+	private boolean compressMarkers;
 	
 	private boolean forceLoadAwt;
 	private boolean force32BitNatives;
@@ -94,6 +107,9 @@ public class MutableConfiguration implements Configuration
 		useOldColorPalette = false;
 		defaultSkin = "steve";
 		numDownsampleThreads = 1;
+		numRenderWorkers = 1;
+		lodZoomLevel = -1;
+		pollInterval = 30;
 		singlePlayerName = "Player";
 		maps = new ArrayList<MutableMap>();
 	}
@@ -123,6 +139,7 @@ public class MutableConfiguration implements Configuration
 		System.out.println("\tspawnInitiallyVisible:"+isSpawnInitiallyVisible());
 		System.out.println("\tviewsInitiallyVisible:"+areViewsInitiallyVisible());
 		System.out.println("\teraseOutputDir:"+eraseOutputDir());
+		System.out.println("\tresume:"+resume());
 		System.out.println("\textractLwjglNatives:"+extractLwjglNatives());
 		System.out.println("\tisVerbose:"+isVerbose());
 		System.out.println("\tforceLoadAwt:"+forceLoadAwt());
@@ -131,6 +148,13 @@ public class MutableConfiguration implements Configuration
 		System.out.println("\tlogFile:"+getLogFile().getAbsolutePath());
 		System.out.println("\toutputHtmlName:"+getOutputHtmlName());
 		System.out.println("\tnumDownsampleThreads:"+getNumDownsampleThreads());
+		System.out.println("\tnumRenderWorkers:"+getNumRenderWorkers());
+		System.out.println("\tlodZoomLevel:"+getLodZoomLevel());
+		System.out.println("\tmaxRenderTime:"+getMaxRenderTime());
+		System.out.println("\tmetricsPort:"+getMetricsPort());
+		System.out.println("\tpollInterval:"+getPollInterval());
+		System.out.println("\tgreedyMeshing:"+useGreedyMeshing());
+		System.out.println("\tcompressMarkers:"+compressMarkers());
 		System.out.println("\tsinglePlayerName:"+getSinglePlayerName());
 		
 		System.out.println();
@@ -145,6 +169,7 @@ public class MutableConfiguration implements Configuration
 			System.out.println("\tcameraElevation: "+m.getCameraElevationDeg());
 			System.out.println("\tclosestZoomSize: "+m.getClosestZoomSize());
 			System.out.println("\tworldSubset: "+m.getWorldSubsetFactory().getDescription());
+			System.out.println("\thotspots: "+m.getHotspots().size());
 			System.out.println("\tuseBiomeColours: "+m.useBiomeColours());
 			
 			for (Layer l : m.getLayers())
@@ -191,23 +216,32 @@ public class MutableConfiguration implements Configuration
 		System.out.println("'colourDepth'             - colour depth for rendering. Specify 24 or 16 (default 24)");
 		System.out.println("'dimension'               - dimension to render. 'terra' for the regular world, or 'nether' for the nether dimesion. Default 'terra'");
 		System.out.println("'eraseOutputDir           - specify 'true' to erase the entire output directory and start from scratch");
+		System.out.println("'hotspots'                - places to render before the rest of the map, as 'x, z' or 'x, y, z' world coords separated by ';'. The spawn point, players and recently saved chunks always come first");
 		System.out.println("'imageFormat'             - format to use when outputing images. Specify 'png', 'jpg' or 'gif'. Default is png");
 		System.out.println("'imageCompressionLevel'   - sets the compression level for output images (jpeg only). Specify a number between 1.0 and 0.1. Default 0.95");
 		System.out.println("'lighting'                - lighting style to render with. Possible values are 'day' 'night' or 'none'. Defaults to 'day'");
 		System.out.println("'logFile                  - sets the file for the output log. Defaults to './TectonicusLog.txt'");
 		System.out.println("'minecraftJar'            - path to your client minecraft jar, for terrain texture. If not specified, will attempt to find it in your AppData dir");
-		System.out.println("'mode'                    - 'cmd' for command line, 'gui' for gui, 'players' for just player info export, 'views' to just render views");
+		System.out.println("'mode'                    - 'cmd' for command line, 'gui' for gui, 'players' for just player info export, 'views' to just render views, 'coordinator' and 'worker' to split base tile rendering across processes sharing the cache and output dirs, 'daemon' to keep re-rendering tiles as the world is saved");
 		System.out.println("'numZoomLevels'           - how many different levels of zoom to generate");
 		System.out.println("'numSamples'              - specifies the number of samples for antialiasing. Defaults to 4 (high quality), specify 0 for no antialiasing");
 		System.out.println("'numDownsampleThreads     - specifies the number of threads to use while downsampling. Defaults to the number of cores your machine has");
+		System.out.println("'numRenderWorkers'        - specifies how many rasterisers render base tiles at the same time, each with its own offscreen buffer and copy of the world geometry. Defaults to 1");
+		System.out.println("'lodZoomLevel'            - zoom level (0 is the furthest out) to draw straight from the chunk data before rendering base tiles, so a rough overview is available early. Defaults to off");
+		System.out.println("'maxRenderTime'           - minutes to spend rendering base tiles, most important areas first. Tiles not reached are left for the next render. Defaults to no limit");
+		System.out.println("'metricsPort'             - serve live render metrics in Prometheus format on this local port (eg. 9100). Defaults to off");
+		System.out.println("'greedyMeshing'           - specify 'true' to merge the faces of solid cubes into larger quads, for fewer vertices per chunk. Defaults to false");
+		System.out.println("'compressMarkers'         - specify 'true' to write .gz copies of the sign, portal and chest data, for web servers that serve pre-compressed files. Defaults to false");
 		System.out.println("'outputDir'               - path to a directory to output the rendered map");
 		System.out.println("'outputHtmlName'          - sets the name for the map html file. Defaults to 'map.html'");
 		System.out.println("'players'                 - set whether to export players or not. Choose 'all', 'none', 'ops', 'whitelist' or 'blacklist'. 'ops' only exports positions for players with op privileges, whitelist only exports players in the filter file, blacklist excludes players in the filter file");
 		System.out.println("'playerFilterFile'        - specify the whitelist or blacklist file for use with players=whitelist or players=blacklist. File should be one player name per line (same format as ops file)");
+		System.out.println("'pollInterval'            - in daemon mode, seconds between checks of the world for saved chunks. Defaults to 30");
 		System.out.println("'portals'                 - specify whether portals should be exported or not. Choose 'all' or 'none'. Default 'all'");
 		System.out.println("'playersInitiallyVisible' - sets whether player markers are initially visible or hidden. Choose 'true' or 'false', default true");
 		System.out.println("'portalsInitiallyVisible' - sets whether portal markers are initially visible or hidden. Choose 'true' or 'false', default true");
-		System.out.println("'renderStyle'             - drawing style, 'regular' for normal, 'cave' for cave style, or 'nether' for nether. Defaults to 'regular'");
+		System.out.println("'renderStyle'             - drawing style, 'regular' for normal, 'cave' for cave style, 'nether' for nether, or 'surface' for a fast flat colour map. Defaults to 'regular'");
+		System.out.println("'resume'                  - specify 'true' (or pass --resume) to carry on from where an interrupted render stopped rather than starting again");
 		System.out.println("'signs'                   - set whether to export signs or not. Choose 'none', 'special' or 'all'. 'Special' only exports signs which begin and end with - ! ~ or =. Default 'special'");
 		System.out.println("'showSpawn'               - show an icon for the spawn position. Choose 'true' or 'false', default 'true'.");
 		System.out.println("'spawnInitiallyVisible    - sets whether the spawn marker is initially visible");
@@ -248,6 +282,12 @@ public class MutableConfiguration implements Configuration
 	}
 	public boolean eraseOutputDir() { return eraseOutputDir; }
 	
+	public void setResume(final boolean resume)
+	{
+		this.resume = resume;
+	}
+	public boolean resume() { return resume; }
+	
 	public void setOutputDir(File dir)
 	{
 		this.outputDir = dir;
@@ -409,6 +449,48 @@ public class MutableConfiguration implements Configuration
 	}
 	public int getNumDownsampleThreads() { return numDownsampleThreads; }
 	
+	public void setNumRenderWorkers(final int num)
+	{
+		this.numRenderWorkers = num;
+	}
+	public int getNumRenderWorkers() { return numRenderWorkers; }
+	
+	public void setLodZoomLevel(final int level)
+	{
+		this.lodZoomLevel = level;
+	}
+	public int getLodZoomLevel() { return lodZoomLevel; }
+	
+	public void setMaxRenderTime(final int minutes)
+	{
+		this.maxRenderTime = minutes;
+	}
+	public int getMaxRenderTime() { return maxRenderTime; }
+	
+	public void setMetricsPort(final int port)
+	{
+		this.metricsPort = port;
+	}
+	public int getMetricsPort() { return metricsPort; }
+	
+	public void setPollInterval(final int seconds)
+	{
+		this.pollInterval = seconds;
+	}
+	public int getPollInterval() { return pollInterval; }
+	
+	public void setUseGreedyMeshing(final boolean useGreedyMeshing)
+	{
+		this.useGreedyMeshing = useGreedyMeshing;
+	}
+	public boolean useGreedyMeshing() { return useGreedyMeshing; }
+	
+	public void setCompressMarkers(final boolean compressMarkers)
+	{
+		this.compressMarkers = compressMarkers;
+	}
+	public boolean compressMarkers() { return compressMarkers; }
+	
 	public void setSinglePlayerName(String name)
 	{
 		this.singlePlayerName = name;
@@ -14,6 +14,7 @@ import java.util.ArrayList;
 import java.util.List;
 
 import tectonicus.configuration.Configuration.Dimension;
+import tectonicus.util.Vector3l;
 import tectonicus.world.subset.FullWorldSubsetFactory;
 import tectonicus.world.subset.WorldSubsetFactory;
 
@@ -42,6 +43,8 @@ public class MutableMap implements Map
 	
 	private List<File> modJars;
 	
+	private List<Vector3l> hotspots;
+	
 	private List<Layer> layers;
 	
 	private NorthDirection northDirection;
@@ -64,6 +67,8 @@ public class MutableMap implements Map
 		
 		this.modJars = new ArrayList<File>();
 		
+		this.hotspots = new ArrayList<Vector3l>();
+		
 		this.layers = new ArrayList<Layer>();
 		
 		this.closestZoomSize = 32;
@@ -168,6 +173,13 @@ public class MutableMap implements Map
 	}
 	public List<File> getModJars() { return modJars; }
 	
+	public void setHotspots(List<Vector3l> hotspots)
+	{
+		this.hotspots = hotspots;
+	}
+	@Override
+	public List<Vector3l> getHotspots() { return hotspots; }
+	
 	@Override
 	public int numLayers()
 	{
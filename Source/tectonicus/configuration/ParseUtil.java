@@ -12,6 +12,8 @@ package tectonicus.configuration;
 import java.io.File;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
 
 import org.apache.commons.lang3.StringUtils;
 
@@ -19,6 +21,7 @@ import tectonicus.configuration.Configuration.Dimension;
 import tectonicus.configuration.Configuration.Mode;
 import tectonicus.configuration.Configuration.RasteriserType;
 import tectonicus.configuration.Configuration.RenderStyle;
+import tectonicus.util.Vector3l;
 
 public class ParseUtil
 {
@@ -39,6 +42,12 @@ public class ParseUtil
 			mode = Mode.RenderViews;
 		else if (modeStr.equals("profile"))
 			mode = Mode.Profile;
+		else if (modeStr.equals("coordinator"))
+			mode = Mode.Coordinator;
+		else if (modeStr.equals("worker"))
+			mode = Mode.Worker;
+		else if (modeStr.equals("daemon"))
+			mode = Mode.Daemon;
 		
 		return mode;
 	}
@@ -57,6 +66,8 @@ public class ParseUtil
 			renderStyle = RenderStyle.ExploredCaves;
 		else if (renderStyleStr.equalsIgnoreCase("nether"))
 			renderStyle = RenderStyle.Nether;
+		else if (renderStyleStr.equalsIgnoreCase("surface"))
+			renderStyle = RenderStyle.Surface;
 		
 		return renderStyle;
 	}
@@ -484,6 +495,94 @@ public class ParseUtil
 		return Runtime.getRuntime().availableProcessors(); 
 	}
 	
+	public static int parseNumRenderWorkers(String numWorkersStr)
+	{
+		try
+		{
+			final int numWorkers = Integer.parseInt(numWorkersStr.trim());
+			if (numWorkers >= 1)
+				return numWorkers;
+		}
+		catch (Exception e) {}
+		
+		return 1;
+	}
+	
+	public static int parseLodZoomLevel(String levelStr)
+	{
+		try
+		{
+			final int level = Integer.parseInt(levelStr.trim());
+			if (level >= 0)
+				return level;
+		}
+		catch (Exception e) {}
+		
+		return -1;
+	}
+	
+	public static int parseMaxRenderTime(String minutesStr)
+	{
+		try
+		{
+			final int minutes = Integer.parseInt(minutesStr.trim());
+			if (minutes > 0)
+				return minutes;
+		}
+		catch (Exception e) {}
+		
+		return 0;
+	}
+	
+	/** Parses world positions separated by ';', each either 'x, z' (at sea level) or 'x, y, z'. Positions that don't parse are skipped */
+	public static List<Vector3l> parseHotspots(String hotspotsStr)
+	{
+		List<Vector3l> hotspots = new ArrayList<Vector3l>();
+		if (hotspotsStr == null)
+			return hotspots;
+		
+		for (String positionStr : hotspotsStr.split(";"))
+		{
+			String[] parts = positionStr.split(",");
+			try
+			{
+				if (parts.length == 2)
+					hotspots.add(new Vector3l(Long.parseLong(parts[0].trim()), 64, Long.parseLong(parts[1].trim())));
+				else if (parts.length == 3)
+					hotspots.add(new Vector3l(Long.parseLong(parts[0].trim()), Long.parseLong(parts[1].trim()), Long.parseLong(parts[2].trim())));
+			}
+			catch (NumberFormatException e) {}
+		}
+		
+		return hotspots;
+	}
+	
+	public static int parseMetricsPort(String portStr)
+	{
+		try
+		{
+			final int port = Integer.parseInt(portStr.trim());
+			if (port > 0 && port <= 65535)
+				return port;
+		}
+		catch (Exception e) {}
+		
+		return 0;
+	}
+	
+	public static int parsePollInterval(String intervalStr)
+	{
+		try
+		{
+			final int seconds = Integer.parseInt(intervalStr.trim());
+			if (seconds > 0)
+				return seconds;
+		}
+		catch (Exception e) {}
+		
+		return 30;
+	}
+	
 	public static int parseColourDepth(String depthStr)
 	{
 		try
@@ -590,6 +689,22 @@ public class ParseUtil
 		return string.equalsIgnoreCase("true");
 	}
 	
+	public static boolean parseUseGreedyMeshing(String string)
+	{
+		if (string == null || string.length() == 0)
+			return false; // default
+		
+		return string.equalsIgnoreCase("true");
+	}
+	
+	public static boolean parseCompressMarkers(String string)
+	{
+		if (string == null || string.length() == 0)
+			return false; // default
+		
+		return string.equalsIgnoreCase("true");
+	}
+	
 	public static boolean parseForceLoadAwt(String string)
 	{
 		if (string == null || string.length() == 0)
@@ -100,6 +100,20 @@ public class XmlConfigurationParser
 			final int numDownsampleThreads = parseNumDownsampleThreads( getString(configNode, "numDownsampleThreads") );
 			config.setNumDownsampleThreads(numDownsampleThreads);
 			
+			config.setNumRenderWorkers( parseNumRenderWorkers( getString(configNode, "numRenderWorkers") ) );
+			
+			config.setLodZoomLevel( parseLodZoomLevel( getString(configNode, "lodZoomLevel") ) );
+			
+			config.setMaxRenderTime( parseMaxRenderTime( getString(configNode, "maxRenderTime") ) );
+			
+			config.setMetricsPort( parseMetricsPort( getString(configNode, "metricsPort") ) );
+			
+			config.setPollInterval( parsePollInterval( getString(configNode, "pollInterval") ) );
+			
+			config.setUseGreedyMeshing( parseUseGreedyMeshing( getString(configNode, "greedyMeshing") ) );
+			
+			config.setCompressMarkers( parseCompressMarkers( getString(configNode, "compressMarkers") ) );
+			
 			config.setEraseOutputDir( parseEraseOutputDir( getString(configNode, "eraseOutputDir") ) );
 			
 			config.setUseCache( parseUseCache( getString(configNode, "useCache") ) );
@@ -233,6 +247,18 @@ public class XmlConfigurationParser
 				map.setModJars(modJars);
 			}
 			
+			Element hotspotsElement = getChild(mapElement, "hotspots");
+			if (hotspotsElement != null)
+			{
+				List<Vector3l> hotspots = new ArrayList<Vector3l>();
+				for (Element hotspot : getChildren(hotspotsElement, "hotspot"))
+				{
+					hotspots.addAll( parseHotspots( getString(hotspot, "position") ) );
+				}
+				
+				map.setHotspots(hotspots);
+			}
+			
 			Element[] layers = getChildren(mapElement, "layer");
 			for (Element layerElement : layers)
 			{
@@ -0,0 +1,70 @@
+/*
+ * Copyright (c) 2012-2019, John Campbell and other contributors.  All rights reserved.
+ *
+ * This file is part of Tectonicus. It is subject to the license terms in the LICENSE file found in
+ * the top-level directory of this distribution.  The full list of project contributors is contained
+ * in the AUTHORS file found in the same location.
+ *
+ */
+
+package tectonicus.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.google.gson.JsonObject;
+
+/** A count that only goes up, eg. chunks loaded or bytes written. */
+public class Counter extends Metric
+{
+	private final AtomicLong value = new AtomicLong();
+	
+	public Counter(String name, String help)
+	{
+		super(name, help);
+	}
+	
+	public void inc()
+	{
+		value.incrementAndGet();
+	}
+	
+	public void add(final long amount)
+	{
+		value.addAndGet(amount);
+	}
+	
+	public long get()
+	{
+		return value.get();
+	}
+	
+	@Override
+	public String getType()
+	{
+		return "counter";
+	}
+	
+	@Override
+	public void writePrometheus(StringBuilder out)
+	{
+		out.append(getName()).append(' ').append(get()).append('\n');
+	}
+	
+	@Override
+	public JsonObject toJson(final double uptimeSeconds)
+	{
+		final long count = get();
+		
+		JsonObject json = new JsonObject();
+		json.addProperty("type", getType());
+		json.addProperty("value", count);
+		json.addProperty("perSecond", uptimeSeconds > 0 ? count / uptimeSeconds : 0);
+		return json;
+	}
+	
+	@Override
+	public void reset()
+	{
+		value.set(0);
+	}
+}
@@ -0,0 +1,74 @@
+/*
+ * Copyright (c) 2012-2019, John Campbell and other contributors.  All rights reserved.
+ *
+ * This file is part of Tectonicus. It is subject to the license terms in the LICENSE file found in
+ * the top-level directory of this distribution.  The full list of project contributors is contained
+ * in the AUTHORS file found in the same location.
+ *
+ */
+
+package tectonicus.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.google.gson.JsonObject;
+
+/** A value that can go up and down, eg. a queue depth or the heap in use. */
+public class Gauge extends Metric
+{
+	private final AtomicLong value = new AtomicLong();
+	
+	public Gauge(String name, String help)
+	{
+		super(name, help);
+	}
+	
+	public void set(final long newValue)
+	{
+		value.set(newValue);
+	}
+	
+	public void setMax(final long newValue)
+	{
+		long current;
+		do
+		{
+			current = value.get();
+			if (newValue <= current)
+				return;
+		}
+		while (!value.compareAndSet(current, newValue));
+	}
+	
+	public long get()
+	{
+		return value.get();
+	}
+	
+	@Override
+	public String getType()
+	{
+		return "gauge";
+	}
+	
+	@Override
+	public void writePrometheus(StringBuilder out)
+	{
+		out.append(getName()).append(' ').append(get()).append('\n');
+	}
+	
+	@Override
+	public JsonObject toJson(final double uptimeSeconds)
+	{
+		JsonObject json = new JsonObject();
+		json.addProperty("type", getType());
+		json.addProperty("value", get());
+		return json;
+	}
+	
+	@Override
+	public void reset()
+	{
+		value.set(0);
+	}
+}
@@ -0,0 +1,161 @@
+/*
+ * Copyright (c) 2012-2019, John Campbell and other contributors.  All rights reserved.
+ *
+ * This file is part of Tectonicus. It is subject to the license terms in the LICENSE file found in
+ * the top-level directory of this distribution.  The full list of project contributors is contained
+ * in the AUTHORS file found in the same location.
+ *
+ */
+
+package tectonicus.metrics;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.DoubleAdder;
+
+import com.google.gson.JsonObject;
+
+/** Distribution of observed values (typically durations in seconds) over a fixed set of buckets.
+ *  Percentiles are estimated as the upper bound of the bucket they fall in.
+ */
+public class Histogram extends Metric
+{
+	/** Bucket bounds for timings, from half a millisecond up to ten seconds */
+	public static final double[] TIME_BUCKETS = { 0.0005, 0.001, 0.0025, 0.005, 0.01, 0.025, 0.05, 0.1, 0.25, 0.5, 1, 2.5, 5, 10 };
+	
+	private final double[] bounds;
+	
+	/** One count per bound, plus a final overflow (+Inf) bucket. Counts are not cumulative */
+	private final AtomicLongArray buckets;
+	
+	private final DoubleAdder sum = new DoubleAdder();
+	
+	public Histogram(String name, String help, double[] bounds)
+	{
+		super(name, help);
+		
+		for (int i=1; i<bounds.length; i++)
+		{
+			if (bounds[i] <= bounds[i-1])
+				throw new IllegalArgumentException("Histogram bounds must be increasing");
+		}
+		
+		this.bounds = bounds.clone();
+		this.buckets = new AtomicLongArray(bounds.length + 1);
+	}
+	
+	public void observe(final double value)
+	{
+		int index = 0;
+		while (index < bounds.length && value > bounds[index])
+			index++;
+		
+		buckets.incrementAndGet(index);
+		sum.add(value);
+	}
+	
+	/** Observes a duration given in nanoseconds, recorded in seconds */
+	public void observeNanos(final long elapsedNanos)
+	{
+		observe(elapsedNanos / 1e9);
+	}
+	
+	/** Observes the time since a System.nanoTime() value */
+	public void observeSince(final long startNanos)
+	{
+		observeNanos(System.nanoTime() - startNanos);
+	}
+	
+	public long getCount()
+	{
+		long count = 0;
+		for (int i=0; i<buckets.length(); i++)
+			count += buckets.get(i);
+		return count;
+	}
+	
+	public double getSum()
+	{
+		return sum.sum();
+	}
+	
+	/** Estimated value at the given percentile (0-100), or +Inf if it falls beyond the last bound */
+	public double percentile(final double percentile)
+	{
+		final long count = getCount();
+		if (count == 0)
+			return 0;
+		
+		final long rank = Math.max(1, (long)Math.ceil(percentile / 100.0 * count));
+		
+		long cumulative = 0;
+		for (int i=0; i<bounds.length; i++)
+		{
+			cumulative += buckets.get(i);
+			if (cumulative >= rank)
+				return bounds[i];
+		}
+		return Double.POSITIVE_INFINITY;
+	}
+	
+	@Override
+	public String getType()
+	{
+		return "histogram";
+	}
+	
+	@Override
+	public void writePrometheus(StringBuilder out)
+	{
+		long cumulative = 0;
+		for (int i=0; i<bounds.length; i++)
+		{
+			cumulative += buckets.get(i);
+			out.append(getName()).append("_bucket{le=\"").append(format(bounds[i])).append("\"} ").append(cumulative).append('\n');
+		}
+		cumulative += buckets.get(bounds.length);
+		out.append(getName()).append("_bucket{le=\"+Inf\"} ").append(cumulative).append('\n');
+		
+		out.append(getName()).append("_sum ").append(format(getSum())).append('\n');
+		out.append(getName()).append("_count ").append(cumulative).append('\n');
+	}
+	
+	@Override
+	public JsonObject toJson(final double uptimeSeconds)
+	{
+		final long count = getCount();
+		final double total = getSum();
+		
+		JsonObject json = new JsonObject();
+		json.addProperty("type", getType());
+		json.addProperty("count", count);
+		json.addProperty("sum", total);
+		json.addProperty("mean", count > 0 ? total / count : 0);
+		addPercentile(json, "p50", percentile(50));
+		addPercentile(json, "p90", percentile(90));
+		addPercentile(json, "p99", percentile(99));
+		
+		JsonObject bucketsJson = new JsonObject();
+		for (int i=0; i<bounds.length; i++)
+			bucketsJson.addProperty(format(bounds[i]), buckets.get(i));
+		bucketsJson.addProperty("+Inf", buckets.get(bounds.length));
+		json.add("buckets", bucketsJson);
+		
+		return json;
+	}
+	
+	private static void addPercentile(JsonObject json, String key, final double value)
+	{
+		if (Double.isInfinite(value))
+			json.addProperty(key, "+Inf");
+		else
+			json.addProperty(key, value);
+	}
+	
+	@Override
+	public void reset()
+	{
+		for (int i=0; i<buckets.length(); i++)
+			buckets.set(i, 0);
+		sum.reset();
+	}
+}
@@ -0,0 +1,52 @@
+/*
+ * Copyright (c) 2012-2019, John Campbell and other contributors.  All rights reserved.
+ *
+ * This file is part of Tectonicus. It is subject to the license terms in the LICENSE file found in
+ * the top-level directory of this distribution.  The full list of project contributors is contained
+ * in the AUTHORS file found in the same location.
+ *
+ */
+
+package tectonicus.metrics;
+
+import java.math.BigDecimal;
+
+import com.google.gson.JsonObject;
+
+/** Base of the counters, gauges and histograms held in a MetricRegistry.
+ *  Names follow the Prometheus conventions (lower case, underscores, unit suffix).
+ */
+public abstract class Metric
+{
+	private final String name;
+	private final String help;
+	
+	protected Metric(String name, String help)
+	{
+		this.name = name;
+		this.help = help;
+	}
+	
+	public String getName() { return name; }
+	
+	public String getHelp() { return help; }
+	
+	/** One of the Prometheus metric types - counter, gauge or histogram */
+	public abstract String getType();
+	
+	/** Appends the sample lines (but not the HELP/TYPE header) in Prometheus text format */
+	public abstract void writePrometheus(StringBuilder out);
+	
+	public abstract JsonObject toJson(final double uptimeSeconds);
+	
+	public abstract void reset();
+	
+	static String format(final double value)
+	{
+		if (value == Math.rint(value) && !Double.isInfinite(value) && Math.abs(value) < 1e15)
+			return Long.toString((long)value);
+		if (Double.isNaN(value) || Double.isInfinite(value))
+			return Double.toString(value);
+		return BigDecimal.valueOf(value).stripTrailingZeros().toPlainString();
+	}
+}
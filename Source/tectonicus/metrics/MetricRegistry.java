@@ -0,0 +1,150 @@
+/*
+ * Copyright (c) 2012-2019, John Campbell and other contributors.  All rights reserved.
+ *
+ * This file is part of Tectonicus. It is subject to the license terms in the LICENSE file found in
+ * the top-level directory of this distribution.  The full list of project contributors is contained
+ * in the AUTHORS file found in the same location.
+ *
+ */
+
+package tectonicus.metrics;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonObject;
+
+/** Holds the metrics for a process, in registration order, and exports them
+ *  either as a json snapshot or in the Prometheus text exposition format.
+ */
+public class MetricRegistry
+{
+	private final Map<String, Metric> metrics = new LinkedHashMap<>();
+	
+	private volatile long startNanos = System.nanoTime();
+	
+	private volatile String currentTask = "";
+	
+	public synchronized Counter counter(String name, String help)
+	{
+		return register(new Counter(name, help), Counter.class);
+	}
+	
+	public synchronized Gauge gauge(String name, String help)
+	{
+		return register(new Gauge(name, help), Gauge.class);
+	}
+	
+	public synchronized Histogram histogram(String name, String help, double[] bounds)
+	{
+		return register(new Histogram(name, help, bounds), Histogram.class);
+	}
+	
+	private <T extends Metric> T register(T metric, Class<T> type)
+	{
+		Metric existing = metrics.get(metric.getName());
+		if (existing != null)
+		{
+			if (!type.isInstance(existing))
+				throw new IllegalArgumentException("Metric "+metric.getName()+" already registered as a "+existing.getType());
+			return type.cast(existing);
+		}
+		
+		metrics.put(metric.getName(), metric);
+		return metric;
+	}
+	
+	public synchronized List<Metric> getMetrics()
+	{
+		return new ArrayList<>(metrics.values());
+	}
+	
+	public void setCurrentTask(String task)
+	{
+		this.currentTask = task != null ? task : "";
+	}
+	
+	public String getCurrentTask()
+	{
+		return currentTask;
+	}
+	
+	public double getUptimeSeconds()
+	{
+		return (System.nanoTime() - startNanos) / 1e9;
+	}
+	
+	/** Zeros every metric and restarts the uptime clock */
+	public void reset()
+	{
+		for (Metric m : getMetrics())
+			m.reset();
+		
+		startNanos = System.nanoTime();
+		currentTask = "";
+	}
+	
+	public JsonObject toJson()
+	{
+		final double uptime = getUptimeSeconds();
+		
+		JsonObject root = new JsonObject();
+		root.addProperty("uptimeSeconds", uptime);
+		root.addProperty("currentTask", currentTask);
+		
+		JsonObject metricsJson = new JsonObject();
+		for (Metric m : getMetrics())
+			metricsJson.add(m.getName(), m.toJson(uptime));
+		root.add("metrics", metricsJson);
+		
+		return root;
+	}
+	
+	public String toPrometheusText()
+	{
+		StringBuilder out = new StringBuilder();
+		for (Metric m : getMetrics())
+		{
+			out.append("# HELP ").append(m.getName()).append(' ').append(m.getHelp()).append('\n');
+			out.append("# TYPE ").append(m.getName()).append(' ').append(m.getType()).append('\n');
+			m.writePrometheus(out);
+		}
+		return out.toString();
+	}
+	
+	public void writeJson(File file)
+	{
+		Gson gson = new GsonBuilder().setPrettyPrinting().create();
+		
+		Writer writer = null;
+		try
+		{
+			file.getAbsoluteFile().getParentFile().mkdirs();
+			
+			writer = new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8);
+			gson.toJson(toJson(), writer);
+		}
+		catch (Exception e)
+		{
+			e.printStackTrace();
+		}
+		finally
+		{
+			try
+			{
+				if (writer != null)
+					writer.close();
+			}
+			catch (Exception e) {}
+		}
+	}
+}
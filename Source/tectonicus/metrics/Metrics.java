@@ -0,0 +1,59 @@
+/*
+ * Copyright (c) 2012-2019, John Campbell and other contributors.  All rights reserved.
+ *
+ * This file is part of Tectonicus. It is subject to the license terms in the LICENSE file found in
+ * the top-level directory of this distribution.  The full list of project contributors is contained
+ * in the AUTHORS file found in the same location.
+ *
+ */
+
+package tectonicus.metrics;
+
+/** The render pipeline's metrics, all held in one process wide registry.
+ *  Durations are in seconds and sizes in bytes.
+ */
+public class Metrics
+{
+	public static final MetricRegistry registry = new MetricRegistry();
+	
+	// World loading
+	
+	public static final Counter regionsLoaded = registry.counter("tectonicus_regions_loaded_total", "Region files read from disk");
+	public static final Counter regionBytesRead = registry.counter("tectonicus_region_bytes_read_total", "Bytes read from region files");
+	public static final Counter chunksLoaded = registry.counter("tectonicus_chunks_loaded_total", "Chunks decompressed and parsed");
+	public static final Histogram chunkLoadTime = registry.histogram("tectonicus_chunk_load_seconds", "Time to decompress and parse a chunk", Histogram.TIME_BUCKETS);
+	
+	// Caches
+	
+	public static final Counter regionCacheHits = registry.counter("tectonicus_region_cache_hits_total", "Region lookups served from the region cache");
+	public static final Counter regionCacheMisses = registry.counter("tectonicus_region_cache_misses_total", "Region lookups that had to load the region file");
+	public static final Counter rawCacheHits = registry.counter("tectonicus_raw_chunk_cache_hits_total", "Chunk lookups served from the raw chunk cache");
+	public static final Counter rawCacheMisses = registry.counter("tectonicus_raw_chunk_cache_misses_total", "Chunk lookups that had to load the chunk");
+	public static final Counter geometryCacheHits = registry.counter("tectonicus_geometry_cache_hits_total", "Visible chunks whose geometry was already built");
+	public static final Counter geometryCacheMisses = registry.counter("tectonicus_geometry_cache_misses_total", "Visible chunks whose geometry had to be built");
+	
+	// Rendering
+	
+	public static final Histogram geometryBuildTime = registry.histogram("tectonicus_geometry_build_seconds", "Time to build the geometry for one chunk", Histogram.TIME_BUCKETS);
+	public static final Histogram drawTime = registry.histogram("tectonicus_draw_seconds", "Time to draw one tile, including chunk loading and geometry building", Histogram.TIME_BUCKETS);
+	public static final Histogram readbackTime = registry.histogram("tectonicus_readback_seconds", "Time to read a rendered tile back from the rasteriser", Histogram.TIME_BUCKETS);
+	public static final Counter tilesRendered = registry.counter("tectonicus_tiles_rendered_total", "Base tiles rendered");
+	
+	// Output
+	
+	public static final Histogram encodeTime = registry.histogram("tectonicus_encode_seconds", "Time to encode and write one image", Histogram.TIME_BUCKETS);
+	public static final Counter imagesWritten = registry.counter("tectonicus_images_written_total", "Images written to disk");
+	public static final Counter bytesWritten = registry.counter("tectonicus_bytes_written_total", "Encoded image bytes written to disk");
+	public static final Gauge imageWriteQueueDepth = registry.gauge("tectonicus_image_write_queue_depth", "Images waiting to be encoded");
+	
+	public static final Histogram downsampleTime = registry.histogram("tectonicus_downsample_seconds", "Time to create one downsampled tile, including encoding", Histogram.TIME_BUCKETS);
+	public static final Counter tilesDownsampled = registry.counter("tectonicus_tiles_downsampled_total", "Downsampled tiles created");
+	public static final Gauge downsampleQueueDepth = registry.gauge("tectonicus_downsample_queue_depth", "Tiles waiting to be downsampled");
+	
+	// Progress and process
+	
+	public static final Gauge taskProgress = registry.gauge("tectonicus_task_progress", "Items completed in the current task");
+	public static final Gauge taskTotal = registry.gauge("tectonicus_task_total", "Total items in the current task");
+	public static final Gauge heapUsed = registry.gauge("tectonicus_heap_used_bytes", "Java heap currently in use");
+	public static final Gauge peakHeapUsed = registry.gauge("tectonicus_heap_used_peak_bytes", "Most Java heap in use at any one time");
+}
@@ -0,0 +1,42 @@
+/*
+ * Copyright (c) 2012-2019, John Campbell and other contributors.  All rights reserved.
+ *
+ * This file is part of Tectonicus. It is subject to the license terms in the LICENSE file found in
+ * the top-level directory of this distribution.  The full list of project contributors is contained
+ * in the AUTHORS file found in the same location.
+ *
+ */
+
+package tectonicus.metrics;
+
+import tectonicus.ProgressListener;
+
+/** Forwards progress to another listener, recording the current task and its progress as it goes. */
+public class MetricsProgressListener implements ProgressListener
+{
+	private final ProgressListener listener;
+	
+	public MetricsProgressListener(ProgressListener listener)
+	{
+		this.listener = listener;
+	}
+	
+	@Override
+	public void onTaskStarted(String taskName)
+	{
+		Metrics.registry.setCurrentTask(taskName);
+		Metrics.taskProgress.set(0);
+		Metrics.taskTotal.set(0);
+		
+		listener.onTaskStarted(taskName);
+	}
+	
+	@Override
+	public void onTaskUpdate(final int num, final int ofTotalNum)
+	{
+		Metrics.taskProgress.set(num);
+		Metrics.taskTotal.set(ofTotalNum);
+		
+		listener.onTaskUpdate(num, ofTotalNum);
+	}
+}
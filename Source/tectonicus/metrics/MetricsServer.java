@@ -0,0 +1,80 @@
+/*
+ * Copyright (c) 2012-2019, John Campbell and other contributors.  All rights reserved.
+ *
+ * This file is part of Tectonicus. It is subject to the license terms in the LICENSE file found in
+ * the top-level directory of this distribution.  The full list of project contributors is contained
+ * in the AUTHORS file found in the same location.
+ *
+ */
+
+package tectonicus.metrics;
+
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+
+import com.google.gson.Gson;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/** Serves a registry on the loopback interface so long renders can be watched while they run.
+ *  /metrics is in Prometheus text format, /metrics.json is the same snapshot as the json file.
+ */
+public class MetricsServer
+{
+	private final HttpServer server;
+	
+	public MetricsServer(final int port, final MetricRegistry registry) throws Exception
+	{
+		server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+		
+		server.createContext("/metrics", new HttpHandler()
+		{
+			@Override
+			public void handle(HttpExchange exchange)
+			{
+				if (exchange.getRequestURI().getPath().equals("/metrics.json"))
+					respond(exchange, "application/json; charset=utf-8", new Gson().toJson(registry.toJson()));
+				else
+					respond(exchange, "text/plain; version=0.0.4; charset=utf-8", registry.toPrometheusText());
+			}
+		});
+	}
+	
+	public void start()
+	{
+		server.start();
+		
+		System.out.println("Serving metrics on http://"+server.getAddress().getHostString()+":"+server.getAddress().getPort()+"/metrics");
+	}
+	
+	public void stop()
+	{
+		server.stop(0);
+	}
+	
+	private static void respond(HttpExchange exchange, String contentType, String body)
+	{
+		try
+		{
+			byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+			
+			exchange.getResponseHeaders().set("Content-Type", contentType);
+			exchange.sendResponseHeaders(200, bytes.length);
+			
+			OutputStream out = exchange.getResponseBody();
+			out.write(bytes);
+			out.close();
+		}
+		catch (Exception e)
+		{
+			e.printStackTrace();
+		}
+		finally
+		{
+			exchange.close();
+		}
+	}
+}
@@ -39,4 +39,6 @@ public interface Mesh
 
 	public void addVertex(org.joml.Vector3f position, Colour4f color, float u, float v);
 	
+	public void addVertex(final float x, final float y, final float z, final float r, final float g, final float b, final float a, final float u, final float v);
+	
 }
@@ -9,9 +9,6 @@
 
 package tectonicus.rasteriser;
 
-import java.util.List;
-
-import org.joml.Matrix4f;
 import org.lwjgl.util.vector.Vector2f;
 import org.lwjgl.util.vector.Vector3f;
 import org.lwjgl.util.vector.Vector4f;
@@ -19,14 +16,13 @@ import org.lwjgl.util.vector.Vector4f;
 import tectonicus.blockTypes.BlockUtil;
 import tectonicus.BlockContext;
 import tectonicus.BlockType;
-import tectonicus.blockTypes.BlockModel.BlockElement;
-import tectonicus.blockTypes.BlockModel.BlockElement.ElementFace;
+import tectonicus.blockTypes.BakedBlockModel;
+import tectonicus.blockTypes.BlockModel;
 import tectonicus.configuration.LightFace;
 import tectonicus.raw.RawChunk;
 import tectonicus.renderer.Geometry;
 import tectonicus.renderer.Geometry.MeshType;
 import tectonicus.texture.SubTexture;
-import tectonicus.util.Colour4f;
 
 public class MeshUtil
 {
@@ -134,17 +130,9 @@ public class MeshUtil
 		mesh.addVertex(p3, colour, uv3.x, uv3.y);
 	}
 	
-	public static void addBlock(BlockContext world, RawChunk rawChunk, int x, int y, int z, List<BlockElement> elements, Geometry geometry, int rotation, String axis)
+	/** Adds a block model rotated by a multiple of 90 degrees around the "x" or "y" axis, leaving out faces against solid blocks */
+	public static void addBlock(BlockContext world, RawChunk rawChunk, int x, int y, int z, BlockModel model, Geometry geometry, int rotation, String axis)
 	{
-		org.joml.Vector3f rotOrigin = new org.joml.Vector3f(x + 0.5f, y + 0.5f, z + 0.5f);
-		org.joml.Vector3f rotAxis = new org.joml.Vector3f(0, 1, 0);
-		if (axis.equals("x"))
-			rotAxis = new org.joml.Vector3f(1, 0, 0);
-		
-		Matrix4f blockRotation = new Matrix4f().translate(rotOrigin)
-				  							   .rotate((float) Math.toRadians(rotation), rotAxis.x, rotAxis.y, 0) 
-				  							   .translate(rotOrigin.negate());
-		
 		BlockType above = world.getBlockType(rawChunk.getChunkCoord(), x, y+1, z);
 		BlockType below = world.getBlockType(rawChunk.getChunkCoord(), x, y-1, z);
 		BlockType north = world.getBlockType(rawChunk.getChunkCoord(), x, y, z-1);
@@ -221,161 +209,49 @@ public class MeshUtil
 		}
 		
 		
-		for(BlockElement element : elements)
+		BakedBlockModel baked = model.getRotation(rotation, axis);
+		final float[] vertices = baked.getVertices();
+		
+		for (int i=0; i<baked.numFaces(); i++)
 		{
-			org.joml.Vector3f rotationOrigin = element.getRotationOrigin().div(16);
-			org.joml.Vector3f rotationAxis = element.getRotationAxis();
-			
-			Matrix4f elementRotation = null;
-			if (element.getRotationAngle() != 0)
+			final BlockType neighbour;
+			final float light;
+			switch (baked.getFaceDir(i))
 			{
-				elementRotation = new Matrix4f().translate(rotationOrigin)
-									              .rotate((float) Math.toRadians(element.getRotationAngle()), rotationAxis.x, rotationAxis.y, rotationAxis.z)
-									              .translate(rotationOrigin.negate());
+				case BakedBlockModel.UP:
+					neighbour = above;
+					light = topLight;
+					break;
+				case BakedBlockModel.DOWN:
+					neighbour = below;
+					light = bottomLight;
+					break;
+				case BakedBlockModel.NORTH:
+					neighbour = north;
+					light = northLight;
+					break;
+				case BakedBlockModel.SOUTH:
+					neighbour = south;
+					light = southLight;
+					break;
+				case BakedBlockModel.EAST:
+					neighbour = east;
+					light = eastLight;
+					break;
+				default:
+					neighbour = west;
+					light = westLight;
+					break;
 			}
 			
-			float x1 = x + element.getFrom().x()/16;
-			float y1 = y + element.getFrom().y()/16;
-			float z1 = z + element.getFrom().z()/16;
-	        
-			float x2 = x + element.getTo().x()/16;
-			float y2 = y + element.getTo().y()/16;
-			float z2 = z + element.getTo().z()/16;
-	
-	        org.joml.Vector3f topLeft, topRight, bottomRight, bottomLeft;
-	        
-			if (element.getFaces().containsKey("up") && !above.isSolid())
-	        {
-				Colour4f color = new Colour4f(1 * topLight, 1 * topLight, 1 * topLight, 1);
-				
-				ElementFace face = element.getFaces().get("up");
-				
-				topLeft = new org.joml.Vector3f(x1, y2, z1);
-		        topRight = new org.joml.Vector3f(x2, y2, z1);
-		        bottomRight = new org.joml.Vector3f(x2, y2, z2);
-		        bottomLeft = new org.joml.Vector3f(x1, y2, z2);
-		        
-		        addVertices(geometry, color, face, topLeft, topRight, bottomRight, bottomLeft, elementRotation, blockRotation);
-	        }
-			
-			if (element.getFaces().containsKey("down") && !below.isSolid())
-	        {
-				Colour4f color = new Colour4f(1 * bottomLight, 1 * bottomLight, 1 * bottomLight, 1);
-				
-				ElementFace face = element.getFaces().get("down");
-				
-				topLeft = new org.joml.Vector3f(x1, y1, z2);
-		        topRight = new org.joml.Vector3f(x2, y1, z2);
-		        bottomRight = new org.joml.Vector3f(x2, y1, z1);
-		        bottomLeft = new org.joml.Vector3f(x1, y1, z1);
-		        
-		        addVertices(geometry, color, face, topLeft, topRight, bottomRight, bottomLeft, elementRotation, blockRotation);
-	        }
-			
-			if (element.getFaces().containsKey("north") && !north.isSolid())
-	        {
-				Colour4f color = new Colour4f(1 * northLight, 1 * northLight, 1 * northLight, 1);
-				
-				ElementFace face = element.getFaces().get("north");
-				
-				topLeft = new org.joml.Vector3f(x2, y2, z1);
-		        topRight = new org.joml.Vector3f(x1, y2, z1);
-		        bottomRight = new org.joml.Vector3f(x1, y1, z1);
-		        bottomLeft = new org.joml.Vector3f(x2, y1, z1);
-		        
-		        addVertices(geometry, color, face, topLeft, topRight, bottomRight, bottomLeft, elementRotation, blockRotation);
-	        }
-			
-			if (element.getFaces().containsKey("south") && !south.isSolid())
-	        {
-				Colour4f color = new Colour4f(1 * southLight, 1 * southLight, 1 * southLight, 1);
-				
-				ElementFace face = element.getFaces().get("south");
-				
-				topLeft = new org.joml.Vector3f(x1, y2, z2);
-		        topRight = new org.joml.Vector3f(x2, y2, z2);
-		        bottomRight = new org.joml.Vector3f(x2, y1, z2);
-		        bottomLeft = new org.joml.Vector3f(x1, y1, z2);
-		        
-		        addVertices(geometry, color, face, topLeft, topRight, bottomRight, bottomLeft, elementRotation, blockRotation);
-	        }
+			if (neighbour.isSolid())
+				continue;
 			
-			if (element.getFaces().containsKey("east") && !east.isSolid())
-	        {
-				Colour4f color = new Colour4f(1 * eastLight, 1 * eastLight, 1 * eastLight, 1);
-				
-				ElementFace face = element.getFaces().get("east");
-				
-				topLeft = new org.joml.Vector3f(x2, y2, z2);
-		        topRight = new org.joml.Vector3f(x2, y2, z1);
-		        bottomRight = new org.joml.Vector3f(x2, y1, z1);
-		        bottomLeft = new org.joml.Vector3f(x2, y1, z2);
-		        
-		        addVertices(geometry, color, face, topLeft, topRight, bottomRight, bottomLeft, elementRotation, blockRotation);
-	        }
+			Mesh mesh = geometry.getMesh(baked.getTexture(i), MeshType.AlphaTest);
 			
-			if (element.getFaces().containsKey("west") && !west.isSolid())
-	        {
-				Colour4f color = new Colour4f(1 * westLight, 1 * westLight, 1 * westLight, 1);
-				
-				ElementFace face = element.getFaces().get("west");
-				
-				topLeft = new org.joml.Vector3f(x1, y2, z1);
-		        topRight = new org.joml.Vector3f(x1, y2, z2);
-		        bottomRight = new org.joml.Vector3f(x1, y1, z2);
-		        bottomLeft = new org.joml.Vector3f(x1, y1, z1);
-		        
-		        addVertices(geometry, color, face, topLeft, topRight, bottomRight, bottomLeft, elementRotation, blockRotation);
-	        }
-		}
-	}
-	
-	private static void addVertices(Geometry geometry, Colour4f color, ElementFace face, org.joml.Vector3f topLeft, org.joml.Vector3f topRight, org.joml.Vector3f bottomRight, org.joml.Vector3f bottomLeft, org.joml.Matrix4f rotationTransform, Matrix4f rotTransform)
-	{
-		rotTransform.transformPosition(topLeft);
-        rotTransform.transformPosition(topRight);
-        rotTransform.transformPosition(bottomRight);
-        rotTransform.transformPosition(bottomLeft);
-		
-		if(rotationTransform != null)
-        {
-	        rotationTransform.transformPosition(topLeft);
-	        rotationTransform.transformPosition(topRight);
-	        rotationTransform.transformPosition(bottomRight);
-	        rotationTransform.transformPosition(bottomLeft);
-        }
-		
-		SubTexture tex = face.getTexture();
-		Mesh mesh = geometry.getMesh(tex.texture, MeshType.AlphaTest);
-		
-		int texRotation = face.getTextureRotation();
-		if(texRotation == 0)
-		{
-			mesh.addVertex(topLeft, color, tex.u0, tex.v0);
-			mesh.addVertex(topRight, color, tex.u1, tex.v0);
-			mesh.addVertex(bottomRight, color, tex.u1, tex.v1);
-			mesh.addVertex(bottomLeft, color, tex.u0, tex.v1);
-		}
-		else if (texRotation == 90)
-		{
-			mesh.addVertex(topLeft, color, tex.u0, tex.v1);
-			mesh.addVertex(topRight, color, tex.u0, tex.v0);
-			mesh.addVertex(bottomRight, color, tex.u1, tex.v0);
-			mesh.addVertex(bottomLeft, color, tex.u1, tex.v1);
-		}
-		else if (texRotation == 180)
-		{
-			mesh.addVertex(topLeft, color, tex.u1, tex.v1);
-			mesh.addVertex(topRight, color, tex.u0, tex.v1);
-			mesh.addVertex(bottomRight, color, tex.u0, tex.v0);
-			mesh.addVertex(bottomLeft, color, tex.u1, tex.v0);
-		}
-		else if (texRotation == 270)
-		{
-			mesh.addVertex(topLeft, color, tex.u1, tex.v0);
-			mesh.addVertex(topRight, color, tex.u1, tex.v1);
-			mesh.addVertex(bottomRight, color, tex.u0, tex.v1);
-			mesh.addVertex(bottomLeft, color, tex.u0, tex.v0);
+			int v = i * BakedBlockModel.FLOATS_PER_FACE;
+			for (int corner=0; corner<4; corner++, v+=5)
+				mesh.addVertex(x + vertices[v], y + vertices[v+1], z + vertices[v+2], light, light, light, 1, vertices[v+3], vertices[v+4]);
 		}
 	}
 }
@@ -47,6 +47,9 @@ public interface Rasteriser
 	public Texture createTexture(BufferedImage image, TextureFilter filter);
 	public Texture createTexture(BufferedImage[] mips, TextureFilter filter);
 	
+	/** True if meshes can use texture coordinates past 1 to repeat their texture */
+	public boolean supportsTextureRepeat();
+	
 	public void bindTexture(Texture texture);
 	
 	public Mesh createMesh(Texture texture);
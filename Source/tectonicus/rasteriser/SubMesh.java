@@ -9,15 +9,22 @@
 
 package tectonicus.rasteriser;
 
-import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
 
-import org.lwjgl.util.vector.Matrix4f;
 import org.lwjgl.util.vector.Vector2f;
 import org.lwjgl.util.vector.Vector3f;
 import org.lwjgl.util.vector.Vector4f;
 
 import tectonicus.texture.SubTexture;
 
+/** Geometry for a block model, stored as packed float arrays (xyz, uv and rgba per vertex).
+ *  
+ *  Most meshes are built per block and pushed once, so pushTo transforms their vertices as it goes. Models built
+ *  once up front (see PistonBase) can call cacheRotations, and then each rotation is baked the first time it's
+ *  used and kept, so pushTo is just a translate and copy.
+ */
 public class SubMesh
 {
 	public enum Rotation
@@ -28,22 +35,73 @@ public class SubMesh
 		Flip
 	};
 	
-	private ArrayList<Vector3f> positions;
-	private ArrayList<Vector2f> texCoords;
-	private ArrayList<Vector4f> colours;
+	private static final int INITIAL_CAPACITY = 24;
+	
+	private float[] positions;
+	private float[] texCoords;
+	private float[] colours;
+	
+	private int numVertices;
+	
+	/** Baked positions for each rotation used so far, or null if this mesh doesn't cache its rotations */
+	private Map<TransformKey, float[]> rotatedPositions;
 	
 	public SubMesh()
 	{
-		positions = new ArrayList<Vector3f>();
-		texCoords = new ArrayList<Vector2f>();
-		colours = new ArrayList<Vector4f>();
+		positions = new float[INITIAL_CAPACITY * 3];
+		texCoords = new float[INITIAL_CAPACITY * 2];
+		colours = new float[INITIAL_CAPACITY * 4];
+	}
+	
+	public int getNumVertices()
+	{
+		return numVertices;
+	}
+	
+	/** Keeps the rotated positions for every rotation this mesh is pushed with. Only worth it for models that are
+	 *  built once and pushed for many blocks, as the first push with each rotation pays for the copy.
+	 */
+	public void cacheRotations()
+	{
+		if (rotatedPositions == null)
+			rotatedPositions = new HashMap<TransformKey, float[]>();
 	}
 	
 	public void addVertex(Vector3f position, Vector4f colour, final float u, final float v)
 	{
-		positions.add(new Vector3f(position));
-		texCoords.add(new Vector2f(u, v));
-		colours.add(new Vector4f(colour));
+		addVertex(position.x, position.y, position.z, colour.x, colour.y, colour.z, colour.w, u, v);
+	}
+	
+	public void addVertex(final float x, final float y, final float z, final float r, final float g, final float b, final float a, final float u, final float v)
+	{
+		if (numVertices * 3 == positions.length)
+		{
+			final int newCapacity = numVertices * 2;
+			positions = Arrays.copyOf(positions, newCapacity * 3);
+			texCoords = Arrays.copyOf(texCoords, newCapacity * 2);
+			colours = Arrays.copyOf(colours, newCapacity * 4);
+		}
+		
+		final int p = numVertices * 3;
+		positions[p] = x;
+		positions[p+1] = y;
+		positions[p+2] = z;
+		
+		final int t = numVertices * 2;
+		texCoords[t] = u;
+		texCoords[t+1] = v;
+		
+		final int c = numVertices * 4;
+		colours[c] = r;
+		colours[c+1] = g;
+		colours[c+2] = b;
+		colours[c+3] = a;
+		
+		numVertices++;
+		
+		// Any baked rotations are now out of date
+		if (rotatedPositions != null)
+			rotatedPositions.clear();
 	}
 	
 	public void addQuad(Vector3f p0, Vector3f p1, Vector3f p2, Vector3f p3, Vector4f colour, SubTexture texture)
@@ -83,72 +141,118 @@ public class SubMesh
 	}
 	public void pushTo(Mesh mesh, final float xOffset, final float yOffset, final float zOffset, Rotation horizRotation, final float horizAngleDeg, Rotation vertRotation, final float vertAngleDeg)
 	{
-		Matrix4f transform = createTransform(horizRotation, horizAngleDeg, vertRotation, vertAngleDeg);
-		
-		for (int i=0; i<positions.size(); i++)
+		pushTo(mesh, xOffset, yOffset, zOffset, horizRotation, horizAngleDeg, vertRotation, vertAngleDeg, 1, 1, 1, 1);
+	}
+	
+	/** Pushes the mesh with every vertex colour multiplied by the given tint, so lighting can be applied to a model built in white */
+	public void pushTo(Mesh mesh, final float xOffset, final float yOffset, final float zOffset, Rotation horizRotation, final float horizAngleDeg, Rotation vertRotation, final float vertAngleDeg,
+						final float tintR, final float tintG, final float tintB, final float tintA)
+	{
+		final boolean rotated = horizRotation != Rotation.None || vertRotation != Rotation.None;
+		if (rotated && rotatedPositions == null)
 		{
-			Vector3f pos = new Vector3f( positions.get(i) );
-			Vector2f tex = texCoords.get(i);
-			Vector4f col = colours.get(i);
+			final float[] m = createTransform(horizRotation, horizAngleDeg, vertRotation, vertAngleDeg);
 			
-			if (transform != null)
+			for (int i=0; i<numVertices; i++)
 			{
-				Vector4f dest = new Vector4f();
-				Matrix4f.transform(transform, new Vector4f(pos.x, pos.y, pos.z, 1.0f), dest);
+				final int p = i * 3;
+				final int t = i * 2;
+				final int c = i * 4;
 				
-				pos.x = dest.x / dest.w;
-				pos.y = dest.y / dest.w;
-				pos.z = dest.z / dest.w;
+				final float x = positions[p];
+				final float y = positions[p+1];
+				final float z = positions[p+2];
+				
+				mesh.addVertex(m[0] * x + m[1] * y + m[2]  * z + m[3]  + xOffset,
+								m[4] * x + m[5] * y + m[6]  * z + m[7]  + yOffset,
+								m[8] * x + m[9] * y + m[10] * z + m[11] + zOffset,
+								colours[c] * tintR, colours[c+1] * tintG, colours[c+2] * tintB, colours[c+3] * tintA,
+								texCoords[t], texCoords[t+1]);
 			}
+			return;
+		}
+		
+		final float[] pos = rotated ? getCachedPositions(horizRotation, horizAngleDeg, vertRotation, vertAngleDeg) : positions;
+		
+		for (int i=0; i<numVertices; i++)
+		{
+			final int p = i * 3;
+			final int t = i * 2;
+			final int c = i * 4;
 			
-			pos.x += xOffset;
-			pos.y += yOffset;
-			pos.z += zOffset;
-			
-			mesh.addVertex(pos, col, tex.x, tex.y);
+			mesh.addVertex(pos[p] + xOffset, pos[p+1] + yOffset, pos[p+2] + zOffset,
+							colours[c] * tintR, colours[c+1] * tintG, colours[c+2] * tintB, colours[c+3] * tintA,
+							texCoords[t], texCoords[t+1]);
 		}
 	}
 	
 	public void pushTo(SubMesh destMesh, final float xOffset, final float yOffset, final float zOffset, Rotation horizRotation, final float horizAngleDeg, Rotation vertRotation, final float vertAngleDeg)
 	{
-		Matrix4f transform = createTransform(horizRotation, horizAngleDeg, vertRotation, vertAngleDeg);
+		final float[] pos;
+		if (horizRotation == Rotation.None && vertRotation == Rotation.None)
+			pos = positions;
+		else if (rotatedPositions != null)
+			pos = getCachedPositions(horizRotation, horizAngleDeg, vertRotation, vertAngleDeg);
+		else
+			pos = transform(createTransform(horizRotation, horizAngleDeg, vertRotation, vertAngleDeg), positions, numVertices);
 		
-		for (int i=0; i<positions.size(); i++)
+		for (int i=0; i<numVertices; i++)
 		{
-			Vector3f pos = new Vector3f( positions.get(i) );
+			final int p = i * 3;
+			final int t = i * 2;
+			final int c = i * 4;
 			
-			if (transform != null)
+			destMesh.addVertex(pos[p] + xOffset, pos[p+1] + yOffset, pos[p+2] + zOffset,
+								colours[c], colours[c+1], colours[c+2], colours[c+3],
+								texCoords[t], texCoords[t+1]);
+		}
+	}
+	
+	public void pushTo(SubMesh dest, final float xOffset, final float yOffset, final float zOffset)
+	{
+		pushTo(dest, xOffset, yOffset, zOffset, Rotation.None, 0, Rotation.None, 0);
+	}
+	
+	/** Vertex positions under the given rotation, baked on first use. Only for meshes that cache their rotations. */
+	private float[] getCachedPositions(Rotation horizRotation, final float horizAngleDeg, Rotation vertRotation, final float vertAngleDeg)
+	{
+		TransformKey key = new TransformKey(horizRotation, horizAngleDeg, vertRotation, vertAngleDeg);
+		
+		// Models shared between chunks can be pushed from several threads at once
+		synchronized (this)
+		{
+			float[] rotated = rotatedPositions.get(key);
+			if (rotated == null)
 			{
-				Vector4f dest = new Vector4f();
-				Matrix4f.transform(transform, new Vector4f(pos.x, pos.y, pos.z, 1.0f), dest);
-				
-				pos.x = dest.x / dest.w;
-				pos.y = dest.y / dest.w;
-				pos.z = dest.z / dest.w;
+				rotated = transform(createTransform(horizRotation, horizAngleDeg, vertRotation, vertAngleDeg), positions, numVertices);
+				rotatedPositions.put(key, rotated);
 			}
-			
-			destMesh.positions.add( new Vector3f(positions.get(i) ));
-			destMesh.colours.add( new Vector4f(colours.get(i) ));
-			destMesh.texCoords.add( new Vector2f(texCoords.get(i) ));
+			return rotated;
 		}
 	}
 	
-	public void pushTo(SubMesh dest, final float xOffset, final float yOffset, final float zOffset)
+	private static float[] transform(float[] m, float[] positions, final int numVertices)
 	{
-		for (int i=0; i<positions.size(); i++)
+		float[] result = new float[numVertices * 3];
+		for (int i=0; i<numVertices*3; i+=3)
 		{
-			dest.positions.add( new Vector3f(positions.get(i) ));
-			dest.colours.add( new Vector4f(colours.get(i) ));
-			dest.texCoords.add( new Vector2f(texCoords.get(i) ));
+			final float x = positions[i];
+			final float y = positions[i+1];
+			final float z = positions[i+2];
+			
+			result[i]   = m[0] * x + m[1] * y + m[2]  * z + m[3];
+			result[i+1] = m[4] * x + m[5] * y + m[6]  * z + m[7];
+			result[i+2] = m[8] * x + m[9] * y + m[10] * z + m[11];
 		}
+		return result;
 	}
 	
-	private static Matrix4f createTransform(Rotation horizontalRotation, final float horizontalAngleDeg,
+	/** The rotation about the middle of the block as the top three rows of its affine transform (the bottom row is
+	 *  always 0,0,0,1). Horizontal rotation is about y and is applied after vertical rotation about z.
+	 */
+	private static float[] createTransform(Rotation horizontalRotation, final float horizontalAngleDeg,
 											Rotation verticalRotation, final float verticalAngleDeg)
 	{
-		if (horizontalRotation == Rotation.None && verticalRotation == Rotation.None)
-			return null;
-		
 		float horizontalAngleInRads = horizontalAngleDeg / 360.0f * 2.0f * (float)Math.PI;
 		if (horizontalRotation == Rotation.AntiClockwise)
 			horizontalAngleInRads *= -1.0f;
@@ -157,37 +261,60 @@ public class SubMesh
 		if (verticalRotation == Rotation.AntiClockwise)
 			verticalAngleInRads *= -1.0f;
 		
-		Matrix4f trans0 = new Matrix4f();
-		trans0.translate(new Vector3f(+0.5f, +0.5f, +0.5f));
-		
-		Matrix4f horizontalRotate = new Matrix4f();
-		horizontalRotate.rotate(horizontalAngleInRads, new Vector3f(0, 1, 0));
-		
-		Matrix4f verticalRotate = new Matrix4f();
-		verticalRotate.rotate(verticalAngleInRads, new Vector3f(0, 0, 1));
-		
-		Matrix4f trans1 = new Matrix4f();
-		trans1.translate(new Vector3f(-0.5f, -0.5f, -0.5f));
-		
-		Matrix4f combinedRotate = new Matrix4f();
-		Matrix4f.mul(horizontalRotate, verticalRotate, combinedRotate);
-		
-		Matrix4f working = new Matrix4f();
-		Matrix4f.mul(trans0, combinedRotate, working);
-		
-		Matrix4f actual = new Matrix4f();
-		Matrix4f.mul(working, trans1, actual);
+		final float ch = (float)Math.cos(horizontalAngleInRads);
+		final float sh = (float)Math.sin(horizontalAngleInRads);
+		final float cv = (float)Math.cos(verticalAngleInRads);
+		final float sv = (float)Math.sin(verticalAngleInRads);
 		
+		final float m00 = ch * cv,	m01 = -ch * sv,	m02 = sh;
+		final float m10 = sv,		m11 = cv,		m12 = 0;
+		final float m20 = -sh * cv,	m21 = sh * sv,	m22 = ch;
 		
+		// Translate so the centre of the block stays where it is
+		return new float[]
+		{
+			m00, m01, m02, 0.5f - 0.5f * (m00 + m01 + m02),
+			m10, m11, m12, 0.5f - 0.5f * (m10 + m11 + m12),
+			m20, m21, m22, 0.5f - 0.5f * (m20 + m21 + m22)
+		};
+	}
+	
+	private static class TransformKey
+	{
+		public final Rotation horizRotation;
+		public final float horizAngleDeg;
+		public final Rotation vertRotation;
+		public final float vertAngleDeg;
 		
-	/*	Matrix4f working = new Matrix4f();
-		Matrix4f.mul(trans0, rotate, working);
+		public TransformKey(Rotation horizRotation, final float horizAngleDeg, Rotation vertRotation, final float vertAngleDeg)
+		{
+			this.horizRotation = horizRotation;
+			this.horizAngleDeg = horizAngleDeg;
+			this.vertRotation = vertRotation;
+			this.vertAngleDeg = vertAngleDeg;
+		}
 		
-		Matrix4f actual = new Matrix4f();
-		Matrix4f.mul(working, trans1, actual);
-	*/
+		@Override
+		public int hashCode()
+		{
+			int hash = horizRotation.hashCode();
+			hash = hash * 31 + Float.floatToIntBits(horizAngleDeg);
+			hash = hash * 31 + vertRotation.hashCode();
+			hash = hash * 31 + Float.floatToIntBits(vertAngleDeg);
+			return hash;
+		}
 		
-		return actual;
+		@Override
+		public boolean equals(Object obj)
+		{
+			if (!(obj instanceof TransformKey))
+				return false;
+			
+			TransformKey other = (TransformKey)obj;
+			return horizRotation == other.horizRotation && vertRotation == other.vertRotation
+					&& Float.floatToIntBits(horizAngleDeg) == Float.floatToIntBits(other.horizAngleDeg)
+					&& Float.floatToIntBits(vertAngleDeg) == Float.floatToIntBits(other.vertAngleDeg);
+		}
 	}
 	
 	
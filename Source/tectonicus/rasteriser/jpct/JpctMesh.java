@@ -149,6 +149,12 @@ public class JpctMesh implements Mesh
 		
 	}
 	
+	@Override
+	public void addVertex(final float x, final float y, final float z, final float r, final float g, final float b, final float a, final float u, final float v)
+	{
+		addVertex(new Vector3f(x, y, z), new Vector4f(r, g, b, a), u, v);
+	}
+	
 	public Object3D getObject3D()
 	{
 		return object3D;
@@ -177,6 +177,12 @@ public class JpctRasteriser implements Rasteriser
 		return null;
 	}
 	
+	@Override
+	public boolean supportsTextureRepeat()
+	{
+		return false;
+	}
+	
 	@Override
 	public void bindTexture(Texture texture)
 	{
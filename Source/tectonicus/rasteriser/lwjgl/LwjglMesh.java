@@ -37,6 +37,9 @@ public class LwjglMesh implements Mesh
 	
 	private boolean isFinalised;
 	
+	/** True if this mesh tiles its texture, which is then set to repeat when the mesh is bound */
+	private boolean repeatsTexture;
+	
 	public LwjglMesh(LwjglTexture texture)
 	{
 		this.texture = texture;
@@ -55,6 +58,12 @@ public class LwjglMesh implements Mesh
 	
 	@Override
 	public void addVertex(Vector3f position, Vector4f colour, final float u, final float v)
+	{
+		addVertex(position.x, position.y, position.z, colour.x, colour.y, colour.z, colour.w, u, v);
+	}
+	
+	@Override
+	public void addVertex(final float x, final float y, final float z, final float r, final float g, final float b, final float a, final float u, final float v)
 	{
 		assert(!isFinalised);
 		
@@ -69,18 +78,22 @@ public class LwjglMesh implements Mesh
 			maxVertices = newMax;
 		}
 		
-		vertices.put(position.x);
-		vertices.put(position.y);
-		vertices.put(position.z);
+		vertices.put(x);
+		vertices.put(y);
+		vertices.put(z);
 		
-		colours.put( (byte)(colour.x * 255) );
-		colours.put( (byte)(colour.y * 255) );
-		colours.put( (byte)(colour.z * 255) );
-		colours.put( (byte)(colour.w * 255) );
+		colours.put( (byte)(r * 255) );
+		colours.put( (byte)(g * 255) );
+		colours.put( (byte)(b * 255) );
+		colours.put( (byte)(a * 255) );
 		
 		texCoords.put(u);
 		texCoords.put(v);
 		
+		// Merged faces from GreedyMesher run their texture coordinates to 2 or more
+		if (u >= 2 || v >= 2)
+			repeatsTexture = true;
+		
 		numVertices++;
 		assert(numVertices < maxVertices);
 	}
@@ -185,6 +198,13 @@ public class LwjglMesh implements Mesh
 		{
 			GL11.glEnable(GL11.GL_TEXTURE_2D);
 			GL11.glBindTexture(GL11.GL_TEXTURE_2D, texture.getId());
+			
+			if (repeatsTexture && !texture.isRepeating())
+			{
+				GL11.glTexParameteri(GL11.GL_TEXTURE_2D, GL11.GL_TEXTURE_WRAP_S, GL11.GL_REPEAT);
+				GL11.glTexParameteri(GL11.GL_TEXTURE_2D, GL11.GL_TEXTURE_WRAP_T, GL11.GL_REPEAT);
+				texture.setRepeating();
+			}
 		}
 		else
 		{
@@ -300,6 +300,12 @@ public class LwjglRasteriser implements Rasteriser
 		return texture;
 	}
 	
+	@Override
+	public boolean supportsTextureRepeat()
+	{
+		return true;
+	}
+	
 	public Mesh createMesh(Texture texture)
 	{
 		return new LwjglMesh((LwjglTexture)texture);
@@ -16,6 +16,9 @@ public class LwjglTexture implements Texture
 	private int width, height;
 	private int textureId;
 	
+	/** Switched from clamping to repeating the first time a mesh that tiles this texture is drawn */
+	private boolean repeating;
+	
 	public LwjglTexture(final int textureId, final int width, final int height)
 	{
 		this.textureId = textureId;
@@ -37,4 +40,14 @@ public class LwjglTexture implements Texture
 	{
 		return height;
 	}
+	
+	public boolean isRepeating()
+	{
+		return repeating;
+	}
+	
+	public void setRepeating()
+	{
+		this.repeating = true;
+	}
 }
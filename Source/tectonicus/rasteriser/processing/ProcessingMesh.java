@@ -131,18 +131,24 @@ public class ProcessingMesh implements Mesh
 
 	@Override
 	public void addVertex(Vector3f position, Vector4f colour, float u, float v)
+	{
+		addVertex(position.x, position.y, position.z, colour.x, colour.y, colour.z, colour.w, u, v);
+	}
+	
+	@Override
+	public void addVertex(final float x, final float y, final float z, final float r, final float g, final float b, final float a, final float u, final float v)
 	{
 		if (numVerts+1 == xPositions.length)
 			ensureCapacity(numVerts + 1024);
 		
-		xPositions[numVerts] = position.x;
-		yPositions[numVerts] = position.y;
-		zPositions[numVerts] = position.z;
+		xPositions[numVerts] = x;
+		yPositions[numVerts] = y;
+		zPositions[numVerts] = z;
 		
-		reds[numVerts] = colour.x;
-		greens[numVerts] = colour.y;
-		blues[numVerts] = colour.z;
-		alphas[numVerts] = colour.w;
+		reds[numVerts] = r;
+		greens[numVerts] = g;
+		blues[numVerts] = b;
+		alphas[numVerts] = a;
 		
 		uCoords[numVerts] = u;
 		vCoords[numVerts] = v;
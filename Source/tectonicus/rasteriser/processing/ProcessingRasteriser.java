@@ -182,6 +182,12 @@ public class ProcessingRasteriser implements Rasteriser
 		throw new RuntimeException("Not implemented!");
 	}
 	
+	@Override
+	public boolean supportsTextureRepeat()
+	{
+		return false;
+	}
+	
 	@Override
 	public Mesh createMesh(Texture texture)
 	{
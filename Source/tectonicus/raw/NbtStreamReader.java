@@ -0,0 +1,276 @@
+/*
+ * Copyright (c) 2012-2019, John Campbell and other contributors.  All rights reserved.
+ *
+ * This file is part of Tectonicus. It is subject to the license terms in the LICENSE file found in
+ * the top-level directory of this distribution.  The full list of project contributors is contained
+ * in the AUTHORS file found in the same location.
+ *
+ */
+
+package tectonicus.raw;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.InflaterInputStream;
+
+import org.jnbt.ByteArrayTag;
+import org.jnbt.ByteTag;
+import org.jnbt.CompoundTag;
+import org.jnbt.DoubleTag;
+import org.jnbt.FloatTag;
+import org.jnbt.IntArrayTag;
+import org.jnbt.IntTag;
+import org.jnbt.ListTag;
+import org.jnbt.LongTag;
+import org.jnbt.NBTConstants;
+import org.jnbt.NBTInputStream.Compression;
+import org.jnbt.NBTUtils;
+import org.jnbt.ShortTag;
+import org.jnbt.StringTag;
+import org.jnbt.Tag;
+
+/** Reads nbt one tag at a time rather than building the whole tree up front.
+ *
+ *  The caller walks the structure itself: readType and readName for each entry of a compound,
+ *  then either reads the payload (straight into its own buffers for byte arrays), builds a jnbt
+ *  tree for just that subtree with readTag, or skips it.
+ */
+public class NbtStreamReader implements Closeable
+{
+	/** Long arrays (1.13+ heightmaps and block states) aren't in jnbt's NBTConstants */
+	public static final int TYPE_LONG_ARRAY = 12;
+	
+	private final DataInputStream in;
+	
+	/** Compression can be null if in has already been decompressed (eg. into memory, by ChunkDecoder) */
+	public NbtStreamReader(InputStream in, Compression compression) throws IOException
+	{
+		InputStream decompressed;
+		if (compression == null)
+			decompressed = in;
+		else if (compression == Compression.Gzip)
+			decompressed = new GZIPInputStream(in);
+		else if (compression == Compression.Deflate)
+			decompressed = new InflaterInputStream(in);
+		else
+			throw new IOException("Unknown compression type: "+compression);
+		
+		this.in = new DataInputStream(compression == null ? decompressed : new BufferedInputStream(decompressed));
+	}
+	
+	/** Reads the type of the next named tag. TYPE_END marks the end of the enclosing compound */
+	public int readType() throws IOException
+	{
+		return in.readUnsignedByte();
+	}
+	
+	public String readName() throws IOException
+	{
+		return in.readUTF();
+	}
+	
+	public byte readByte() throws IOException
+	{
+		return in.readByte();
+	}
+	
+	public short readShort() throws IOException
+	{
+		return in.readShort();
+	}
+	
+	public int readInt() throws IOException
+	{
+		return in.readInt();
+	}
+	
+	public long readLong() throws IOException
+	{
+		return in.readLong();
+	}
+	
+	public String readString() throws IOException
+	{
+		return in.readUTF();
+	}
+	
+	/** Reads the element type of a list. Follow with readInt for the number of elements */
+	public int readListType() throws IOException
+	{
+		return in.readUnsignedByte();
+	}
+	
+	/** Reads a byte array payload into dest and returns the stored length. Anything that doesn't fit in dest is skipped */
+	public int readByteArray(byte[] dest) throws IOException
+	{
+		final int length = in.readInt();
+		final int toRead = Math.min(length, dest.length);
+		in.readFully(dest, 0, toRead);
+		skipFully(length - toRead);
+		return length;
+	}
+	
+	public byte[] readByteArray() throws IOException
+	{
+		byte[] data = new byte[in.readInt()];
+		in.readFully(data);
+		return data;
+	}
+	
+	/** Skips the payload of a tag of the given type, without decoding any of it */
+	public void skip(final int type) throws IOException
+	{
+		switch (type)
+		{
+			case NBTConstants.TYPE_END:
+				break;
+			case NBTConstants.TYPE_BYTE:
+				skipFully(1);
+				break;
+			case NBTConstants.TYPE_SHORT:
+				skipFully(2);
+				break;
+			case NBTConstants.TYPE_INT:
+			case NBTConstants.TYPE_FLOAT:
+				skipFully(4);
+				break;
+			case NBTConstants.TYPE_LONG:
+			case NBTConstants.TYPE_DOUBLE:
+				skipFully(8);
+				break;
+			case NBTConstants.TYPE_BYTE_ARRAY:
+				skipFully(in.readInt());
+				break;
+			case NBTConstants.TYPE_STRING:
+				skipFully(in.readUnsignedShort());
+				break;
+			case NBTConstants.TYPE_LIST:
+			{
+				final int elementType = in.readUnsignedByte();
+				final int length = in.readInt();
+				for (int i=0; i<length; i++)
+					skip(elementType);
+				break;
+			}
+			case NBTConstants.TYPE_COMPOUND:
+			{
+				int childType;
+				while ((childType = in.readUnsignedByte()) != NBTConstants.TYPE_END)
+				{
+					skipFully(in.readUnsignedShort());
+					skip(childType);
+				}
+				break;
+			}
+			case NBTConstants.TYPE_INT_ARRAY:
+				skipFully(in.readInt() * 4L);
+				break;
+			case TYPE_LONG_ARRAY:
+				skipFully(in.readInt() * 8L);
+				break;
+			default:
+				throw new IOException("Invalid tag type: "+type);
+		}
+	}
+	
+	/** Decodes the payload of a tag into a jnbt tree, for small subtrees that are easier to handle as a whole.
+	 *  Long arrays have no jnbt equivalent so are skipped and returned as null
+	 */
+	public Tag readTag(final int type, String name) throws IOException
+	{
+		switch (type)
+		{
+			case NBTConstants.TYPE_BYTE:
+				return new ByteTag(name, in.readByte());
+			case NBTConstants.TYPE_SHORT:
+				return new ShortTag(name, in.readShort());
+			case NBTConstants.TYPE_INT:
+				return new IntTag(name, in.readInt());
+			case NBTConstants.TYPE_LONG:
+				return new LongTag(name, in.readLong());
+			case NBTConstants.TYPE_FLOAT:
+				return new FloatTag(name, in.readFloat());
+			case NBTConstants.TYPE_DOUBLE:
+				return new DoubleTag(name, in.readDouble());
+			case NBTConstants.TYPE_BYTE_ARRAY:
+				return new ByteArrayTag(name, readByteArray());
+			case NBTConstants.TYPE_STRING:
+				return new StringTag(name, in.readUTF());
+			case NBTConstants.TYPE_LIST:
+			{
+				final int elementType = in.readUnsignedByte();
+				final int length = in.readInt();
+				if (elementType == TYPE_LONG_ARRAY)
+				{
+					for (int i=0; i<length; i++)
+						skip(elementType);
+					return null;
+				}
+				
+				List<Tag> elements = new ArrayList<Tag>(length);
+				for (int i=0; i<length; i++)
+					elements.add(readTag(elementType, ""));
+				return new ListTag(name, NBTUtils.getTypeClass(elementType), elements);
+			}
+			case NBTConstants.TYPE_COMPOUND:
+			{
+				Map<String, Tag> children = new HashMap<String, Tag>();
+				int childType;
+				while ((childType = in.readUnsignedByte()) != NBTConstants.TYPE_END)
+				{
+					String childName = in.readUTF();
+					Tag child = readTag(childType, childName);
+					if (child != null)
+						children.put(childName, child);
+				}
+				return new CompoundTag(name, children);
+			}
+			case NBTConstants.TYPE_INT_ARRAY:
+			{
+				int[] data = new int[in.readInt()];
+				for (int i=0; i<data.length; i++)
+					data[i] = in.readInt();
+				return new IntArrayTag(name, data);
+			}
+			case TYPE_LONG_ARRAY:
+				skip(type);
+				return null;
+			default:
+				throw new IOException("Invalid tag type: "+type);
+		}
+	}
+	
+	private void skipFully(long count) throws IOException
+	{
+		while (count > 0)
+		{
+			final int skipped = in.skipBytes((int)Math.min(count, Integer.MAX_VALUE));
+			if (skipped <= 0)
+			{
+				// skipBytes can stop short without being at the end, so check with a real read
+				if (in.read() == -1)
+					throw new EOFException();
+				count--;
+			}
+			else
+			{
+				count -= skipped;
+			}
+		}
+	}
+	
+	@Override
+	public void close() throws IOException
+	{
+		in.close();
+	}
+}
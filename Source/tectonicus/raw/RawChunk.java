@@ -23,12 +23,11 @@ import javax.xml.bind.DatatypeConverter;
 
 import org.apache.commons.lang3.StringEscapeUtils;
 import org.apache.commons.lang3.StringUtils;
-import org.jnbt.ByteArrayTag;
 import org.jnbt.ByteTag;
 import org.jnbt.CompoundTag;
 import org.jnbt.IntTag;
 import org.jnbt.ListTag;
-import org.jnbt.NBTInputStream;
+import org.jnbt.NBTConstants;
 import org.jnbt.NBTInputStream.Compression;
 import org.jnbt.ShortTag;
 import org.jnbt.StringTag;
@@ -67,6 +66,10 @@ public class RawChunk
 	
 	private int blockX, blockY, blockZ;
 	
+	/** Vertical extent of the non-air blocks, filled in by calculateHeights. Defaults to the whole chunk */
+	private int minY = 0, maxY = HEIGHT-1;
+	private int sectionMask = (1 << MAX_SECTIONS) - 1;
+	
 	private Map<String, SignEntity> signs;
 	private Map<String, FlowerPotEntity> flowerPots;
 	private Map<String, SkullEntity> skulls;
@@ -80,6 +83,15 @@ public class RawChunk
 	
 	private Map<String, Object> filterData = new HashMap<>();
 	
+	private static final ThreadLocal<SectionBuffers> sectionBuffers = new ThreadLocal<SectionBuffers>()
+	{
+		@Override
+		protected SectionBuffers initialValue()
+		{
+			return new SectionBuffers();
+		}
+	};
+	
 	public RawChunk()
 	{
 		clear();
@@ -128,359 +140,412 @@ public class RawChunk
 	private void init(InputStream in, Compression compression, WorldStats worldStats) throws Exception
 	{
 		clear();
-
-		NBTInputStream nbtIn = null;
-		try
+		
+		try (NbtStreamReader nbt = new NbtStreamReader(in, compression))
+		{
+			if (nbt.readType() != NBTConstants.TYPE_COMPOUND)
+				return;
+			nbt.readName();
+			
+			int type;
+			while ((type = nbt.readType()) != NBTConstants.TYPE_END)
+			{
+				final String name = nbt.readName();
+				if (type == NBTConstants.TYPE_COMPOUND && name.equals("Level"))
+					parseLevel(nbt, worldStats);
+				else
+					nbt.skip(type);
+			}
+		}
+		finally
+		{
+			if (in != null)
+				in.close();
+		}
+		
+		/* Old debug: put bricks in the corner of every chunk
+		for (int y=0; y<HEIGHT; y++)
+		{
+			if (blockIds[0][y][0] != BlockIds.AIR)
+			{
+				if (signs.size() > 0)
+					blockIds[0][y][0] = BlockIds.DIAMOND_BLOCK;
+				else
+					blockIds[0][y][0] = BlockIds.BRICK;
+			}
+		}
+		*/
+	}
+	
+	/** Walks the Level compound, decoding only what we use. Section arrays go straight into scratch buffers
+	 *  and everything else (heightmaps, tile ticks, etc.) is skipped over without being decoded
+	 */
+	private void parseLevel(NbtStreamReader nbt, WorldStats worldStats) throws Exception
+	{
+		blockX = blockY = blockZ = 0;
+		
+		SectionBuffers buffers = sectionBuffers.get();
+		
+		boolean isAnvil = false;
+		byte[] mcRegionBlocks = null, mcRegionData = null, mcRegionSkylight = null, mcRegionBlocklight = null;
+		
+		ListTag entitiesTag = null;
+		ListTag tileEntitiesTag = null;
+		
+		int type;
+		while ((type = nbt.readType()) != NBTConstants.TYPE_END)
 		{
-			nbtIn = new NBTInputStream(in, compression);
+			final String name = nbt.readName();
 			
-			Tag tag = nbtIn.readTag();
-			if (tag instanceof CompoundTag)
+			if (type == NBTConstants.TYPE_INT && name.equals("xPos"))
+			{
+				blockX = nbt.readInt();
+			}
+			else if (type == NBTConstants.TYPE_INT && name.equals("zPos"))
+			{
+				blockZ = nbt.readInt();
+			}
+			else if (type == NBTConstants.TYPE_LIST && name.equals("Sections"))
+			{
+				isAnvil = true;
+				parseAnvilSections(nbt, buffers, worldStats);
+			}
+			else if (type == NBTConstants.TYPE_BYTE_ARRAY && name.equals("Biomes"))
+			{
+				// Biomes are 16x16, stored x major
+				if (nbt.readByteArray(buffers.biomes) >= buffers.biomes.length)
+				{
+					biomes = new byte[SECTION_WIDTH][SECTION_DEPTH];
+					for (int x=0; x<SECTION_WIDTH; x++)
+						System.arraycopy(buffers.biomes, x * SECTION_WIDTH, biomes[x], 0, SECTION_DEPTH);
+				}
+			}
+			else if (type == NBTConstants.TYPE_BYTE_ARRAY && name.equals("Blocks"))
+			{
+				mcRegionBlocks = nbt.readByteArray();
+			}
+			else if (type == NBTConstants.TYPE_BYTE_ARRAY && name.equals("Data"))
+			{
+				mcRegionData = nbt.readByteArray();
+			}
+			else if (type == NBTConstants.TYPE_BYTE_ARRAY && name.equals("SkyLight"))
+			{
+				mcRegionSkylight = nbt.readByteArray();
+			}
+			else if (type == NBTConstants.TYPE_BYTE_ARRAY && name.equals("BlockLight"))
 			{
-				CompoundTag root = (CompoundTag)tag;
+				mcRegionBlocklight = nbt.readByteArray();
+			}
+			else if (type == NBTConstants.TYPE_LIST && name.equals("Entities"))
+			{
+				entitiesTag = (ListTag)nbt.readTag(type, name);
+			}
+			else if (type == NBTConstants.TYPE_LIST && name.equals("TileEntities"))
+			{
+				tileEntitiesTag = (ListTag)nbt.readTag(type, name);
+			}
+			else
+			{
+				nbt.skip(type);
+			}
+		}
+		
+		if (!isAnvil)
+			parseMcRegionData(mcRegionBlocks, mcRegionData, mcRegionSkylight, mcRegionBlocklight);
+		
+		// Entities can come before the sections in the file, but signs need the block data so do these last
+		if (entitiesTag != null)
+			parseEntities(entitiesTag);
+		
+		if (tileEntitiesTag != null)
+			parseTileEntities(tileEntitiesTag);
+	}
+	
+	private void parseEntities(ListTag entitiesTag)
+	{
+		for (Tag t : entitiesTag.getValue())
+		{
+			if (t instanceof CompoundTag)
+			{
+				CompoundTag entity = (CompoundTag)t;
 				
-				CompoundTag level = NbtUtil.getChild(root, "Level", CompoundTag.class);
-				if (level != null)
+				StringTag idTag = NbtUtil.getChild(entity, "id", StringTag.class);
+				boolean painting = idTag.getValue().endsWith("Painting") || idTag.getValue().equals("minecraft:painting");
+				boolean itemFrame = idTag.getValue().equals("ItemFrame") || idTag.getValue().equals("minecraft:item_frame");
+				if (painting || itemFrame)
 				{
-					blockX = blockY = blockZ = 0;
+					IntTag xTag = NbtUtil.getChild(entity, "TileX", IntTag.class);
+					IntTag yTag = NbtUtil.getChild(entity, "TileY", IntTag.class);
+					IntTag zTag = NbtUtil.getChild(entity, "TileZ", IntTag.class);
+					ByteTag oldDir = NbtUtil.getChild(entity, "Dir", ByteTag.class);
+					ByteTag dir = NbtUtil.getChild(entity, "Direction", ByteTag.class);
 					
-					IntTag xPosTag = NbtUtil.getChild(level, "xPos", IntTag.class);
-					if (xPosTag != null)
-						blockX = xPosTag.getValue().intValue();
+					if (oldDir != null && dir == null){
+						dir = oldDir;
+					}
+
+					boolean is18 = false;
+					if (dir == null){
+						dir = NbtUtil.getChild(entity, "Facing", ByteTag.class);
+						is18 = true;
+					}
 					
-					IntTag zPosTag = NbtUtil.getChild(level, "zPos", IntTag.class);
-					if (zPosTag != null)
-						blockZ = zPosTag.getValue().intValue();
+					int direction = dir.getValue();  // Have to reverse 0 and 2 for the old Dir tag
+					if (oldDir != null && direction == 0){
+						direction = 2;
+					}
+					else if (oldDir != null && direction == 2){
+						direction = 0;
+					}
 					
-					ListTag sections = NbtUtil.getChild(level, "Sections", ListTag.class);
-					if (sections != null)
-					{
-						// Parse as anvil format
-						parseAnvilData(level, worldStats);
+					int x = xTag.getValue();
+					final int y = yTag.getValue();
+					int z = zTag.getValue();
+					
+					if (is18 && direction == 0){
+						z = zTag.getValue() - 1;
 					}
-					else
-					{
-						// Parse as McRegion format
-						parseMcRegionData(level);
+					else if (is18 && direction == 1){
+						x = xTag.getValue() + 1;
+					}
+					else if (is18 && direction == 2){
+						z = zTag.getValue() + 1;
+					}
+					else if (is18 && direction == 3){
+						x = xTag.getValue() - 1;
 					}
 					
-					ListTag entitiesTag = NbtUtil.getChild(level, "Entities", ListTag.class);
-					if (entitiesTag != null)
+					final int localX = x-(blockX*WIDTH);
+					final int localY  = y-(blockY*HEIGHT);
+					final int localZ = z-(blockZ*DEPTH);
+
+					
+					if (painting)
 					{
-						for (Tag t : entitiesTag.getValue())
+						StringTag motiveTag = NbtUtil.getChild(entity, "Motive", StringTag.class);
+						paintings.add(new PaintingEntity(x, y, z, localX, localY, localZ, motiveTag.getValue(), direction));
+					}
+					else if (itemFrame)
+					{
+						String item = "";
+						Map<String, Tag> map = entity.getValue();
+						CompoundTag itemTag = (CompoundTag) map.get("Item");
+						if(itemTag != null)
 						{
-							if (t instanceof CompoundTag)
+							ShortTag itemIdTag = NbtUtil.getChild(itemTag, "id", ShortTag.class);
+							if (itemIdTag == null)
 							{
-								CompoundTag entity = (CompoundTag)t;
-								
-								StringTag idTag = NbtUtil.getChild(entity, "id", StringTag.class);
-								boolean painting = idTag.getValue().endsWith("Painting") || idTag.getValue().equals("minecraft:painting");
-								boolean itemFrame = idTag.getValue().equals("ItemFrame") || idTag.getValue().equals("minecraft:item_frame");
-								if (painting || itemFrame)
-								{
-									IntTag xTag = NbtUtil.getChild(entity, "TileX", IntTag.class);
-									IntTag yTag = NbtUtil.getChild(entity, "TileY", IntTag.class);
-									IntTag zTag = NbtUtil.getChild(entity, "TileZ", IntTag.class);
-									ByteTag oldDir = NbtUtil.getChild(entity, "Dir", ByteTag.class);
-									ByteTag dir = NbtUtil.getChild(entity, "Direction", ByteTag.class);
-									
-									if (oldDir != null && dir == null){
-										dir = oldDir;
-									}
-
-									boolean is18 = false;
-									if (dir == null){
-										dir = NbtUtil.getChild(entity, "Facing", ByteTag.class);
-										is18 = true;
-									}
-									
-									int direction = dir.getValue();  // Have to reverse 0 and 2 for the old Dir tag
-									if (oldDir != null && direction == 0){
-										direction = 2;
-									}
-									else if (oldDir != null && direction == 2){
-										direction = 0;
-									}
-									
-									int x = xTag.getValue();
-									final int y = yTag.getValue();
-									int z = zTag.getValue();
-									
-									if (is18 && direction == 0){
-										z = zTag.getValue() - 1;
-									}
-									else if (is18 && direction == 1){
-										x = xTag.getValue() + 1;
-									}
-									else if (is18 && direction == 2){
-										z = zTag.getValue() + 1;
-									}
-									else if (is18 && direction == 3){
-										x = xTag.getValue() - 1;
-									}
-									
-									final int localX = x-(blockX*WIDTH);
-									final int localY  = y-(blockY*HEIGHT);
-									final int localZ = z-(blockZ*DEPTH);
-
-									
-									if (painting)
-									{
-										StringTag motiveTag = NbtUtil.getChild(entity, "Motive", StringTag.class);
-										paintings.add(new PaintingEntity(x, y, z, localX, localY, localZ, motiveTag.getValue(), direction));
-									}
-									else if (itemFrame)
-									{
-										String item = "";
-										Map<String, Tag> map = entity.getValue();
-										CompoundTag itemTag = (CompoundTag) map.get("Item");
-										if(itemTag != null)
-										{
-											ShortTag itemIdTag = NbtUtil.getChild(itemTag, "id", ShortTag.class);
-											if (itemIdTag == null)
-											{
-												StringTag stringItemIdTag = NbtUtil.getChild(itemTag, "id", StringTag.class);
-												item = stringItemIdTag.getValue();
-											}
-											else
-											{
-												if (itemIdTag.getValue() == 358)
-													item = "minecraft:filled_map";
-											}
-										}
-										
-										itemFrames.add(new PaintingEntity(x, y, z, localX, localY, localZ, item, direction));
-									}
-								}
+								StringTag stringItemIdTag = NbtUtil.getChild(itemTag, "id", StringTag.class);
+								item = stringItemIdTag.getValue();
+							}
+							else
+							{
+								if (itemIdTag.getValue() == 358)
+									item = "minecraft:filled_map";
 							}
 						}
+						
+						itemFrames.add(new PaintingEntity(x, y, z, localX, localY, localZ, item, direction));
 					}
+				}
+			}
+		}
+	}
+	
+	private void parseTileEntities(ListTag tileEntitiesTag) throws Exception
+	{
+		for (Tag t : tileEntitiesTag.getValue())
+		{
+			if (t instanceof CompoundTag)
+			{								
+				CompoundTag entity = (CompoundTag)t;
+				
+				StringTag idTag = NbtUtil.getChild(entity, "id", StringTag.class);
+				IntTag xTag = NbtUtil.getChild(entity, "x", IntTag.class);
+				IntTag yTag = NbtUtil.getChild(entity, "y", IntTag.class);
+				IntTag zTag = NbtUtil.getChild(entity, "z", IntTag.class);
+				
+				if (idTag != null && xTag != null && yTag != null && zTag != null)
+				{
+					final String id = idTag.getValue();
+					
+					final int x = xTag.getValue();
+					final int y = yTag.getValue();
+					final int z = zTag.getValue();
+					
+					final int localX = x-(blockX*WIDTH);
+					final int localY  = y-(blockY*HEIGHT);
+					final int localZ = z-(blockZ*DEPTH);
 					
-					ListTag tileEntitiesTag = NbtUtil.getChild(level, "TileEntities", ListTag.class);
-					if (tileEntitiesTag != null)
+					if (id.equals("Sign") || id.equals("minecraft:sign"))
 					{
-						for (Tag t : tileEntitiesTag.getValue())
-						{
-							if (t instanceof CompoundTag)
-							{								
-								CompoundTag entity = (CompoundTag)t;
-								
-								StringTag idTag = NbtUtil.getChild(entity, "id", StringTag.class);
-								IntTag xTag = NbtUtil.getChild(entity, "x", IntTag.class);
-								IntTag yTag = NbtUtil.getChild(entity, "y", IntTag.class);
-								IntTag zTag = NbtUtil.getChild(entity, "z", IntTag.class);
-								
-								if (idTag != null && xTag != null && yTag != null && zTag != null)
-								{
-									final String id = idTag.getValue();
-									
-									final int x = xTag.getValue();
-									final int y = yTag.getValue();
-									final int z = zTag.getValue();
-									
-									final int localX = x-(blockX*WIDTH);
-									final int localY  = y-(blockY*HEIGHT);
-									final int localZ = z-(blockZ*DEPTH);
-									
-									if (id.equals("Sign") || id.equals("minecraft:sign"))
-									{
-										List<String> textLines = new ArrayList<String>();
+						List<String> textLines = new ArrayList<String>();
 
-										for (int i=1; i<=4; i++)
-										{
-											String text = NbtUtil.getChild(entity, "Text"+i, StringTag.class).getValue();
+						for (int i=1; i<=4; i++)
+						{
+							String text = NbtUtil.getChild(entity, "Text"+i, StringTag.class).getValue();
 
-											if (!StringUtils.isEmpty(text) && FileUtils.isJSONValid(text))  // 1.9 sign text
-											{
-												textLines.add(textFromJSON(text));
-											}
-											else if (!StringUtils.isEmpty(text) && text.charAt(0) == '"' && text.charAt(text.length()-1) == '"' && text.length()>2) // 1.8 or older sign text
-											{
-												text = text.replaceAll("^\"|\"$", "");  //This removes begin and end double quotes
-												text = StringEscapeUtils.unescapeJava(text);
-												Gson gson = new GsonBuilder().create();
-										        textLines.add(gson.toJson(text).replaceAll("^\"|\"$", ""));
-											}
-											else if (!StringUtils.isBlank(text)) // 1.7 or older sign text
-											{
-												text = text.replaceAll("^\"|\"$", "");
-												Gson gson = new GsonBuilder().create();
-												textLines.add(gson.toJson(text).replaceAll("^\"|\"$", ""));
-											}
-											else
-											{
-												textLines.add("");
-											}
-										}
-										
-										final int data = getBlockData(localX, localY, localZ);
-										
-										signs.put(createKey(localX, localY, localZ), new SignEntity(x, y, z, localX, localY, localZ,
-																textLines.get(0), textLines.get(1), textLines.get(2), textLines.get(3), data) );
-									}
-									else if (id.equals("FlowerPot") || id.equals("minecraft:flower_pot"))
-									{
-										IntTag dataTag = NbtUtil.getChild(entity, "Data", IntTag.class);
-										IntTag itemTag = NbtUtil.getChild(entity, "Item", IntTag.class);
-										final int item;
-										if(itemTag == null)
-										{
-											StringTag stringIdTag = NbtUtil.getChild(entity, "Item", StringTag.class);
-											if (stringIdTag.getValue().equals("minecraft:sapling"))
-												item = 6;
-											else if (stringIdTag.getValue().equals("minecraft:red_flower"))
-												item = 38;
-											else
-												item = 0;
-										}
-										else
-										{
-											item = itemTag.getValue();
-										}
-										
-										flowerPots.put(createKey(localX, localY, localZ), new FlowerPotEntity(x, y, z, localX, localY, localZ, item, dataTag.getValue()));
-									}
-									else if (id.equals("Skull") || id.equals("minecraft:skull"))
-									{
-										ByteTag skullType = NbtUtil.getChild(entity, "SkullType", ByteTag.class);
-										ByteTag rot = NbtUtil.getChild(entity, "Rot", ByteTag.class);
-										
-										StringTag nameTag = null;
-										StringTag playerId = null;
-										String name = "";
-										String UUID = "";
-										String textureURL = "";
-										StringTag extraType = NbtUtil.getChild(entity, "ExtraType", StringTag.class);
-										CompoundTag owner = NbtUtil.getChild(entity, "Owner", CompoundTag.class);
-										if(owner != null)
-										{
-											nameTag = NbtUtil.getChild(owner, "Name", StringTag.class);
-											name = nameTag.getValue();
-											playerId = NbtUtil.getChild(owner, "Id", StringTag.class);
-											UUID = playerId.getValue().replace("-", "");
-											
-											// Get skin URL
-											CompoundTag properties = NbtUtil.getChild(owner, "Properties", CompoundTag.class);
-											ListTag textures = NbtUtil.getChild(properties, "textures", ListTag.class);
-											CompoundTag tex = NbtUtil.getChild(textures, 0, CompoundTag.class);
-											StringTag value = NbtUtil.getChild(tex, "Value", StringTag.class);
-											byte[] decoded = DatatypeConverter.parseBase64Binary(value.getValue());
-								            JsonObject obj = new JsonParser().parse(new String(decoded, "UTF-8")).getAsJsonObject();
-								            textureURL = obj.getAsJsonObject("textures").getAsJsonObject("SKIN").get("url").getAsString();
-										}
-										else if (extraType != null && !(extraType.getValue().equals("")))
-										{
-											name = UUID = extraType.getValue();
-											textureURL = "http://www.minecraft.net/skin/"+extraType.getValue()+".png";
-										}
-										
-										skulls.put(createKey(localX, localY, localZ), new SkullEntity(x, y, z, localX, localY, localZ, skullType.getValue(), rot.getValue(), name, UUID, textureURL));
-									}
-									else if (id.equals("Beacon") || id.equals("minecraft:beacon"))
-									{
-										IntTag levels = NbtUtil.getChild(entity, "Levels", IntTag.class);
-										
-										beacons.put(createKey(localX, localY, localZ), new BeaconEntity(x, y, z, localX, localY, localZ, levels.getValue()));
-									}
-									else if (id.equals("Banner") || id.equals("minecraft:banner"))
-									{
-										IntTag base = NbtUtil.getChild(entity, "Base", IntTag.class);
-										ListTag patternList = NbtUtil.getChild(entity, "Patterns", ListTag.class);
-										
-										List<Pattern> patterns = new ArrayList<Pattern>();
-										
-										int numPatterns = 0;
-										if (patternList != null)
-											numPatterns = patternList.getValue().size();
-										if (numPatterns > 0)
-										{
-											for(int i=0; i<numPatterns; i++)
-											{
-												CompoundTag p = NbtUtil.getChild(patternList, i, CompoundTag.class);
-												StringTag pattern = NbtUtil.getChild(p, "Pattern", StringTag.class);
-												IntTag color = NbtUtil.getChild(p, "Color", IntTag.class);
-												patterns.add(new Pattern(pattern.getValue(), color.getValue()));
-											}
-										}
-										banners.put(createKey(localX, localY, localZ), new BannerEntity(x, y, z, localX, localY, localZ, base.getValue(), patterns));
-									}
-									else if (id.equals("Chest") || id.equals("minecraft:chest") || id.equals("minecraft:shulker_box"))
-									{
-										final StringTag customName = NbtUtil.getChild(entity, "CustomName", StringTag.class);
-										String name = "Chest";
-										if (customName != null)
-											name = customName.getValue();
-										
-										final StringTag lock = NbtUtil.getChild(entity, "Lock", StringTag.class);
-										String lockStr = "";
-										if (lock != null)
-											lockStr = lock.getValue();
-										
-										final StringTag lootTable = NbtUtil.getChild(entity, "LootTable", StringTag.class);
-										
-										boolean unopenedChest = false;
-										if (lootTable != null)
-											unopenedChest = true;
-										
-										if (id.equals("Chest") || id.equals("minecraft:chest"))
-										{
-											chests.add(new ContainerEntity(x, y, z, localX, localY, localZ, name, lockStr, unopenedChest));
-										}
+							if (!StringUtils.isEmpty(text) && FileUtils.isJSONValid(text))  // 1.9 sign text
+							{
+								textLines.add(textFromJSON(text));
+							}
+							else if (!StringUtils.isEmpty(text) && text.charAt(0) == '"' && text.charAt(text.length()-1) == '"' && text.length()>2) // 1.8 or older sign text
+							{
+								text = text.replaceAll("^\"|\"$", "");  //This removes begin and end double quotes
+								text = StringEscapeUtils.unescapeJava(text);
+								Gson gson = new GsonBuilder().create();
+						        textLines.add(gson.toJson(text).replaceAll("^\"|\"$", ""));
+							}
+							else if (!StringUtils.isBlank(text)) // 1.7 or older sign text
+							{
+								text = text.replaceAll("^\"|\"$", "");
+								Gson gson = new GsonBuilder().create();
+								textLines.add(gson.toJson(text).replaceAll("^\"|\"$", ""));
+							}
+							else
+							{
+								textLines.add("");
+							}
+						}
+						
+						final int data = getBlockData(localX, localY, localZ);
+						
+						signs.put(createKey(localX, localY, localZ), new SignEntity(x, y, z, localX, localY, localZ,
+												textLines.get(0), textLines.get(1), textLines.get(2), textLines.get(3), data) );
+					}
+					else if (id.equals("FlowerPot") || id.equals("minecraft:flower_pot"))
+					{
+						IntTag dataTag = NbtUtil.getChild(entity, "Data", IntTag.class);
+						IntTag itemTag = NbtUtil.getChild(entity, "Item", IntTag.class);
+						final int item;
+						if(itemTag == null)
+						{
+							StringTag stringIdTag = NbtUtil.getChild(entity, "Item", StringTag.class);
+							if (stringIdTag.getValue().equals("minecraft:sapling"))
+								item = 6;
+							else if (stringIdTag.getValue().equals("minecraft:red_flower"))
+								item = 38;
+							else
+								item = 0;
+						}
+						else
+						{
+							item = itemTag.getValue();
+						}
+						
+						flowerPots.put(createKey(localX, localY, localZ), new FlowerPotEntity(x, y, z, localX, localY, localZ, item, dataTag.getValue()));
+					}
+					else if (id.equals("Skull") || id.equals("minecraft:skull"))
+					{
+						ByteTag skullType = NbtUtil.getChild(entity, "SkullType", ByteTag.class);
+						ByteTag rot = NbtUtil.getChild(entity, "Rot", ByteTag.class);
+						
+						StringTag nameTag = null;
+						StringTag playerId = null;
+						String name = "";
+						String UUID = "";
+						String textureURL = "";
+						StringTag extraType = NbtUtil.getChild(entity, "ExtraType", StringTag.class);
+						CompoundTag owner = NbtUtil.getChild(entity, "Owner", CompoundTag.class);
+						if(owner != null)
+						{
+							nameTag = NbtUtil.getChild(owner, "Name", StringTag.class);
+							name = nameTag.getValue();
+							playerId = NbtUtil.getChild(owner, "Id", StringTag.class);
+							UUID = playerId.getValue().replace("-", "");
+							
+							// Get skin URL
+							CompoundTag properties = NbtUtil.getChild(owner, "Properties", CompoundTag.class);
+							ListTag textures = NbtUtil.getChild(properties, "textures", ListTag.class);
+							CompoundTag tex = NbtUtil.getChild(textures, 0, CompoundTag.class);
+							StringTag value = NbtUtil.getChild(tex, "Value", StringTag.class);
+							byte[] decoded = DatatypeConverter.parseBase64Binary(value.getValue());
+				            JsonObject obj = new JsonParser().parse(new String(decoded, "UTF-8")).getAsJsonObject();
+				            textureURL = obj.getAsJsonObject("textures").getAsJsonObject("SKIN").get("url").getAsString();
+						}
+						else if (extraType != null && !(extraType.getValue().equals("")))
+						{
+							name = UUID = extraType.getValue();
+							textureURL = "http://www.minecraft.net/skin/"+extraType.getValue()+".png";
+						}
+						
+						skulls.put(createKey(localX, localY, localZ), new SkullEntity(x, y, z, localX, localY, localZ, skullType.getValue(), rot.getValue(), name, UUID, textureURL));
+					}
+					else if (id.equals("Beacon") || id.equals("minecraft:beacon"))
+					{
+						IntTag levels = NbtUtil.getChild(entity, "Levels", IntTag.class);
+						
+						beacons.put(createKey(localX, localY, localZ), new BeaconEntity(x, y, z, localX, localY, localZ, levels.getValue()));
+					}
+					else if (id.equals("Banner") || id.equals("minecraft:banner"))
+					{
+						IntTag base = NbtUtil.getChild(entity, "Base", IntTag.class);
+						ListTag patternList = NbtUtil.getChild(entity, "Patterns", ListTag.class);
+						
+						List<Pattern> patterns = new ArrayList<Pattern>();
+						
+						int numPatterns = 0;
+						if (patternList != null)
+							numPatterns = patternList.getValue().size();
+						if (numPatterns > 0)
+						{
+							for(int i=0; i<numPatterns; i++)
+							{
+								CompoundTag p = NbtUtil.getChild(patternList, i, CompoundTag.class);
+								StringTag pattern = NbtUtil.getChild(p, "Pattern", StringTag.class);
+								IntTag color = NbtUtil.getChild(p, "Color", IntTag.class);
+								patterns.add(new Pattern(pattern.getValue(), color.getValue()));
+							}
+						}
+						banners.put(createKey(localX, localY, localZ), new BannerEntity(x, y, z, localX, localY, localZ, base.getValue(), patterns));
+					}
+					else if (id.equals("Chest") || id.equals("minecraft:chest") || id.equals("minecraft:shulker_box"))
+					{
+						final StringTag customName = NbtUtil.getChild(entity, "CustomName", StringTag.class);
+						String name = "Chest";
+						if (customName != null)
+							name = customName.getValue();
+						
+						final StringTag lock = NbtUtil.getChild(entity, "Lock", StringTag.class);
+						String lockStr = "";
+						if (lock != null)
+							lockStr = lock.getValue();
+						
+						final StringTag lootTable = NbtUtil.getChild(entity, "LootTable", StringTag.class);
+						
+						boolean unopenedChest = false;
+						if (lootTable != null)
+							unopenedChest = true;
+						
+						if (id.equals("Chest") || id.equals("minecraft:chest"))
+						{
+							chests.add(new ContainerEntity(x, y, z, localX, localY, localZ, name, lockStr, unopenedChest));
+						}
 //										else if (id.equals("EnderChest") || id.equals("minecraft:ender_chest"))
 //										{
 //											
 //										}
-										else if (id.equals("minecraft:shulker_box"))
-										{
-											
-										}
-									}
-									else if (id.equals("minecraft:bed"))
-									{
-										final IntTag color = NbtUtil.getChild(entity, "color", IntTag.class);
-										beds.put(createKey(localX, localY, localZ), new BedEntity(x, y, z, localX, localY, localZ, color.getValue()));
-									}
-								//	else if (id.equals("Furnace"))
-								//	{
-								//		
-								//	}
-								//	else if (id.equals("MobSpawner"))
-								//	{
-								//		
-								//	}
-								}
-							}
+						else if (id.equals("minecraft:shulker_box"))
+						{
+							
 						}
 					}
-					
-				//	LongTag lastUpdateTag =
-				//		NbtUtil.getChild(level, "LastUpdate", LongTag.class);
-					
-				//	ByteTag terrainPopulatedTag = 
-				//		NbtUtil.getChild(level, "TerrainPopulated", ByteTag.class);
+					else if (id.equals("minecraft:bed"))
+					{
+						final IntTag color = NbtUtil.getChild(entity, "color", IntTag.class);
+						beds.put(createKey(localX, localY, localZ), new BedEntity(x, y, z, localX, localY, localZ, color.getValue()));
+					}
+				//	else if (id.equals("Furnace"))
+				//	{
+				//		
+				//	}
+				//	else if (id.equals("MobSpawner"))
+				//	{
+				//		
+				//	}
 				}
 			}
 		}
-		finally
-		{
-			if (nbtIn != null)
-				nbtIn.close();
-			if (in != null)
-				in.close();
-		}
-		
-		/* Old debug: put bricks in the corner of every chunk
-		for (int y=0; y<HEIGHT; y++)
-		{
-			if (blockIds[0][y][0] != BlockIds.AIR)
-			{
-				if (signs.size() > 0)
-					blockIds[0][y][0] = BlockIds.DIAMOND_BLOCK;
-				else
-					blockIds[0][y][0] = BlockIds.BRICK;
-			}
-		}
-		*/
 	}
 	
 	private String createKey(int x, int y, int z)
@@ -488,80 +553,80 @@ public class RawChunk
 		return "x" + x + "y" + y + "z" + z;
 	}
 	
-	private void parseAnvilData(CompoundTag level, WorldStats worldStats)
+	private void parseAnvilSections(NbtStreamReader nbt, SectionBuffers buffers, WorldStats worldStats) throws Exception
 	{
-		ListTag sectionsList = NbtUtil.getChild(level, "Sections", ListTag.class);
-		// sections shouldn't be null here
+		final int elementType = nbt.readListType();
+		final int length = nbt.readInt();
 		
-		List<Tag> list = sectionsList.getValue();
-		for (Tag t : list)
+		for (int i=0; i<length; i++)
 		{
-			if (!(t instanceof CompoundTag))
+			if (elementType != NBTConstants.TYPE_COMPOUND)
+			{
+				nbt.skip(elementType);
 				continue;
-				
-			CompoundTag compound = (CompoundTag)t;
+			}
+			
+			int sectionY = 0;
+			boolean hasBlocks = false, hasAdd = false, hasData = false, hasSkylight = false, hasBlocklight = false;
 			
-			final int sectionY = NbtUtil.getByte(compound, "Y", (byte)0);
+			// Y isn't necessarily first, so read everything in before unpacking
+			int type;
+			while ((type = nbt.readType()) != NBTConstants.TYPE_END)
+			{
+				final String name = nbt.readName();
+				
+				if (type == NBTConstants.TYPE_BYTE && name.equals("Y"))
+					sectionY = nbt.readByte();
+				else if (type == NBTConstants.TYPE_BYTE_ARRAY && name.equals("Blocks"))
+					hasBlocks = nbt.readByteArray(buffers.blocks) >= buffers.blocks.length;
+				else if (type == NBTConstants.TYPE_BYTE_ARRAY && name.equals("Add"))
+					hasAdd = nbt.readByteArray(buffers.add) >= buffers.add.length;
+				else if (type == NBTConstants.TYPE_BYTE_ARRAY && name.equals("Data"))
+					hasData = nbt.readByteArray(buffers.data) >= buffers.data.length;
+				else if (type == NBTConstants.TYPE_BYTE_ARRAY && name.equals("SkyLight"))
+					hasSkylight = nbt.readByteArray(buffers.skylight) >= buffers.skylight.length;
+				else if (type == NBTConstants.TYPE_BYTE_ARRAY && name.equals("BlockLight"))
+					hasBlocklight = nbt.readByteArray(buffers.blocklight) >= buffers.blocklight.length;
+				else
+					nbt.skip(type);
+			}
 			
-			if (sectionY < 0 || sectionY >= MAX_SECTIONS)
+			if (sectionY < 0 || sectionY >= MAX_SECTIONS || !hasBlocks)
 				continue;
 			
 			Section newSection = new Section();
 			sections[sectionY] = newSection;
 			
-			ByteArrayTag blocksTag = NbtUtil.getChild(compound, "Blocks", ByteArrayTag.class);
-			ByteArrayTag addTag = NbtUtil.getChild(compound, "Add", ByteArrayTag.class);
-			ByteArrayTag dataTag = NbtUtil.getChild(compound, "Data", ByteArrayTag.class);
-			ByteArrayTag skylightTag = NbtUtil.getChild(compound, "SkyLight", ByteArrayTag.class);
-			ByteArrayTag blocklightTag = NbtUtil.getChild(compound, "BlockLight", ByteArrayTag.class);
-
-			for (int x=0; x<SECTION_WIDTH; x++)
+			// Walk in storage order (YZX) so the buffers are read sequentially
+			for (int y=0; y<SECTION_HEIGHT; y++)
 			{
-				for (int y=0; y<SECTION_HEIGHT; y++)
+				for (int z=0; z<SECTION_DEPTH; z++)
 				{
-					for (int z=0; z<SECTION_DEPTH; z++)
+					for (int x=0; x<SECTION_WIDTH; x++)
 					{
 						final int index = calcAnvilIndex(x, y, z);
-						int id = blocksTag.getValue()[index] & 0xFF;
+						int id = buffers.blocks[index] & 0xFF;
+						if (hasAdd)
+							id = id | (getNibble(buffers.add, index) << 8);
 						newSection.blockIds[x][y][z] = id;
 						
-						if (addTag != null)
-						{
-							id = id | (getAnvil4Bit(addTag, x, y, z) << 8);
-							newSection.blockIds[x][y][z] = id;
-						}
-						
-						final byte data = getAnvil4Bit(dataTag, x, y, z);
+						final byte data = hasData ? getNibble(buffers.data, index) : 0;
 						newSection.blockData[x][y][z] = data;
 						
 						if (worldStats != null)
 							worldStats.incBlockId(id, data);
-
-						newSection.skylight[x][y][z] = getAnvil4Bit(skylightTag, x, y, z);
-						newSection.blocklight[x][y][z] = getAnvil4Bit(blocklightTag, x, y, z);
+						
+						if (hasSkylight)
+							newSection.skylight[x][y][z] = getNibble(buffers.skylight, index);
+						if (hasBlocklight)
+							newSection.blocklight[x][y][z] = getNibble(buffers.blocklight, index);
 					}
 				}
 			}
 		}
-		
-		// Parse "Biomes" data (16x16)
-		ByteArrayTag biomeDataTag = NbtUtil.getChild(level, "Biomes", ByteArrayTag.class);
-		if (biomeDataTag != null)
-		{
-			biomes = new byte[SECTION_WIDTH][SECTION_DEPTH];
-			
-			for (int x=0; x<SECTION_WIDTH; x++)
-			{
-				for (int z=0; z<SECTION_DEPTH; z++)
-				{
-					final int index = x * SECTION_WIDTH + z;
-					biomes[x][z] = biomeDataTag.getValue()[index];
-				}
-			}
-		}
 	}
 	
-	private void parseMcRegionData(CompoundTag level)
+	private void parseMcRegionData(byte[] blocks, byte[] dataArray, byte[] skylightArray, byte[] blocklightArray)
 	{
 		// McRegion chunks are only 128 high, so just create the lower half of the sections
 		for (int i=0; i<8; i++)
@@ -569,67 +634,24 @@ public class RawChunk
 			sections[i] = new Section();
 		}
 		
-		ByteArrayTag blocks = NbtUtil.getChild(level, "Blocks", ByteArrayTag.class);
-		if (blocks != null)
-		{
-			for (int x=0; x<WIDTH; x++)
-			{
-				for (int y=0; y<MC_REGION_HEIGHT; y++)
-				{
-					for (int z=0; z<DEPTH; z++)
-					{
-						final int index = calcIndex(x, y, z);
-						final byte blockId = blocks.getValue()[index];
-						setBlockId(x, y, z, blockId);
-					}
-				}
-			}
-		}
+		final int size = WIDTH * MC_REGION_HEIGHT * DEPTH;
 		
-		ByteArrayTag dataTag = NbtUtil.getChild(level, "Data", ByteArrayTag.class);
-		if (dataTag != null)
+		for (int x=0; x<WIDTH; x++)
 		{
-			for (int x=0; x<WIDTH; x++)
+			for (int y=0; y<MC_REGION_HEIGHT; y++)
 			{
-				for (int y=0; y<MC_REGION_HEIGHT; y++)
+				for (int z=0; z<DEPTH; z++)
 				{
-					for (int z=0; z<DEPTH; z++)
-					{
-						final byte half = get4Bit(dataTag, x, y, z);
-						setBlockData(x, y, z, half);
-					}
-				}
-			}
-		}
-		
-		ByteArrayTag skylightTag = NbtUtil.getChild(level, "SkyLight", ByteArrayTag.class);
-		if (skylightTag != null)
-		{
-			for (int x=0; x<WIDTH; x++)
-			{
-				for (int y=0; y<MC_REGION_HEIGHT; y++)
-				{
-					for (int z=0; z<DEPTH; z++)
-					{
-						final byte half = get4Bit(skylightTag, x, y, z);
-						setSkyLight(x, y, z, half);
-					}
-				}
-			}
-		}
-		
-		ByteArrayTag blockLightTag = NbtUtil.getChild(level, "BlockLight", ByteArrayTag.class);
-		if (blockLightTag != null)
-		{
-			for (int x=0; x<WIDTH; x++)
-			{
-				for (int y=0; y<MC_REGION_HEIGHT; y++)
-				{
-					for (int z=0; z<DEPTH; z++)
-					{
-						final byte half = get4Bit(blockLightTag, x, y, z);
-						setBlockLight(x, y, z, half);
-					}
+					final int index = calcIndex(x, y, z);
+					
+					if (blocks != null && blocks.length >= size)
+						setBlockId(x, y, z, blocks[index]);
+					if (dataArray != null && dataArray.length >= size / 2)
+						setBlockData(x, y, z, getNibble(dataArray, index));
+					if (skylightArray != null && skylightArray.length >= size / 2)
+						setSkyLight(x, y, z, getNibble(skylightArray, index));
+					if (blocklightArray != null && blocklightArray.length >= size / 2)
+						setBlockLight(x, y, z, getNibble(blocklightArray, index));
 				}
 			}
 		}
@@ -649,63 +671,14 @@ public class RawChunk
 		return x + (z * SECTION_HEIGHT) + (y * SECTION_HEIGHT * SECTION_DEPTH);
 	}
 	
-	private static final int calc4BitIndex(final int x, final int y, final int z)
-	{
-		// Math.floor is bloody slow!
-		// Since calcIndex should always be +ive, we can just cast to int and get the same result 
-		return (int)(calcIndex(x, y, z) / 2);
-	}
-	
-	private static final int calcAnvil4BitIndex(final int x, final int y, final int z)
-	{
-		// Math.floor is bloody slow!
-		// Since calcIndex should always be +ive, we can just cast to int and get the same result 
-		return (int)(calcAnvilIndex(x, y, z) / 2);
-	}
-	
-	private static byte getAnvil4Bit(ByteArrayTag tag, final int x, final int y, final int z)
+	/** Nibble arrays hold two values per byte, with the even index in the low half */
+	private static byte getNibble(byte[] data, final int index)
 	{
-		final int index = calcAnvil4BitIndex(x, y, z);
-		if (index == 2048)
-			System.out.println();;
-		
-		final int doublet = tag.getValue()[index];
-		
-		// Upper or lower half?
-		final boolean isUpper = (x % 2 == 1);
-		
-		byte half;
-		if (isUpper)
-		{
-			half = (byte)((doublet >> 4) & 0xF);
-		}
+		final int doublet = data[index >> 1];
+		if ((index & 1) == 1)
+			return (byte)((doublet >> 4) & 0xF);
 		else
-		{
-			half = (byte)(doublet & 0xF);
-		}
-		
-		return half;
-	}
-	
-	private static byte get4Bit(ByteArrayTag tag, final int x, final int y, final int z)
-	{
-		final int index = calc4BitIndex(x, y, z);
-		final int doublet = tag.getValue()[index];
-		
-		// Upper or lower half?
-		final boolean isUpper = (y % 2 == 1);
-		
-		byte half;
-		if (isUpper)
-		{
-			half = (byte)((doublet >> 4) & 0xF);
-		}
-		else
-		{
-			half = (byte)(doublet & 0xF);
-		}
-		
-		return half;
+			return (byte)(doublet & 0xF);
 	}
 	
 	public int getBlockId(final int x, final int y, final int z)
@@ -834,6 +807,58 @@ public class RawChunk
 		return getBlockId(x, y, z);
 	}
 	
+	/** Finds the lowest and highest y with anything other than air in, and which sections have any blocks at all.
+	 *  Paintings and item frames are drawn as part of the chunk so count too. Call again if the blocks are changed.
+	 */
+	public void calculateHeights()
+	{
+		minY = -1;
+		maxY = -1;
+		sectionMask = 0;
+		
+		for (int s=0; s<MAX_SECTIONS; s++)
+		{
+			Section section = sections[s];
+			if (section == null)
+				continue;
+			
+			for (int y=0; y<SECTION_HEIGHT; y++)
+			{
+				if (!section.isLayerEmpty(y))
+				{
+					includeHeight(s * SECTION_HEIGHT + y);
+					sectionMask |= 1 << s;
+				}
+			}
+		}
+		
+		for (PaintingEntity p : paintings)
+			includeHeight(p.getLocalY());
+		for (PaintingEntity p : itemFrames)
+			includeHeight(p.getLocalY());
+	}
+	
+	private void includeHeight(int y)
+	{
+		y = Math.max(0, Math.min(HEIGHT-1, y));
+		
+		if (minY == -1 || y < minY)
+			minY = y;
+		if (y > maxY)
+			maxY = y;
+	}
+	
+	/** Lowest y with anything in it, or -1 if the chunk is completely empty */
+	public int getMinY() { return minY; }
+	
+	/** Highest y with anything in it, or -1 if the chunk is completely empty */
+	public int getMaxY() { return maxY; }
+	
+	/** One bit per section (bit 0 at the bottom) which is set if the section has any non-air blocks */
+	public int getSectionMask() { return sectionMask; }
+	
+	public boolean isEmpty() { return minY == -1; }
+	
 	public int getBlockX() { return blockX; }
 	public int getBlockY() { return blockY; }
 	public int getBlockZ() { return blockZ; }
@@ -989,6 +1014,17 @@ public class RawChunk
 			return BiomeIds.UNKNOWN;
 	}
 	
+	/** Scratch space that section arrays are read straight into before being unpacked. One per thread, reused for every chunk */
+	private static class SectionBuffers
+	{
+		public final byte[] blocks = new byte[SECTION_WIDTH * SECTION_HEIGHT * SECTION_DEPTH];
+		public final byte[] add = new byte[blocks.length / 2];
+		public final byte[] data = new byte[blocks.length / 2];
+		public final byte[] skylight = new byte[blocks.length / 2];
+		public final byte[] blocklight = new byte[blocks.length / 2];
+		public final byte[] biomes = new byte[WIDTH * DEPTH];
+	}
+	
 	private static class Section
 	{
 		public int[][][] blockIds;
@@ -1005,6 +1041,19 @@ public class RawChunk
 			skylight = new byte[SECTION_WIDTH][SECTION_HEIGHT][SECTION_DEPTH];
 			blocklight = new byte[SECTION_WIDTH][SECTION_HEIGHT][SECTION_DEPTH];
 		}
+		
+		public boolean isLayerEmpty(final int y)
+		{
+			for (int x=0; x<SECTION_WIDTH; x++)
+			{
+				for (int z=0; z<SECTION_DEPTH; z++)
+				{
+					if (blockIds[x][y][z] != BlockIds.AIR)
+						return false;
+				}
+			}
+			return true;
+		}
 	}
 	
 	private static String textFromJSON(String rawMessage){
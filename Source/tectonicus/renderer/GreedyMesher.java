@@ -0,0 +1,379 @@
+/*
+ * Copyright (c) 2012-2019, John Campbell and other contributors.  All rights reserved.
+ *
+ * This file is part of Tectonicus. It is subject to the license terms in the LICENSE file found in
+ * the top-level directory of this distribution.  The full list of project contributors is contained
+ * in the AUTHORS file found in the same location.
+ *
+ */
+
+package tectonicus.renderer;
+
+import tectonicus.BlockContext;
+import tectonicus.BlockMask;
+import tectonicus.BlockType;
+import tectonicus.BlockTypeRegistry;
+import tectonicus.Chunk;
+import tectonicus.ChunkCoord;
+import tectonicus.blockTypes.SolidBlockType;
+import tectonicus.configuration.LightFace;
+import tectonicus.rasteriser.Mesh;
+import tectonicus.raw.RawChunk;
+import tectonicus.texture.SubTexture;
+import tectonicus.util.Colour4f;
+
+/** Builds the geometry for all the opaque full cubes (plain SolidBlockTypes) in a chunk in one pass.
+ *
+ *  Solidity is gathered once into bitmasks, one int per row of blocks along z with a block of padding on
+ *  every side for the neighbouring chunks, so finding the visible faces of a whole row is a couple of bitwise ops.
+ *  Neighbouring faces with the same block type and light are then merged into larger quads, with their
+ *  texture coordinates running past 1 so the texture repeats across them. That only works for textures
+ *  that fill their whole image, and on rasterisers that repeat textures, otherwise each face gets its own quad.
+ */
+public class GreedyMesher
+{
+	private static final int ROW_WIDTH = RawChunk.WIDTH + 2;
+	
+	private enum Face
+	{
+		Top,
+		Bottom,
+		North,
+		South,
+		East,
+		West
+	}
+	
+	private final RawChunk rawChunk;
+	private final BlockContext world;
+	private final boolean mergeFaces;
+	
+	/** Blocks which hide the faces next to them, including the neighbouring chunks' blocks around the edge */
+	private final int[] solid;
+	/** Blocks which this mesher builds the geometry for */
+	private final int[] cubes;
+	
+	private final SolidBlockType[] types;
+	
+	// Scratch space for one slice of faces
+	private final SolidBlockType[] sliceTypes;
+	private final float[] sliceLights;
+	
+	public GreedyMesher(RawChunk rawChunk, BlockContext world, BlockTypeRegistry registry, BlockMask mask, final boolean mergeFaces)
+	{
+		this.rawChunk = rawChunk;
+		this.world = world;
+		this.mergeFaces = mergeFaces;
+		
+		this.solid = new int[ROW_WIDTH * (RawChunk.HEIGHT + 2)];
+		this.cubes = new int[solid.length];
+		this.types = new SolidBlockType[RawChunk.WIDTH * RawChunk.HEIGHT * RawChunk.DEPTH];
+		
+		this.sliceTypes = new SolidBlockType[RawChunk.WIDTH * RawChunk.HEIGHT];
+		this.sliceLights = new float[sliceTypes.length];
+		
+		ChunkCoord coord = rawChunk.getChunkCoord();
+		
+		for (int y=-1; y<=RawChunk.HEIGHT; y++)
+		{
+			for (int x=-1; x<=RawChunk.WIDTH; x++)
+			{
+				final boolean edgeRow = y < 0 || y == RawChunk.HEIGHT || x < 0 || x == RawChunk.WIDTH;
+				
+				int solidRow = 0;
+				int cubeRow = 0;
+				for (int z=-1; z<=RawChunk.DEPTH; z++)
+				{
+					final int bit = 1 << (z+1);
+					
+					if (edgeRow || z < 0 || z == RawChunk.DEPTH)
+					{
+						if (world.getBlockType(coord, x, y, z).isSolid())
+							solidRow |= bit;
+						continue;
+					}
+					
+					BlockType type = registry.find(rawChunk.getBlockId(x, y, z), rawChunk.getBlockData(x, y, z));
+					if (type == null)
+						continue;
+					
+					if (type.isSolid())
+						solidRow |= bit;
+					
+					if (type instanceof SolidBlockType && type.isSolid() && mask.isVisible(x, y, z))
+					{
+						cubeRow |= bit;
+						types[blockIndex(x, y, z)] = (SolidBlockType)type;
+					}
+				}
+				
+				solid[rowIndex(x, y)] = solidRow;
+				cubes[rowIndex(x, y)] = cubeRow;
+			}
+		}
+	}
+	
+	/** True if the block is an opaque cube whose geometry is built by this mesher */
+	public boolean contains(final int x, final int y, final int z)
+	{
+		return (cubes[rowIndex(x, y)] & (1 << (z+1))) != 0;
+	}
+	
+	public void addGeometry(Geometry geometry)
+	{
+		for (Face face : Face.values())
+		{
+			final int numSlices = face == Face.Top || face == Face.Bottom ? RawChunk.HEIGHT
+								: face == Face.North || face == Face.South ? RawChunk.WIDTH
+								: RawChunk.DEPTH;
+			
+			for (int slice=0; slice<numSlices; slice++)
+				addSlice(face, slice, geometry);
+		}
+	}
+	
+	/** Gathers the visible faces of one slice through the chunk into a grid, then merges them into quads.
+	 *  The grid's a axis runs along the face's texture u and b along its v.
+	 */
+	private void addSlice(Face face, final int slice, Geometry geometry)
+	{
+		final boolean horizontal = face == Face.Top || face == Face.Bottom;
+		final int sizeA = horizontal ? RawChunk.WIDTH : (face == Face.North || face == Face.South ? RawChunk.DEPTH : RawChunk.WIDTH);
+		final int sizeB = horizontal ? RawChunk.DEPTH : RawChunk.HEIGHT;
+		
+		boolean anyFaces = false;
+		for (int b=0; b<sizeB; b++)
+		{
+			for (int a=0; a<sizeA; a++)
+			{
+				final int cell = a + b * sizeA;
+				sliceTypes[cell] = null;
+				
+				int x, y, z;
+				switch (face)
+				{
+					case Top:
+					case Bottom:
+						x = a; y = slice; z = b;
+						break;
+					case North:
+					case South:
+						x = slice; y = b; z = a;
+						break;
+					default:
+						x = a; y = b; z = slice;
+						break;
+				}
+				
+				if (!isFaceVisible(face, x, y, z))
+					continue;
+				
+				sliceTypes[cell] = types[blockIndex(x, y, z)];
+				sliceLights[cell] = getLight(face, x, y, z);
+				anyFaces = true;
+			}
+		}
+		
+		if (!anyFaces)
+			return;
+		
+		for (int b=0; b<sizeB; b++)
+		{
+			for (int a=0; a<sizeA; a++)
+			{
+				SolidBlockType type = sliceTypes[a + b * sizeA];
+				if (type == null)
+					continue;
+				
+				final float light = sliceLights[a + b * sizeA];
+				SubTexture texture = getTexture(type, face);
+				
+				int width = 1;
+				int height = 1;
+				
+				if (mergeFaces && isRepeatable(texture))
+				{
+					while (a + width < sizeA && matches(a + width + b * sizeA, type, light))
+						width++;
+					
+					boolean canGrow = true;
+					while (canGrow && b + height < sizeB)
+					{
+						for (int i=0; i<width; i++)
+						{
+							if (!matches(a + i + (b + height) * sizeA, type, light))
+							{
+								canGrow = false;
+								break;
+							}
+						}
+						if (canGrow)
+							height++;
+					}
+				}
+				
+				for (int j=0; j<height; j++)
+					for (int i=0; i<width; i++)
+						sliceTypes[a + i + (b + j) * sizeA] = null;
+				
+				addQuad(geometry, face, slice, a, a + width, b, b + height, type, texture, light);
+			}
+		}
+	}
+	
+	private boolean matches(final int cell, SolidBlockType type, final float light)
+	{
+		return sliceTypes[cell] == type && sliceLights[cell] == light;
+	}
+	
+	private boolean isFaceVisible(Face face, final int x, final int y, final int z)
+	{
+		final int bit = 1 << (z+1);
+		final int row = cubes[rowIndex(x, y)];
+		if ((row & bit) == 0)
+			return false;
+		
+		final int visible;
+		switch (face)
+		{
+			case Top:
+				visible = row & ~solid[rowIndex(x, y+1)];
+				break;
+			case Bottom:
+				visible = row & ~solid[rowIndex(x, y-1)];
+				break;
+			case North:
+				visible = row & ~solid[rowIndex(x-1, y)];
+				break;
+			case South:
+				visible = row & ~solid[rowIndex(x+1, y)];
+				break;
+			case East:
+				visible = row & ~(solid[rowIndex(x, y)] << 1);
+				break;
+			default:
+				visible = row & ~(solid[rowIndex(x, y)] >>> 1);
+				break;
+		}
+		return (visible & bit) != 0;
+	}
+	
+	/** Light on a face, taken from the block it faces onto in the same way as BlockUtil */
+	private float getLight(Face face, final int x, final int y, final int z)
+	{
+		int nx = x, ny = y, nz = z;
+		LightFace lightFace;
+		switch (face)
+		{
+			case Top:
+				ny++;
+				lightFace = LightFace.Top;
+				break;
+			case Bottom:
+				ny--;
+				lightFace = LightFace.Top;
+				break;
+			case North:
+				nx--;
+				lightFace = LightFace.NorthSouth;
+				break;
+			case South:
+				nx++;
+				lightFace = LightFace.NorthSouth;
+				break;
+			case East:
+				nz--;
+				lightFace = LightFace.EastWest;
+				break;
+			default:
+				nz++;
+				lightFace = LightFace.EastWest;
+				break;
+		}
+		
+		if (nx < 0 || nx >= RawChunk.WIDTH || ny < 0 || ny >= RawChunk.HEIGHT || nz < 0 || nz >= RawChunk.DEPTH)
+			return world.getLight(rawChunk.getChunkCoord(), nx, ny, nz, lightFace);
+		else
+			return Chunk.getLight(world.getLightStyle(), lightFace, rawChunk, nx, ny, nz);
+	}
+	
+	private static SubTexture getTexture(SolidBlockType type, Face face)
+	{
+		return face == Face.Top || face == Face.Bottom ? type.getTopTexture() : type.getSideTexture();
+	}
+	
+	private static boolean isRepeatable(SubTexture texture)
+	{
+		return texture.u0 == 0 && texture.v0 == 0 && texture.u1 == 1 && texture.v1 == 1;
+	}
+	
+	/** Adds the quad covering [a0, a1) x [b0, b1) of a slice, with the same corners, winding and
+	 *  texture orientation as the single block faces from BlockUtil
+	 */
+	private static void addQuad(Geometry geometry, Face face, final int slice, final int a0, final int a1, final int b0, final int b1,
+								SolidBlockType type, SubTexture texture, final float light)
+	{
+		Mesh mesh = geometry.getMesh(texture.texture, Geometry.MeshType.Solid);
+		
+		Colour4f colour = type.getColour();
+		final float r = colour.r * light;
+		final float g = colour.g * light;
+		final float b = colour.b * light;
+		final float a = colour.a;
+		
+		final float uA = texture.u0;
+		final float uB = texture.u0 + (texture.u1 - texture.u0) * (a1 - a0);
+		final float vA = texture.v0;
+		final float vB = texture.v0 + (texture.v1 - texture.v0) * (b1 - b0);
+		
+		switch (face)
+		{
+			case Top:
+				mesh.addVertex(a0, slice+1, b0, r, g, b, a, uA, vA);
+				mesh.addVertex(a1, slice+1, b0, r, g, b, a, uB, vA);
+				mesh.addVertex(a1, slice+1, b1, r, g, b, a, uB, vB);
+				mesh.addVertex(a0, slice+1, b1, r, g, b, a, uA, vB);
+				break;
+			case Bottom:
+				mesh.addVertex(a0, slice, b1, r, g, b, a, uA, vA);
+				mesh.addVertex(a1, slice, b1, r, g, b, a, uB, vA);
+				mesh.addVertex(a1, slice, b0, r, g, b, a, uB, vB);
+				mesh.addVertex(a0, slice, b0, r, g, b, a, uA, vB);
+				break;
+			case North:
+				mesh.addVertex(slice, b1, a0, r, g, b, a, uA, vA);
+				mesh.addVertex(slice, b1, a1, r, g, b, a, uB, vA);
+				mesh.addVertex(slice, b0, a1, r, g, b, a, uB, vB);
+				mesh.addVertex(slice, b0, a0, r, g, b, a, uA, vB);
+				break;
+			case South:
+				mesh.addVertex(slice+1, b1, a1, r, g, b, a, uA, vA);
+				mesh.addVertex(slice+1, b1, a0, r, g, b, a, uB, vA);
+				mesh.addVertex(slice+1, b0, a0, r, g, b, a, uB, vB);
+				mesh.addVertex(slice+1, b0, a1, r, g, b, a, uA, vB);
+				break;
+			case East:
+				mesh.addVertex(a1, b1, slice, r, g, b, a, uA, vA);
+				mesh.addVertex(a0, b1, slice, r, g, b, a, uB, vA);
+				mesh.addVertex(a0, b0, slice, r, g, b, a, uB, vB);
+				mesh.addVertex(a1, b0, slice, r, g, b, a, uA, vB);
+				break;
+			default:
+				mesh.addVertex(a0, b1, slice+1, r, g, b, a, uA, vA);
+				mesh.addVertex(a1, b1, slice+1, r, g, b, a, uB, vA);
+				mesh.addVertex(a1, b0, slice+1, r, g, b, a, uB, vB);
+				mesh.addVertex(a0, b0, slice+1, r, g, b, a, uA, vB);
+				break;
+		}
+	}
+	
+	private static int rowIndex(final int x, final int y)
+	{
+		return (y + 1) * ROW_WIDTH + (x + 1);
+	}
+	
+	private static int blockIndex(final int x, final int y, final int z)
+	{
+		return (y * RawChunk.WIDTH + x) * RawChunk.DEPTH + z;
+	}
+}
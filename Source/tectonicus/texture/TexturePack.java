@@ -18,15 +18,14 @@ import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
-import java.nio.file.DirectoryStream;
-import java.nio.file.FileSystem;
-import java.nio.file.FileSystems;
-import java.nio.file.Files;
-import java.nio.file.Path;
-import java.nio.file.Paths;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 
 import javax.imageio.ImageIO;
 
@@ -53,28 +52,38 @@ public class TexturePack
 	
 	private Font font;
 	
-	private ZipStack zipStack;
+	private final File minecraftJar;
+	private final File texturePackFile;
+	
+	private final ZipStack zipStack;
 	
 	private Map<String, PackTexture> loadedPackTextures;
 	
+	/** Images decoded ahead of time by preloadBlockTextures, waiting for their first loadTexture call */
+	private final Map<String, BufferedImage> preloadedImages = new ConcurrentHashMap<String, BufferedImage>();
+	
 	public TexturePack(Rasteriser rasteriser, File minecraftJar, File texturePack, List<File> modJars)
 	{
-		if (!minecraftJar.exists())
-			throw new RuntimeException("Couldn't find minecraft.jar at "+minecraftJar.getAbsolutePath());
+		this(rasteriser, minecraftJar, texturePack, openZipStack(minecraftJar, texturePack, modJars));
+	}
 	
+	/** A texture pack for another rasteriser which reads from the same already opened archives as source.
+	 *  Textures belong to a rasteriser so still get created again for this one.
+	 */
+	public TexturePack(Rasteriser rasteriser, TexturePack source)
+	{
+		this(rasteriser, source.minecraftJar, source.texturePackFile, source.zipStack);
+	}
+	
+	private TexturePack(Rasteriser rasteriser, File minecraftJar, File texturePack, ZipStack zipStack)
+	{
 		this.rasteriser = rasteriser;
+		this.minecraftJar = minecraftJar;
+		this.texturePackFile = texturePack;
+		this.zipStack = zipStack;
 		
 		loadedPackTextures = new HashMap<String, PackTexture>();
 		
-		try
-		{
-			zipStack = new ZipStack(minecraftJar, texturePack, modJars);
-		}
-		catch (Exception e)
-		{
-			throw new RuntimeException("Couldn't open jar files for texture reading", e);
-		}
-		
 		//TODO: Clean up this version stuff
 		if (zipStack.hasFile("terrain.png"))
 		{
@@ -198,7 +207,7 @@ public class TexturePack
 			} catch (IllegalArgumentException e) {
 				System.out.println("Could not find items.png.  This is only required if using a Minecraft 1.4 or older jar file.");
 			}
-
+			
 			try {
 				iconSheet = copy( ImageIO.read( zipStack.getStream(path + "gui/icons.png") ) );
 			} catch (IllegalArgumentException e) {
@@ -213,7 +222,7 @@ public class TexturePack
 			} catch (IllegalArgumentException e) {
 				throw new RuntimeException("Couldn't find generic_54.png in "+formatPaths(minecraftJar, texturePack));
 			}
-
+			
 			try {
 				InputStream imgStream = zipStack.getStream(path + "misc/grasscolor.png");
 				if (imgStream == null)
@@ -250,6 +259,21 @@ public class TexturePack
 		}
 	}
 	
+	private static ZipStack openZipStack(File minecraftJar, File texturePack, List<File> modJars)
+	{
+		if (!minecraftJar.exists())
+			throw new RuntimeException("Couldn't find minecraft.jar at "+minecraftJar.getAbsolutePath());
+		
+		try
+		{
+			return new ZipStack(minecraftJar, texturePack, modJars);
+		}
+		catch (Exception e)
+		{
+			throw new RuntimeException("Couldn't open jar files for texture reading", e);
+		}
+	}
+	
 	private String formatPaths(File first, File second)
 	{
 		String result = "";
@@ -298,6 +322,29 @@ public class TexturePack
 		return result;
 	}
 	
+	/** Loads the image behind a block config texture path, without creating a rasteriser texture for it.
+	 *  Tile requests (eg. terrain[0, 1]) are cropped out of the 16x16 grid, other params are ignored.
+	 */
+	public BufferedImage findTextureImage(String texturePath)
+	{
+		TextureRequest request = parseRequest(texturePath);
+		try
+		{
+			BufferedImage img = loadTexture(request.path);
+			if (img != null && request.isTile())
+			{
+				final int tileWidth = img.getWidth() / 16;
+				final int tileHeight = img.getHeight() / 16;
+				img = img.getSubimage(request.tileX * tileWidth, request.tileY * tileHeight, tileWidth, tileHeight);
+			}
+			return img;
+		}
+		catch (FileNotFoundException e)
+		{
+			return null;
+		}
+	}
+	
 	private TextureRequest parseRequest(String texturePath)
 	{
 		// texture path could be:
@@ -383,8 +430,71 @@ public class TexturePack
 		return tex.getFullTexture();
 	}
 	
+	/** Decodes every block texture in the pack across a pool of threads. Creating the rasteriser textures
+	 *  still happens on demand, but findTexture no longer has to wait on png decoding for each block texture.
+	 *  Images are dropped as they are handed out, and discardPreloadedTextures drops the ones nothing asked for.
+	 */
+	public void preloadBlockTextures(final int numThreads)
+	{
+		List<String> paths = new ArrayList<String>();
+		if (version == "1.5")
+		{
+			paths.addAll(zipStack.listFiles("textures/blocks"));
+		}
+		else if (Minecraft.getMinecraftVersion() >= 1.6f)
+		{
+			paths.addAll(zipStack.listFiles("assets/minecraft/textures/blocks"));
+			paths.addAll(zipStack.listFiles("assets/minecraft/textures/block"));
+		}
+		
+		ExecutorService executor = Executors.newFixedThreadPool(numThreads);
+		for (final String path : paths)
+		{
+			if (!path.endsWith(".png"))
+				continue;
+			
+			executor.submit(new Runnable()
+			{
+				@Override
+				public void run()
+				{
+					try (InputStream in = zipStack.getStream(path))
+					{
+						BufferedImage img = copy( ImageIO.read(in) );
+						if (img != null)
+							preloadedImages.put(path, img);
+					}
+					catch (Exception e)
+					{
+						// Leave it to be loaded (and reported) on demand
+					}
+				}
+			});
+		}
+		
+		try
+		{
+			executor.shutdown();
+			executor.awaitTermination(1, TimeUnit.HOURS);
+		}
+		catch (InterruptedException e)
+		{
+			e.printStackTrace();
+		}
+	}
+	
+	/** Drops preloaded images that were never asked for, once the block registries have taken what they use */
+	public void discardPreloadedTextures()
+	{
+		preloadedImages.clear();
+	}
+	
 	public BufferedImage loadTexture(String path) throws FileNotFoundException
 	{
+		BufferedImage preloaded = preloadedImages.remove(path);
+		if (preloaded != null)
+			return preloaded;
+		
 		InputStream in = null;
 		
 		try
@@ -491,53 +601,62 @@ public class TexturePack
 		codes.put("triangles_bottom.png", "bts");
 		codes.put("triangles_top.png", "tts");
 			
-		try (FileSystem fs = FileSystems.newFileSystem(Paths.get(zipStack.getBaseFileName()), null);
-			DirectoryStream<Path> entries = Files.newDirectoryStream(fs.getPath("assets/minecraft/textures/entity/banner"));)
+		try
 		{
-			for (Path entry : entries)
-				patterns.put(codes.get(entry.getFileName().toString()), loadTexture(entry.toString()));
+			List<String> entries = zipStack.listFiles("assets/minecraft/textures/entity/banner");
+			if (entries.isEmpty())
+				throw new FileNotFoundException("assets/minecraft/textures/entity/banner");
 			
-			Path basePattern = fs.getPath("assets/minecraft/textures/entity/banner_base.png");
-			patterns.put(codes.get(basePattern.getFileName().toString()), loadTexture(basePattern.toString()));
+			for (String entry : entries)
+				patterns.put(codes.get(getFileName(entry)), loadTexture(entry));
+			
+			String basePattern = "assets/minecraft/textures/entity/banner_base.png";
+			patterns.put(codes.get(getFileName(basePattern)), loadTexture(basePattern));
 		}
 		catch (IOException e)
 		{
 			System.out.println("No banner patterns found. You may be using an older Minecraft jar file");
 		}
-
+		
 		return patterns;
 	}
 	
 	private void loadBedTextures()
 	{		
-		try (FileSystem fs = FileSystems.newFileSystem(Paths.get(zipStack.getBaseFileName()), null);
-				DirectoryStream<Path> entries = Files.newDirectoryStream(fs.getPath("assets/minecraft/textures/entity/bed"));)
+		List<String> entries = zipStack.listFiles("assets/minecraft/textures/entity/bed");
+		if (entries.isEmpty())
+			System.out.println("No bed textures found. You may be using an older Minecraft jar file");
+		
+		try
 		{
-			for (Path entry : entries)
+			for (String entry : entries)
 			{
-				String filename = entry.getFileName().toString();
+				String filename = getFileName(entry);
 				String color = filename.substring(0, filename.lastIndexOf('.'));
-				findTexture(loadTexture(entry.toString()), "bed_"+color);
+				findTexture(loadTexture(entry), "bed_"+color);
 			}
 		}
 		catch (IOException e)
 		{
-			System.out.println("No bed textures found. You may be using an older Minecraft jar file");
+			e.printStackTrace();
 		}
 	}
 	
 	private void loadShulkerTextures()
 	{		
-		try (FileSystem fs = FileSystems.newFileSystem(Paths.get(zipStack.getBaseFileName()), null);
-				DirectoryStream<Path> entries = Files.newDirectoryStream(fs.getPath("assets/minecraft/textures/entity/shulker"));)
+		List<String> entries = zipStack.listFiles("assets/minecraft/textures/entity/shulker");
+		if (entries.isEmpty())
+			System.out.println("No shulker textures found. You may be using an older Minecraft jar file");
+		
+		try
 		{
-			for (Path entry : entries)
+			for (String entry : entries)
 			{
-				String filename = entry.getFileName().toString();
+				String filename = getFileName(entry);
 				if (filename.contains("shulker"))
 				{
 					String color = filename.substring(0, filename.lastIndexOf('.')).replace("shulker_", "");
-					BufferedImage img = loadTexture(entry.toString());
+					BufferedImage img = loadTexture(entry);
 					findTexture(img, "shulker_"+color);
 					
 					int height = img.getHeight();
@@ -557,15 +676,20 @@ public class TexturePack
 		}
 		catch (IOException e)
 		{
-			System.out.println("No shulker textures found. You may be using an older Minecraft jar file");
+			e.printStackTrace();
 		}
 	}
 	
+	private static String getFileName(String path)
+	{
+		return path.substring(path.lastIndexOf('/') + 1);
+	}
+	
 	public ZipStack getZipStack()
 	{
 		return zipStack;
 	}
-
+	
 	public String getVersion()
 	{
 		return version;
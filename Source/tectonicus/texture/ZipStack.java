@@ -9,77 +9,157 @@
 
 package tectonicus.texture;
 
+import java.io.Closeable;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
-import java.nio.file.FileSystem;
-import java.nio.file.FileSystems;
-import java.nio.file.Files;
-import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
 
-public class ZipStack
+/** A texture pack, minecraft jar and mod jars stacked on top of each other. Each archive is opened
+ *  once, and every file is indexed up front so lookups don't have to touch the archives at all.
+ *  Files in the texture pack override the minecraft jar, which overrides the mod jars.
+ */
+public class ZipStack implements Closeable
 {
-	private List<File> modJars;
-	private String baseFileName;
-	private FileSystem base, override;
+	private final String baseFileName;
+	
+	private final List<ZipFile> archives;
+	
+	private final Map<String, IndexEntry> index;
 	
 	public ZipStack(File baseFile, File overrideFile, List<File> modJars) throws IOException
 	{
 		baseFileName = baseFile.getPath();
-		base = FileSystems.newFileSystem(Paths.get(baseFileName), null);
 		
-		if (overrideFile != null)
+		archives = new ArrayList<ZipFile>();
+		index = new HashMap<String, IndexEntry>();
+		
+		try
 		{
-			if (overrideFile.exists())
+			if (overrideFile != null)
+			{
+				if (overrideFile.exists())
+				{
+					addArchive(overrideFile, false);
+				}
+				else
+					System.out.println("Couldn't open \""+overrideFile.getAbsolutePath()+"\"");
+			}
+			
+			addArchive(baseFile, false);
+			
+			if (modJars != null)
 			{
-				override = FileSystems.newFileSystem(Paths.get(overrideFile.getPath()), null);
+				for (File jar : modJars)
+					addArchive(jar, true);
 			}
-			else
-				System.out.println("Couldn't open \""+overrideFile.getAbsolutePath()+"\"");
 		}
-		
-		this.modJars = modJars;
+		catch (IOException e)
+		{
+			close();
+			throw e;
+		}
 	}
 	
-	public InputStream getStream(String path) throws IOException
+	private void addArchive(File file, final boolean isMod) throws IOException
 	{
-		if (override != null && hasFile(path, override))
-		{
-			return Files.newInputStream(override.getPath(path));
-		}
-		else if (hasFile(path, base))
-		{
-			return Files.newInputStream(base.getPath(path));
-		}
-		else
+		ZipFile zip = new ZipFile(file);
+		archives.add(zip);
+		
+		Enumeration<? extends ZipEntry> entries = zip.entries();
+		while (entries.hasMoreElements())
 		{
-			for (File jar : modJars)
-			{
-				FileSystem fs = FileSystems.newFileSystem(Paths.get(jar.getPath()), null);
-				if (hasFile(path, fs))
-					return Files.newInputStream(fs.getPath(path));
-			}
+			ZipEntry entry = entries.nextElement();
+			if (entry.isDirectory())
+				continue;
 			
-			return null;
+			// Archives are added highest priority first, so don't replace anything already indexed
+			String path = normalise(entry.getName());
+			if (!index.containsKey(path))
+				index.put(path, new IndexEntry(zip, entry, isMod));
 		}
 	}
 	
+	public InputStream getStream(String path) throws IOException
+	{
+		IndexEntry entry = index.get(normalise(path));
+		if (entry == null)
+			return null;
+		
+		return entry.zip.getInputStream(entry.entry);
+	}
+	
+	/** True if the file is in the texture pack or minecraft jar. Mod jars aren't checked */
 	public boolean hasFile(String file)
 	{
-		return hasFile(file, override) || hasFile(file, base);  //TODO: Maybe need to check mod jar files too?
+		IndexEntry entry = index.get(normalise(file));
+		return entry != null && !entry.isMod;
 	}
 	
-	private boolean hasFile(String file, FileSystem fs)
+	/** Paths of the files directly inside a directory of the texture pack or minecraft jar, sorted by name */
+	public List<String> listFiles(String dir)
 	{
-		if (fs == null)
-			return false;
-		else
-			return Files.exists(fs.getPath(file));
+		String prefix = normalise(dir);
+		if (!prefix.isEmpty() && !prefix.endsWith("/"))
+			prefix += "/";
+		
+		List<String> result = new ArrayList<String>();
+		for (Map.Entry<String, IndexEntry> e : index.entrySet())
+		{
+			String path = e.getKey();
+			if (!e.getValue().isMod && path.startsWith(prefix) && path.indexOf('/', prefix.length()) == -1)
+				result.add(path);
+		}
+		Collections.sort(result);
+		
+		return result;
 	}
 	
 	public String getBaseFileName()
 	{
 		return baseFileName;
 	}
+	
+	@Override
+	public void close()
+	{
+		for (ZipFile zip : archives)
+		{
+			try
+			{
+				zip.close();
+			}
+			catch (Exception e) {}
+		}
+		archives.clear();
+	}
+	
+	private static String normalise(String path)
+	{
+		path = path.replace('\\', '/');
+		while (path.startsWith("/"))
+			path = path.substring(1);
+		return path;
+	}
+	
+	private static class IndexEntry
+	{
+		public final ZipFile zip;
+		public final ZipEntry entry;
+		public final boolean isMod;
+		
+		public IndexEntry(ZipFile zip, ZipEntry entry, final boolean isMod)
+		{
+			this.zip = zip;
+			this.entry = entry;
+			this.isMod = isMod;
+		}
+	}
 }
@@ -0,0 +1,101 @@
+/*
+ * Copyright (c) 2012-2019, John Campbell and other contributors.  All rights reserved.
+ *
+ * This file is part of Tectonicus. It is subject to the license terms in the LICENSE file found in
+ * the top-level directory of this distribution.  The full list of project contributors is contained
+ * in the AUTHORS file found in the same location.
+ *
+ */
+
+package tectonicus.util;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/** A fixed number of daemon worker threads, shared by anything that submits to it.
+ *  Work is submitted in batches so each caller can wait for just its own tasks to finish.
+ */
+public class BoundedExecutor
+{
+	private final ExecutorService executor;
+	
+	public BoundedExecutor(final String name, final int numThreads)
+	{
+		executor = Executors.newFixedThreadPool(numThreads, new ThreadFactory()
+		{
+			private final AtomicInteger count = new AtomicInteger();
+			
+			@Override
+			public Thread newThread(Runnable r)
+			{
+				Thread thread = new Thread(r, name+" "+count.incrementAndGet());
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+	}
+	
+	public Batch newBatch()
+	{
+		return new Batch();
+	}
+	
+	public void shutdown()
+	{
+		executor.shutdown();
+	}
+	
+	public class Batch
+	{
+		private final List<Future<?>> futures;
+		
+		private Batch()
+		{
+			futures = new ArrayList<Future<?>>();
+		}
+		
+		public synchronized void submit(Callable<?> task)
+		{
+			futures.add(executor.submit(task));
+		}
+		
+		/** Waits for every task submitted to this batch so far, and returns how many of them threw */
+		public int await()
+		{
+			List<Future<?>> pending;
+			synchronized (this)
+			{
+				pending = new ArrayList<Future<?>>(futures);
+				futures.clear();
+			}
+			
+			int numFailed = 0;
+			for (Future<?> f : pending)
+			{
+				try
+				{
+					f.get();
+				}
+				catch (ExecutionException e)
+				{
+					e.getCause().printStackTrace();
+					numFailed++;
+				}
+				catch (InterruptedException e)
+				{
+					Thread.currentThread().interrupt();
+					e.printStackTrace();
+					numFailed++;
+				}
+			}
+			return numFailed;
+		}
+	}
+}
@@ -18,13 +18,14 @@ import org.lwjgl.util.glu.GLU;
 import org.lwjgl.util.vector.Matrix4f;
 import org.lwjgl.util.vector.Vector3f;
 
+/** Both methods share scratch buffers (as does glu's project code) so only one thread can be in them at once */
 public class Project
 {
 	private static FloatBuffer projectionBuffer = BufferUtils.createFloatBuffer(16);
 	private static FloatBuffer cameraBuffer = BufferUtils.createFloatBuffer(16);
 	private static IntBuffer viewportBuffer = BufferUtils.createIntBuffer(16);
 	
-	public static Vector2f project(org.lwjgl.util.vector.Vector3f worldPos, Matrix4f projectionMatrix, Matrix4f cameraMatrix, Rectangle viewport)
+	public static synchronized Vector2f project(org.lwjgl.util.vector.Vector3f worldPos, Matrix4f projectionMatrix, Matrix4f cameraMatrix, Rectangle viewport)
 	{
 		projectionBuffer.clear();
 		projectionMatrix.store(projectionBuffer);
@@ -49,7 +50,7 @@ public class Project
 		return new Vector2f(x, y);
 	}
 	
-	public static Vector3f unproject(Vector3f screenPos, Matrix4f projectionMatrix, Matrix4f cameraMatrix, Rectangle viewport)
+	public static synchronized Vector3f unproject(Vector3f screenPos, Matrix4f projectionMatrix, Matrix4f cameraMatrix, Rectangle viewport)
 	{
 		projectionBuffer.clear();
 		projectionMatrix.store(projectionBuffer);
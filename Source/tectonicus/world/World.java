@@ -12,16 +12,10 @@ package tectonicus.world;
 import java.awt.Color;
 import java.awt.Point;
 import java.io.File;
-import java.io.IOException;
-import java.nio.file.DirectoryStream;
-import java.nio.file.FileSystem;
-import java.nio.file.FileSystems;
-import java.nio.file.Files;
-import java.nio.file.Path;
-import java.nio.file.Paths;
 import java.security.MessageDigest;
 import java.text.NumberFormat;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashMap;
@@ -29,8 +23,7 @@ import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.concurrent.Callable;
 
 import org.lwjgl.util.vector.Vector3f;
 
@@ -48,16 +41,18 @@ import tectonicus.NullBlockFilter;
 import tectonicus.NullBlockMaskFactory;
 import tectonicus.RegionCache;
 import tectonicus.RegionCoord;
+import tectonicus.SaveFormat;
 import tectonicus.Util;
 import tectonicus.blockTypes.Air;
 import tectonicus.blockTypes.BlockRegistry;
 import tectonicus.cache.BiomeCache;
+import tectonicus.cache.ChunkPresenceIndex;
 import tectonicus.cache.PlayerSkinCache;
-import tectonicus.cache.PlayerSkinCache.CacheEntry;
 import tectonicus.configuration.Configuration.Dimension;
 import tectonicus.configuration.LightFace;
 import tectonicus.configuration.LightStyle;
 import tectonicus.configuration.SignFilter;
+import tectonicus.metrics.Metrics;
 import tectonicus.rasteriser.AlphaFunc;
 import tectonicus.rasteriser.BlendFunc;
 import tectonicus.rasteriser.PrimativeType;
@@ -65,13 +60,13 @@ import tectonicus.rasteriser.Rasteriser;
 import tectonicus.raw.BiomeIds;
 import tectonicus.raw.LevelDat;
 import tectonicus.raw.Player;
-import tectonicus.raw.Player.RequestPlayerInfoTask;
 import tectonicus.raw.RawChunk;
 import tectonicus.raw.SignEntity;
 import tectonicus.raw.ContainerEntity;
 import tectonicus.renderer.Camera;
 import tectonicus.renderer.Geometry;
 import tectonicus.texture.TexturePack;
+import tectonicus.util.BoundedExecutor;
 import tectonicus.util.BoundingBox;
 import tectonicus.util.Colour4f;
 import tectonicus.util.Vector3l;
@@ -95,6 +90,9 @@ public class World implements BlockContext
 	private BlockTypeRegistry registry;
 	private BlockRegistry modelRegistry;
 	
+	private String customBlockConfigPath;
+	private boolean useDefaultBlocks;
+	
 	private LevelDat levelDat;
 	
 	private ArrayList<Player> players;
@@ -117,6 +115,8 @@ public class World implements BlockContext
 	private BlockFilter blockFilter;
 	private BlockMaskFactory blockMaskFactory;
 	
+	private boolean useGreedyMeshing;
+	
 	private final BiomeCache biomeCache;
 	
 	private WorldSubset worldSubset;
@@ -136,23 +136,7 @@ public class World implements BlockContext
 		
 		this.worldDir = baseDir;
 		
-		// Use the world dir and the dimension to find the dimension dir
-		if (dimension == Dimension.Terra)
-		{
-			dimensionDir = worldDir;
-		}
-		else if (dimension == Dimension.Nether)
-		{
-			dimensionDir = new File(worldDir, "DIM-1");
-		}
-		else if (dimension == Dimension.Ender)
-		{
-			dimensionDir = new File(worldDir, "DIM1");
-		}
-		else
-		{
-			dimensionDir = worldDir;
-		}
+		dimensionDir = findDimensionDir(worldDir, dimension);
 		
 		System.out.println("Loading world from base dir "+worldDir.getPath()+" with dimension "+dimension);
 		System.out.println("\tFull dimension dir: "+dimensionDir.getAbsolutePath());
@@ -190,6 +174,7 @@ public class World implements BlockContext
 		
 		System.out.println("Loading textures");
 		texturePack = new TexturePack(rasteriser, minecraftJar, texturePackFile, modJars);
+		texturePack.preloadBlockTextures(Runtime.getRuntime().availableProcessors());
 		this.textureVersion = texturePack.getVersion();
 		
 		System.out.println("Loading players");
@@ -211,27 +196,66 @@ public class World implements BlockContext
 		this.nightSkybox = SkyboxUtil.generateNightSkybox(rasteriser);
 	}
 	
+	/** A copy of source for another rasteriser to render with, set up for the same layer.
+	 *  The region cache, chunk index, biomes and players are shared with source, and the texture pack reads
+	 *  from the same archives, but chunks, geometry and textures are loaded separately by each copy.
+	 */
+	public World(World source, Rasteriser rasteriser)
+	{
+		this.rasteriser = rasteriser;
+		this.signFilter = source.signFilter;
+		
+		this.worldDir = source.worldDir;
+		this.dimensionDir = source.dimensionDir;
+		
+		this.biomeCache = source.biomeCache;
+		this.playerSkinCache = source.playerSkinCache;
+		
+		this.levelDat = source.levelDat;
+		this.players = source.players;
+		this.chests = source.chests;
+		
+		this.texturePack = new TexturePack(rasteriser, source.texturePack);
+		this.textureVersion = texturePack.getVersion();
+		
+		this.regionCache = source.regionCache;
+		this.chunkLocator = source.chunkLocator;
+		
+		rawLoadedChunks = new RawCache(100);
+		geometryLoadedChunks = new GeometryCache(100);
+		
+		this.worldSubset = source.worldSubset;
+		
+		this.lightStyle = source.lightStyle;
+		this.defaultBlockId = source.defaultBlockId;
+		this.blockFilter = source.blockFilter;
+		this.blockMaskFactory = source.blockMaskFactory;
+		this.useGreedyMeshing = source.useGreedyMeshing;
+		
+		if (source.registry != null)
+			loadBlockRegistry(source.customBlockConfigPath, source.useDefaultBlocks);
+		
+		this.daySkybox = SkyboxUtil.generateDaySkybox(rasteriser);
+		this.nightSkybox = SkyboxUtil.generateNightSkybox(rasteriser);
+	}
+	
 	public void loadBlockRegistry(String customConfigPath, final boolean useDefaultBlocks)
 	{
+		this.customBlockConfigPath = customConfigPath;
+		this.useDefaultBlocks = useDefaultBlocks;
+		
 		registry = new BlockTypeRegistry();
 		registry.setDefaultBlock(new Air());
 		
 		modelRegistry = new BlockRegistry(texturePack);
 		//Only load Glazed Terracotta and Observer block models for now  	TODO: Load all block models
-		DirectoryStream.Filter<Path> filter = new DirectoryStream.Filter<Path>() {
-				@Override
-				public boolean accept(Path entry) throws IOException {
-					return entry.getFileName().toString().contains("_glazed_terracotta") || entry.getFileName().toString().contains("observer");
-				}
-		    };
-		
-		try (FileSystem fs = FileSystems.newFileSystem(Paths.get(texturePack.getZipStack().getBaseFileName()), null);
-				DirectoryStream<Path> entries = Files.newDirectoryStream(fs.getPath("assets/minecraft/models/block"), filter);)
+		try
 		{
-			for (Path entry : entries)
+			for (String entry : texturePack.getZipStack().listFiles("assets/minecraft/models/block"))
 			{
-				String filename = entry.getFileName().toString();
-				modelRegistry.loadModel(filename.substring(0, filename.lastIndexOf('.')));
+				String filename = entry.substring(entry.lastIndexOf('/') + 1);
+				if (filename.contains("_glazed_terracotta") || filename.contains("observer"))
+					modelRegistry.loadModel(filename.substring(0, filename.lastIndexOf('.')));
 			}
 		}
 		catch (Exception e)
@@ -241,24 +265,33 @@ public class World implements BlockContext
 		
 		BlockRegistryParser parser = new BlockRegistryParser(texturePack, biomeCache, signFilter);
 		
-		if (useDefaultBlocks && this.textureVersion == "1.4")
-			parser.parse("defaultBlockConfigMC1.4.xml", registry);
-		else if (useDefaultBlocks && this.textureVersion == "1.5")
-			parser.parse("defaultBlockConfigMC1.5.xml", registry);
-		else if (useDefaultBlocks && this.textureVersion == "1.678")
-			parser.parse("defaultBlockConfigMC1.8.xml", registry);
-		else if (useDefaultBlocks && this.textureVersion == "1.9+")
-			parser.parse("defaultBlockConfigMC1.9.xml", registry);
-		else if (useDefaultBlocks)
-			parser.parse("defaultBlockConfig.xml", registry);
+		if (useDefaultBlocks)
+			parser.parse(getDefaultBlockConfig(), registry);
 		
 		if (customConfigPath != null && customConfigPath.length() > 0)
 			parser.parse(customConfigPath, registry);
 		
+		texturePack.discardPreloadedTextures();
+		
 		flushChunkCache();
 		flushGeometryCache();
 	}
 	
+	/** The built in block config that matches this world's texture pack */
+	public String getDefaultBlockConfig()
+	{
+		if (textureVersion == "1.4")
+			return "defaultBlockConfigMC1.4.xml";
+		else if (textureVersion == "1.5")
+			return "defaultBlockConfigMC1.5.xml";
+		else if (textureVersion == "1.678")
+			return "defaultBlockConfigMC1.8.xml";
+		else if (textureVersion == "1.9+")
+			return "defaultBlockConfigMC1.9.xml";
+		else
+			return "defaultBlockConfig.xml";
+	}
+	
 	public WorldSubset getWorldSubset()
 	{
 		return worldSubset;
@@ -269,6 +302,37 @@ public class World implements BlockContext
 		return biomeCache;
 	}
 	
+	/** Keeps at least this many regions loaded, for when several copies of the world are rendering different areas */
+	public void ensureRegionCacheCapacity(final int numRegions)
+	{
+		regionCache.ensureCapacity(numRegions);
+	}
+	
+	/** Forgets everything loaded from these regions, so changes saved to them since get picked up */
+	public void reloadRegions(Collection<RegionCoord> regions)
+	{
+		for (RegionCoord coord : regions)
+			regionCache.evict(coord);
+		
+		flushChunkCache();
+	}
+	
+	public void setChunkPresenceIndex(ChunkPresenceIndex index)
+	{
+		chunkLocator.setPresenceIndex(index);
+	}
+	
+	public ChunkPresenceIndex getChunkPresenceIndex()
+	{
+		return chunkLocator.getPresenceIndex();
+	}
+	
+	/** Bounds of the blocks in a chunk, or null if there's nothing there to draw */
+	public BoundingBox getChunkBounds(ChunkCoord coord)
+	{
+		return chunkLocator.getBounds(coord);
+	}
+	
 	public void setLightStyle(LightStyle style)
 	{
 		// Clear the geometry cache if style has changed
@@ -286,6 +350,22 @@ public class World implements BlockContext
 		return lightStyle;
 	}
 	
+	public void setUseGreedyMeshing(final boolean useGreedyMeshing)
+	{
+		// Clear the geometry cache if the meshing has changed
+		if (this.useGreedyMeshing != useGreedyMeshing)
+		{
+			flushChunkCache();
+		}
+		
+		this.useGreedyMeshing = useGreedyMeshing;
+	}
+	
+	public boolean useGreedyMeshing()
+	{
+		return useGreedyMeshing;
+	}
+	
 	public void setDefaultBlockId(final int blockId)
 	{
 		// Clear the geometry cache if id has changed
@@ -317,6 +397,11 @@ public class World implements BlockContext
 		return playerSkinCache;
 	}
 	
+	public BlockMaskFactory getBlockMaskFactory()
+	{
+		return blockMaskFactory;
+	}
+	
 	public void setBlockMaskFactory(BlockMaskFactory factory)
 	{
 		if (factory == null)
@@ -327,6 +412,11 @@ public class World implements BlockContext
 		this.blockMaskFactory = factory;
 	}
 	
+	public SaveFormat getSaveFormat()
+	{
+		return regionCache.getFormat();
+	}
+	
 	public RegionIterator createRegionIterator()
 	{
 		return worldSubset.createRegionIterator(regionCache.getFormat());
@@ -381,6 +471,11 @@ public class World implements BlockContext
 	 * This gives us a quad-tree-esque lookup method without having to actually store a heavy quad tree in memory.
 	 */
 	public ArrayList<ChunkCoord> findVisible(Camera camera)
+	{
+		return findVisible(camera, worldSubset, chunkLocator);
+	}
+	
+	public static ArrayList<ChunkCoord> findVisible(Camera camera, WorldSubset worldSubset, ChunkLocator chunkLocator)
 	{
 		ArrayList<ChunkCoord> result = new ArrayList<ChunkCoord>();
 		
@@ -419,13 +514,11 @@ public class World implements BlockContext
 							
 							if (worldSubset.contains(chunkCoord))
 							{
-								BoundingBox chunkBounds = new BoundingBox(new Vector3f(chunkCoord.x*RawChunk.WIDTH, 0, chunkCoord.z*RawChunk.DEPTH), RawChunk.WIDTH, RawChunk.HEIGHT, RawChunk.DEPTH);
-								if (chunkBounds.isVisible(camera))
+								// Null for missing or empty chunks, otherwise only as tall as the blocks in it
+								BoundingBox chunkBounds = chunkLocator.getBounds(chunkCoord);
+								if (chunkBounds != null && chunkBounds.isVisible(camera))
 								{
-									if (chunkLocator.exists(chunkCoord))
-									{
-										result.add(chunkCoord);
-									}
+									result.add(chunkCoord);
 								}
 							}
 						}
@@ -456,6 +549,22 @@ public class World implements BlockContext
 	}
 	*/
 	
+	/** Loads just the raw block data for a chunk, bypassing the chunk caches. Safe to call from several threads at once.
+	 *  Returns null if the chunk doesn't exist or is outside of the world subset.
+	 */
+	public RawChunk loadRawChunk(ChunkCoord coord)
+	{
+		if (!worldSubset.contains(coord))
+			return null;
+		
+		CompositeBlockFilter composite = new CompositeBlockFilter();
+		composite.add(blockFilter);
+		composite.add(worldSubset.getBlockFilter(coord));
+		
+		Chunk c = chunkLocator.loadChunk(coord, composite);
+		return c != null ? c.getRawChunk() : null;
+	}
+	
 	public void draw(Camera camera, final boolean showSky, final boolean genAlphaMask)
 	{
 		// Find visible chunks
@@ -546,6 +655,8 @@ public class World implements BlockContext
 			{
 				if (worldSubset.contains(coord))
 				{
+					Metrics.rawCacheMisses.inc();
+					
 					CompositeBlockFilter composite = new CompositeBlockFilter();
 					composite.add(blockFilter);
 					composite.add(worldSubset.getBlockFilter(coord));
@@ -560,6 +671,7 @@ public class World implements BlockContext
 			}
 			else
 			{
+				Metrics.rawCacheHits.inc();
 				rawLoadedChunks.touch(coord);
 			}
 		}
@@ -572,16 +684,22 @@ public class World implements BlockContext
 				Chunk c = rawLoadedChunks.get(coord);
 				if (c != null)
 				{	
+					Metrics.geometryCacheMisses.inc();
+					
 					// Actually create the geometry
+					final long startNanos = System.nanoTime();
 					
-					final boolean ok = c.createGeometry(rasteriser, this, registry, blockMaskFactory, texturePack);
+					final boolean ok = c.createGeometry(rasteriser, this, registry, blockMaskFactory, texturePack.getTexture(), useGreedyMeshing);
 					assert ok;
 					
+					Metrics.geometryBuildTime.observeSince(startNanos);
+					
 					geometryLoadedChunks.put(coord, c);
 				}
 			}
 			else
 			{
+				Metrics.geometryCacheHits.inc();
 				geometryLoadedChunks.touch(coord);
 			}
 		}
@@ -942,7 +1060,7 @@ public class World implements BlockContext
 	}
 	
 	
-	public static ArrayList<Player> loadPlayers(File worldDir, PlayerSkinCache playerSkinCache)
+	public static ArrayList<Player> loadPlayers(File worldDir, final PlayerSkinCache playerSkinCache)
 	{
 		File playersDir = Minecraft.findPlayersDir(worldDir);
 		
@@ -952,46 +1070,53 @@ public class World implements BlockContext
 		File[] playerFiles = playersDir.listFiles();
 		if (playerFiles != null)
 		{
-			ExecutorService executor = Executors.newCachedThreadPool();
-			for (File playerFile : playerFiles)
+			// Parse and look up each player on the shared player pool, keeping them in file order
+			final Player[] loaded = new Player[playerFiles.length];
+			BoundedExecutor.Batch batch = playerSkinCache.getExecutor().newBatch();
+			for (int i=0; i<playerFiles.length; i++)
 			{
-				if (playerFile.getName().endsWith(".dat"))
+				final File playerFile = playerFiles[i];
+				if (!playerFile.getName().endsWith(".dat"))
+					continue;
+				
+				final int index = i;
+				batch.submit(new Callable<Void>()
 				{
-					try
+					@Override
+					public Void call()
 					{
-						Player player = new Player(playerFile.toPath());
+						Player player;
+						try
+						{
+							player = new Player(playerFile.toPath());
+						}
+						catch (Exception e)
+						{
+							System.err.println("Couldn't load player info from "+playerFile.getName());
+							return null;
+						}
 						
-						CacheEntry ce = playerSkinCache.getCacheEntry(player.getUUID());
-						if (ce != null)
+						try
 						{
-							final long age = System.currentTimeMillis() - ce.fetchedTime;
-							if (age < 1000 * 60 * 60  * 60) // one hour in ms
-							{
-								player.setName(ce.playerName);
-								player.setSkinURL(ce.skinURL);
-							}
-							else
-							{
-								//refresh name and skin
-								RequestPlayerInfoTask task = player.new RequestPlayerInfoTask();
-								executor.submit(task);
-							}
+							playerSkinCache.lookupProfile(player);
 						}
-						else
+						catch (Exception e)
 						{
-							RequestPlayerInfoTask task = player.new RequestPlayerInfoTask();
-							executor.submit(task);
-						}			            
-			            
-						players.add(player);
-					}
-					catch (Exception e)
-					{
-						System.err.println("Couldn't load player info from "+playerFile.getName());
+							System.err.println("Couldn't look up player "+player.getUUID()+": "+e);
+						}
+						
+						loaded[index] = player;
+						return null;
 					}
-				}
+				});
+			}
+			batch.await();
+			
+			for (Player player : loaded)
+			{
+				if (player != null)
+					players.add(player);
 			}
-			executor.shutdown();
 		}
 		
 		System.out.println("\tloaded "+players.size()+" players");
@@ -1014,6 +1139,23 @@ public class World implements BlockContext
 		return dimensionDir;
 	}
 	
+	/** Uses the world dir and the dimension to find the dimension dir */
+	public static File findDimensionDir(File worldDir, Dimension dimension)
+	{
+		if (dimension == Dimension.Nether)
+		{
+			return new File(worldDir, "DIM-1");
+		}
+		else if (dimension == Dimension.Ender)
+		{
+			return new File(worldDir, "DIM1");
+		}
+		else
+		{
+			return worldDir;
+		}
+	}
+	
 	public SignEntity[] getLoadedSigns()
 	{
 		Map<String, SignEntity> result = new HashMap<>();
@@ -9,10 +9,17 @@
 
 package tectonicus.world.filter;
 
+import java.util.Arrays;
+
 import tectonicus.BlockIds;
 import tectonicus.CaveMaskFactory;
 import tectonicus.raw.RawChunk;
 
+/** Hides caves that haven't been explored by turning everything underground that's too far from a non-natural
+ *  block (torches, rails, etc.) into stone. Each chunk just records where its non-natural blocks are as a
+ *  packed bitset, and the distances are found with a breadth-first search out from those blocks, which only
+ *  touches blocks within range of one.
+ */
 public class ExploredCaveFilter implements BlockFilter
 {
 	private static String NON_NATURAL_BLOCKS_METADATA = "nonNaturalBlocks";
@@ -25,134 +32,155 @@ public class ExploredCaveFilter implements BlockFilter
 		BlockIds.REDSTONE_WIRE
 	};
 	
+	// Blocks further than this from a non-natural block are filled in
+	static final int MAX_DISTANCE = 6;
+	
+	// The search covers the center chunk plus a margin that anything within range of it must lie in
+	private static final int GRID_WIDTH = RawChunk.WIDTH + MAX_DISTANCE * 2;
+	private static final int GRID_DEPTH = RawChunk.DEPTH + MAX_DISTANCE * 2;
+	private static final int GRID_SIZE = GRID_WIDTH * RawChunk.HEIGHT * GRID_DEPTH;
+	
+	private static final ThreadLocal<SearchBuffers> searchBuffers = new ThreadLocal<SearchBuffers>()
+	{
+		@Override
+		protected SearchBuffers initialValue()
+		{
+			return new SearchBuffers();
+		}
+	};
+	
 	@Override
 	public void filter(RawChunk rawChunk)
 	{
-		boolean[][][] nonNaturalBlocks = new boolean[RawChunk.WIDTH][RawChunk.HEIGHT][RawChunk.DEPTH];
+		long[] nonNaturalBlocks = null;
 		
-		for (int x=0; x<RawChunk.WIDTH; x++)
+		for (int y=0; y<RawChunk.HEIGHT; y++)
 		{
-			for (int y=0; y<RawChunk.HEIGHT; y++)
+			for (int z=0; z<RawChunk.DEPTH; z++)
 			{
-				for (int z=0; z<RawChunk.DEPTH; z++)
+				for (int x=0; x<RawChunk.WIDTH; x++)
 				{
-					nonNaturalBlocks[x][y][z] = isNonNatural(rawChunk.getBlockId(x, y, z));
+					if (isNonNatural(rawChunk.getBlockId(x, y, z)))
+					{
+						if (nonNaturalBlocks == null)
+							nonNaturalBlocks = new long[RawChunk.WIDTH * RawChunk.HEIGHT * RawChunk.DEPTH / 64];
+						
+						final int index = chunkIndex(x, y, z);
+						nonNaturalBlocks[index >>> 6] |= 1L << index;
+					}
 				}
 			}
 		}
 		
-		rawChunk.setFilterMetadata(NON_NATURAL_BLOCKS_METADATA, nonNaturalBlocks);
+		// Most chunks have none, so they don't keep a bitset at all
+		if (nonNaturalBlocks != null)
+			rawChunk.setFilterMetadata(NON_NATURAL_BLOCKS_METADATA, nonNaturalBlocks);
+		else
+			rawChunk.removeFilterMetadata(NON_NATURAL_BLOCKS_METADATA);
 	}
 	
 	@Override
 	public void preGeometryFilter(RawChunk center, RawChunk north, RawChunk south, RawChunk east, RawChunk west)
 	{
-		// TODO Auto-generated method stub
-		// Build an uber array of all the adjacent blocks
+		SearchBuffers buffers = searchBuffers.get();
+		buffers.clear();
 		
-		int[][][] distanceGrid = new int[RawChunk.WIDTH*3][RawChunk.HEIGHT][RawChunk.DEPTH*3];
-		copy(distanceGrid, center,	RawChunk.WIDTH, 		RawChunk.DEPTH);
-		copy(distanceGrid, north,	0,						RawChunk.DEPTH);
-		copy(distanceGrid, south,	RawChunk.WIDTH * 2, 	RawChunk.DEPTH);
-		copy(distanceGrid, east,	RawChunk.WIDTH,			0);
-		copy(distanceGrid, west,	RawChunk.WIDTH,			RawChunk.DEPTH * 2);
+		addSeeds(buffers, center,	0,					0);
+		addSeeds(buffers, north,	-RawChunk.WIDTH,	0);
+		addSeeds(buffers, south,	RawChunk.WIDTH,		0);
+		addSeeds(buffers, east,		0,					-RawChunk.DEPTH);
+		addSeeds(buffers, west,		0,					RawChunk.DEPTH);
 		
-		// Now diffuse the distances over the natural blocks
-		final int numIterations = 8;
-		for (int i=0; i<numIterations; i++)
-		{
-			diffuse(distanceGrid);
-		}
-		
-	//	boolean[][][] nonNatural = (boolean[][][])center.getFilterMetadata();
+		if (buffers.queueSize > 0)
+			search(buffers);
 		
 		int[][] heights = CaveMaskFactory.calcSmoothedSurfaceHeights(center);
 		
-		// Now use the distance grid to replace everything out of range with stone
+		// Now replace everything out of range with stone
 		for (int x=0; x<RawChunk.WIDTH; x++)
 		{
-			for (int y=0; y<RawChunk.HEIGHT; y++)
+			for (int z=0; z<RawChunk.DEPTH; z++)
 			{
-				for (int z=0; z<RawChunk.DEPTH; z++)
+				final int maxY = Math.min(heights[x][z], RawChunk.HEIGHT-1);
+				for (int y=0; y<=maxY; y++)
 				{
-					final int actualX = x + RawChunk.WIDTH;
-					final int actualZ = z + RawChunk.DEPTH;
-					
-					final int dist = distanceGrid[actualX][y][actualZ];
-					if (dist < 10) // arbitrary threshold
-					{
-						if (y <= heights[x][z])
-						{
-							center.setBlockId(x, y, z, (byte)BlockIds.STONE);
-						//	center.setBlockId(x, y, z, (byte)BlockIds.AIR);
-						}
-					}
-					
-				//	if (y == 127 || y == 126)
-				//		center.setBlockId(x, y, z, (byte)BlockIds.AIR);
+					if (!buffers.isReached(gridIndex(x + MAX_DISTANCE, y, z + MAX_DISTANCE)))
+						center.setBlockId(x, y, z, (byte)BlockIds.STONE);
 				}
 			}
 		}
 	}
 	
-	private static void copy(int[][][] dest, RawChunk chunk, final int xOffset, final int zOffset)
+	/** Marks the chunk's non-natural blocks that lie in the search grid as reached and queues them */
+	private static void addSeeds(SearchBuffers buffers, RawChunk chunk, final int xOffset, final int zOffset)
 	{
 		if (chunk == null)
 			return;
 		
-		boolean[][][] nonNatural = (boolean[][][])chunk.getFilterMetadata(NON_NATURAL_BLOCKS_METADATA);
+		long[] nonNatural = (long[])chunk.getFilterMetadata(NON_NATURAL_BLOCKS_METADATA);
+		if (nonNatural == null)
+			return;
 		
-		for (int x=0; x<RawChunk.WIDTH; x++)
+		for (int i=0; i<nonNatural.length; i++)
 		{
-			for (int y=0; y<RawChunk.HEIGHT; y++)
+			long bits = nonNatural[i];
+			while (bits != 0)
 			{
-				for (int z=0; z<RawChunk.DEPTH; z++)
-				{
-					final int value = nonNatural[x][y][z] ? 16 : 0;
-					dest[x+xOffset][y][z+zOffset] = value;
-				}
+				final int index = (i << 6) + Long.numberOfTrailingZeros(bits);
+				bits &= bits - 1;
+				
+				final int x = index % RawChunk.WIDTH + xOffset + MAX_DISTANCE;
+				final int z = (index / RawChunk.WIDTH) % RawChunk.DEPTH + zOffset + MAX_DISTANCE;
+				final int y = index / (RawChunk.WIDTH * RawChunk.DEPTH);
+				
+				if (x >= 0 && x < GRID_WIDTH && z >= 0 && z < GRID_DEPTH)
+					buffers.reach(gridIndex(x, y, z));
 			}
 		}
 	}
 	
-	private static void diffuse(int[][][] distanceGrid)
+	/** Breadth-first search out from the queued blocks, one step further each pass, until MAX_DISTANCE away */
+	private static void search(SearchBuffers buffers)
 	{
-		// Diffuse over all the internal blocks (ie. skip the outer edges)
-		for (int x=1; x<distanceGrid.length-1; x++)
+		int start = 0;
+		for (int distance=0; distance<MAX_DISTANCE; distance++)
 		{
-			for (int y=1; y<distanceGrid[0].length-1; y++)
+			final int end = buffers.queueSize;
+			if (start == end)
+				break;
+			
+			for (int i=start; i<end; i++)
 			{
-				for (int z=1; z<distanceGrid[0][0].length-1; z++)
-				{
-					final int current = distanceGrid[x][y][z];
-					final int north = distanceGrid[x-1][y][z];
-					final int south = distanceGrid[x+1][y][z];
-					final int east = distanceGrid[x][y][z-1];
-					final int west = distanceGrid[x][y][z+1];
-					final int above = distanceGrid[x][y+1][z];
-					final int below = distanceGrid[x][y-1][z];
-					
-					final int adjacent = max(north, south, east, west, above, below) - 1;
-					
-					if (adjacent > current)
-						distanceGrid[x][y][z] = adjacent;
-				}
+				final int index = buffers.queue[i];
+				final int x = index % GRID_WIDTH;
+				final int z = (index / GRID_WIDTH) % GRID_DEPTH;
+				final int y = index / (GRID_WIDTH * GRID_DEPTH);
+				
+				if (x > 0)
+					buffers.reach(index - 1);
+				if (x < GRID_WIDTH-1)
+					buffers.reach(index + 1);
+				if (z > 0)
+					buffers.reach(index - GRID_WIDTH);
+				if (z < GRID_DEPTH-1)
+					buffers.reach(index + GRID_WIDTH);
+				if (y > 0)
+					buffers.reach(index - GRID_WIDTH * GRID_DEPTH);
+				if (y < RawChunk.HEIGHT-1)
+					buffers.reach(index + GRID_WIDTH * GRID_DEPTH);
 			}
+			start = end;
 		}
-		
-		
-		// TODO: Given that these will be open air or adamantium, do we need to do these?
-		
-		// Diffuse the top layer
-		// ..
-		
-		// Diffuse the bottom layer
-		// ..
 	}
 	
-	private static int max(final int v0, final int v1, final int v2, final int v3, final int v4, final int v5)
+	private static int chunkIndex(final int x, final int y, final int z)
 	{
-		return Math.max(v0, Math.max(v1, Math.max(v2, Math.max(v3, Math.max(v4, v5)))));
+		return (y * RawChunk.DEPTH + z) * RawChunk.WIDTH + x;
+	}
+	
+	private static int gridIndex(final int x, final int y, final int z)
+	{
+		return (y * GRID_DEPTH + z) * GRID_WIDTH + x;
 	}
 	
 	private static boolean isNonNatural(final int blockId)
@@ -164,4 +192,42 @@ public class ExploredCaveFilter implements BlockFilter
 		}
 		return false;
 	}
+	
+	/** Reached blocks and the search queue, reused by each thread from chunk to chunk */
+	private static class SearchBuffers
+	{
+		public final long[] reached;
+		public int[] queue;
+		public int queueSize;
+		
+		public SearchBuffers()
+		{
+			this.reached = new long[(GRID_SIZE + 63) / 64];
+			this.queue = new int[4096];
+		}
+		
+		public void clear()
+		{
+			Arrays.fill(reached, 0);
+			queueSize = 0;
+		}
+		
+		public boolean isReached(final int index)
+		{
+			return (reached[index >>> 6] & (1L << index)) != 0;
+		}
+		
+		/** Marks the block as reached and queues it, unless it's been reached already */
+		public void reach(final int index)
+		{
+			if (isReached(index))
+				return;
+			
+			reached[index >>> 6] |= 1L << index;
+			
+			if (queueSize == queue.length)
+				queue = Arrays.copyOf(queue, queue.length * 2);
+			queue[queueSize++] = index;
+		}
+	}
 }
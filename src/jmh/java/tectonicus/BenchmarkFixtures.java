@@ -0,0 +1,118 @@
+/*
+ * Copyright (c) 2012-2019, John Campbell and other contributors.  All rights reserved.
+ *
+ * This file is part of Tectonicus. It is subject to the license terms in the LICENSE file found in
+ * the top-level directory of this distribution.  The full list of project contributors is contained
+ * in the AUTHORS file found in the same location.
+ *
+ */
+
+package tectonicus;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.InflaterInputStream;
+
+import java.awt.image.BufferedImage;
+
+/** Fixed inputs shared by the benchmarks, so results are comparable between runs and releases.
+ *  Benchmarks are run from the project root, and the fixture chunks are the first chunks
+ *  (in ChunkCoord order) of a region from the bundled BlockGallery world.
+ */
+public class BenchmarkFixtures
+{
+	public static final File WORLD_DIR = new File("Worlds/BlockGallery");
+
+	public static final File REGION_FILE = new File(WORLD_DIR, "region/r.0.0.mca");
+
+	public static final int NUM_CHUNKS = 16;
+
+	public static final int TILE_SIZE = 512;
+
+	public static ChunkCoord[] fixtureChunks(Region region)
+	{
+		ChunkCoord[] all = region.getContainedChunks();
+		Arrays.sort(all);
+
+		if (all.length < NUM_CHUNKS)
+			throw new RuntimeException("Fixture region "+REGION_FILE.getAbsolutePath()+" only has "+all.length+" chunks");
+
+		return Arrays.copyOf(all, NUM_CHUNKS);
+	}
+
+	/** Reads a chunk's payload straight from the region file and re-deflates it without compression,
+	 *  so that parsing it measures nbt decoding rather than inflating.
+	 */
+	public static byte[] loadStoredChunk(File regionFile, ChunkCoord coord) throws Exception
+	{
+		RandomAccessFile file = new RandomAccessFile(regionFile, "r");
+		try
+		{
+			final int headerIndex = (int)((coord.x & 31) + (coord.z & 31) * 32);
+			file.seek(headerIndex * 4);
+			final int location = file.readInt();
+			final long sectorOffset = location >>> 8;
+
+			file.seek(sectorOffset * 4096);
+			final int length = file.readInt();
+			final int compressionType = file.readByte();
+
+			byte[] compressed = new byte[length - 1];
+			file.readFully(compressed);
+
+			InputStream in = compressionType == 1 ? new GZIPInputStream(new ByteArrayInputStream(compressed))
+												   : new InflaterInputStream(new ByteArrayInputStream(compressed));
+			ByteArrayOutputStream nbt = new ByteArrayOutputStream();
+			byte[] buffer = new byte[4096];
+			int read;
+			while ((read = in.read(buffer)) != -1)
+				nbt.write(buffer, 0, read);
+			in.close();
+
+			Deflater deflater = new Deflater(Deflater.NO_COMPRESSION);
+			deflater.setInput(nbt.toByteArray());
+			deflater.finish();
+
+			ByteArrayOutputStream stored = new ByteArrayOutputStream(nbt.size() + 1024);
+			while (!deflater.finished())
+			{
+				final int count = deflater.deflate(buffer);
+				stored.write(buffer, 0, count);
+			}
+			deflater.end();
+
+			return stored.toByteArray();
+		}
+		finally
+		{
+			file.close();
+		}
+	}
+
+	/** A noisy tile image with a fixed seed, roughly as hard to compress as a rendered tile */
+	public static BufferedImage createTileImage(final long seed, final boolean hasAlpha)
+	{
+		BufferedImage img = new BufferedImage(TILE_SIZE, TILE_SIZE, hasAlpha ? BufferedImage.TYPE_4BYTE_ABGR : BufferedImage.TYPE_3BYTE_BGR);
+		Random random = new Random(seed);
+
+		for (int y=0; y<TILE_SIZE; y+=4)
+		{
+			for (int x=0; x<TILE_SIZE; x+=4)
+			{
+				final int rgb = 0xFF000000 | random.nextInt(0xFFFFFF);
+				for (int i=0; i<4; i++)
+					for (int j=0; j<4; j++)
+						img.setRGB(x+i, y+j, rgb);
+			}
+		}
+
+		return img;
+	}
+}
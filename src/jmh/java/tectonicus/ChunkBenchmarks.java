@@ -0,0 +1,114 @@
+/*
+ * Copyright (c) 2012-2019, John Campbell and other contributors.  All rights reserved.
+ *
+ * This file is part of Tectonicus. It is subject to the license terms in the LICENSE file found in
+ * the top-level directory of this distribution.  The full list of project contributors is contained
+ * in the AUTHORS file found in the same location.
+ *
+ */
+
+package tectonicus;
+
+import java.io.ByteArrayInputStream;
+import java.security.MessageDigest;
+import java.util.concurrent.TimeUnit;
+
+import org.jnbt.NBTInputStream;
+import org.jnbt.NBTInputStream.Compression;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import tectonicus.cache.BiomeCache;
+import tectonicus.cache.NullBiomeCache;
+import tectonicus.raw.RawChunk;
+import tectonicus.world.filter.BlockFilter;
+
+/** Region loading, chunk parsing and chunk hashing. Scores are per chunk. */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ChunkBenchmarks
+{
+	private Region region;
+	private ChunkCoord[] coords;
+	private byte[][] storedChunks;
+	private RawChunk[] rawChunks;
+
+	private BiomeCache biomeCache;
+	private BlockFilter blockFilter;
+	private MessageDigest hashAlgorithm;
+
+	@Setup
+	public void setup() throws Exception
+	{
+		region = new Region(BenchmarkFixtures.REGION_FILE);
+		coords = BenchmarkFixtures.fixtureChunks(region);
+
+		storedChunks = new byte[coords.length][];
+		rawChunks = new RawChunk[coords.length];
+		for (int i=0; i<coords.length; i++)
+		{
+			storedChunks[i] = BenchmarkFixtures.loadStoredChunk(BenchmarkFixtures.REGION_FILE, coords[i]);
+			rawChunks[i] = new RawChunk(new ByteArrayInputStream(storedChunks[i]), Compression.Deflate, null);
+		}
+
+		biomeCache = new NullBiomeCache();
+		blockFilter = new NullBlockFilter();
+		hashAlgorithm = MessageDigest.getInstance("sha1");
+	}
+
+	/** Streaming nbt decode straight into the chunk's sections, with (almost) no inflate cost */
+	@Benchmark
+	@OperationsPerInvocation(BenchmarkFixtures.NUM_CHUNKS)
+	public void parseRawChunk(Blackhole bh) throws Exception
+	{
+		for (byte[] data : storedChunks)
+			bh.consume(new RawChunk(new ByteArrayInputStream(data), Compression.Deflate, null));
+	}
+
+	/** Just building the full jnbt tree, as RawChunk used to before copying anything out of it.
+	 *  parseRawChunk should beat this despite also unpacking the sections and entities
+	 */
+	@Benchmark
+	@OperationsPerInvocation(BenchmarkFixtures.NUM_CHUNKS)
+	public void parseNbtTree(Blackhole bh) throws Exception
+	{
+		for (byte[] data : storedChunks)
+		{
+			try (NBTInputStream nbtIn = new NBTInputStream(new ByteArrayInputStream(data), Compression.Deflate))
+			{
+				bh.consume(nbtIn.readTag());
+			}
+		}
+	}
+
+	/** Full path from region bytes to a loaded chunk, including inflating */
+	@Benchmark
+	@OperationsPerInvocation(BenchmarkFixtures.NUM_CHUNKS)
+	public void loadChunk(Blackhole bh)
+	{
+		for (ChunkCoord coord : coords)
+			bh.consume(region.loadChunk(coord, biomeCache, blockFilter, null));
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(BenchmarkFixtures.NUM_CHUNKS)
+	public void calculateHash(Blackhole bh)
+	{
+		for (RawChunk raw : rawChunks)
+			bh.consume(raw.calculateHash(hashAlgorithm));
+	}
+
+	@Benchmark
+	public Region loadRegion() throws Exception
+	{
+		return new Region(BenchmarkFixtures.REGION_FILE);
+	}
+}
@@ -0,0 +1,230 @@
+/*
+ * Copyright (c) 2012-2019, John Campbell and other contributors.  All rights reserved.
+ *
+ * This file is part of Tectonicus. It is subject to the license terms in the LICENSE file found in
+ * the top-level directory of this distribution.  The full list of project contributors is contained
+ * in the AUTHORS file found in the same location.
+ *
+ */
+
+package tectonicus;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import tectonicus.blockTypes.BlockRegistry;
+import tectonicus.blockTypes.SolidBlockType;
+import tectonicus.cache.NullBiomeCache;
+import tectonicus.cache.PlayerSkinCache;
+import tectonicus.configuration.LightFace;
+import tectonicus.configuration.LightStyle;
+import tectonicus.rasteriser.Texture;
+import tectonicus.raw.BiomeIds;
+import tectonicus.raw.RawChunk;
+import tectonicus.texture.SubTexture;
+import tectonicus.texture.TexturePack;
+import tectonicus.util.Colour4f;
+
+/** Block registry lookups and chunk geometry building against a MockRasteriser.
+ *
+ *  Every non-air block id is registered as a plain solid cube (with glass and leaves alpha tested)
+ *  so no texture pack is needed. Fixture chunks are built in isolation, with neighbouring chunks treated as air.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class GeometryBenchmarks
+{
+	private static final int GLASS = 20;
+	private static final int LEAVES = 18;
+
+	private MockRasteriser rasteriser;
+	private Texture texture;
+	private BlockTypeRegistry registry;
+	private BlockMaskFactory maskFactory;
+
+	private Chunk[] chunks;
+	private FixtureContext context;
+
+	private int[] lookupIds;
+	private int[] lookupData;
+
+	@Setup
+	public void setup() throws Exception
+	{
+		rasteriser = new MockRasteriser(BenchmarkFixtures.TILE_SIZE, BenchmarkFixtures.TILE_SIZE);
+		texture = new MockRasteriser.MockTexture(256, 256);
+
+		registry = new BlockTypeRegistry();
+		for (int id=1; id<256; id++)
+		{
+			SubTexture subTexture = new SubTexture(texture, (id % 16) / 16.0f, (id / 16) / 16.0f, (id % 16 + 1) / 16.0f, (id / 16 + 1) / 16.0f);
+			final boolean alphaTest = (id == GLASS || id == LEAVES);
+			registry.register(id, new SolidBlockType("Block"+id, subTexture, alphaTest));
+		}
+		// Some data-bound types so find() exercises both maps
+		for (int data=0; data<16; data++)
+		{
+			SubTexture subTexture = new SubTexture(texture, data / 16.0f, 0, (data + 1) / 16.0f, 1 / 16.0f);
+			registry.register(35, data, new SolidBlockType("Wool"+data, subTexture));
+		}
+
+		maskFactory = new NullBlockMaskFactory();
+
+		Region region = new Region(BenchmarkFixtures.REGION_FILE);
+		ChunkCoord[] coords = BenchmarkFixtures.fixtureChunks(region);
+		chunks = new Chunk[coords.length];
+		for (int i=0; i<coords.length; i++)
+			chunks[i] = region.loadChunk(coords[i], new NullBiomeCache(), new NullBlockFilter(), null);
+
+		context = new FixtureContext(registry);
+
+		// Lookups follow the block layout of the first fixture chunk
+		RawChunk raw = chunks[0].getRawChunk();
+		lookupIds = new int[RawChunk.WIDTH * RawChunk.HEIGHT * RawChunk.DEPTH];
+		lookupData = new int[lookupIds.length];
+		int index = 0;
+		for (int y=0; y<RawChunk.HEIGHT; y++)
+		{
+			for (int x=0; x<RawChunk.WIDTH; x++)
+			{
+				for (int z=0; z<RawChunk.DEPTH; z++)
+				{
+					lookupIds[index] = raw.getBlockId(x, y, z);
+					lookupData[index] = raw.getBlockData(x, y, z);
+					index++;
+				}
+			}
+		}
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(RawChunk.WIDTH * RawChunk.HEIGHT * RawChunk.DEPTH)
+	public void registryFind(Blackhole bh)
+	{
+		for (int i=0; i<lookupIds.length; i++)
+			bh.consume(registry.find(lookupIds[i], lookupData[i]));
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(BenchmarkFixtures.NUM_CHUNKS)
+	public void createGeometry(Blackhole bh)
+	{
+		for (Chunk c : chunks)
+		{
+			context.setCurrent(c.getRawChunk());
+			bh.consume(c.createGeometry(rasteriser, context, registry, maskFactory, texture));
+			c.unloadGeometry();
+		}
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(BenchmarkFixtures.NUM_CHUNKS)
+	public void createGeometryGreedy(Blackhole bh)
+	{
+		for (Chunk c : chunks)
+		{
+			context.setCurrent(c.getRawChunk());
+			bh.consume(c.createGeometry(rasteriser, context, registry, maskFactory, texture, true));
+			c.unloadGeometry();
+		}
+	}
+
+	private static class FixtureContext implements BlockContext
+	{
+		private final BlockTypeRegistry registry;
+
+		private RawChunk current;
+		private ChunkCoord currentCoord;
+
+		public FixtureContext(BlockTypeRegistry registry)
+		{
+			this.registry = registry;
+		}
+
+		public void setCurrent(RawChunk current)
+		{
+			this.current = current;
+			this.currentCoord = current.getChunkCoord();
+		}
+
+		private RawChunk resolve(ChunkCoord chunkCoord, final int x, final int y, final int z)
+		{
+			if (x < 0 || x >= RawChunk.WIDTH || y < 0 || y >= RawChunk.HEIGHT || z < 0 || z >= RawChunk.DEPTH)
+				return null;
+
+			if (current == null || !currentCoord.equals(chunkCoord))
+				return null;
+
+			return current;
+		}
+
+		@Override
+		public int getBlockId(ChunkCoord chunkCoord, int x, int y, int z)
+		{
+			RawChunk raw = resolve(chunkCoord, x, y, z);
+			return raw != null ? raw.getBlockId(x, y, z) : BlockIds.AIR;
+		}
+
+		@Override
+		public BlockType getBlockType(ChunkCoord chunkCoord, int x, int y, int z)
+		{
+			RawChunk raw = resolve(chunkCoord, x, y, z);
+			if (raw == null)
+				return registry.find(BlockIds.AIR, 0);
+
+			return registry.find(raw.getBlockId(x, y, z), raw.getBlockData(x, y, z));
+		}
+
+		@Override
+		public float getLight(ChunkCoord chunkCoord, final int x, final int y, final int z, LightFace face)
+		{
+			return Chunk.getLight(LightStyle.Day, face, resolve(chunkCoord, x, y, z), x, y, z);
+		}
+
+		@Override
+		public LightStyle getLightStyle()
+		{
+			return LightStyle.Day;
+		}
+
+		@Override
+		public TexturePack getTexturePack()
+		{
+			return null;
+		}
+
+		@Override
+		public int getBiomeId(ChunkCoord chunkCoord, int x, int y, int z)
+		{
+			return BiomeIds.UNKNOWN;
+		}
+
+		@Override
+		public Colour4f getGrassColour(ChunkCoord chunkCoord, final int x, final int y, final int z)
+		{
+			return new Colour4f(1, 1, 1, 1);
+		}
+
+		@Override
+		public PlayerSkinCache getPlayerSkinCache()
+		{
+			return null;
+		}
+
+		@Override
+		public BlockRegistry getModelRegistry()
+		{
+			return null;
+		}
+	}
+}
@@ -0,0 +1,90 @@
+/*
+ * Copyright (c) 2012-2019, John Campbell and other contributors.  All rights reserved.
+ *
+ * This file is part of Tectonicus. It is subject to the license terms in the LICENSE file found in
+ * the top-level directory of this distribution.  The full list of project contributors is contained
+ * in the AUTHORS file found in the same location.
+ *
+ */
+
+package tectonicus;
+
+import java.awt.Color;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import tectonicus.configuration.ImageFormat;
+import tectonicus.util.FileUtils;
+
+/** Tile encoding (Screenshot.write) and downsampling four tiles into one. Scores are per output tile. */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class ImageBenchmarks
+{
+	private static final float COMPRESSION_LEVEL = 0.95f;
+
+	@Param({"Png", "Jpg"})
+	public String format;
+
+	private ImageFormat imageFormat;
+	private BufferedImage tileImage;
+
+	private File tempDir;
+	private File encodeFile;
+
+	private Downsampler.Shared downsampleState;
+	private ChangeFile changedFileList;
+
+	@Setup
+	public void setup() throws Exception
+	{
+		imageFormat = ImageFormat.valueOf(format);
+		tileImage = BenchmarkFixtures.createTileImage(0, imageFormat.hasAlpha());
+
+		tempDir = Files.createTempDirectory("tectonicusBenchmark").toFile();
+		encodeFile = new File(tempDir, "encoded."+imageFormat.getExtension());
+
+		// The four base tiles that make up meta tile 0,0
+		File inputDir = new File(tempDir, "Zoom1");
+		File outputDir = new File(tempDir, "Zoom0");
+		for (int y=0; y<2; y++)
+			for (int x=0; x<2; x++)
+				Screenshot.write(TileRenderer.getImageFile(inputDir, x, y, imageFormat), BenchmarkFixtures.createTileImage(x + y * 2 + 1, imageFormat.hasAlpha()), imageFormat, COMPRESSION_LEVEL);
+
+		downsampleState = new Downsampler.Shared(inputDir, outputDir, imageFormat, COMPRESSION_LEVEL, Color.white, BenchmarkFixtures.TILE_SIZE, BenchmarkFixtures.TILE_SIZE);
+		changedFileList = new ChangeFile(new File(tempDir, "changed.txt"));
+	}
+
+	@TearDown
+	public void tearDown()
+	{
+		changedFileList.close();
+		FileUtils.deleteDirectory(tempDir);
+	}
+
+	@Benchmark
+	public void encode()
+	{
+		Screenshot.write(encodeFile, tileImage, imageFormat, COMPRESSION_LEVEL);
+	}
+
+	/** Decodes the four inputs, scales them down and encodes the result */
+	@Benchmark
+	public void downsample() throws Exception
+	{
+		new Downsampler.DownsampleTask(new TileCoord(0, 0), downsampleState, changedFileList).call();
+	}
+}
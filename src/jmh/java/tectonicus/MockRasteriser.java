@@ -0,0 +1,145 @@
+/*
+ * Copyright (c) 2012-2019, John Campbell and other contributors.  All rights reserved.
+ *
+ * This file is part of Tectonicus. It is subject to the license terms in the LICENSE file found in
+ * the top-level directory of this distribution.  The full list of project contributors is contained
+ * in the AUTHORS file found in the same location.
+ *
+ */
+
+package tectonicus;
+
+import java.awt.Color;
+import java.awt.image.BufferedImage;
+
+import org.lwjgl.util.vector.Matrix4f;
+import org.lwjgl.util.vector.Vector3f;
+import org.lwjgl.util.vector.Vector4f;
+
+import tectonicus.configuration.ImageFormat;
+import tectonicus.rasteriser.AlphaFunc;
+import tectonicus.rasteriser.BlendFunc;
+import tectonicus.rasteriser.Mesh;
+import tectonicus.rasteriser.PrimativeType;
+import tectonicus.rasteriser.Rasteriser;
+import tectonicus.rasteriser.Texture;
+import tectonicus.rasteriser.TextureFilter;
+import tectonicus.util.Colour4f;
+
+/** Rasteriser that doesn't need a display. Meshes just count their vertices so that
+ *  geometry building can be measured without any driver or upload cost.
+ */
+public class MockRasteriser implements Rasteriser
+{
+	private final int width;
+	private final int height;
+
+	public MockRasteriser(final int width, final int height)
+	{
+		this.width = width;
+		this.height = height;
+	}
+
+	@Override public void destroy() {}
+	@Override public void printInfo() {}
+
+	@Override public void sync() {}
+	@Override public boolean isCloseRequested() { return false; }
+	@Override public boolean isKeyDown(final int vkKey) { return false; }
+	@Override public boolean isKeyJustDown(final int vkKey) { return false; }
+
+	@Override public int getDisplayWidth() { return width; }
+	@Override public int getDisplayHeight() { return height; }
+
+	@Override public void setViewport(final int x, final int y, final int width, final int height) {}
+
+	@Override public void beginFrame() {}
+
+	@Override public void resetState() {}
+	@Override public void clear(Color clearColour) {}
+	@Override public void clearDepthBuffer() {}
+
+	@Override
+	public BufferedImage takeScreenshot(final int startX, final int startY, final int width, final int height, ImageFormat imageFormat)
+	{
+		return new BufferedImage(width, height, imageFormat.hasAlpha() ? BufferedImage.TYPE_4BYTE_ABGR : BufferedImage.TYPE_3BYTE_BGR);
+	}
+
+	@Override
+	public Texture createTexture(BufferedImage image, TextureFilter filter)
+	{
+		return new MockTexture(image.getWidth(), image.getHeight());
+	}
+
+	@Override
+	public Texture createTexture(BufferedImage[] mips, TextureFilter filter)
+	{
+		return new MockTexture(mips[0].getWidth(), mips[0].getHeight());
+	}
+
+	@Override public boolean supportsTextureRepeat() { return true; }
+
+	@Override public void bindTexture(Texture texture) {}
+
+	@Override
+	public Mesh createMesh(Texture texture)
+	{
+		return new MockMesh(texture);
+	}
+
+	@Override public void setProjectionMatrix(Matrix4f matrix) {}
+	@Override public void setCameraMatrix(Matrix4f matrix, Vector3f lookAt, Vector3f eye, Vector3f up) {}
+
+	@Override public void beginShape(PrimativeType type) {}
+	@Override public void colour(final float r, final float g, final float b, final float a) {}
+	@Override public void texCoord(final float u, final float v) {}
+	@Override public void vertex(final float x, final float y, final float z) {}
+	@Override public void endShape() {}
+
+	@Override public void enableBlending(final boolean enable) {}
+	@Override public void enableDepthTest(final boolean enable) {}
+	@Override public void enableAlphaTest(final boolean enable) {}
+	@Override public void enableColourWriting(final boolean colourMask, final boolean alphaMask) {}
+	@Override public void enableDepthWriting(final boolean enable) {}
+	@Override public void setBlendFunc(BlendFunc func) {}
+	@Override public void setAlphaFunc(AlphaFunc func, final float refValue) {}
+
+	public static class MockTexture implements Texture
+	{
+		private final int width, height;
+
+		public MockTexture(final int width, final int height)
+		{
+			this.width = width;
+			this.height = height;
+		}
+
+		@Override public int getWidth() { return width; }
+		@Override public int getHeight() { return height; }
+	}
+
+	public static class MockMesh implements Mesh
+	{
+		private final Texture texture;
+		private int numVertices;
+
+		public MockMesh(Texture texture)
+		{
+			this.texture = texture;
+		}
+
+		@Override public void destroy() {}
+		@Override public void finalise() {}
+		@Override public Texture getTexture() { return texture; }
+		@Override public void bind() {}
+		@Override public void draw(final float xOffset, final float yOffset, final float zOffset) {}
+
+		@Override public int getMemorySize() { return 0; }
+		@Override public int getTotalVertices() { return numVertices; }
+
+		@Override public void addVertex(Vector3f position, Vector4f colour, final float u, final float v) { numVertices++; }
+		@Override public void addVertex(Vector3f position, final float u, final float v) { numVertices++; }
+		@Override public void addVertex(org.joml.Vector3f position, Colour4f color, float u, float v) { numVertices++; }
+		@Override public void addVertex(float x, float y, float z, float r, float g, float b, float a, float u, float v) { numVertices++; }
+	}
+}
@@ -0,0 +1,71 @@
+/*
+ * Copyright (c) 2012-2019, John Campbell and other contributors.  All rights reserved.
+ *
+ * This file is part of Tectonicus. It is subject to the license terms in the LICENSE file found in
+ * the top-level directory of this distribution.  The full list of project contributors is contained
+ * in the AUTHORS file found in the same location.
+ *
+ */
+
+package tectonicus;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import tectonicus.cache.NullBiomeCache;
+import tectonicus.renderer.OrthoCamera;
+import tectonicus.world.World;
+import tectonicus.world.subset.FullWorldSubset;
+import tectonicus.world.subset.WorldSubset;
+
+/** Per tile visible chunk search over a fixed 4x4 block of tiles, using the default map camera. */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class VisibilityBenchmarks
+{
+	private static final int GRID_SIZE = 4;
+
+	private static final float CAMERA_ANGLE = (float)Math.toRadians(45);
+	private static final float CAMERA_ELEVATION = (float)Math.toRadians(45);
+	private static final int ZOOM = 32;
+
+	private OrthoCamera camera;
+	private WorldSubset worldSubset;
+	private ChunkLocator chunkLocator;
+
+	private TileCoord[] tiles;
+
+	@Setup
+	public void setup()
+	{
+		camera = new OrthoCamera(new MockRasteriser(BenchmarkFixtures.TILE_SIZE, BenchmarkFixtures.TILE_SIZE), BenchmarkFixtures.TILE_SIZE, BenchmarkFixtures.TILE_SIZE);
+		worldSubset = new FullWorldSubset(null);
+		chunkLocator = new ChunkLocator(BenchmarkFixtures.WORLD_DIR, new NullBiomeCache(), new RegionCache(BenchmarkFixtures.WORLD_DIR));
+
+		tiles = new TileCoord[GRID_SIZE * GRID_SIZE];
+		for (int y=0; y<GRID_SIZE; y++)
+			for (int x=0; x<GRID_SIZE; x++)
+				tiles[x + y * GRID_SIZE] = new TileCoord(x - GRID_SIZE / 2, y - GRID_SIZE / 2);
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(GRID_SIZE * GRID_SIZE)
+	public void findVisible(Blackhole bh)
+	{
+		for (TileCoord t : tiles)
+		{
+			TileRenderer.setupCameraForTile(camera, t, BenchmarkFixtures.TILE_SIZE, BenchmarkFixtures.TILE_SIZE, CAMERA_ANGLE, CAMERA_ELEVATION, ZOOM);
+			bh.consume(World.findVisible(camera, worldSubset, chunkLocator));
+		}
+	}
+}
@@ -0,0 +1,66 @@
+/*
+ * Copyright (c) 2012-2019, John Campbell and other contributors.  All rights reserved.
+ *
+ * This file is part of Tectonicus. It is subject to the license terms in the LICENSE file found in
+ * the top-level directory of this distribution.  The full list of project contributors is contained
+ * in the AUTHORS file found in the same location.
+ *
+ */
+
+package tectonicus;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+import org.junit.jupiter.api.Test;
+
+import tectonicus.raw.RawChunk;
+
+public class BlockMaskTests
+{
+	@Test
+	public void newMaskIsAllVisible()
+	{
+		BlockMask mask = new BlockMask();
+		
+		assertThat(mask.isVisible(0, 0, 0), is(true));
+		assertThat(mask.isVisible(15, 255, 15), is(true));
+		assertThat(mask.getMinVisibleY(), is(0));
+		assertThat(mask.getMaxVisibleY(), is(RawChunk.HEIGHT));
+	}
+	
+	@Test
+	public void columnRangesLimitVisibleLayers()
+	{
+		BlockMask mask = new BlockMask();
+		mask.setAllInvisible();
+		mask.setVisibleRange(3, 4, 10, 20);
+		mask.setVisibleRange(5, 6, 15, 40);
+		
+		assertThat(mask.isVisible(3, 9, 4), is(false));
+		assertThat(mask.isVisible(3, 10, 4), is(true));
+		assertThat(mask.isVisible(3, 19, 4), is(true));
+		assertThat(mask.isVisible(3, 20, 4), is(false));
+		assertThat(mask.isVisible(0, 15, 0), is(false));
+		assertThat(mask.getMinVisibleY(), is(10));
+		assertThat(mask.getMaxVisibleY(), is(40));
+	}
+	
+	@Test
+	public void gapInColumnFallsBackToBits()
+	{
+		BlockMask mask = new BlockMask();
+		mask.setVisibleRange(2, 2, 0, 64);
+		mask.setVisible(2, 63, 2, false);
+		mask.setVisible(2, 30, 2, false);
+		mask.setVisible(2, 100, 2, true);
+		
+		assertThat(mask.isVisible(2, 29, 2), is(true));
+		assertThat(mask.isVisible(2, 30, 2), is(false));
+		assertThat(mask.isVisible(2, 62, 2), is(true));
+		assertThat(mask.isVisible(2, 63, 2), is(false));
+		assertThat(mask.isVisible(2, 100, 2), is(true));
+		assertThat(mask.isVisible(2, 101, 2), is(false));
+		assertThat(mask.isVisible(7, 200, 7), is(true));
+	}
+}
@@ -0,0 +1,81 @@
+/*
+ * Copyright (c) 2012-2019, John Campbell and other contributors.  All rights reserved.
+ *
+ * This file is part of Tectonicus. It is subject to the license terms in the LICENSE file found in
+ * the top-level directory of this distribution.  The full list of project contributors is contained
+ * in the AUTHORS file found in the same location.
+ *
+ */
+
+package tectonicus;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.zip.Deflater;
+
+import org.junit.jupiter.api.Test;
+
+public class ChunkDecoderTests
+{
+	@Test
+	public void inflatesZlibDataLargerThanTheBuffer() throws Exception
+	{
+		byte[] original = new byte[200 * 1024];
+		for (int i=0; i<original.length; i++)
+			original[i] = (byte)(i % 251);
+		
+		Deflater deflater = new Deflater();
+		deflater.setInput(original);
+		deflater.finish();
+		byte[] compressed = new byte[original.length];
+		final int length = deflater.deflate(compressed);
+		
+		// Decoded twice to check the inflater is reset between chunks
+		ChunkDecoder decoder = new ChunkDecoder();
+		decoder.decode(compressed, 0, length, ChunkDecoder.COMPRESSION_TYPE_DEFLATE);
+		assertThat(Arrays.equals(readAll(decoder.decode(compressed, 0, length, ChunkDecoder.COMPRESSION_TYPE_DEFLATE)), original), is(true));
+	}
+	
+	@Test
+	public void decodesLz4BlockStream() throws Exception
+	{
+		byte[] block = { 0x35, 'a', 'b', 'c', 3, 0, 0x50, 'h', 'e', 'l', 'l', 'o' };
+		
+		ByteArrayOutputStream stream = new ByteArrayOutputStream();
+		stream.write(1); // Padding, so the stream doesn't start at 0
+		writeLz4Header(stream, 0x20, block.length, 17);
+		stream.write(block);
+		writeLz4Header(stream, 0x10, 0, 0);
+		byte[] data = stream.toByteArray();
+		
+		InputStream in = new ChunkDecoder().decode(data, 1, data.length - 1, ChunkDecoder.COMPRESSION_TYPE_LZ4);
+		assertThat(new String(readAll(in), StandardCharsets.US_ASCII), is("abcabcabcabchello"));
+	}
+	
+	private static void writeLz4Header(ByteArrayOutputStream out, final int method, final int compressedLength, final int decompressedLength) throws IOException
+	{
+		out.write("LZ4Block".getBytes(StandardCharsets.US_ASCII));
+		out.write(method);
+		for (int value : new int[] { compressedLength, decompressedLength, 0 })
+		{
+			for (int i=0; i<4; i++)
+				out.write((value >> (i * 8)) & 0xFF);
+		}
+	}
+	
+	private static byte[] readAll(InputStream in) throws IOException
+	{
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		byte[] buffer = new byte[4096];
+		int numRead;
+		while ((numRead = in.read(buffer)) != -1)
+			out.write(buffer, 0, numRead);
+		return out.toByteArray();
+	}
+}
@@ -0,0 +1,172 @@
+/*
+ * Copyright (c) 2012-2019, John Campbell and other contributors.  All rights reserved.
+ *
+ * This file is part of Tectonicus. It is subject to the license terms in the LICENSE file found in
+ * the top-level directory of this distribution.  The full list of project contributors is contained
+ * in the AUTHORS file found in the same location.
+ *
+ */
+
+package tectonicus;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+import java.awt.Color;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.nio.file.Files;
+import java.util.Collections;
+import java.util.List;
+
+import javax.imageio.ImageIO;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import tectonicus.cache.swap.HddTileList;
+import tectonicus.cache.swap.HddTileListFactory;
+import tectonicus.configuration.ImageFormat;
+import tectonicus.configuration.MutableLayer;
+import tectonicus.util.FileUtils;
+
+public class DownsamplerTests
+{
+	static final int TILE_SIZE = 16;
+	static final int NUM_LEVELS = 2;
+	
+	File workingDir;
+	File baseDir;
+	File[] levelDirs;
+	HddTileListFactory factory;
+	HddTileList baseTiles;
+	MutableLayer layer;
+	
+	@BeforeEach
+	public void setUp()
+	{
+		workingDir = new File("build/tmp/Downsampler");
+		FileUtils.deleteDirectory(workingDir);
+		
+		factory = new HddTileListFactory(new File(workingDir, "tileLists"));
+		baseTiles = factory.createList("base");
+		
+		baseDir = new File(workingDir, "Zoom2");
+		levelDirs = new File[] { new File(workingDir, "Zoom1"), new File(workingDir, "Zoom0") };
+		for (File dir : levelDirs)
+			dir.mkdirs();
+		
+		layer = new MutableLayer("LayerA", "Map0");
+		layer.setBackgroundColor("#FFFFFF");
+		
+		// A full 4x4 block of base tiles, and one on its own
+		for (int y=0; y<4; y++)
+			for (int x=0; x<4; x++)
+				addBaseTile(x, y);
+		addBaseTile(-1, -1);
+	}
+	
+	private void addBaseTile(final int x, final int y)
+	{
+		writeBaseTile(x, y, Color.red);
+		baseTiles.add(new TileCoord(x, y));
+	}
+	
+	private void writeBaseTile(final int x, final int y, Color colour)
+	{
+		BufferedImage img = new BufferedImage(TILE_SIZE, TILE_SIZE, BufferedImage.TYPE_4BYTE_ABGR);
+		for (int i=0; i<TILE_SIZE; i++)
+			for (int j=0; j<TILE_SIZE; j++)
+				img.setRGB(i, j, colour.getRGB());
+		
+		Screenshot.write(TileRenderer.getImageFile(baseDir, x, y, ImageFormat.Png), img, ImageFormat.Png, 1.0f);
+	}
+	
+	@Test
+	public void findsEveryLevelOfThePyramid()
+	{
+		List<HddTileList> levels = Downsampler.findZoomTiles(baseTiles, NUM_LEVELS, factory);
+		
+		assertThat(levels.size(), is(equalTo(2)));
+		assertThat(levels.get(0).size(), is(equalTo(5)));
+		assertThat(levels.get(1).size(), is(equalTo(2)));
+	}
+	
+	@Test
+	public void parentsWaitForTheirChildren() throws Exception
+	{
+		List<HddTileList> levels = Downsampler.findZoomTiles(baseTiles, NUM_LEVELS, factory);
+		
+		ChangeFile changedFile = new ChangeFile(new File(workingDir, "changed.txt"));
+		Downsampler downsampler = new Downsampler(4, changedFile);
+		downsampler.downsample(baseDir, baseTiles, levelDirs, levels, layer, TILE_SIZE, TILE_SIZE, new NullProgressListener());
+		changedFile.close();
+		
+		assertThat(Files.readAllLines(new File(workingDir, "changed.txt").toPath()).size(), is(equalTo(7)));
+		
+		// If the top tile had been built before all four of its children it would have transparent quadrants
+		BufferedImage top = ImageIO.read(TileRenderer.getImageFile(levelDirs[1], 0, 0, ImageFormat.Png));
+		final int q = TILE_SIZE / 4;
+		final int[][] samples = { {q, q}, {3*q, q}, {q, 3*q}, {3*q, 3*q} };
+		for (int[] s : samples)
+			assertThat(top.getRGB(s[0], s[1]), is(equalTo(Color.red.getRGB())));
+	}
+	
+	@Test
+	public void onlyChangedQuadrantsAreRedrawn() throws Exception
+	{
+		ChangeFile changedFile = new ChangeFile(new File(workingDir, "changed.txt"));
+		new Downsampler(4, changedFile).downsample(baseDir, baseTiles, levelDirs, Downsampler.findZoomTiles(baseTiles, NUM_LEVELS, factory), layer, TILE_SIZE, TILE_SIZE, new NullProgressListener());
+		
+		// Only 0,0 is marked as changed, so the new colour of 1,0 shouldn't be picked up
+		writeBaseTile(0, 0, Color.blue);
+		writeBaseTile(1, 0, Color.green);
+		
+		HddTileList changed = factory.createList("changed");
+		changed.add(new TileCoord(0, 0));
+		new Downsampler(4, changedFile).downsample(baseDir, changed, levelDirs, Downsampler.findZoomTiles(changed, NUM_LEVELS, factory), layer, TILE_SIZE, TILE_SIZE, new NullProgressListener());
+		changedFile.close();
+		
+		BufferedImage parent = ImageIO.read(TileRenderer.getImageFile(levelDirs[0], 0, 0, ImageFormat.Png));
+		final int q = TILE_SIZE / 4;
+		assertThat(parent.getRGB(q, q), is(equalTo(Color.blue.getRGB())));
+		assertThat(parent.getRGB(3*q, q), is(equalTo(Color.red.getRGB())));
+		assertThat(parent.getRGB(q, 3*q), is(equalTo(Color.red.getRGB())));
+		
+		BufferedImage top = ImageIO.read(TileRenderer.getImageFile(levelDirs[1], 0, 0, ImageFormat.Png));
+		assertThat(top.getRGB(q/2, q/2), is(equalTo(Color.blue.getRGB())));
+		assertThat(top.getRGB(3*q, 3*q), is(equalTo(Color.red.getRGB())));
+	}
+	
+	@Test
+	public void rebuiltTilesIgnoreWhatWasThere() throws Exception
+	{
+		ChangeFile changedFile = new ChangeFile(new File(workingDir, "changed.txt"));
+		new Downsampler(4, changedFile).downsample(baseDir, baseTiles, levelDirs, Downsampler.findZoomTiles(baseTiles, NUM_LEVELS, factory), layer, TILE_SIZE, TILE_SIZE, new NullProgressListener());
+		
+		// As if an overview had been drawn over the parent of 0,0 since
+		writeBaseTile(1, 0, Color.green);
+		
+		HddTileList changed = factory.createList("changed");
+		changed.add(new TileCoord(0, 0));
+		
+		Downsampler downsampler = new Downsampler(4, changedFile);
+		downsampler.rebuildInFull(0, Collections.singletonList(new TileCoord(0, 0)));
+		downsampler.downsample(baseDir, changed, levelDirs, Downsampler.findZoomTiles(changed, NUM_LEVELS, factory), layer, TILE_SIZE, TILE_SIZE, new NullProgressListener());
+		changedFile.close();
+		
+		BufferedImage parent = ImageIO.read(TileRenderer.getImageFile(levelDirs[0], 0, 0, ImageFormat.Png));
+		final int q = TILE_SIZE / 4;
+		assertThat(parent.getRGB(3*q, q), is(equalTo(Color.green.getRGB())));
+	}
+	
+	private static class NullProgressListener implements ProgressListener
+	{
+		@Override
+		public void onTaskStarted(String taskName) {}
+		
+		@Override
+		public void onTaskUpdate(final int num, final int ofTotalNum) {}
+	}
+}
@@ -0,0 +1,143 @@
+/*
+ * Copyright (c) 2012-2019, John Campbell and other contributors.  All rights reserved.
+ *
+ * This file is part of Tectonicus. It is subject to the license terms in the LICENSE file found in
+ * the top-level directory of this distribution.  The full list of project contributors is contained
+ * in the AUTHORS file found in the same location.
+ *
+ */
+
+package tectonicus;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.zip.GZIPInputStream;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+
+import tectonicus.util.FileUtils;
+
+public class MarkerWriterTests
+{
+	File dir;
+	
+	@BeforeEach
+	public void setUp()
+	{
+		dir = new File("build/tmp/MarkerWriter");
+		FileUtils.deleteDirectory(dir);
+		FileUtils.ensureExists(dir);
+	}
+	
+	@Test
+	public void testMarkersSplitIntoRegions() throws Exception
+	{
+		File file = new File(dir, "signs.js");
+		File regionDir = new File(dir, "markers/signs");
+		
+		// Leftovers from a previous render should be cleared out
+		FileUtils.ensureExists(regionDir);
+		Files.write(new File(regionDir, "r.99.99.json").toPath(), "[]".getBytes(StandardCharsets.UTF_8));
+		
+		// More regions than can be open at once, visited twice so evicted regions have to be reopened
+		final int numRegions = MarkerWriter.MAX_OPEN_REGIONS * 2;
+		try (MarkerWriter writer = new MarkerWriter(file, "signDb", regionDir, true))
+		{
+			for (int pass=0; pass<2; pass++)
+			{
+				for (int i=0; i<numRegions; i++)
+				{
+					final float x = (i - numRegions / 2) * MarkerWriter.REGION_SIZE + 10;
+					writer.beginMarker(x, 64, -1).name("text").value("sign "+pass+" "+i);
+					writer.endMarker();
+				}
+			}
+			assertThat(writer.numMarkers(), is(numRegions * 2));
+		}
+		
+		String js = new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8).trim();
+		assertThat(js.startsWith("var signDb=["), is(true));
+		assertThat(js.endsWith("];"), is(true));
+		
+		JsonArray all = new JsonParser().parse(js.substring("var signDb=".length(), js.length() - 1)).getAsJsonArray();
+		assertThat(all.size(), is(numRegions * 2));
+		assertThat(all.get(1).getAsJsonObject().get("text").getAsString(), is("sign 0 1"));
+		
+		assertThat(new File(regionDir, "r.99.99.json").exists(), is(false));
+		assertThat(new File(regionDir.getPath()+".partial").exists(), is(false));
+		
+		JsonObject index = new JsonParser().parse(read(new File(regionDir, "index.json"))).getAsJsonObject();
+		assertThat(index.get("regionSize").getAsInt(), is(MarkerWriter.REGION_SIZE));
+		assertThat(index.get("count").getAsInt(), is(numRegions * 2));
+		
+		JsonArray regions = index.get("regions").getAsJsonArray();
+		assertThat(regions.size(), is(numRegions));
+		assertThat(regions.get(0).getAsJsonObject().get("x").getAsInt(), is(-numRegions / 2));
+		
+		for (JsonElement e : regions)
+		{
+			JsonObject region = e.getAsJsonObject();
+			assertThat(region.get("z").getAsInt(), is(-1));
+			assertThat(region.get("count").getAsInt(), is(2));
+			
+			File regionFile = new File(regionDir, region.get("file").getAsString());
+			JsonArray markers = new JsonParser().parse(read(regionFile)).getAsJsonArray();
+			assertThat(markers.size(), is(2));
+			
+			final int i = region.get("x").getAsInt() + numRegions / 2;
+			assertThat(markers.get(0).getAsJsonObject().get("text").getAsString(), is("sign 0 "+i));
+			assertThat(markers.get(1).getAsJsonObject().get("text").getAsString(), is("sign 1 "+i));
+			
+			assertThat(readGzip(new File(regionFile.getPath()+".gz")), is(read(regionFile)));
+		}
+		
+		assertThat(readGzip(new File(file.getPath()+".gz")), is(read(file)));
+	}
+	
+	@Test
+	public void testNoMarkers() throws Exception
+	{
+		File file = new File(dir, "portals.js");
+		File regionDir = new File(dir, "markers/portals");
+		
+		new MarkerWriter(file, "portalDb", regionDir, false).close();
+		
+		assertThat(read(file).trim(), is("var portalDb=[];"));
+		assertThat(new File(file.getPath()+".gz").exists(), is(false));
+		
+		JsonObject index = new JsonParser().parse(read(new File(regionDir, "index.json"))).getAsJsonObject();
+		assertThat(index.get("count").getAsInt(), is(0));
+		assertThat(index.get("regions").getAsJsonArray().size(), is(0));
+	}
+	
+	private static String read(File file) throws Exception
+	{
+		return new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8);
+	}
+	
+	private static String readGzip(File file) throws Exception
+	{
+		try (InputStream in = new GZIPInputStream(new FileInputStream(file)))
+		{
+			ByteArrayOutputStream out = new ByteArrayOutputStream();
+			byte[] buffer = new byte[4096];
+			int read;
+			while ((read = in.read(buffer)) != -1)
+				out.write(buffer, 0, read);
+			return new String(out.toByteArray(), StandardCharsets.UTF_8);
+		}
+	}
+}
@@ -0,0 +1,65 @@
+/*
+ * Copyright (c) 2012-2019, John Campbell and other contributors.  All rights reserved.
+ *
+ * This file is part of Tectonicus. It is subject to the license terms in the LICENSE file found in
+ * the top-level directory of this distribution.  The full list of project contributors is contained
+ * in the AUTHORS file found in the same location.
+ *
+ */
+
+package tectonicus;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+public class ProfileStageTests
+{
+	ProfileStage stage;
+	
+	@BeforeEach
+	public void setUp()
+	{
+		stage = new ProfileStage("test", "chunks");
+		
+		// 1ms to 100ms, in a scrambled order
+		for (int i=0; i<100; i++)
+		{
+			final long millis = ((i * 37) % 100) + 1;
+			stage.addSample(millis * 1000000L, 1024 * 1024, 100);
+		}
+	}
+	
+	@Test
+	public void percentilesUseNearestRank()
+	{
+		assertThat(stage.percentile(50), is(equalTo(50000000L)));
+		assertThat(stage.percentile(90), is(equalTo(90000000L)));
+		assertThat(stage.percentile(99), is(equalTo(99000000L)));
+		assertThat(stage.percentile(100), is(equalTo(100000000L)));
+		assertThat(stage.percentile(0), is(equalTo(1000000L)));
+	}
+	
+	@Test
+	public void throughputIsCalculatedFromTotalTime()
+	{
+		// 100 samples totalling 5.05 seconds, 100MB processed
+		assertThat(stage.numSamples(), is(equalTo(100)));
+		assertThat(Math.round(stage.itemsPerSecond() * 100), is(equalTo(1980L)));
+		assertThat(Math.round(stage.megabytesPerSecond() * 100), is(equalTo(1980L)));
+		assertThat(stage.getAllocatedBytes(), is(equalTo(10000L)));
+	}
+	
+	@Test
+	public void resetClearsSamples()
+	{
+		stage.reset();
+		
+		assertThat(stage.numSamples(), is(equalTo(0)));
+		assertThat(stage.percentile(50), is(equalTo(0L)));
+		assertThat(stage.itemsPerSecond(), is(equalTo(0.0)));
+	}
+}
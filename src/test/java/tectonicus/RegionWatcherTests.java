@@ -0,0 +1,69 @@
+/*
+ * Copyright (c) 2012-2019, John Campbell and other contributors.  All rights reserved.
+ *
+ * This file is part of Tectonicus. It is subject to the license terms in the LICENSE file found in
+ * the top-level directory of this distribution.  The full list of project contributors is contained
+ * in the AUTHORS file found in the same location.
+ *
+ */
+
+package tectonicus;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import tectonicus.util.FileUtils;
+
+public class RegionWatcherTests
+{
+	File dir;
+	
+	@BeforeEach
+	public void setUp()
+	{
+		dir = new File("build/tmp/RegionWatcher");
+		FileUtils.deleteDirectory(dir);
+		dir.mkdirs();
+	}
+	
+	@Test
+	public void reportsOnlyChunksSavedSinceLastCheck() throws Exception
+	{
+		File regionFile = new File(dir, "r.1.-1.mca");
+		writeTimestamp(regionFile, 0, 100);
+		regionFile.setLastModified(1000000);
+		
+		RegionWatcher watcher = new RegionWatcher(dir, SaveFormat.Anvil);
+		assertThat(watcher.findChanges().isEmpty(), is(true));
+		
+		writeTimestamp(regionFile, 1 + 31*32, 200);
+		regionFile.setLastModified(2000000);
+		
+		Map<File, List<ChunkCoord>> changes = watcher.findChanges();
+		assertThat(changes.size(), is(1));
+		assertThat(changes.get(regionFile).size(), is(1));
+		assertThat(changes.get(regionFile).get(0).x, is(33L));
+		assertThat(changes.get(regionFile).get(0).z, is(-1L));
+		
+		assertThat(watcher.findChanges().isEmpty(), is(true));
+		watcher.close();
+	}
+	
+	private static void writeTimestamp(File regionFile, final int index, final int timestamp) throws Exception
+	{
+		try (RandomAccessFile file = new RandomAccessFile(regionFile, "rw"))
+		{
+			file.setLength(8192);
+			file.seek(4096 + index * 4);
+			file.writeInt(timestamp);
+		}
+	}
+}
@@ -0,0 +1,141 @@
+/*
+ * Copyright (c) 2012-2019, John Campbell and other contributors.  All rights reserved.
+ *
+ * This file is part of Tectonicus. It is subject to the license terms in the LICENSE file found in
+ * the top-level directory of this distribution.  The full list of project contributors is contained
+ * in the AUTHORS file found in the same location.
+ *
+ */
+
+package tectonicus;
+
+import static org.hamcrest.CoreMatchers.hasItem;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import tectonicus.cache.NullTileCache;
+import tectonicus.cache.swap.HddTileList;
+import tectonicus.cache.swap.HddTileListFactory;
+import tectonicus.util.FileUtils;
+
+public class RenderJournalTests
+{
+	File dir;
+	
+	@BeforeEach
+	public void setUp()
+	{
+		dir = new File("build/tmp/RenderJournal");
+		FileUtils.deleteDirectory(dir);
+	}
+	
+	@Test
+	public void testResumeSkipsFinishedWork() throws Exception
+	{
+		RenderJournal journal = new RenderJournal(dir, "settings", false);
+		journal.markDone("map0/preprocess");
+		journal.tileDone("map0/layer0", new TileCoord(3, -4));
+		journal.close();
+		
+		// As if the process died half way through writing an entry
+		try (FileOutputStream out = new FileOutputStream(new File(dir, "journal.txt"), true))
+		{
+			out.write("tile 5".getBytes(StandardCharsets.UTF_8));
+		}
+		
+		RenderJournal resumed = new RenderJournal(dir, "settings", true);
+		assertThat(resumed.isResuming(), is(true));
+		assertThat(resumed.isDone("map0/preprocess"), is(true));
+		assertThat(resumed.isDone("map0/layer0/render"), is(false));
+		assertThat(resumed.getDoneTiles("map0/layer0").size(), is(1));
+		assertThat(resumed.getDoneTiles("map0/layer0"), hasItem(new TileCoord(3, -4)));
+		
+		resumed.markDone("map0/layer0/render");
+		resumed.close();
+		
+		assertThat(new RenderJournal(dir, "settings", true).isDone("map0/layer0/render"), is(true));
+	}
+	
+	@Test
+	public void testTornLastEntryIgnored() throws Exception
+	{
+		RenderJournal journal = new RenderJournal(dir, "settings", false);
+		journal.markDone("map0/preprocess");
+		journal.tileDone("map0/layer0", new TileCoord(1, 2));
+		journal.close();
+		
+		// Cut off part way through the phase and layer names, which would otherwise still parse
+		try (FileOutputStream out = new FileOutputStream(new File(dir, "journal.txt"), true))
+		{
+			out.write("tile 7 8 map0/lay".getBytes(StandardCharsets.UTF_8));
+		}
+		
+		RenderJournal resumed = new RenderJournal(dir, "settings", true);
+		assertThat(resumed.getDoneTiles("map0/lay").isEmpty(), is(true));
+		assertThat(resumed.getDoneTiles("map0/layer0").size(), is(1));
+		resumed.close();
+		
+		try (FileOutputStream out = new FileOutputStream(new File(dir, "journal.txt"), true))
+		{
+			out.write("done map0".getBytes(StandardCharsets.UTF_8));
+		}
+		
+		resumed = new RenderJournal(dir, "settings", true);
+		assertThat(resumed.isDone("map0"), is(false));
+		assertThat(resumed.isDone("map0/preprocess"), is(true));
+		
+		// Resuming drops the torn text, so it doesn't join up with the entries after it
+		resumed.markDone("map0/layer0/render");
+		resumed.close();
+		
+		RenderJournal again = new RenderJournal(dir, "settings", true);
+		assertThat(again.isDone("map0/layer0/render"), is(true));
+		assertThat(again.isDone("map0"), is(false));
+	}
+	
+	@Test
+	public void testStartsAfreshUnlessResumable()
+	{
+		RenderJournal journal = new RenderJournal(dir, "settings", false);
+		journal.markDone("map0/preprocess");
+		journal.close();
+		
+		RenderJournal changedSettings = new RenderJournal(dir, "other settings", true);
+		assertThat(changedSettings.isResuming(), is(false));
+		assertThat(changedSettings.isDone("map0/preprocess"), is(false));
+		changedSettings.markComplete();
+		changedSettings.close();
+		
+		assertThat(new RenderJournal(dir, "other settings", true).isResuming(), is(false));
+	}
+	
+	@Test
+	public void testTileListRoundTrip() throws Exception
+	{
+		RenderJournal journal = new RenderJournal(dir, "settings", false);
+		HddTileListFactory factory = new HddTileListFactory(new File(dir.getParentFile(), "RenderJournalLists"));
+		
+		HddTileList tiles = factory.createList();
+		tiles.add(new TileCoord(0, 0));
+		tiles.add(new TileCoord(-7, 12));
+		journal.saveTiles("layer0.tiles", tiles, new NullTileCache(), Collections.singletonList(new TileCoord(1, 1)));
+		
+		List<TileCoord> lodTiles = new ArrayList<>();
+		HddTileList loaded = journal.loadTiles("layer0.tiles", factory, new NullTileCache(), lodTiles);
+		journal.close();
+		
+		assertThat(loaded.size(), is(2));
+		assertThat(loaded.getAbsoluteMinCoord(), is(new TileCoord(-7, 0)));
+		assertThat(lodTiles.size(), is(1));
+	}
+}
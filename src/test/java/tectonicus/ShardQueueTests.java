@@ -0,0 +1,101 @@
+/*
+ * Copyright (c) 2012-2019, John Campbell and other contributors.  All rights reserved.
+ *
+ * This file is part of Tectonicus. It is subject to the license terms in the LICENSE file found in
+ * the top-level directory of this distribution.  The full list of project contributors is contained
+ * in the AUTHORS file found in the same location.
+ *
+ */
+
+package tectonicus;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.notNullValue;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+public class ShardQueueTests
+{
+	ShardQueue queue;
+	
+	@BeforeEach
+	public void setUp()
+	{
+		queue = new ShardQueue(new File("build/tmp/ShardQueue"));
+		queue.reset();
+	}
+	
+	@Test
+	public void testPartitionIsSpatiallyCompact()
+	{
+		List<TileCoord> tiles = new ArrayList<>();
+		for (int x=-4; x<4; x++)
+			for (int y=0; y<4; y++)
+				tiles.add(new TileCoord(x, y));
+		
+		List<ShardQueue.Shard> shards = ShardQueue.partition("map0", "layer0", tiles, 4);
+		
+		assertThat(shards.size(), is(2));
+		for (ShardQueue.Shard shard : shards)
+		{
+			assertThat(shard.tiles.size(), is(16));
+			
+			final boolean negative = shard.tiles.get(0).x < 0;
+			for (TileCoord t : shard.tiles)
+				assertThat(t.x < 0, is(negative));
+		}
+	}
+	
+	@Test
+	public void testShardClaimedOnce() throws Exception
+	{
+		List<TileCoord> tiles = new ArrayList<>();
+		tiles.add(new TileCoord(1, 2));
+		tiles.add(new TileCoord(-3, 4));
+		
+		ShardQueue.Shard published = ShardQueue.partition("map0", "layer0", tiles, 16).get(0);
+		queue.publish(published);
+		
+		ShardQueue.Shard claimed = queue.claim();
+		assertThat(claimed, is(notNullValue()));
+		assertThat(claimed.mapId, is("map0"));
+		assertThat(claimed.layerId, is("layer0"));
+		assertThat(claimed.tiles.size(), is(1));
+		assertThat(queue.claim(), is(nullValue()));
+		
+		queue.complete(claimed);
+		assertThat(queue.isDone(published), is(true));
+	}
+	
+	@Test
+	public void testStaleShardRequeued() throws Exception
+	{
+		List<TileCoord> tiles = new ArrayList<>();
+		tiles.add(new TileCoord(0, 0));
+		queue.publish(ShardQueue.partition("map0", "layer0", tiles, 16).get(0));
+		
+		assertThat(queue.claim(), is(notNullValue()));
+		assertThat(queue.requeueStale(60 * 1000), is(0));
+		assertThat(queue.requeueStale(-1), is(1));
+		
+		ShardQueue.Shard reclaimed = queue.claim();
+		assertThat(reclaimed.tiles.get(0), is(new TileCoord(0, 0)));
+	}
+	
+	@Test
+	public void testFinishedMarker()
+	{
+		final long start = System.currentTimeMillis() - 1000;
+		assertThat(queue.isFinishedSince(start), is(false));
+		
+		queue.markFinished();
+		assertThat(queue.isFinishedSince(start), is(true));
+	}
+}
@@ -0,0 +1,45 @@
+/*
+ * Copyright (c) 2012-2019, John Campbell and other contributors.  All rights reserved.
+ *
+ * This file is part of Tectonicus. It is subject to the license terms in the LICENSE file found in
+ * the top-level directory of this distribution.  The full list of project contributors is contained
+ * in the AUTHORS file found in the same location.
+ *
+ */
+
+package tectonicus;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+import java.awt.image.BufferedImage;
+
+import org.junit.jupiter.api.Test;
+
+public class SurfaceColoursTests
+{
+	@Test
+	public void testTransparentPixelsDontDarkenAverage()
+	{
+		BufferedImage img = new BufferedImage(2, 2, BufferedImage.TYPE_INT_ARGB);
+		img.setRGB(0, 0, 0xFF00FF00);
+		img.setRGB(1, 0, 0xFF00FF00);
+		
+		final int colour = SurfaceColours.averageColour(img);
+		assertThat(colour & 0xFFFFFF, is(0x00FF00));
+		assertThat(colour >>> 24, is(127));
+	}
+	
+	@Test
+	public void testFullyTransparentImageIsNotDrawn()
+	{
+		assertThat(SurfaceColours.averageColour(new BufferedImage(4, 4, BufferedImage.TYPE_INT_ARGB)), is(0));
+	}
+	
+	@Test
+	public void testMultiplyKeepsAlpha()
+	{
+		assertThat(SurfaceColours.multiply(0x80FFFFFF, 0xFF3F76E4), is(0x803F76E4));
+		assertThat(SurfaceColours.multiply(0xFF808080, 0xFFFF0000), is(0xFF800000));
+	}
+}
@@ -0,0 +1,41 @@
+/*
+ * Copyright (c) 2012-2019, John Campbell and other contributors.  All rights reserved.
+ *
+ * This file is part of Tectonicus. It is subject to the license terms in the LICENSE file found in
+ * the top-level directory of this distribution.  The full list of project contributors is contained
+ * in the AUTHORS file found in the same location.
+ *
+ */
+
+package tectonicus;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+public class TilePrioritiserTests
+{
+	@Test
+	public void ordersTilesByDistanceToNearestHotspot()
+	{
+		TilePrioritiser prioritiser = new TilePrioritiser();
+		prioritiser.addHotspot(new TileCoord(0, 0));
+		prioritiser.addHotspot(new TileCoord(10, 10));
+		
+		List<TileCoord> ordered = prioritiser.order(Arrays.asList(new TileCoord(5, 5), new TileCoord(9, 10), new TileCoord(-3, 0), new TileCoord(0, 0)));
+		
+		assertThat(ordered, is(Arrays.asList(new TileCoord(0, 0), new TileCoord(9, 10), new TileCoord(-3, 0), new TileCoord(5, 5))));
+	}
+	
+	@Test
+	public void keepsOrderWithoutHotspots()
+	{
+		List<TileCoord> tiles = Arrays.asList(new TileCoord(5, 5), new TileCoord(0, 0), new TileCoord(1, 2));
+		
+		assertThat(new TilePrioritiser().order(tiles), is(tiles));
+	}
+}
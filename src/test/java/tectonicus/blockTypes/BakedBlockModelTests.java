@@ -0,0 +1,140 @@
+/*
+ * Copyright (c) 2012-2019, John Campbell and other contributors.  All rights reserved.
+ *
+ * This file is part of Tectonicus. It is subject to the license terms in the LICENSE file found in
+ * the top-level directory of this distribution.  The full list of project contributors is contained
+ * in the AUTHORS file found in the same location.
+ *
+ */
+
+package tectonicus.blockTypes;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+
+import tectonicus.blockTypes.BlockModel.BlockElement;
+import tectonicus.blockTypes.BlockModel.BlockElement.ElementFace;
+import tectonicus.texture.SubTexture;
+import tectonicus.util.Vector3f;
+
+public class BakedBlockModelTests
+{
+	private static final float EPSILON = 0.0001f;
+	
+	@Test
+	public void testUnrotatedFacesMatchElement()
+	{
+		BlockModel model = createModel(new Vector3f(0, 0, 0), new Vector3f(16, 8, 16), 0, 0);
+		BakedBlockModel baked = model.getRotation(0, "y");
+		
+		assertThat(baked.numFaces(), is(6));
+		assertThat(baked.getFaceDir(0), is(BakedBlockModel.UP));
+		
+		// Top left, top right, bottom right, bottom left of the top face, with the texture's corners in the same order
+		float[] expected = { 0, 0.5f, 0, 0, 0,  1, 0.5f, 0, 1, 0,  1, 0.5f, 1, 1, 1,  0, 0.5f, 1, 0, 1 };
+		for (int i=0; i<expected.length; i++)
+			assertNear(baked.getVertices()[i], expected[i]);
+	}
+	
+	@Test
+	public void testBlockRotations()
+	{
+		// A slab in the west half of the block
+		BlockModel model = createModel(new Vector3f(0, 0, 0), new Vector3f(8, 16, 16), 0, 0);
+		
+		// A quarter turn around y moves it to the south half, and around x leaves it in the west half
+		assertBounds(model.getRotation(90, "y"), 0, 1, 0, 1, 0.5f, 1);
+		assertBounds(model.getRotation(270, "x"), 0, 0.5f, 0, 1, 0, 1);
+		assertBounds(model.getRotation(180, "y"), 0.5f, 1, 0, 1, 0, 1);
+		
+		// A bottom slab turned a quarter around x ends up against the north side, and the other way the south
+		BlockModel bottom = createModel(new Vector3f(0, 0, 0), new Vector3f(16, 8, 16), 0, 0);
+		assertBounds(bottom.getRotation(90, "x"), 0, 1, 0, 1, 0, 0.5f);
+		assertBounds(bottom.getRotation(270, "x"), 0, 1, 0, 1, 0.5f, 1);
+		
+		// Negative and full turns are the same as the equivalent positive ones
+		assertThat(model.getRotation(-90, "y"), sameInstance(model.getRotation(270, "y")));
+		assertThat(model.getRotation(-270, "y"), sameInstance(model.getRotation(90, "y")));
+		assertThat(model.getRotation(360, "x"), sameInstance(model.getRotation(0, "x")));
+	}
+	
+	@Test
+	public void testElementRotationAboutItsOrigin()
+	{
+		BlockModel model = createModel(new Vector3f(0, 0, 8), new Vector3f(16, 16, 8), 45, 0);
+		BakedBlockModel baked = model.getRotation(0, "y");
+		
+		// Turned around z about the block centre, so every corner stays the same distance from it
+		float[] vertices = baked.getVertices();
+		for (int i=0; i<vertices.length; i+=5)
+		{
+			final float dx = vertices[i] - 0.5f;
+			final float dy = vertices[i+1] - 0.5f;
+			assertNear((float)Math.sqrt(dx*dx + dy*dy), (float)Math.sqrt(0.5));
+			assertNear(vertices[i+2], 0.5f);
+		}
+		
+		// And the top left corner of the top face has gone from the corner to the middle of the left side
+		assertNear(vertices[0], 0.5f - (float)Math.sqrt(0.5));
+		assertNear(vertices[1], 0.5f);
+		
+		// Baking doesn't touch the element's own origin
+		assertThat(model.getElements().get(0).getRotationOrigin().x, is(8.0f));
+	}
+	
+	@Test
+	public void testTextureRotation()
+	{
+		BlockModel model = createModel(new Vector3f(0, 0, 0), new Vector3f(16, 16, 16), 0, 90);
+		float[] vertices = model.getRotation(0, "y").getVertices();
+		
+		// Top left corner of the first face takes the texture's bottom left
+		assertNear(vertices[3], 0);
+		assertNear(vertices[4], 1);
+	}
+	
+	private static BlockModel createModel(Vector3f from, Vector3f to, final float elementAngle, final int textureRotation)
+	{
+		Map<String, ElementFace> faces = new HashMap<>();
+		for (String name : new String[] { "up", "down", "north", "south", "east", "west" })
+			faces.put(name, new ElementFace(new SubTexture(null, 0, 0, 1, 1), false, textureRotation, false));
+		
+		BlockElement element = new BlockElement(from, to, new org.joml.Vector3f(8, 8, 8), new org.joml.Vector3f(0, 0, 1), elementAngle, false, true, faces);
+		return new BlockModel("test", true, Collections.singletonList(element));
+	}
+	
+	private static void assertBounds(BakedBlockModel baked, final float minX, final float maxX, final float minY, final float maxY, final float minZ, final float maxZ)
+	{
+		float[] min = { Float.MAX_VALUE, Float.MAX_VALUE, Float.MAX_VALUE };
+		float[] max = { -Float.MAX_VALUE, -Float.MAX_VALUE, -Float.MAX_VALUE };
+		
+		float[] vertices = baked.getVertices();
+		for (int i=0; i<vertices.length; i+=5)
+		{
+			for (int axis=0; axis<3; axis++)
+			{
+				min[axis] = Math.min(min[axis], vertices[i+axis]);
+				max[axis] = Math.max(max[axis], vertices[i+axis]);
+			}
+		}
+		
+		assertNear(min[0], minX);
+		assertNear(max[0], maxX);
+		assertNear(min[1], minY);
+		assertNear(max[1], maxY);
+		assertNear(min[2], minZ);
+		assertNear(max[2], maxZ);
+	}
+	
+	private static void assertNear(final float actual, final float expected)
+	{
+		assertThat("expected "+expected+" but was "+actual, Math.abs(actual - expected) < EPSILON, is(true));
+	}
+}
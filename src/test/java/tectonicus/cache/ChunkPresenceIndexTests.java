@@ -0,0 +1,103 @@
+/*
+ * Copyright (c) 2012-2019, John Campbell and other contributors.  All rights reserved.
+ *
+ * This file is part of Tectonicus. It is subject to the license terms in the LICENSE file found in
+ * the top-level directory of this distribution.  The full list of project contributors is contained
+ * in the AUTHORS file found in the same location.
+ *
+ */
+
+package tectonicus.cache;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.notNullValue;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+import java.io.File;
+import java.util.BitSet;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import tectonicus.BlockIds;
+import tectonicus.ChunkCoord;
+import tectonicus.RegionCoord;
+import tectonicus.raw.RawChunk;
+
+public class ChunkPresenceIndexTests
+{
+	ChunkPresenceIndex index;
+	
+	@BeforeEach
+	public void setUp()
+	{
+		index = new ChunkPresenceIndex();
+		
+		BitSet origin = new BitSet();
+		origin.set(ChunkPresenceIndex.getBitIndex(0, 0));
+		origin.set(ChunkPresenceIndex.getBitIndex(31, 31));
+		index.addRegion(new RegionCoord(0, 0), origin);
+		
+		BitSet negative = new BitSet();
+		negative.set(ChunkPresenceIndex.getBitIndex(-1, -32));
+		index.addRegion(new RegionCoord(-1, -1), negative);
+	}
+	
+	@Test
+	public void testContains()
+	{
+		assertThat(index.contains(new ChunkCoord(0, 0)), is(true));
+		assertThat(index.contains(new ChunkCoord(31, 31)), is(true));
+		assertThat(index.contains(new ChunkCoord(1, 0)), is(false));
+		assertThat(index.contains(new ChunkCoord(-1, -32)), is(true));
+		assertThat(index.contains(new ChunkCoord(-1, -1)), is(false));
+		assertThat(index.contains(new ChunkCoord(32, 0)), is(false));
+		assertThat(index.numChunks(), is(equalTo(3)));
+	}
+	
+	@Test
+	public void testHeights()
+	{
+		RawChunk raw = new RawChunk();
+		raw.setBlockId(3, 20, 4, BlockIds.STONE);
+		raw.setBlockId(0, 70, 0, BlockIds.STONE);
+		raw.calculateHeights();
+		
+		assertThat(raw.getMinY(), is(equalTo(20)));
+		assertThat(raw.getMaxY(), is(equalTo(70)));
+		assertThat(raw.getSectionMask(), is(equalTo((1 << 1) | (1 << 4))));
+		
+		index.setHeights(new ChunkCoord(0, 0), raw.getMinY(), raw.getMaxY(), raw.getSectionMask());
+		assertThat(index.getSectionMask(new ChunkCoord(0, 0)), is(equalTo(raw.getSectionMask())));
+		
+		RawChunk empty = new RawChunk();
+		empty.calculateHeights();
+		assertThat(empty.isEmpty(), is(true));
+		
+		index.setHeights(new ChunkCoord(31, 31), empty.getMinY(), empty.getMaxY(), empty.getSectionMask());
+		assertThat(index.hasBlocks(new ChunkCoord(31, 31)), is(false));
+		assertThat(index.contains(new ChunkCoord(31, 31)), is(true));
+		
+		// Not measured, so assumed to be full height
+		assertThat(index.getSectionMask(new ChunkCoord(-1, -32)), is(equalTo(0xFFFF)));
+	}
+	
+	@Test
+	public void testWriteAndRead()
+	{
+		index.setHeights(new ChunkCoord(0, 0), 10, 20, 0x0003);
+		
+		File file = new File("build/tmp/chunkPresence.dat");
+		file.getParentFile().mkdirs();
+		index.write(file);
+		
+		ChunkPresenceIndex loaded = ChunkPresenceIndex.read(file);
+		assertThat(loaded, is(notNullValue()));
+		assertThat(loaded.numRegions(), is(equalTo(2)));
+		assertThat(loaded.contains(new ChunkCoord(31, 31)), is(true));
+		assertThat(loaded.contains(new ChunkCoord(-1, -32)), is(true));
+		assertThat(loaded.contains(new ChunkCoord(30, 31)), is(false));
+		assertThat(loaded.getSectionMask(new ChunkCoord(0, 0)), is(equalTo(0x0003)));
+	}
+}
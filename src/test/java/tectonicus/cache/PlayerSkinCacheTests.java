@@ -0,0 +1,122 @@
+/*
+ * Copyright (c) 2012-2019, John Campbell and other contributors.  All rights reserved.
+ *
+ * This file is part of Tectonicus. It is subject to the license terms in the LICENSE file found in
+ * the top-level directory of this distribution.  The full list of project contributors is contained
+ * in the AUTHORS file found in the same location.
+ *
+ */
+
+package tectonicus.cache;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.notNullValue;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.imageio.ImageIO;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import tectonicus.PlayerIconAssembler;
+import tectonicus.raw.Player;
+import tectonicus.util.BoundedExecutor;
+import tectonicus.util.FileUtils;
+
+public class PlayerSkinCacheTests
+{
+	File workingDir;
+	File skinDir;
+	PlayerSkinCache cache;
+	
+	@BeforeEach
+	public void setUp() throws Exception
+	{
+		workingDir = new File("build/tmp/PlayerSkinCache");
+		FileUtils.deleteDirectory(workingDir);
+		
+		skinDir = new File(workingDir, "skins");
+		skinDir.mkdirs();
+		ImageIO.write(new BufferedImage(64, 64, BufferedImage.TYPE_INT_ARGB), "png", new File(skinDir, "Steve.png"));
+		
+		cache = new PlayerSkinCache(new File(workingDir, "cache"), new LocalSkinSource(skinDir, null));
+	}
+	
+	@AfterEach
+	public void tearDown()
+	{
+		cache.destroy();
+	}
+	
+	@Test
+	public void testFetchLocalSkin() throws Exception
+	{
+		Player steve = new Player("Steve", "uuid1", null);
+		cache.lookupProfile(steve);
+		
+		BufferedImage skin = cache.fetchSkin(steve);
+		assertThat(skin, is(notNullValue()));
+		assertThat(skin.getWidth(), is(64));
+		assertThat(cache.getCacheEntry("uuid1").skinFile, is("Steve.png"));
+	}
+	
+	@Test
+	public void testPlayerWithoutSkin() throws Exception
+	{
+		Player alex = new Player(null, "uuid2", null);
+		cache.lookupProfile(alex);
+		
+		assertThat(alex.getName(), is("uuid2"));
+		assertThat(cache.fetchSkin(alex), is(nullValue()));
+	}
+	
+	@Test
+	public void testIconsWrittenBeforeBatchCompletes()
+	{
+		File iconDir = new File(workingDir, "icons");
+		iconDir.mkdirs();
+		
+		PlayerIconAssembler assembler = new PlayerIconAssembler(cache);
+		BoundedExecutor.Batch batch = assembler.getExecutor().newBatch();
+		for (int i=0; i<20; i++)
+		{
+			Player player = new Player("Steve", "uuid"+i, new File(skinDir, "Steve.png").toURI().toString());
+			batch.submit(assembler.new WriteIconTask(player, new File(iconDir, i+".png")));
+		}
+		
+		assertThat(batch.await(), is(0));
+		assertThat(iconDir.list().length, is(20));
+	}
+	
+	@Test
+	public void testBatchCountsFailures()
+	{
+		final AtomicInteger ran = new AtomicInteger();
+		BoundedExecutor.Batch batch = cache.getExecutor().newBatch();
+		for (int i=0; i<10; i++)
+		{
+			final boolean fail = i % 2 == 0;
+			batch.submit(new Callable<Void>()
+			{
+				@Override
+				public Void call() throws Exception
+				{
+					ran.incrementAndGet();
+					if (fail)
+						throw new Exception("Expected failure");
+					return null;
+				}
+			});
+		}
+		
+		assertThat(batch.await(), is(5));
+		assertThat(ran.get(), is(10));
+	}
+}
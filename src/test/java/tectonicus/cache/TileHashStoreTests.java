@@ -0,0 +1,103 @@
+/*
+ * Copyright (c) 2012-2019, John Campbell and other contributors.  All rights reserved.
+ *
+ * This file is part of Tectonicus. It is subject to the license terms in the LICENSE file found in
+ * the top-level directory of this distribution.  The full list of project contributors is contained
+ * in the AUTHORS file found in the same location.
+ *
+ */
+
+package tectonicus.cache;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.util.Arrays;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import tectonicus.TileCoord;
+import tectonicus.util.FileUtils;
+
+public class TileHashStoreTests
+{
+	File dir;
+	File file;
+	
+	@BeforeEach
+	public void setUp()
+	{
+		dir = new File("build/tmp/TileHashStore");
+		FileUtils.deleteDirectory(dir);
+		dir.mkdirs();
+		file = new File(dir, "tileHashes.store");
+	}
+	
+	@Test
+	public void latestHashIsLoadedBack()
+	{
+		TileHashStore store = new TileHashStore(file);
+		store.put(new TileCoord(1, 2), new byte[] { 1, 2, 3 });
+		store.put(new TileCoord(-5, 7), new byte[0]);
+		store.put(new TileCoord(1, 2), new byte[] { 4, 5 });
+		store.close();
+		
+		TileHashStore reopened = new TileHashStore(file);
+		assertThat(reopened.size(), is(2));
+		assertThat(Arrays.equals(reopened.get(new TileCoord(1, 2)), new byte[] { 4, 5 }), is(true));
+		assertThat(reopened.get(new TileCoord(-5, 7)).length, is(0));
+		assertThat(reopened.get(new TileCoord(2, 1)), is(nullValue()));
+		reopened.close();
+	}
+	
+	@Test
+	public void tornRecordIsDroppedAndAppendingCarriesOn() throws Exception
+	{
+		TileHashStore store = new TileHashStore(file);
+		store.put(new TileCoord(1, 1), new byte[] { 1 });
+		store.put(new TileCoord(2, 2), new byte[] { 2 });
+		store.close();
+		
+		// Cut the last record short, as if we crashed while writing it
+		try (RandomAccessFile raf = new RandomAccessFile(file, "rw"))
+		{
+			raf.setLength(raf.length() - 3);
+		}
+		
+		store = new TileHashStore(file);
+		assertThat(store.size(), is(1));
+		store.put(new TileCoord(3, 3), new byte[] { 3 });
+		store.close();
+		
+		store = new TileHashStore(file);
+		assertThat(store.size(), is(2));
+		assertThat(store.get(new TileCoord(3, 3))[0], is((byte)3));
+		store.close();
+	}
+	
+	@Test
+	public void compactingKeepsOnlyLatestHashes()
+	{
+		TileHashStore store = new TileHashStore(file);
+		for (int i=0; i<100; i++)
+			store.put(new TileCoord(i % 10, 0), new byte[] { (byte)i });
+		
+		final long uncompactedLength = file.length();
+		store.compact();
+		assertThat(file.length() < uncompactedLength, is(true));
+		
+		store.put(new TileCoord(0, 1), new byte[] { 42 });
+		store.close();
+		
+		store = new TileHashStore(file);
+		assertThat(store.size(), is(11));
+		assertThat(store.get(new TileCoord(9, 0))[0], is((byte)99));
+		assertThat(store.get(new TileCoord(0, 1))[0], is((byte)42));
+		assertThat(new File(dir, "tileHashes.store.tmp").exists(), is(false));
+		store.close();
+	}
+}
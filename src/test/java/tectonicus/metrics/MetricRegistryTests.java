@@ -0,0 +1,91 @@
+/*
+ * Copyright (c) 2012-2019, John Campbell and other contributors.  All rights reserved.
+ *
+ * This file is part of Tectonicus. It is subject to the license terms in the LICENSE file found in
+ * the top-level directory of this distribution.  The full list of project contributors is contained
+ * in the AUTHORS file found in the same location.
+ *
+ */
+
+package tectonicus.metrics;
+
+import static org.hamcrest.CoreMatchers.containsString;
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+public class MetricRegistryTests
+{
+	MetricRegistry registry;
+	
+	@BeforeEach
+	public void setUp()
+	{
+		registry = new MetricRegistry();
+	}
+	
+	@Test
+	public void registeringTwiceReturnsTheSameMetric()
+	{
+		Counter counter = registry.counter("test_total", "A counter");
+		
+		assertThat(registry.counter("test_total", "A counter"), is(sameInstance(counter)));
+		assertThrows(IllegalArgumentException.class, () -> registry.gauge("test_total", "A gauge"));
+	}
+	
+	@Test
+	public void histogramPercentilesUseBucketUpperBounds()
+	{
+		Histogram histogram = registry.histogram("test_seconds", "A histogram", new double[] { 1, 2, 5 });
+		for (int i=0; i<8; i++)
+			histogram.observe(0.5);
+		histogram.observe(1.5);
+		histogram.observe(10);
+		
+		assertThat(histogram.getCount(), is(equalTo(10L)));
+		assertThat(histogram.percentile(50), is(equalTo(1.0)));
+		assertThat(histogram.percentile(90), is(equalTo(2.0)));
+		assertThat(histogram.percentile(99), is(equalTo(Double.POSITIVE_INFINITY)));
+	}
+	
+	@Test
+	public void prometheusTextHasCumulativeBuckets()
+	{
+		registry.counter("test_total", "A counter").add(3);
+		Histogram histogram = registry.histogram("test_seconds", "A histogram", new double[] { 0.5, 1 });
+		histogram.observe(0.25);
+		histogram.observe(0.75);
+		histogram.observe(2);
+		
+		String text = registry.toPrometheusText();
+		
+		assertThat(text, containsString("# TYPE test_total counter\ntest_total 3\n"));
+		assertThat(text, containsString("test_seconds_bucket{le=\"0.5\"} 1\n"));
+		assertThat(text, containsString("test_seconds_bucket{le=\"1\"} 2\n"));
+		assertThat(text, containsString("test_seconds_bucket{le=\"+Inf\"} 3\n"));
+		assertThat(text, containsString("test_seconds_sum 3\n"));
+		assertThat(text, containsString("test_seconds_count 3\n"));
+	}
+	
+	@Test
+	public void resetZerosEveryMetric()
+	{
+		Counter counter = registry.counter("test_total", "A counter");
+		Gauge gauge = registry.gauge("test_depth", "A gauge");
+		counter.inc();
+		gauge.setMax(7);
+		gauge.setMax(3);
+		
+		assertThat(gauge.get(), is(equalTo(7L)));
+		
+		registry.reset();
+		
+		assertThat(counter.get(), is(equalTo(0L)));
+		assertThat(gauge.get(), is(equalTo(0L)));
+	}
+}
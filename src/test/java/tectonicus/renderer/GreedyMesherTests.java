@@ -0,0 +1,354 @@
+/*
+ * Copyright (c) 2012-2019, John Campbell and other contributors.  All rights reserved.
+ *
+ * This file is part of Tectonicus. It is subject to the license terms in the LICENSE file found in
+ * the top-level directory of this distribution.  The full list of project contributors is contained
+ * in the AUTHORS file found in the same location.
+ *
+ */
+
+package tectonicus.renderer;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.lessThan;
+
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+import org.lwjgl.util.vector.Vector3f;
+import org.lwjgl.util.vector.Vector4f;
+
+import tectonicus.BlockContext;
+import tectonicus.BlockMask;
+import tectonicus.BlockType;
+import tectonicus.BlockTypeRegistry;
+import tectonicus.Chunk;
+import tectonicus.ChunkCoord;
+import tectonicus.blockTypes.Air;
+import tectonicus.blockTypes.BlockRegistry;
+import tectonicus.blockTypes.SolidBlockType;
+import tectonicus.cache.PlayerSkinCache;
+import tectonicus.configuration.LightFace;
+import tectonicus.configuration.LightStyle;
+import tectonicus.rasteriser.Mesh;
+import tectonicus.rasteriser.Rasteriser;
+import tectonicus.rasteriser.Texture;
+import tectonicus.raw.RawChunk;
+import tectonicus.texture.SubTexture;
+import tectonicus.texture.TexturePack;
+import tectonicus.util.Colour4f;
+
+public class GreedyMesherTests
+{
+	private static final int STONE = 1;
+	private static final int DIRT = 2;
+	
+	@Test
+	public void mergedQuadsCoverTheSameFacesAsPerBlockGeometry()
+	{
+		RawChunk rawChunk = createChunk();
+		TestContext context = new TestContext(rawChunk);
+		
+		List<Quad> perBlock = buildPerBlock(rawChunk, context);
+		List<Quad> merged = buildGreedy(rawChunk, context, true);
+		
+		assertThat(expand(merged), is(expand(perBlock)));
+		assertThat(merged.size(), lessThan(perBlock.size()));
+	}
+	
+	@Test
+	public void unmergedQuadsMatchPerBlockGeometryExactly()
+	{
+		RawChunk rawChunk = createChunk();
+		TestContext context = new TestContext(rawChunk);
+		
+		List<Quad> perBlock = buildPerBlock(rawChunk, context);
+		List<Quad> unmerged = buildGreedy(rawChunk, context, false);
+		
+		assertThat(unmerged.size(), is(perBlock.size()));
+		assertThat(expand(unmerged), is(expand(perBlock)));
+	}
+	
+	/** A stone box with a dirt block set into its top, a stone wall along the chunk edge and a lone dirt block in the corner */
+	private static RawChunk createChunk()
+	{
+		RawChunk rawChunk = new RawChunk();
+		
+		for (int x=2; x<6; x++)
+			for (int y=10; y<13; y++)
+				for (int z=3; z<8; z++)
+					rawChunk.setBlockId(x, y, z, STONE);
+		rawChunk.setBlockId(3, 12, 4, DIRT);
+		
+		for (int y=0; y<4; y++)
+			for (int z=0; z<RawChunk.DEPTH; z++)
+				rawChunk.setBlockId(0, y, z, STONE);
+		
+		rawChunk.setBlockId(15, 0, 15, DIRT);
+		
+		// Brighter light over part of the box, so faces there can't merge with the rest
+		for (int z=3; z<8; z++)
+			rawChunk.setSkyLight(5, 13, z, (byte)15);
+		
+		return rawChunk;
+	}
+	
+	private static List<Quad> buildPerBlock(RawChunk rawChunk, TestContext context)
+	{
+		RecordingRasteriser recorder = new RecordingRasteriser();
+		Geometry geometry = new Geometry(recorder.rasteriser, null);
+		
+		for (int y=0; y<RawChunk.HEIGHT; y++)
+		{
+			for (int x=0; x<RawChunk.WIDTH; x++)
+			{
+				for (int z=0; z<RawChunk.DEPTH; z++)
+				{
+					final int blockId = rawChunk.getBlockId(x, y, z);
+					if (blockId == 0)
+						continue;
+					
+					BlockType type = context.registry.find(blockId, rawChunk.getBlockData(x, y, z));
+					if (x == 0 || y == 0 || z == 0 || x == RawChunk.WIDTH-1 || y == RawChunk.HEIGHT-1 || z == RawChunk.DEPTH-1)
+						type.addEdgeGeometry(x, y, z, context, context.registry, rawChunk, geometry);
+					else
+						type.addInteriorGeometry(x, y, z, context, context.registry, rawChunk, geometry);
+				}
+			}
+		}
+		
+		return recorder.quads;
+	}
+	
+	private static List<Quad> buildGreedy(RawChunk rawChunk, TestContext context, final boolean mergeFaces)
+	{
+		RecordingRasteriser recorder = new RecordingRasteriser();
+		Geometry geometry = new Geometry(recorder.rasteriser, null);
+		
+		GreedyMesher mesher = new GreedyMesher(rawChunk, context, context.registry, new BlockMask(), mergeFaces);
+		mesher.addGeometry(geometry);
+		
+		assertThat(mesher.contains(3, 12, 4), is(true));
+		assertThat(mesher.contains(3, 13, 4), is(false));
+		
+		return recorder.quads;
+	}
+	
+	/** Splits every quad into the unit block faces it covers, counting each face with its texture and colour */
+	private static Map<String, Integer> expand(List<Quad> quads)
+	{
+		Map<String, Integer> faces = new HashMap<String, Integer>();
+		
+		for (Quad quad : quads)
+		{
+			float[] min = { Float.MAX_VALUE, Float.MAX_VALUE, Float.MAX_VALUE };
+			float[] max = { -Float.MAX_VALUE, -Float.MAX_VALUE, -Float.MAX_VALUE };
+			for (float[] p : quad.corners)
+			{
+				for (int i=0; i<3; i++)
+				{
+					min[i] = Math.min(min[i], p[i]);
+					max[i] = Math.max(max[i], p[i]);
+				}
+			}
+			
+			int flatAxis = 0;
+			for (int i=0; i<3; i++)
+				if (min[i] == max[i])
+					flatAxis = i;
+			final int axisA = (flatAxis + 1) % 3;
+			final int axisB = (flatAxis + 2) % 3;
+			
+			// Which way the face points, from its winding
+			float[] p0 = quad.corners[0], p1 = quad.corners[1], p2 = quad.corners[2];
+			float[] e0 = { p1[0]-p0[0], p1[1]-p0[1], p1[2]-p0[2] };
+			float[] e1 = { p2[0]-p0[0], p2[1]-p0[1], p2[2]-p0[2] };
+			final float normal = e0[axisA] * e1[axisB] - e0[axisB] * e1[axisA];
+			
+			for (int a=(int)min[axisA]; a<(int)max[axisA]; a++)
+			{
+				for (int b=(int)min[axisB]; b<(int)max[axisB]; b++)
+				{
+					String face = flatAxis + "@" + min[flatAxis] + (normal > 0 ? "+" : "-") + " " + a + "," + b
+								+ " " + quad.texture + " " + quad.r + "," + quad.g + "," + quad.b + "," + quad.a;
+					Integer count = faces.get(face);
+					faces.put(face, count == null ? 1 : count + 1);
+				}
+			}
+		}
+		
+		return faces;
+	}
+	
+	private static class Quad
+	{
+		public final Texture texture;
+		public final float[][] corners = new float[4][];
+		public float r, g, b, a;
+		
+		public Quad(Texture texture)
+		{
+			this.texture = texture;
+		}
+	}
+	
+	/** A rasteriser whose meshes record the quads added to them */
+	private static class RecordingRasteriser
+	{
+		public final List<Quad> quads = new ArrayList<Quad>();
+		public final Rasteriser rasteriser;
+		
+		public RecordingRasteriser()
+		{
+			rasteriser = (Rasteriser)Proxy.newProxyInstance(Rasteriser.class.getClassLoader(), new Class<?>[] { Rasteriser.class }, (proxy, method, args) ->
+			{
+				if (method.getName().equals("createMesh"))
+					return new RecordingMesh((Texture)args[0], quads);
+				if (method.getName().equals("supportsTextureRepeat"))
+					return true;
+				
+				Class<?> returnType = method.getReturnType();
+				if (returnType == boolean.class)
+					return false;
+				if (returnType == int.class)
+					return 0;
+				return null;
+			});
+		}
+	}
+	
+	private static class RecordingMesh implements Mesh
+	{
+		private final Texture texture;
+		private final List<Quad> quads;
+		private Quad current;
+		private int numCorners;
+		
+		public RecordingMesh(Texture texture, List<Quad> quads)
+		{
+			this.texture = texture;
+			this.quads = quads;
+		}
+		
+		@Override
+		public void addVertex(final float x, final float y, final float z, final float r, final float g, final float b, final float a, final float u, final float v)
+		{
+			if (current == null)
+			{
+				current = new Quad(texture);
+				current.r = r;
+				current.g = g;
+				current.b = b;
+				current.a = a;
+			}
+			
+			current.corners[numCorners++] = new float[] { x, y, z };
+			
+			if (numCorners == 4)
+			{
+				quads.add(current);
+				current = null;
+				numCorners = 0;
+			}
+		}
+		
+		@Override
+		public void addVertex(Vector3f position, Vector4f colour, final float u, final float v)
+		{
+			addVertex(position.x, position.y, position.z, colour.x, colour.y, colour.z, colour.w, u, v);
+		}
+		
+		@Override
+		public void addVertex(Vector3f position, final float u, final float v)
+		{
+			addVertex(position.x, position.y, position.z, 1, 1, 1, 1, u, v);
+		}
+		
+		@Override
+		public void addVertex(org.joml.Vector3f position, Colour4f colour, final float u, final float v)
+		{
+			addVertex(position.x, position.y, position.z, colour.r, colour.g, colour.b, colour.a, u, v);
+		}
+		
+		@Override public void destroy() {}
+		@Override public void finalise() {}
+		@Override public Texture getTexture() { return texture; }
+		@Override public void bind() {}
+		@Override public void draw(final float xOffset, final float yOffset, final float zOffset) {}
+		@Override public int getMemorySize() { return 0; }
+		@Override public int getTotalVertices() { return 0; }
+	}
+	
+	private static class TestTexture implements Texture
+	{
+		private final String name;
+		
+		public TestTexture(String name)
+		{
+			this.name = name;
+		}
+		
+		@Override public int getWidth() { return 16; }
+		@Override public int getHeight() { return 16; }
+		
+		@Override
+		public String toString()
+		{
+			return name;
+		}
+	}
+	
+	/** Answers for blocks in the one chunk, with empty space all around it */
+	private static class TestContext implements BlockContext
+	{
+		private final RawChunk rawChunk;
+		private final Air air = new Air();
+		public final BlockTypeRegistry registry = new BlockTypeRegistry();
+		
+		public TestContext(RawChunk rawChunk)
+		{
+			this.rawChunk = rawChunk;
+			
+			registry.setDefaultBlock(air);
+			registry.register(0, air);
+			registry.register(STONE, new SolidBlockType("Stone", new SubTexture(new TestTexture("stone"), 0, 0, 1, 1)));
+			registry.register(DIRT, new SolidBlockType("Dirt", new SubTexture(new TestTexture("dirt_side"), 0, 0, 1, 1),
+																new SubTexture(new TestTexture("dirt_top"), 0, 0, 1, 1)));
+		}
+		
+		private static boolean inChunk(final int x, final int y, final int z)
+		{
+			return x >= 0 && x < RawChunk.WIDTH && y >= 0 && y < RawChunk.HEIGHT && z >= 0 && z < RawChunk.DEPTH;
+		}
+		
+		@Override
+		public int getBlockId(ChunkCoord chunkCoord, final int x, final int y, final int z)
+		{
+			return inChunk(x, y, z) ? rawChunk.getBlockId(x, y, z) : 0;
+		}
+		
+		@Override
+		public BlockType getBlockType(ChunkCoord chunkCoord, final int x, final int y, final int z)
+		{
+			return inChunk(x, y, z) ? registry.find(rawChunk.getBlockId(x, y, z), rawChunk.getBlockData(x, y, z)) : air;
+		}
+		
+		@Override
+		public float getLight(ChunkCoord chunkCoord, final int x, final int y, final int z, LightFace face)
+		{
+			return Chunk.getLight(getLightStyle(), face, inChunk(x, y, z) ? rawChunk : null, x, y, z);
+		}
+		
+		@Override public LightStyle getLightStyle() { return LightStyle.Day; }
+		@Override public TexturePack getTexturePack() { return null; }
+		@Override public int getBiomeId(ChunkCoord chunkCoord, final int x, final int y, final int z) { return 0; }
+		@Override public Colour4f getGrassColour(ChunkCoord chunkCoord, final int x, final int y, final int z) { return new Colour4f(1, 1, 1, 1); }
+		@Override public PlayerSkinCache getPlayerSkinCache() { return null; }
+		@Override public BlockRegistry getModelRegistry() { return null; }
+	}
+}
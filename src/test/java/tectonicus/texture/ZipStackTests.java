@@ -0,0 +1,112 @@
+/*
+ * Copyright (c) 2012-2019, John Campbell and other contributors.  All rights reserved.
+ *
+ * This file is part of Tectonicus. It is subject to the license terms in the LICENSE file found in
+ * the top-level directory of this distribution.  The full list of project contributors is contained
+ * in the AUTHORS file found in the same location.
+ *
+ */
+
+package tectonicus.texture;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import tectonicus.util.FileUtils;
+
+public class ZipStackTests
+{
+	File workingDir;
+	File base;
+	File override;
+	File mod;
+	
+	@BeforeEach
+	public void setUp() throws IOException
+	{
+		workingDir = new File("build/tmp/ZipStack");
+		FileUtils.deleteDirectory(workingDir);
+		workingDir.mkdirs();
+		
+		base = writeZip("base.jar", "assets/a.json", "base", "assets/b.json", "base", "assets/sub/c.json", "base");
+		override = writeZip("pack.zip", "assets/a.json", "pack", "assets/d.json", "pack");
+		mod = writeZip("mod.jar", "assets/b.json", "mod", "assets/e.json", "mod");
+	}
+	
+	private File writeZip(String name, String... pathsAndContents) throws IOException
+	{
+		File file = new File(workingDir, name);
+		try (ZipOutputStream out = new ZipOutputStream(new FileOutputStream(file)))
+		{
+			for (int i=0; i<pathsAndContents.length; i+=2)
+			{
+				out.putNextEntry(new ZipEntry(pathsAndContents[i]));
+				out.write(pathsAndContents[i+1].getBytes(StandardCharsets.UTF_8));
+				out.closeEntry();
+			}
+		}
+		return file;
+	}
+	
+	private static String read(ZipStack zips, String path) throws IOException
+	{
+		try (InputStream in = zips.getStream(path))
+		{
+			ByteArrayOutputStream out = new ByteArrayOutputStream();
+			byte[] buffer = new byte[256];
+			int read;
+			while ((read = in.read(buffer)) != -1)
+				out.write(buffer, 0, read);
+			return new String(out.toByteArray(), StandardCharsets.UTF_8);
+		}
+	}
+	
+	@Test
+	public void testOverridePriority() throws IOException
+	{
+		try (ZipStack zips = new ZipStack(base, override, Collections.singletonList(mod)))
+		{
+			assertThat(read(zips, "assets/a.json"), is(equalTo("pack")));
+			assertThat(read(zips, "assets/b.json"), is(equalTo("base")));
+			assertThat(read(zips, "/assets/e.json"), is(equalTo("mod")));
+			assertThat(zips.getStream("assets/missing.json"), is(nullValue()));
+		}
+	}
+	
+	@Test
+	public void testHasFileIgnoresMods() throws IOException
+	{
+		try (ZipStack zips = new ZipStack(base, override, Collections.singletonList(mod)))
+		{
+			assertThat(zips.hasFile("assets/d.json"), is(true));
+			assertThat(zips.hasFile("assets\\sub\\c.json"), is(true));
+			assertThat(zips.hasFile("assets/e.json"), is(false));
+		}
+	}
+	
+	@Test
+	public void testListFiles() throws IOException
+	{
+		try (ZipStack zips = new ZipStack(base, override, Collections.singletonList(mod)))
+		{
+			assertThat(zips.listFiles("assets"), is(equalTo(Arrays.asList("assets/a.json", "assets/b.json", "assets/d.json"))));
+			assertThat(zips.listFiles("assets/sub/"), is(equalTo(Arrays.asList("assets/sub/c.json"))));
+		}
+	}
+}
@@ -0,0 +1,78 @@
+/*
+ * Copyright (c) 2012-2019, John Campbell and other contributors.  All rights reserved.
+ *
+ * This file is part of Tectonicus. It is subject to the license terms in the LICENSE file found in
+ * the top-level directory of this distribution.  The full list of project contributors is contained
+ * in the AUTHORS file found in the same location.
+ *
+ */
+
+package tectonicus.world.filter;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+import org.junit.jupiter.api.Test;
+
+import tectonicus.BlockIds;
+import tectonicus.raw.RawChunk;
+
+public class ExploredCaveFilterTests
+{
+	private static final int TUNNEL_Y = 40;
+	private static final int TUNNEL_Z = 8;
+	
+	@Test
+	public void fillsTunnelOutOfRangeOfTorches()
+	{
+		ExploredCaveFilter filter = new ExploredCaveFilter();
+		
+		RawChunk center = createTunnelChunk();
+		center.setBlockId(2, TUNNEL_Y, TUNNEL_Z, BlockIds.TORCH);
+		filter.filter(center);
+		
+		// The next chunk along has a torch right at its edge
+		RawChunk south = createTunnelChunk();
+		south.setBlockId(0, TUNNEL_Y, TUNNEL_Z, BlockIds.TORCH);
+		filter.filter(south);
+		
+		filter.preGeometryFilter(center, null, south, null, null);
+		
+		assertThat(center.getBlockId(2, TUNNEL_Y, TUNNEL_Z), is(BlockIds.TORCH));
+		assertThat(center.getBlockId(8, TUNNEL_Y, TUNNEL_Z), is(BlockIds.AIR));
+		assertThat(center.getBlockId(9, TUNNEL_Y, TUNNEL_Z), is(BlockIds.STONE));
+		assertThat(center.getBlockId(10, TUNNEL_Y, TUNNEL_Z), is(BlockIds.AIR));
+		assertThat(center.getBlockId(15, TUNNEL_Y, TUNNEL_Z), is(BlockIds.AIR));
+	}
+	
+	@Test
+	public void fillsEverythingUndergroundWithoutTorches()
+	{
+		ExploredCaveFilter filter = new ExploredCaveFilter();
+		
+		RawChunk center = createTunnelChunk();
+		filter.filter(center);
+		filter.preGeometryFilter(center, null, null, null, null);
+		
+		for (int x=0; x<RawChunk.WIDTH; x++)
+			assertThat(center.getBlockId(x, TUNNEL_Y, TUNNEL_Z), is(BlockIds.STONE));
+		
+		assertThat(center.getBlockId(8, 100, 8), is(BlockIds.AIR));
+	}
+	
+	/** Stone up to y=63 with a tunnel through it along x */
+	private static RawChunk createTunnelChunk()
+	{
+		RawChunk chunk = new RawChunk();
+		for (int x=0; x<RawChunk.WIDTH; x++)
+		{
+			for (int z=0; z<RawChunk.DEPTH; z++)
+			{
+				for (int y=0; y<64; y++)
+					chunk.setBlockId(x, y, z, BlockIds.STONE);
+			}
+			chunk.setBlockId(x, TUNNEL_Y, TUNNEL_Z, BlockIds.AIR);
+		}
+		return chunk;
+	}
+}